@@ -1,15 +1,31 @@
 package controller;
 
 import java.io.*;
+import java.nio.file.*;
 import java.util.*;
 import java.time.*;
 import java.time.format.*;
+import java.util.function.*;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.util.ResourceUtils;
+import org.springframework.http.*;
 
+import helpers.Configuration;
+import helpers.StaticPage;
+import helpers.Template;
+import model.database.DatabaseConnection;
 import model.database.DatabaseConnectionPool;
+import model.database.DatabaseMigrations;
+import services.AggregateReconciliationService;
+import services.CatalogService;
+import services.CoEnrollmentIndex;
+import services.ImagePipeline;
+import services.MailDeduplicator;
+import services.MailService;
+import services.RelationshipGraph;
+import services.SwipeIngestionService;
+import services.UserSearchIndex;
 
 @SpringBootApplication
 public class RestServiceApplication {
@@ -19,9 +35,40 @@ public class RestServiceApplication {
     }
 
     public static void run() throws IOException {
-        Properties configProps = new Properties();
-        configProps.load(new FileInputStream(ResourceUtils.getFile("classpath:properties/api.properties")));
-        String API_VERSION = configProps.getProperty("API_VERSION");
+        // Configuration files are watched for changes from here on
+        int numberOfWatchedDirectories = Configuration.startWatching();
+        String API_VERSION = Configuration.get().api().version();
+
+        // Bring the schema up to date before any request is served
+        int numberOfMigrations = DatabaseMigrations.migrate();
+        int numberOfShardMigrations = DatabaseMigrations.migrateShards();
+
+        // Emails are accepted as soon as requests are served
+        MailService.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(MailService::stop));
+        MailDeduplicator.start();
+
+        // Status pages are rendered and compressed once, and only rendered again when the year changes
+        StaticPage.start();
+
+        // Profile pictures are rendered on a bounded pool, so uploads cannot take every core
+        ImagePipeline.start();
+
+        // Warm the catalog, the relationship graph, and the discover indexes so that lookups, candidate ranking, and search do not hit the database.
+        // They are loaded before requests are served, so no request reads an empty index and no write lands between a snapshot and its load
+        DatabaseConnection dbconn = DatabaseConnectionPool.getConnection();
+        try {
+            load("catalog", dbconn::transaction_loadCatalog);
+            load("relationship graph", dbconn::transaction_loadRelationshipGraph);
+            load("co-enrollment index", dbconn::transaction_loadCoEnrollmentIndex);
+            load("user search index", dbconn::transaction_loadUserSearchIndex);
+        } finally {
+            DatabaseConnectionPool.releaseConnection(dbconn);
+        }
+
+        // Swipes left in the journal by the previous run are applied on top of the relationship graph before any new swipe is accepted
+        SwipeIngestionService.start(Configuration.get().api().swipeJournalPath());
+        Runtime.getRuntime().addShutdownHook(new Thread(SwipeIngestionService::stop));
 
         SpringApplication.run(RestServiceApplication.class);
 
@@ -39,6 +86,46 @@ public class RestServiceApplication {
         System.out.println(" \\______/=====================================|__/================================");
         System.out.println(" \u001B[32m:: juniper ::\u001B[0m                    (v" + API_VERSION + ")");
         System.out.println();
-        System.out.println(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").format(LocalDateTime.now()) + "  \u001B[32mINFO \u001B[35mGOOD\u001B[35m \u001B[0m--- [           main] \u001B[36mmodel.DatabaseConnectionPool\u001B[0m             : Initialized DatabaseConnectionPool with " + DatabaseConnectionPool.size() + " connections");
+        printStartupMessage("helpers.Configuration", "Loaded configuration, watching " + numberOfWatchedDirectories + " directories for changes");
+        printStartupMessage("model.DatabaseMigrations", "Applied " + numberOfMigrations + " schema migrations and " +
+                            numberOfShardMigrations + " shard migrations");
+        printStartupMessage("helpers.Template", "Precompiled " + Template.numberOfTemplates() + " templates");
+        printStartupMessage("helpers.StaticPage", "Pre-rendered " + StaticPage.numberOfPages() + " static pages");
+        printStartupMessage("services.MailService", "Initialized MailService with " + MailService.NUMBER_OF_TRANSPORTS + " SMTP connections");
+        printStartupMessage("services.MailDeduplicator", "Initialized MailDeduplicator with a " + MailDeduplicator.DEDUPLICATION_WINDOW_MILLIS / 1000 +
+                            "s deduplication window, reporting suppressed emails every " + MailDeduplicator.REPORT_INTERVAL_MILLIS / 60_000 + " minutes");
+        printStartupMessage("services.ImagePipeline", "Initialized ImagePipeline with " + ImagePipeline.NUMBER_OF_WORKERS + " workers");
+        printStartupMessage("model.DatabaseConnectionPool", "Initialized DatabaseConnectionPool with " + DatabaseConnectionPool.size() +
+                            " connections and " + DatabaseConnectionPool.getShardNames().size() + " relationship shards");
+
+        printStartupMessage("services.CatalogService", "Initialized CatalogService with " + CatalogService.numberOfUniversities() +
+                            " universities and " + CatalogService.numberOfCourses() + " courses");
+        printStartupMessage("services.RelationshipGraph", "Initialized RelationshipGraph with " + RelationshipGraph.numberOfUsers() + " users");
+
+        printStartupMessage("services.SwipeIngestionService", "Initialized SwipeIngestionService with " + SwipeIngestionService.numberOfPendingSwipes() +
+                            " recovered swipes");
+        printStartupMessage("services.CoEnrollmentIndex", "Initialized CoEnrollmentIndex with " + CoEnrollmentIndex.numberOfUsers() + " users");
+        printStartupMessage("services.UserSearchIndex", "Initialized UserSearchIndex with " + UserSearchIndex.numberOfUsers() + " users");
+
+        // Backfills missing friend count and rating aggregates, then checks them for drift once a day
+        AggregateReconciliationService.start();
+        printStartupMessage("services.AggregateReconciliationService", "Scheduled AggregateReconciliationService");
+    }
+
+    /**
+     * Runs a startup load, and aborts startup if it fails rather than serving requests from an empty index
+     */
+    private static void load(String name, Supplier<ResponseEntity<Boolean>> load) {
+        ResponseEntity<Boolean> loadStatus = load.get();
+        if (loadStatus.getStatusCode() != HttpStatus.OK) {
+            throw new IllegalStateException("Could not load the " + name + ": " + loadStatus.getStatusCode());
+        }
+    }
+
+    /**
+     * Prints a startup message in the same format as the Spring Boot log
+     */
+    private static void printStartupMessage(String source, String message) {
+        System.out.println(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").format(LocalDateTime.now()) + "  \u001B[32mINFO \u001B[35mGOOD\u001B[35m \u001B[0m--- [           main] \u001B[36m" + String.format("%-45s", source + "\u001B[0m") + ": " + message);
     }
 }
\ No newline at end of file
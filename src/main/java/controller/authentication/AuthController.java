@@ -1,6 +1,7 @@
 package controller.authentication;
 
 import java.io.*;
+import java.nio.charset.*;
 import java.util.*;
 
 import org.springframework.http.*;
@@ -9,8 +10,11 @@ import org.springframework.web.bind.annotation.*;
 
 import model.database.*;
 import types.AuthTokens;
+import services.AccountEmailService;
 import services.AuthTokenService;
-import services.MailService;
+import helpers.Configuration;
+import helpers.StaticPage;
+import helpers.Template;
 import static helpers.Utilities.*;
 
 @RestController
@@ -20,22 +24,11 @@ public class AuthController {
     // Token authentication service
     private final AuthTokenService authTokenService;
 
-    // Mailing service
-    private final MailService mailService;
-
-    // API host
-    private final String API_HOST;
-
     /**
      * Initializes controller
      */
-    public AuthController() throws IOException {
+    public AuthController() {
         authTokenService = new AuthTokenService();
-        mailService = new MailService();
-
-        Properties configProps = new Properties();
-        configProps.load(new FileInputStream(ResourceUtils.getFile("classpath:properties/api.properties")));
-        API_HOST = configProps.getProperty("API_HOST");
     }
 
     /**
@@ -203,23 +196,7 @@ public class AuthController {
 		try {
             String email = payload.get("email").toLowerCase();
 
-            // Gets the name of the user
-            ResponseEntity<String> resolveEmailToUserNameStatus = dbconn.transaction_resolveEmailToUserName(email);
-            if (resolveEmailToUserNameStatus.getStatusCode() != HttpStatus.OK) {
-                // If user does not exist, vaguely claim that email has been sent
-                return createStatusJSON("Successfully sent email", HttpStatus.OK);
-            }
-            String name = resolveEmailToUserNameStatus.getBody();
-
-            // Gets the password reset code for the user
-            ResponseEntity<String> resolveEmailToPasswordResetCodeStatus = dbconn.transaction_generatePasswordResetCode(email);
-            if (resolveEmailToPasswordResetCodeStatus.getStatusCode() != HttpStatus.OK) {
-                return createStatusJSON("Request failed", HttpStatus.INTERNAL_SERVER_ERROR);
-            }
-            String passwordResetCode = resolveEmailToPasswordResetCodeStatus.getBody();
-
-            // On success, send verification email
-            return mailService.sendPasswordResetEmail(name, email, passwordResetCode);
+            return AccountEmailService.sendPasswordResetEmail(dbconn, email);
 
         } finally {
             DatabaseConnectionPool.releaseConnection(dbconn);
@@ -234,7 +211,9 @@ public class AuthController {
      */
     @RequestMapping(path = "/reset-password",
         method = RequestMethod.GET)
-    public ResponseEntity<String> servePasswordResetPage(@RequestParam(value = "code") String passwordResetCode) {
+    public ResponseEntity<byte[]> servePasswordResetPage(@RequestParam(value = "code") String passwordResetCode,
+                                                         @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                         @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
         DatabaseConnection dbconn = DatabaseConnectionPool.getConnection();
 
@@ -242,22 +221,15 @@ public class AuthController {
             ResponseEntity<Boolean> checkPasswordResetCodeValidStatus = dbconn.transaction_verifyPasswordResetCode(passwordResetCode);
 
             return switch (checkPasswordResetCodeValidStatus.getStatusCode()) {
-                case OK -> new ResponseEntity<>(
-                        loadTemplate("reset_password_page.html")
-                                .replace("[[url]]", API_HOST + "/auth/reset-password")
-                                .replace("[[code]]", passwordResetCode)
-                                .replace("[[year]]", String.valueOf(Calendar.getInstance().get(Calendar.YEAR))),
-                        HttpStatus.OK);
-
-                case UNAUTHORIZED -> new ResponseEntity<>(
-                        loadTemplate("reset_password_expired_page.html")
-                                .replace("[[year]]", String.valueOf(Calendar.getInstance().get(Calendar.YEAR))),
-                        HttpStatus.NOT_FOUND);
-
-                default -> new ResponseEntity<>(
-                        loadTemplate("reset_password_failed_page.html")
-                                .replace("[[year]]", String.valueOf(Calendar.getInstance().get(Calendar.YEAR))),
-                        checkPasswordResetCodeValidStatus.getStatusCode());
+                case OK -> ResponseEntity.ok()
+                        .contentType(new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8))
+                        .body(Template.RESET_PASSWORD_PAGE.render(Configuration.get().api().host() + "/auth/reset-password", passwordResetCode,
+                                                                  String.valueOf(Calendar.getInstance().get(Calendar.YEAR)))
+                                      .getBytes(StandardCharsets.UTF_8));
+
+                case UNAUTHORIZED -> StaticPage.RESET_PASSWORD_EXPIRED_PAGE.serve(HttpStatus.NOT_FOUND, acceptEncoding, ifNoneMatch);
+
+                default -> StaticPage.RESET_PASSWORD_FAILED_PAGE.serve(checkPasswordResetCodeValidStatus.getStatusCode(), acceptEncoding, ifNoneMatch);
             };
         } finally {
             DatabaseConnectionPool.releaseConnection(dbconn);
@@ -274,8 +246,9 @@ public class AuthController {
         consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE,
         produces = MediaType.TEXT_HTML_VALUE,
         method = RequestMethod.POST)
-    public ResponseEntity<String> resetPassword(@RequestParam(value = "code") String passwordResetCode,
-                                                @RequestParam(value = "password") String password) {
+    public ResponseEntity<byte[]> resetPassword(@RequestParam(value = "code") String passwordResetCode,
+                                                @RequestParam(value = "password") String password,
+                                                @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
 
         DatabaseConnection dbconn = DatabaseConnectionPool.getConnection();
 
@@ -283,20 +256,11 @@ public class AuthController {
             ResponseEntity<Boolean> processPasswordResetCodeStatus = dbconn.transaction_processPasswordResetCode(passwordResetCode, password);
 
             return switch (processPasswordResetCodeStatus.getStatusCode()) {
-                case OK -> new ResponseEntity<>(
-                        loadTemplate("reset_password_success_page.html")
-                                .replace("[[year]]", String.valueOf(Calendar.getInstance().get(Calendar.YEAR))),
-                        HttpStatus.OK);
-
-                case UNAUTHORIZED -> new ResponseEntity<>(
-                        loadTemplate("reset_password_expired_page.html")
-                                .replace("[[year]]", String.valueOf(Calendar.getInstance().get(Calendar.YEAR))),
-                        HttpStatus.NOT_FOUND);
-
-                default -> new ResponseEntity<>(
-                        loadTemplate("reset_password_failed_page.html")
-                                .replace("[[year]]", String.valueOf(Calendar.getInstance().get(Calendar.YEAR))),
-                        processPasswordResetCodeStatus.getStatusCode());
+                case OK -> StaticPage.RESET_PASSWORD_SUCCESS_PAGE.serve(HttpStatus.OK, acceptEncoding, null);
+
+                case UNAUTHORIZED -> StaticPage.RESET_PASSWORD_EXPIRED_PAGE.serve(HttpStatus.NOT_FOUND, acceptEncoding, null);
+
+                default -> StaticPage.RESET_PASSWORD_FAILED_PAGE.serve(processPasswordResetCodeStatus.getStatusCode(), acceptEncoding, null);
             };
         } finally {
             DatabaseConnectionPool.releaseConnection(dbconn);
@@ -2,12 +2,15 @@ package controller.discover;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
 
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 
 import services.*;
 import model.database.*;
+import types.*;
 import static helpers.Utilities.*;
 
 @RestController
@@ -20,46 +23,97 @@ public class DiscoverController {
     /**
      * Initializes controller
      */
-    public DiscoverController() throws IOException {
+    public DiscoverController() {
         authTokenService = new AuthTokenService();
     }
 
     /**
-     * User likes other user
+     * Loads the next discover candidates for user. Candidates are dealt from the user's precomputed deck
      *
-     * @param payload JSON object containing "userId", "accessToken", "otherUserId" fields
+     * @param payload JSON object containing "userId", "accessToken" fields, and optionally a "count" field
      * @apiNote POST request
      *
-     * @return JSON object containing boolean. 200 status code iff success
+     * @return JSON array of discover cards, which are mini profiles with the card profile picture. 200 status code iff success
      */
-    @RequestMapping(path = "/like",
+    @RequestMapping(path = "/load",
         consumes = MediaType.APPLICATION_JSON_VALUE,
         produces = MediaType.APPLICATION_JSON_VALUE,
         method = RequestMethod.POST)
-    public ResponseEntity<Object> likeUser(@RequestBody Map<String, String> payload) {
+    public ResponseEntity<Object> loadUsers(@RequestBody Map<String, String> payload) {
+        String userId = payload.get("userId");
+        String accessToken = payload.get("accessToken");
 
-        DatabaseConnection dbconn = DatabaseConnectionPool.getConnection();
+        // Verifies access token
+        if (!authTokenService.verifyAccessToken(userId, accessToken)) {
+            return createStatusJSON("Invalid access token", HttpStatus.UNAUTHORIZED);
+        }
 
-		try {
-            String userId = payload.get("userId");
-            String accessToken = payload.get("accessToken");
+        int count = payload.containsKey("count") ? Integer.parseInt(payload.get("count")) : DiscoverDeckService.MAX_LOAD_SIZE;
 
-            // Verifies access token
-            if (!authTokenService.verifyAccessToken(userId, accessToken)) {
-                return createStatusJSON("Invalid access token", HttpStatus.UNAUTHORIZED);
-            }
+        return new ResponseEntity<>(DiscoverDeckService.deal(userId, count), HttpStatus.OK);
+    }
+
+    /**
+     * Searches users by user handle and name
+     *
+     * @param payload JSON object containing "userId", "accessToken", "query" fields, and optionally "offset", "count" fields
+     * @apiNote POST request
+     *
+     * @return JSON array of mini profiles. 200 status code iff success
+     */
+    @RequestMapping(path = "/search",
+        consumes = MediaType.APPLICATION_JSON_VALUE,
+        produces = MediaType.APPLICATION_JSON_VALUE,
+        method = RequestMethod.POST)
+    public ResponseEntity<Object> searchUsers(@RequestBody Map<String, String> payload) {
+        String userId = payload.get("userId");
+        String accessToken = payload.get("accessToken");
 
-            String otherUserId = payload.get("otherUserId");
+        // Verifies access token
+        if (!authTokenService.verifyAccessToken(userId, accessToken)) {
+            return createStatusJSON("Invalid access token", HttpStatus.UNAUTHORIZED);
+        }
 
-            return createStatusJSON(dbconn.transaction_likeUser(userId, otherUserId));
+        String query = payload.get("query");
+        int offset = payload.containsKey("offset") ? Integer.parseInt(payload.get("offset")) : 0;
+        int count = payload.containsKey("count") ? Integer.parseInt(payload.get("count")) : UserSearchIndex.MAX_PAGE_SIZE;
 
-        } finally {
-            DatabaseConnectionPool.releaseConnection(dbconn);
+        // Users that the user has blocked and users that have blocked the user are excluded
+        return new ResponseEntity<>(UserSearchIndex.search(query, offset, count, RelationshipGraph.getBlockedUserIds(userId)), HttpStatus.OK);
+    }
+
+    /**
+     * User likes other user. Whether user and other user matched is reported immediately, and the like is written in the background
+     *
+     * @param payload JSON object containing "userId", "accessToken", "otherUserId" fields
+     * @apiNote POST request
+     *
+     * @return JSON object containing boolean and "matched" boolean. 200 status code iff success
+     */
+    @RequestMapping(path = "/like",
+        consumes = MediaType.APPLICATION_JSON_VALUE,
+        produces = MediaType.APPLICATION_JSON_VALUE,
+        method = RequestMethod.POST)
+    public ResponseEntity<Object> likeUser(@RequestBody Map<String, String> payload) {
+        String userId = payload.get("userId");
+        String accessToken = payload.get("accessToken");
+
+        // Verifies access token
+        if (!authTokenService.verifyAccessToken(userId, accessToken)) {
+            return createStatusJSON("Invalid access token", HttpStatus.UNAUTHORIZED);
+        }
+
+        String otherUserId = payload.get("otherUserId");
+
+        ResponseEntity<Boolean> likeUserStatus = SwipeIngestionService.like(userId, otherUserId);
+        if (likeUserStatus.getStatusCode() != HttpStatus.OK) {
+            return createStatusJSON(likeUserStatus);
         }
+        return new ResponseEntity<>(generateMap("status", "true", "matched", likeUserStatus.getBody().toString()), HttpStatus.OK);
     }
 
     /**
-     * User dislikes other user
+     * User dislikes other user. The dislike is written in the background
      *
      * @param payload JSON object containing "userId", "accessToken", "otherUserId" fields
      * @apiNote POST request
@@ -71,25 +125,17 @@ public class DiscoverController {
         produces = MediaType.APPLICATION_JSON_VALUE,
         method = RequestMethod.POST)
     public ResponseEntity<Object> dislikeUser(@RequestBody Map<String, String> payload) {
+        String userId = payload.get("userId");
+        String accessToken = payload.get("accessToken");
 
-        DatabaseConnection dbconn = DatabaseConnectionPool.getConnection();
-
-		try {
-            String userId = payload.get("userId");
-            String accessToken = payload.get("accessToken");
-
-            // Verifies access token
-            if (!authTokenService.verifyAccessToken(userId, accessToken)) {
-                return createStatusJSON("Invalid access token", HttpStatus.UNAUTHORIZED);
-            }
-
-            String otherUserId = payload.get("otherUserId");
+        // Verifies access token
+        if (!authTokenService.verifyAccessToken(userId, accessToken)) {
+            return createStatusJSON("Invalid access token", HttpStatus.UNAUTHORIZED);
+        }
 
-            return createStatusJSON(dbconn.transaction_dislikeUser(userId, otherUserId));
+        String otherUserId = payload.get("otherUserId");
 
-        } finally {
-            DatabaseConnectionPool.releaseConnection(dbconn);
-        }
+        return createStatusJSON(SwipeIngestionService.dislike(userId, otherUserId));
     }
 
     /**
@@ -106,25 +152,19 @@ public class DiscoverController {
         method = RequestMethod.POST)
     public ResponseEntity<Object> rateUser(@RequestBody Map<String, String> payload) {
 
-        DatabaseConnection dbconn = DatabaseConnectionPool.getConnection();
-
-		try {
-            String userId = payload.get("userId");
-            String accessToken = payload.get("accessToken");
-
-            // Verifies access token
-            if (!authTokenService.verifyAccessToken(userId, accessToken)) {
-                return createStatusJSON("Invalid access token", HttpStatus.UNAUTHORIZED);
-            }
+        String userId = payload.get("userId");
+        String accessToken = payload.get("accessToken");
 
-            String otherUserId = payload.get("otherUserId");
-            int rating = Integer.parseInt(payload.get("rating"));
+        // Verifies access token
+        if (!authTokenService.verifyAccessToken(userId, accessToken)) {
+            return createStatusJSON("Invalid access token", HttpStatus.UNAUTHORIZED);
+        }
 
-            return createStatusJSON(dbconn.transaction_rateUser(userId, otherUserId, rating));
+        String otherUserId = payload.get("otherUserId");
+        int rating = Integer.parseInt(payload.get("rating"));
 
-        } finally {
-            DatabaseConnectionPool.releaseConnection(dbconn);
-        }
+        // The friends record may still be pending in the swipe journal
+        return withPairFlushed(userId, otherUserId, dbconn -> dbconn.transaction_rateUser(userId, otherUserId, rating));
     }
 
     /**
@@ -141,23 +181,49 @@ public class DiscoverController {
         method = RequestMethod.POST)
     public ResponseEntity<Object> blockUser(@RequestBody Map<String, String> payload) {
 
-        DatabaseConnection dbconn = DatabaseConnectionPool.getConnection();
+        String userId = payload.get("userId");
+        String accessToken = payload.get("accessToken");
 
-		try {
-            String userId = payload.get("userId");
-            String accessToken = payload.get("accessToken");
+        // Verifies access token
+        if (!authTokenService.verifyAccessToken(userId, accessToken)) {
+            return createStatusJSON("Invalid access token", HttpStatus.UNAUTHORIZED);
+        }
 
-            // Verifies access token
-            if (!authTokenService.verifyAccessToken(userId, accessToken)) {
-                return createStatusJSON("Invalid access token", HttpStatus.UNAUTHORIZED);
-            }
+        String otherUserId = payload.get("otherUserId");
+
+        // Blocked users are removed from the user's deck right away
+        DiscoverDeckService.discard(userId, otherUserId);
+
+        // Pending swipes between the users must not overwrite the block once they are flushed
+        return withPairFlushed(userId, otherUserId, dbconn -> dbconn.transaction_blockUser(userId, otherUserId));
+    }
 
-            String otherUserId = payload.get("otherUserId");
+    /**
+     * Runs a transaction that writes the relationship between two users directly. The pending swipes between the
+     * users are written first, under the pair lock, and before a connection is borrowed, since writing them borrows
+     * one too
+     *
+     * @return JSON object containing boolean. 200 status code iff success
+     */
+    private static ResponseEntity<Object> withPairFlushed(String userId, String otherUserId,
+                                                          Function<DatabaseConnection, ResponseEntity<Boolean>> transaction) {
+        Lock pairLock = RelationshipGraph.getPairLock(userId, otherUserId);
+        pairLock.lock();
+
+        try {
+            if (!SwipeIngestionService.flushPair(userId, otherUserId)) {
+                return createStatusJSON(new ResponseEntity<>(false, HttpStatus.INTERNAL_SERVER_ERROR));
+            }
 
-            return createStatusJSON(dbconn.transaction_blockUser(userId, otherUserId));
+            DatabaseConnection dbconn = DatabaseConnectionPool.getConnection();
+            try {
+                return createStatusJSON(transaction.apply(dbconn));
+            } finally {
+                DatabaseConnectionPool.releaseConnection(dbconn);
+            }
 
         } finally {
-            DatabaseConnectionPool.releaseConnection(dbconn);
+            pairLock.unlock();
         }
     }
 }
@@ -3,11 +3,12 @@ package controller.services;
 import java.io.*;
 import java.util.*;
 
-import com.google.gson.JsonObject;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 
 import model.database.*;
+import services.AccountEmailService;
+import services.UniversitySuggestionService;
 import static helpers.Utilities.*;
 
 @RestController
@@ -31,32 +32,40 @@ public class ServicesController {
             ResponseEntity<String> resolveEmailToMostRecentEmailTypeStatus = dbconn.transaction_resolveEmailToMostRecentEmailType(email);
             String mostRecentEmailType = resolveEmailToMostRecentEmailTypeStatus.getBody();
 
-            String redirectUrl;
-
             if (mostRecentEmailType == null) {
                 // If user does not exist, vaguely claim that email has been sent
                 return createStatusJSON("Successfully sent email", HttpStatus.OK);
 
             } else if (mostRecentEmailType.equals("verification")) {
-                redirectUrl = "/user/request-account-verification";
+                return AccountEmailService.sendAccountVerificationEmail(dbconn, email);
 
             } else if (mostRecentEmailType.equals("password_reset")) {
-                redirectUrl = "/auth/request-reset-password";
+                return AccountEmailService.sendPasswordResetEmail(dbconn, email);
 
             } else {
                 throw new RuntimeException("Unrecognized email type: " + mostRecentEmailType);
             }
-            ResponseEntity<JsonObject> postResponse = sendPostRequest(redirectUrl, payload);
-            return createStatusJSON(extractStringFromJsonObject(postResponse.getBody(), "status"), postResponse.getStatusCode());
-
-        } catch (IOException e) {
-            e.printStackTrace();
-            return createStatusJSON("Request failed", HttpStatus.INTERNAL_SERVER_ERROR);
 
         } finally {
             DatabaseConnectionPool.releaseConnection(dbconn);
         }
     }
 
+    /**
+     * Suggests university names that match a partially typed name
+     *
+     * @param query partially typed university name
+     * @param limit maximum number of suggestions. at most 10
+     * @apiNote GET request
+     *
+     * @return JSON array of university names ordered from best to worst match. 200 status code iff success
+     */
+    @RequestMapping(path = "/universities/suggest",
+        produces = MediaType.APPLICATION_JSON_VALUE,
+        method = RequestMethod.GET)
+    public ResponseEntity<List<String>> suggestUniversities(@RequestParam(value = "query") String query,
+                                                            @RequestParam(value = "limit", defaultValue = "10") int limit) {
 
+        return new ResponseEntity<>(UniversitySuggestionService.suggest(query, limit), HttpStatus.OK);
+    }
 }
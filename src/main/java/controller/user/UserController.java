@@ -1,9 +1,10 @@
 package controller.user;
 
 import java.io.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 
-import com.azure.storage.blob.BlobContainerClient;
 import model.database.DatabaseConnection;
 import model.database.DatabaseConnectionPool;
 import model.storage.StorageConnection;
@@ -11,24 +12,27 @@ import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 
 import services.*;
+import helpers.StaticPage;
 import static helpers.Utilities.*;
 
 @RestController
 @RequestMapping("/user")
 public class UserController {
 
+    // Largest profile picture accepted. Checked against the Content-Length header before any of the picture is read
+    private static final long MAX_PROFILE_PICTURE_SIZE = 10 * 1024 * 1024;
+
+    // Time to wait for a profile picture to be rendered and stored, including time spent waiting for a worker
+    private static final long PROFILE_PICTURE_TIMEOUT_MILLIS = 30_000;
+
     // Token authentication service
     private final AuthTokenService authTokenService;
 
-    // Mailing service
-    private final MailService mailService;
-
     /**
      * Initializes controller
      */
-    public UserController() throws IOException {
+    public UserController() {
         authTokenService = new AuthTokenService();
-        mailService = new MailService();
     }
 
     /**
@@ -64,23 +68,7 @@ public class UserController {
                 // If email exists...
                 if (Boolean.TRUE.equals(checkEmailVerifiedStatus.getBody())) {
                     // If user is verified, then send password reset code
-                    ResponseEntity<String> resolveEmailToPasswordResetCodeStatus = dbconn.transaction_generatePasswordResetCode(email);
-                    if (resolveEmailToPasswordResetCodeStatus.getStatusCode() != HttpStatus.OK) {
-                        // If could not generate a password reset code for the user, then return internal server error
-                        return createStatusJSON("Internal server error", HttpStatus.INTERNAL_SERVER_ERROR);
-                    }
-                    String passwordResetCode = resolveEmailToPasswordResetCodeStatus.getBody();
-
-                    // Get the name of the registered user
-                    ResponseEntity<String> resolveEmailToUserNameStatus = dbconn.transaction_resolveEmailToUserName(email);
-                    if (resolveEmailToUserNameStatus.getStatusCode() != HttpStatus.OK) {
-                        // If could not find a name for the user, then return internal server error
-                        return createStatusJSON("Internal server error", HttpStatus.INTERNAL_SERVER_ERROR);
-                    }
-                    name = resolveEmailToUserNameStatus.getBody();
-
-                    // On success, send verification email
-                    return mailService.sendPasswordResetEmail(name, email, passwordResetCode);
+                    return AccountEmailService.sendPasswordResetEmail(dbconn, email);
 
                 } else {
                     // If user is unverified, then delete old user account and create user account
@@ -100,7 +88,7 @@ public class UserController {
                 return createStatusJSON("Failed to create user", createUserStatus.getStatusCode());
             }
             // On success, send verification email
-            return mailService.sendVerificationEmail(name, email, verificationCode);
+            return MailService.sendVerificationEmail(name, email, verificationCode);
 
         } finally {
             DatabaseConnectionPool.releaseConnection(dbconn);
@@ -133,32 +121,7 @@ public class UserController {
 		try {
             String email = payload.get("email").toLowerCase();
 
-            // Gets the verification code for the user and identifies whether the verification code is active
-            ResponseEntity<String> resolveEmailToVerificationCodeStatus = dbconn.transaction_resolveEmailToVerificationCode(email);
-            String verificationCode = resolveEmailToVerificationCodeStatus.getBody();
-
-            // Checks whether the user is verified
-            ResponseEntity<Boolean> checkEmailVerifiedStatus = dbconn.transaction_checkEmailVerified(email);
-
-            if (resolveEmailToVerificationCodeStatus.getStatusCode() == HttpStatus.OK ||
-                resolveEmailToVerificationCodeStatus.getStatusCode() == HttpStatus.BAD_REQUEST && Boolean.TRUE.equals(checkEmailVerifiedStatus.getBody())) {
-                // If (email exists and verification code is active) or (email exists, verification code has expired, and user is verified),
-                // then send verification email
-                ResponseEntity<String> resolveEmailToUserNameStatus = dbconn.transaction_resolveEmailToUserName(email);
-                if (resolveEmailToUserNameStatus.getStatusCode() != HttpStatus.OK) {
-                    // If could not find a name for the user, then return internal server error
-                    return createStatusJSON("Internal server error", HttpStatus.INTERNAL_SERVER_ERROR);
-                }
-                String name = resolveEmailToUserNameStatus.getBody();
-
-                return mailService.sendVerificationEmail(name, email, verificationCode);
-
-            } else if (resolveEmailToVerificationCodeStatus.getStatusCode() == HttpStatus.BAD_REQUEST && Boolean.FALSE.equals(checkEmailVerifiedStatus.getBody())) {
-                // If email exists, verification code has expired, and user is unverified, then delete old user account
-                dbconn.transaction_deleteUnverifiedUser(email);
-            }
-            // If email does not exist, then return email sent message
-            return createStatusJSON("Successfully sent email", HttpStatus.OK);
+            return AccountEmailService.sendAccountVerificationEmail(dbconn, email);
 
         } finally {
             DatabaseConnectionPool.releaseConnection(dbconn);
@@ -179,7 +142,9 @@ public class UserController {
      */
     @RequestMapping(path = "/verify-account",
         method = RequestMethod.GET)
-    public ResponseEntity<String> verifyAccount(@RequestParam(value = "code") String verificationCode) {
+    public ResponseEntity<byte[]> verifyAccount(@RequestParam(value = "code") String verificationCode,
+                                                @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
         DatabaseConnection dbconn = DatabaseConnectionPool.getConnection();
 
@@ -187,25 +152,13 @@ public class UserController {
             ResponseEntity<Boolean> processVerificationCodeStatus = dbconn.transaction_processAccountVerificationCode(verificationCode);
 
             return switch (processVerificationCodeStatus.getStatusCode()) {
-                case OK -> new ResponseEntity<>(
-                        loadTemplate("verify_account_success_page.html")
-                                .replace("[[year]]", String.valueOf(Calendar.getInstance().get(Calendar.YEAR))),
-                        HttpStatus.OK);
-
-                case BAD_REQUEST -> new ResponseEntity<>(
-                        loadTemplate("verify_account_already_page.html")
-                                .replace("[[year]]", String.valueOf(Calendar.getInstance().get(Calendar.YEAR))),
-                        HttpStatus.BAD_REQUEST);
-
-                case NOT_FOUND -> new ResponseEntity<>(
-                        loadTemplate("verify_account_expired_page.html")
-                                .replace("[[year]]", String.valueOf(Calendar.getInstance().get(Calendar.YEAR))),
-                        HttpStatus.NOT_FOUND);
-
-                default -> new ResponseEntity<>(
-                        loadTemplate("verify_account_failed_page.html")
-                                .replace("[[year]]", String.valueOf(Calendar.getInstance().get(Calendar.YEAR))),
-                        processVerificationCodeStatus.getStatusCode());
+                case OK -> StaticPage.VERIFY_ACCOUNT_SUCCESS_PAGE.serve(HttpStatus.OK, acceptEncoding, ifNoneMatch);
+
+                case BAD_REQUEST -> StaticPage.VERIFY_ACCOUNT_ALREADY_PAGE.serve(HttpStatus.BAD_REQUEST, acceptEncoding, ifNoneMatch);
+
+                case NOT_FOUND -> StaticPage.VERIFY_ACCOUNT_EXPIRED_PAGE.serve(HttpStatus.NOT_FOUND, acceptEncoding, ifNoneMatch);
+
+                default -> StaticPage.VERIFY_ACCOUNT_FAILED_PAGE.serve(processVerificationCodeStatus.getStatusCode(), acceptEncoding, ifNoneMatch);
             };
         } finally {
             DatabaseConnectionPool.releaseConnection(dbconn);
@@ -225,17 +178,17 @@ public class UserController {
         produces = MediaType.APPLICATION_JSON_VALUE,
         method = RequestMethod.POST)
     public ResponseEntity<Object> checkProfileCompleted(@RequestBody Map<String, String> payload) {
-        DatabaseConnection dbconn = DatabaseConnectionPool.getConnection();
+        String userId = payload.get("userId");
+        String accessToken = payload.get("accessToken");
 
-        try {
-            String userId = payload.get("userId");
-            String accessToken = payload.get("accessToken");
+        // Verifies access token
+        if (!authTokenService.verifyAccessToken(userId, accessToken)) {
+            return createStatusJSON("Invalid access token", HttpStatus.UNAUTHORIZED);
+        }
 
-            // Verifies access token
-            if (!authTokenService.verifyAccessToken(userId, accessToken)) {
-                return createStatusJSON("Invalid access token", HttpStatus.UNAUTHORIZED);
-            }
+        DatabaseConnection dbconn = DatabaseConnectionPool.getReadConnection(userId);
 
+        try {
             return createStatusJSON(dbconn.transaction_resolveEmailToProfileCompleted(userId));
 
         } finally {
@@ -274,7 +227,9 @@ public class UserController {
             String email = payload.get("email").toLowerCase();
             String dateOfBirth = payload.get("dateOfBirth");
 
-            return createStatusJSON(dbconn.transaction_updatePersonalInformation(userId, userHandle, name, email, dateOfBirth));
+            ResponseEntity<Boolean> updateStatus = dbconn.transaction_updatePersonalInformation(userId, userHandle, name, email, dateOfBirth);
+            DatabaseConnectionPool.recordWrite(userId);
+            return createStatusJSON(updateStatus);
 
         } finally {
             DatabaseConnectionPool.releaseConnection(dbconn);
@@ -311,7 +266,14 @@ public class UserController {
             String standing = payload.get("standing");
             String gpa = payload.get("gpa");
 
-            return createStatusJSON(dbconn.transaction_updateEducationInformation(userId, universityName, major, standing, gpa));
+            ResponseEntity<Boolean> updateStatus = dbconn.transaction_updateEducationInformation(userId, universityName, major, standing, gpa);
+            DatabaseConnectionPool.recordWrite(userId);
+
+            // Candidates are ranked by university and courses, so the user's deck is reranked
+            if (updateStatus.getStatusCode() == HttpStatus.OK) {
+                DiscoverDeckService.invalidate(userId);
+            }
+            return createStatusJSON(updateStatus);
 
         } finally {
             DatabaseConnectionPool.releaseConnection(dbconn);
@@ -346,7 +308,14 @@ public class UserController {
             String universityName = payload.get("universityName").toString();
             List<String> courseCodes = (List<String>) payload.get("courseCodes");
 
-            return createStatusJSON(dbconn.transaction_updateRegistrationInformation(userId, universityName, courseCodes));
+            ResponseEntity<Boolean> updateStatus = dbconn.transaction_updateRegistrationInformation(userId, universityName, courseCodes);
+            DatabaseConnectionPool.recordWrite(userId);
+
+            // Candidates are ranked by university and courses, so the user's deck is reranked
+            if (updateStatus.getStatusCode() == HttpStatus.OK) {
+                DiscoverDeckService.invalidate(userId);
+            }
+            return createStatusJSON(updateStatus);
 
         } finally {
             DatabaseConnectionPool.releaseConnection(dbconn);
@@ -380,7 +349,9 @@ public class UserController {
 
             String biography = payload.get("biography");
 
-            return createStatusJSON(dbconn.transaction_updateBiography(userId, biography));
+            ResponseEntity<Boolean> updateStatus = dbconn.transaction_updateBiography(userId, biography);
+            DatabaseConnectionPool.recordWrite(userId);
+            return createStatusJSON(updateStatus);
 
         } finally {
             DatabaseConnectionPool.releaseConnection(dbconn);
@@ -414,7 +385,9 @@ public class UserController {
 
             String cardColor = payload.get("cardColor");
 
-            return createStatusJSON(dbconn.transaction_updateCardColor(userId, cardColor));
+            ResponseEntity<Boolean> updateStatus = dbconn.transaction_updateCardColor(userId, cardColor);
+            DatabaseConnectionPool.recordWrite(userId);
+            return createStatusJSON(updateStatus);
 
         } finally {
             DatabaseConnectionPool.releaseConnection(dbconn);
@@ -448,7 +421,9 @@ public class UserController {
 
             List<String> mediaUrls = (List<String>) payload.get("mediaUrls");
 
-            return createStatusJSON(dbconn.transaction_updateMedia(userId, mediaUrls));
+            ResponseEntity<Boolean> updateStatus = dbconn.transaction_updateMedia(userId, mediaUrls);
+            DatabaseConnectionPool.recordWrite(userId);
+            return createStatusJSON(updateStatus);
 
         } finally {
             DatabaseConnectionPool.releaseConnection(dbconn);
@@ -469,8 +444,6 @@ public class UserController {
         method = RequestMethod.POST)
     public ResponseEntity<Object> updateProfilePicture(@RequestBody Map<String, String> payload) {
         try {
-            StorageConnection stconn = new StorageConnection();
-
             String userId = payload.get("userId");
             String accessToken = payload.get("accessToken");
             String profilePicture = payload.get("profilePicture");
@@ -480,13 +453,112 @@ public class UserController {
                 return createStatusJSON("Invalid access token", HttpStatus.UNAUTHORIZED);
             }
 
-            BlobContainerClient containerClient = stconn.storage_createContainer(userId.toLowerCase());
-            stconn.storage_uploadBlob(containerClient, "profile-picture", profilePicture);
+            StorageConnection.getConnection().storage_uploadBlob(userId.toLowerCase(), "profile-picture", profilePicture);
 
             return createStatusJSON("Successfully updated profile picture", HttpStatus.OK);
 
+        } catch (IllegalStateException e) {
+            // If storage.credentials could not be loaded
+            return createStatusJSON("Could not update profile picture", HttpStatus.CONFLICT);
+        }
+    }
+
+    /**
+     * Updates the user's profile picture, streamed from the request body into a temporary file and rendered from it by
+     * the image pipeline. The picture is stored as thumbnail, card, and full renditions, without its metadata, so prefer
+     * this to the JSON endpoint
+     *
+     * @param userId "User-Id" header
+     * @param accessToken "Access-Token" header
+     * @param contentLength size of the picture in bytes. required
+     * @param profilePicture JPEG or PNG picture, as the request body
+     * @apiNote POST request
+     *
+     * @return JSON object containing status message. 200 status code iff success. 400 status code if the picture
+     *         cannot be read or decoded. 411 status code if the size of the picture is not specified. 413 status code if the
+     *         picture is larger than 10 MiB. 503 status code if too many pictures are being processed
+     */
+    @RequestMapping(path = "/update-profile-pic",
+        consumes = {MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_PNG_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE},
+        produces = MediaType.APPLICATION_JSON_VALUE,
+        method = RequestMethod.POST)
+    public ResponseEntity<Object> updateProfilePicture(@RequestHeader("User-Id") String userId,
+                                                       @RequestHeader("Access-Token") String accessToken,
+                                                       @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
+                                                       InputStream profilePicture) {
+        // Rejects the picture before reading any of it
+        if (contentLength == null || contentLength < 0) {
+            return createStatusJSON("Profile picture size is not specified", HttpStatus.LENGTH_REQUIRED);
+        }
+        if (contentLength > MAX_PROFILE_PICTURE_SIZE) {
+            return createStatusJSON("Profile picture is too large", HttpStatus.PAYLOAD_TOO_LARGE);
+        }
+
+        // Verifies access token
+        if (!authTokenService.verifyAccessToken(userId, accessToken)) {
+            return createStatusJSON("Invalid access token", HttpStatus.UNAUTHORIZED);
+        }
+
+        // The picture is read on the request thread, so workers never wait on a slow client, and streamed to a
+        // temporary file, so it is never held in memory in full
+        Path picture;
+        try {
+            picture = Files.createTempFile("profile-picture-", ".upload");
+        } catch (IOException e) {
+            e.printStackTrace();
+            return createStatusJSON("Could not update profile picture", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+
+        Map<ImagePipeline.Rendition, String> renditionUrls;
+        Future<Map<ImagePipeline.Rendition, String>> renditions = null;
+        try {
+            if (Files.copy(profilePicture, picture, StandardCopyOption.REPLACE_EXISTING) != contentLength) {
+                return createStatusJSON("Could not read profile picture", HttpStatus.BAD_REQUEST);
+            }
+            renditions = ImagePipeline.submitProfilePicture(StorageConnection.getConnection(), userId, picture);
+            renditionUrls = renditions.get(PROFILE_PICTURE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                // If the picture cannot be decoded or is too large
+                return createStatusJSON("Profile picture is not a supported image", HttpStatus.BAD_REQUEST);
+            }
+            e.printStackTrace();
+            return createStatusJSON("Could not update profile picture", HttpStatus.INTERNAL_SERVER_ERROR);
+
+        } catch (RejectedExecutionException | TimeoutException e) {
+            return createStatusJSON("Too many profile pictures are being processed", HttpStatus.SERVICE_UNAVAILABLE);
+
         } catch (IOException e) {
+            return createStatusJSON("Could not read profile picture", HttpStatus.BAD_REQUEST);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return createStatusJSON("Could not update profile picture", HttpStatus.SERVICE_UNAVAILABLE);
+
+        } catch (IllegalStateException e) {
+            // If storage.credentials could not be loaded
             return createStatusJSON("Could not update profile picture", HttpStatus.CONFLICT);
+
+        } finally {
+            // A picture that timed out is not stored once the request has given up on it
+            if (renditions != null) {
+                renditions.cancel(true);
+            }
+            deleteTemporaryFile(picture);
+        }
+
+        DatabaseConnection dbconn = DatabaseConnectionPool.getConnection();
+
+        try {
+            ResponseEntity<Boolean> updateStatus = dbconn.transaction_updateProfilePicture(userId, renditionUrls.get(ImagePipeline.Rendition.FULL),
+                                                                                           renditionUrls.get(ImagePipeline.Rendition.CARD),
+                                                                                           renditionUrls.get(ImagePipeline.Rendition.THUMBNAIL));
+            DatabaseConnectionPool.recordWrite(userId);
+            return createStatusJSON(updateStatus);
+
+        } finally {
+            DatabaseConnectionPool.releaseConnection(dbconn);
         }
     }
 
@@ -516,7 +588,9 @@ public class UserController {
 
             String dateOfBirth = payload.get("dateOfBirth");
 
-            return createStatusJSON(dbconn.transaction_updateDateOfBirth(userId, dateOfBirth));
+            ResponseEntity<Boolean> updateStatus = dbconn.transaction_updateDateOfBirth(userId, dateOfBirth);
+            DatabaseConnectionPool.recordWrite(userId);
+            return createStatusJSON(updateStatus);
 
         } finally {
             DatabaseConnectionPool.releaseConnection(dbconn);
@@ -535,4 +609,15 @@ public class UserController {
         }
         return userHandle;
     }
+
+    /**
+     * Deletes a temporary file. If it cannot be deleted now, then it is deleted when the server stops
+     */
+    private static void deleteTemporaryFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            file.toFile().deleteOnExit();
+        }
+    }
 }
@@ -0,0 +1,297 @@
+package helpers;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.*;
+
+import org.slf4j.*;
+
+/**
+ * Configuration is the api properties and credentials, loaded once from the classpath into immutable records <br><br>
+ *
+ * Reading a value is a volatile read of the current configuration, so nothing is read from disk on the request
+ * path. When the files are on disk rather than in a jar, their directories are watched, and the configuration is
+ * reloaded and replaced as a whole whenever one of them changes. A file that fails to reload keeps its previous
+ * values. Values that are only read at startup, such as the SMTP server and the database pools, take effect on
+ * restart <br><br>
+ *
+ * A file that is missing or invalid only fails the values read from it, and only when they are accessed
+ */
+public final class Configuration {
+
+    public record Api(String host, String localHost, String version, Path swipeJournalPath, Path mailOutboxPath) {}
+
+    /**
+     * @param replicaEndpoints comma-separated endpoint or endpoint:port entries. empty if there are no replicas
+     * @param shardEndpoints   comma-separated name=endpoint[:port][/database] entries. empty if the database is not sharded
+     */
+    public record Database(String endpoint, int port, String name, String username, String password, String replicaEndpoints,
+                           String shardEndpoints) {}
+
+    public record Smtp(String host, int port, String address, String password) {}
+
+    public record Jwt(String privateKey) {}
+
+    public record Storage(String accountName, String key) {}
+
+    private static final String API_PROPERTIES = "properties/api.properties";
+    private static final String DATABASE_CREDENTIALS = "credentials/database.credentials";
+    private static final String SMTP_CREDENTIALS = "credentials/smtp.credentials";
+    private static final String JWT_CREDENTIALS = "credentials/jwt.credentials";
+    private static final String STORAGE_CREDENTIALS = "credentials/storage.credentials";
+
+    private static final List<String> FILES = List.of(API_PROPERTIES, DATABASE_CREDENTIALS, SMTP_CREDENTIALS, JWT_CREDENTIALS,
+                                                      STORAGE_CREDENTIALS);
+
+    // Time to wait for further changes before reloading, as editors often write a file in several steps
+    private static final long RELOAD_DELAY_MILLIS = 200;
+
+    private static final Logger logger = LoggerFactory.getLogger(Configuration.class);
+
+    private static volatile Configuration current = load(null);
+
+    private static WatchService watchService;
+
+    private final Section<Api> api;
+    private final Section<Database> database;
+    private final Section<Smtp> smtp;
+    private final Section<Jwt> jwt;
+    private final Section<Storage> storage;
+
+    /**
+     * Values read from a file, or the reason they could not be read
+     */
+    private record Section<T>(T values, RuntimeException error) {
+
+        T get() {
+            if (error != null) {
+                throw error;
+            }
+            return values;
+        }
+    }
+
+    private Configuration(Section<Api> api, Section<Database> database, Section<Smtp> smtp, Section<Jwt> jwt, Section<Storage> storage) {
+        this.api = api;
+        this.database = database;
+        this.smtp = smtp;
+        this.jwt = jwt;
+        this.storage = storage;
+    }
+
+    /**
+     * Returns the current configuration
+     */
+    public static Configuration get() {
+        return current;
+    }
+
+    /**
+     * @throws IllegalStateException if api.properties is missing or invalid
+     */
+    public Api api() {
+        return api.get();
+    }
+
+    /**
+     * @throws IllegalStateException if database.credentials is missing or invalid
+     */
+    public Database database() {
+        return database.get();
+    }
+
+    /**
+     * @throws IllegalStateException if smtp.credentials is missing or invalid
+     */
+    public Smtp smtp() {
+        return smtp.get();
+    }
+
+    /**
+     * @throws IllegalStateException if jwt.credentials is missing or invalid
+     */
+    public Jwt jwt() {
+        return jwt.get();
+    }
+
+    /**
+     * @throws IllegalStateException if storage.credentials is missing or invalid
+     */
+    public Storage storage() {
+        return storage.get();
+    }
+
+    /**
+     * Loads the configuration from the classpath again, and replaces the current configuration with it. A file that
+     * is missing or invalid keeps the values it had, if it had any
+     */
+    public static synchronized void reload() {
+        current = load(current);
+    }
+
+    /**
+     * Loads the configuration from the classpath again, forgetting the values of files that are missing or invalid
+     */
+    static synchronized void reset() {
+        current = load(null);
+    }
+
+    /**
+     * Starts reloading the configuration whenever one of its files changes. Files inside a jar are not watched
+     *
+     * @return number of directories watched
+     */
+    public static synchronized int startWatching() throws IOException {
+        stopWatching();
+
+        Set<Path> directories = new LinkedHashSet<>();
+        for (String file : FILES) {
+            URL directory = Configuration.class.getResource("/" + file.substring(0, file.indexOf('/')));
+            if (directory != null && directory.getProtocol().equals("file")) {
+                try {
+                    directories.add(Paths.get(directory.toURI()));
+                } catch (URISyntaxException e) {
+                    throw new IOException(e);
+                }
+            }
+        }
+        if (directories.isEmpty()) {
+            return 0;
+        }
+
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        for (Path directory : directories) {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                               StandardWatchEventKinds.ENTRY_DELETE);
+        }
+        Configuration.watchService = watchService;
+
+        Thread thread = new Thread(() -> watch(watchService), "config-watch");
+        thread.setDaemon(true);
+        thread.start();
+        return directories.size();
+    }
+
+    public static synchronized void stopWatching() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.warn("Could not close the configuration watch service", e);
+            }
+            watchService = null;
+        }
+    }
+
+    /**
+     * Reloads the configuration whenever a watched file changes, until the watch service is closed
+     */
+    private static void watch(WatchService watchService) {
+        Set<String> fileNames = new HashSet<>();
+        for (String file : FILES) {
+            fileNames.add(file.substring(file.indexOf('/') + 1));
+        }
+
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                do {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= event.context() instanceof Path path && fileNames.contains(path.toString());
+                    }
+                    key.reset();
+                } while ((key = watchService.poll(RELOAD_DELAY_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+                if (changed) {
+                    reload();
+                    logger.info("Reloaded configuration");
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // Stopped watching
+        }
+    }
+
+    /**
+     * Loads every file from the classpath
+     *
+     * @param previous configuration whose values are kept for files that are missing or invalid. null if there is none
+     */
+    private static Configuration load(Configuration previous) {
+        Section<Api> api = loadSection(API_PROPERTIES, props -> new Api(
+                required(props, "API_HOST", API_PROPERTIES),
+                required(props, "LOCAL_HOST", API_PROPERTIES),
+                required(props, "API_VERSION", API_PROPERTIES),
+                Paths.get(required(props, "SWIPE_JOURNAL_PATH", API_PROPERTIES)),
+                Paths.get(required(props, "MAIL_OUTBOX_PATH", API_PROPERTIES))), previous == null ? null : previous.api);
+
+        Section<Database> database = loadSection(DATABASE_CREDENTIALS, props -> new Database(
+                required(props, "RDS_ENDPOINT", DATABASE_CREDENTIALS),
+                requiredInt(props, "RDS_PORT", DATABASE_CREDENTIALS),
+                required(props, "RDS_DB_NAME", DATABASE_CREDENTIALS),
+                required(props, "RDS_USERNAME", DATABASE_CREDENTIALS),
+                required(props, "RDS_PASSWORD", DATABASE_CREDENTIALS),
+                props.getProperty("RDS_REPLICA_ENDPOINTS", "").trim(),
+                props.getProperty("RDS_SHARD_ENDPOINTS", "").trim()), previous == null ? null : previous.database);
+
+        Section<Smtp> smtp = loadSection(SMTP_CREDENTIALS, props -> new Smtp(
+                required(props, "SMTP_HOST", SMTP_CREDENTIALS),
+                requiredInt(props, "SMTP_PORT", SMTP_CREDENTIALS),
+                required(props, "SMTP_ADDRESS", SMTP_CREDENTIALS),
+                required(props, "SMTP_PASSWORD", SMTP_CREDENTIALS)), previous == null ? null : previous.smtp);
+
+        Section<Jwt> jwt = loadSection(JWT_CREDENTIALS, props -> new Jwt(
+                required(props, "JWT_PRIVATE_KEY", JWT_CREDENTIALS)), previous == null ? null : previous.jwt);
+
+        Section<Storage> storage = loadSection(STORAGE_CREDENTIALS, props -> new Storage(
+                required(props, "STS_ACCOUNT_NAME", STORAGE_CREDENTIALS),
+                required(props, "STS_KEY", STORAGE_CREDENTIALS)), previous == null ? null : previous.storage);
+
+        return new Configuration(api, database, smtp, jwt, storage);
+    }
+
+    /**
+     * Reads and parses a properties file from the classpath
+     *
+     * @param previous section loaded from the file before. kept if the file is now missing or invalid
+     */
+    private static <T> Section<T> loadSection(String file, Function<Properties, T> parser, Section<T> previous) {
+        IllegalStateException error;
+        try (InputStream in = Configuration.class.getResourceAsStream("/" + file)) {
+            if (in != null) {
+                Properties props = new Properties();
+                props.load(in);
+                return new Section<>(parser.apply(props), null);
+            }
+            error = new IllegalStateException(file + " is not on the classpath");
+        } catch (IOException | RuntimeException e) {
+            error = new IllegalStateException("Could not load " + file, e);
+        }
+
+        if (previous != null && previous.error() == null) {
+            logger.warn("Kept the previous values of {}", file, error);
+            return previous;
+        }
+        return new Section<>(null, error);
+    }
+
+    private static String required(Properties props, String key, String file) {
+        String value = props.getProperty(key);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException(key + " is not specified in " + file);
+        }
+        return value.trim();
+    }
+
+    private static int requiredInt(Properties props, String key, String file) {
+        try {
+            return Integer.parseInt(required(props, key, file));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " in " + file + " is not a number");
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package helpers;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import org.springframework.http.*;
+
+/**
+ * StaticPage is a page whose only dynamic value is the year, pre-rendered into its response bodies <br><br>
+ *
+ * Each page is rendered once into its UTF-8 bytes and their gzip compression, each with a strong ETag. Requests
+ * are served the cached bytes for the encodings they accept, or 304 Not Modified if they already have them. The
+ * pages are checked for a new year every REFRESH_INTERVAL_MINUTES, and are only rendered again once it changes
+ */
+public final class StaticPage {
+
+    public static final StaticPage VERIFY_ACCOUNT_SUCCESS_PAGE = new StaticPage(Template.VERIFY_ACCOUNT_SUCCESS_PAGE);
+    public static final StaticPage VERIFY_ACCOUNT_ALREADY_PAGE = new StaticPage(Template.VERIFY_ACCOUNT_ALREADY_PAGE);
+    public static final StaticPage VERIFY_ACCOUNT_EXPIRED_PAGE = new StaticPage(Template.VERIFY_ACCOUNT_EXPIRED_PAGE);
+    public static final StaticPage VERIFY_ACCOUNT_FAILED_PAGE = new StaticPage(Template.VERIFY_ACCOUNT_FAILED_PAGE);
+
+    public static final StaticPage RESET_PASSWORD_SUCCESS_PAGE = new StaticPage(Template.RESET_PASSWORD_SUCCESS_PAGE);
+    public static final StaticPage RESET_PASSWORD_EXPIRED_PAGE = new StaticPage(Template.RESET_PASSWORD_EXPIRED_PAGE);
+    public static final StaticPage RESET_PASSWORD_FAILED_PAGE = new StaticPage(Template.RESET_PASSWORD_FAILED_PAGE);
+
+    private static final List<StaticPage> PAGES = List.of(VERIFY_ACCOUNT_SUCCESS_PAGE, VERIFY_ACCOUNT_ALREADY_PAGE, VERIFY_ACCOUNT_EXPIRED_PAGE,
+                                                          VERIFY_ACCOUNT_FAILED_PAGE, RESET_PASSWORD_SUCCESS_PAGE, RESET_PASSWORD_EXPIRED_PAGE,
+                                                          RESET_PASSWORD_FAILED_PAGE);
+
+    // Time between checks for a new year
+    public static final long REFRESH_INTERVAL_MINUTES = 60;
+
+    private static final MediaType TEXT_HTML_UTF8 = new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8);
+
+    private static ScheduledExecutorService refreshExecutor;
+
+    private final Template template;
+
+    private volatile Rendition rendition;
+
+    /**
+     * Response bodies of a page rendered for a year
+     *
+     * @param identity UTF-8 bytes of the page
+     * @param gzip     gzip compression of identity
+     * @param etag     strong ETag of identity. gzip has its own ETag, as it is a different representation
+     */
+    private record Rendition(int year, byte[] identity, byte[] gzip, String etag, String gzipEtag) {}
+
+    private StaticPage(Template template) {
+        this.template = template;
+        refresh(currentYear());
+    }
+
+    /**
+     * Starts checking the pages for a new year
+     */
+    public static synchronized void start() {
+        stop();
+
+        refreshExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "static-page-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refreshExecutor.scheduleWithFixedDelay(() -> {
+            int year = currentYear();
+            for (StaticPage page : PAGES) {
+                page.refresh(year);
+            }
+        }, REFRESH_INTERVAL_MINUTES, REFRESH_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public static synchronized void stop() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+            refreshExecutor = null;
+        }
+    }
+
+    /**
+     * Returns the number of pre-rendered pages
+     */
+    public static int numberOfPages() {
+        return PAGES.size();
+    }
+
+    /**
+     * Serves the page
+     *
+     * @param status         status of the response
+     * @param acceptEncoding Accept-Encoding header of the request. null if there is none
+     * @param ifNoneMatch    If-None-Match header of the request. null if there is none
+     * @return page in the smallest encoding the request accepts / status. 304 status code iff status is successful
+     *         and the request already has the page
+     */
+    public ResponseEntity<byte[]> serve(HttpStatus status, String acceptEncoding, String ifNoneMatch) {
+        Rendition rendition = this.rendition;
+        boolean gzip = acceptsGzip(acceptEncoding);
+        String etag = gzip ? rendition.gzipEtag() : rendition.etag();
+
+        // Conditional requests only apply to responses that would have been successful
+        boolean notModified = status.is2xxSuccessful() && matches(ifNoneMatch, etag);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(notModified ? HttpStatus.NOT_MODIFIED : status)
+                                                            .eTag(etag)
+                                                            .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                                                            .cacheControl(CacheControl.noCache());
+        if (notModified) {
+            return response.build();
+        }
+
+        response.contentType(TEXT_HTML_UTF8);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+            return response.body(rendition.gzip());
+        }
+        return response.body(rendition.identity());
+    }
+
+    /**
+     * Renders the page again if the year has changed since it was rendered
+     */
+    void refresh(int year) {
+        if (rendition != null && rendition.year() == year) {
+            return;
+        }
+
+        byte[] identity = template.render(String.valueOf(year)).getBytes(StandardCharsets.UTF_8);
+        byte[] gzip = compress(identity);
+        String etag = hash(identity);
+        rendition = new Rendition(year, identity, gzip, "\"" + etag + "\"", "\"" + etag + "-gzip\"");
+    }
+
+    private static int currentYear() {
+        return Calendar.getInstance().get(Calendar.YEAR);
+    }
+
+    /**
+     * Returns whether an Accept-Encoding header accepts gzip, either by name or by wildcard, with a non-zero quality
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            boolean rejected = false;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        rejected = Double.parseDouble(parameter.substring(2)) == 0;
+                    } catch (NumberFormatException e) {
+                        rejected = true;
+                    }
+                }
+            }
+            if (!rejected) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether an If-None-Match header matches the ETag. If-None-Match uses weak comparison, so a weak
+     * validator matches the strong ETag it was derived from
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] compress(byte[] bytes) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed) {{ def.setLevel(Deflater.BEST_COMPRESSION); }}) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
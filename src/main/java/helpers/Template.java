@@ -0,0 +1,146 @@
+package helpers;
+
+import java.io.*;
+import java.util.*;
+
+import org.jsoup.Jsoup;
+
+/**
+ * Template is an HTML template from resources/templates, precompiled into its literal segments and the slots
+ * between them <br><br>
+ *
+ * Each template is loaded and parsed once, when this class is initialized, and each [[placeholder]] is resolved
+ * to the index of its value. Rendering copies the segments and values into a buffer sized to fit them exactly,
+ * without parsing or searching the template
+ */
+public final class Template {
+
+    public static final Template VERIFY_ACCOUNT_EMAIL = load("verify_account_email.html", "name", "url", "year");
+    public static final Template VERIFY_ACCOUNT_SUCCESS_PAGE = load("verify_account_success_page.html", "year");
+    public static final Template VERIFY_ACCOUNT_ALREADY_PAGE = load("verify_account_already_page.html", "year");
+    public static final Template VERIFY_ACCOUNT_EXPIRED_PAGE = load("verify_account_expired_page.html", "year");
+    public static final Template VERIFY_ACCOUNT_FAILED_PAGE = load("verify_account_failed_page.html", "year");
+
+    public static final Template RESET_PASSWORD_EMAIL = load("reset_password_email.html", "name", "url", "year");
+    public static final Template RESET_PASSWORD_PAGE = load("reset_password_page.html", "url", "code", "year");
+    public static final Template RESET_PASSWORD_SUCCESS_PAGE = load("reset_password_success_page.html", "year");
+    public static final Template RESET_PASSWORD_EXPIRED_PAGE = load("reset_password_expired_page.html", "year");
+    public static final Template RESET_PASSWORD_FAILED_PAGE = load("reset_password_failed_page.html", "year");
+
+    private static final List<Template> TEMPLATES = List.of(VERIFY_ACCOUNT_EMAIL, VERIFY_ACCOUNT_SUCCESS_PAGE, VERIFY_ACCOUNT_ALREADY_PAGE,
+                                                            VERIFY_ACCOUNT_EXPIRED_PAGE, VERIFY_ACCOUNT_FAILED_PAGE, RESET_PASSWORD_EMAIL,
+                                                            RESET_PASSWORD_PAGE, RESET_PASSWORD_SUCCESS_PAGE, RESET_PASSWORD_EXPIRED_PAGE,
+                                                            RESET_PASSWORD_FAILED_PAGE);
+
+    // Literal text before, between, and after the slots. There is one more segment than there are slots
+    private final String[] segments;
+
+    // Index of the value rendered into each slot
+    private final int[] slots;
+
+    private final int numberOfValues;
+
+    // Total length of the segments
+    private final int literalLength;
+
+    private Template(String[] segments, int[] slots, int numberOfValues) {
+        this.segments = segments;
+        this.slots = slots;
+        this.numberOfValues = numberOfValues;
+
+        int length = 0;
+        for (String segment : segments) {
+            length += segment.length();
+        }
+        literalLength = length;
+    }
+
+    /**
+     * Returns the number of templates loaded from resources/templates. Loads them if they have not been loaded
+     */
+    public static int numberOfTemplates() {
+        return TEMPLATES.size();
+    }
+
+    /**
+     * Compiles a template. Placeholders that are not named are left as literal text
+     *
+     * @param html         template text
+     * @param placeholders names of the placeholders, in the order their values are passed to render
+     * @throws IllegalArgumentException if a named placeholder does not appear in the template
+     */
+    public static Template compile(String html, String... placeholders) {
+        Map<String, Integer> placeholderIndexes = new HashMap<>();
+        for (int i = 0; i < placeholders.length; i++) {
+            placeholderIndexes.put("[[" + placeholders[i] + "]]", i);
+        }
+
+        List<String> segments = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        Set<String> foundPlaceholders = new HashSet<>();
+        int segmentStart = 0;
+        int position = html.indexOf("[[");
+        while (position >= 0) {
+            int end = html.indexOf("]]", position);
+            if (end < 0) {
+                break;
+            }
+            String placeholder = html.substring(position, end + 2);
+            Integer index = placeholderIndexes.get(placeholder);
+            if (index != null) {
+                segments.add(html.substring(segmentStart, position));
+                slots.add(index);
+                foundPlaceholders.add(placeholder);
+                segmentStart = end + 2;
+                position = html.indexOf("[[", segmentStart);
+            } else {
+                position = html.indexOf("[[", position + 2);
+            }
+        }
+        segments.add(html.substring(segmentStart));
+
+        for (String placeholder : placeholderIndexes.keySet()) {
+            if (!foundPlaceholders.contains(placeholder)) {
+                throw new IllegalArgumentException("Template does not contain " + placeholder);
+            }
+        }
+        return new Template(segments.toArray(new String[0]), slots.stream().mapToInt(Integer::intValue).toArray(), placeholders.length);
+    }
+
+    /**
+     * Renders the template
+     *
+     * @param values values of the placeholders, in the order the placeholders were named when the template was compiled
+     * @return rendered HTML
+     */
+    public String render(String... values) {
+        if (values.length != numberOfValues) {
+            throw new IllegalArgumentException("Template takes " + numberOfValues + " values, but " + values.length + " were supplied");
+        }
+
+        int length = literalLength;
+        for (int slot : slots) {
+            length += values[slot].length();
+        }
+
+        StringBuilder html = new StringBuilder(length);
+        for (int i = 0; i < slots.length; i++) {
+            html.append(segments[i]).append(values[slots[i]]);
+        }
+        return html.append(segments[slots.length]).toString();
+    }
+
+    /**
+     * Loads an HTML template from resources/templates, normalized by Jsoup, and compiles it
+     */
+    private static Template load(String fileName, String... placeholders) {
+        try (InputStream in = Template.class.getResourceAsStream("/templates/" + fileName)) {
+            if (in == null) {
+                throw new FileNotFoundException("templates/" + fileName);
+            }
+            return compile(Jsoup.parse(in, "UTF-8", "").toString(), placeholders);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
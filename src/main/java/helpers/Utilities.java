@@ -8,30 +8,15 @@ import com.google.gson.*;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.*;
 import org.apache.http.util.EntityUtils;
-import org.jsoup.Jsoup;
 import org.apache.http.client.methods.*;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.util.ResourceUtils;
 
 
 public final class Utilities {
 
     private static final CloseableHttpClient httpClient = HttpClients.createDefault();
 
-    /**
-     * Loads an HTML template from resources/templates
-     *
-     * @return HTML file as String
-     */
-    public static String loadTemplate(String fileName) {
-        try {
-            return Jsoup.parse(ResourceUtils.getFile("classpath:templates/" + fileName), "UTF-8").toString();
-        } catch (Exception e) {
-            return "Failed to load HTML template";
-        }
-    }
-
     /**
      * Generates a String-String map
      *
@@ -82,10 +67,7 @@ public final class Utilities {
     }
 
     public static ResponseEntity<String> sendGetRequest(String apiPathUrl, Map<String, String> parameters) throws IOException {
-        Properties configProps = new Properties();
-        configProps.load(new FileInputStream(ResourceUtils.getFile("classpath:properties/api.properties")));
-
-        String localHost = configProps.getProperty("LOCAL_HOST");
+        String localHost = Configuration.get().api().localHost();
 
         StringJoiner sj = new StringJoiner("&", localHost + apiPathUrl + "?", "");
         for (String key : parameters.keySet()) {
@@ -104,10 +86,7 @@ public final class Utilities {
     }
 
     public static ResponseEntity<JsonObject> sendPostRequest(String apiPathUrl, Map<String, Object> body) throws IOException {
-        Properties configProps = new Properties();
-        configProps.load(new FileInputStream(ResourceUtils.getFile("classpath:properties/api.properties")));
-
-        String localHost = configProps.getProperty("LOCAL_HOST");
+        String localHost = Configuration.get().api().localHost();
 
         HttpPost post = new HttpPost(localHost + apiPathUrl);
         StringEntity entity = new StringEntity(new Gson().toJson(body));
@@ -0,0 +1,166 @@
+package model.database;
+
+import java.sql.*;
+
+/**
+ * Prepared statement whose parameters are bound in order with typed setters, each checked against the parameter
+ * type declared by its SqlStatement. Binding does not box values or collect them into an array
+ */
+public final class BoundStatement implements AutoCloseable {
+
+    private final PreparedStatement statement;
+
+    private final ParameterType[] parameterTypes;
+
+    // Index of the next parameter to be bound, starting at 1
+    private int parameterIndex;
+
+    private BoundStatement(PreparedStatement statement, ParameterType[] parameterTypes) {
+        this.statement = statement;
+        this.parameterTypes = parameterTypes;
+        this.parameterIndex = 1;
+    }
+
+    /**
+     * Prepares the statement on the connection
+     */
+    public static BoundStatement prepare(Connection conn, SqlStatement sqlStatement) throws SQLException {
+        return new BoundStatement(conn.prepareStatement(sqlStatement.sql()),
+                                  sqlStatement.parameterTypes().toArray(new ParameterType[0]));
+    }
+
+    /**
+     * Starts binding the parameters of the next execution, from the first parameter
+     *
+     * @return this statement
+     */
+    public BoundStatement bind() {
+        parameterIndex = 1;
+        return this;
+    }
+
+    /**
+     * Binds the next parameter, which must be a DATE
+     */
+    public BoundStatement setDate(Date value) throws SQLException {
+        ParameterType type = nextParameterType();
+        if (type != ParameterType.DATE) {
+            throw mismatch(type, "Date");
+        }
+
+        if (value == null) {
+            statement.setNull(parameterIndex, type.sqlType);
+        } else {
+            statement.setDate(parameterIndex, value);
+        }
+        parameterIndex++;
+        return this;
+    }
+
+    /**
+     * Binds the next parameter, which must be an INT
+     */
+    public BoundStatement setInt(int value) throws SQLException {
+        ParameterType type = nextParameterType();
+        if (type != ParameterType.INT) {
+            throw mismatch(type, "int");
+        }
+
+        statement.setInt(parameterIndex, value);
+        parameterIndex++;
+        return this;
+    }
+
+    /**
+     * Binds the next parameter, which must be a VARBINARY
+     */
+    public BoundStatement setBytes(byte[] value) throws SQLException {
+        ParameterType type = nextParameterType();
+        if (type != ParameterType.VARBINARY) {
+            throw mismatch(type, "byte[]");
+        }
+
+        if (value == null) {
+            statement.setNull(parameterIndex, type.sqlType);
+        } else {
+            statement.setBytes(parameterIndex, value);
+        }
+        parameterIndex++;
+        return this;
+    }
+
+    /**
+     * Binds the next parameter, which must be a VARCHAR, NVARCHAR, or UNIQUEIDENTIFIER
+     */
+    public BoundStatement setString(String value) throws SQLException {
+        ParameterType type = nextParameterType();
+        if (value == null) {
+            if (type != ParameterType.VARCHAR && type != ParameterType.NVARCHAR && type != ParameterType.UNIQUEIDENTIFIER) {
+                throw mismatch(type, "String");
+            }
+            statement.setNull(parameterIndex, type.sqlType);
+        } else {
+            switch (type) {
+                case VARCHAR -> statement.setString(parameterIndex, value);
+                case NVARCHAR -> statement.setNString(parameterIndex, value);
+                case UNIQUEIDENTIFIER -> statement.setObject(parameterIndex, value, type.sqlType);
+                default -> throw mismatch(type, "String");
+            }
+        }
+        parameterIndex++;
+        return this;
+    }
+
+    /**
+     * Executes the query with the bound parameters
+     *
+     * @return query results as a ResultSet
+     */
+    public ResultSet executeQuery() throws SQLException {
+        checkBound();
+        return statement.executeQuery();
+    }
+
+    /**
+     * Executes the update with the bound parameters
+     */
+    public void executeUpdate() throws SQLException {
+        checkBound();
+
+        // Reads the result of every statement in the batch, so that an error in any of them is thrown
+        boolean hasResultSet = statement.execute();
+        while (hasResultSet || statement.getUpdateCount() != -1) {
+            hasResultSet = statement.getMoreResults();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        statement.close();
+    }
+
+    /**
+     * Gets the type of the next parameter. throws an IllegalStateException if every parameter has been bound
+     */
+    private ParameterType nextParameterType() {
+        if (parameterIndex > parameterTypes.length) {
+            throw new IllegalStateException("Statement has only " + parameterTypes.length + " parameters");
+        }
+        return parameterTypes[parameterIndex - 1];
+    }
+
+    /**
+     * Throws an IllegalStateException if a parameter has not been bound since bind was last called
+     */
+    private void checkBound() {
+        if (parameterIndex != parameterTypes.length + 1) {
+            throw new IllegalStateException("Statement has " + parameterTypes.length + " parameters, but " +
+                                            (parameterIndex - 1) + " have been bound");
+        }
+        parameterIndex = 1;
+    }
+
+    private IllegalStateException mismatch(ParameterType type, String javaType) {
+        return new IllegalStateException("Parameter " + parameterIndex + " is " + type + ", but was bound as " + javaType);
+    }
+}
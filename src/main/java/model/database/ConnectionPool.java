@@ -0,0 +1,185 @@
+package model.database;
+
+import java.sql.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * ConnectionPool represents a pool of DatabaseConnections to a single database, either the primary or one of its
+ * read replicas. DatabaseConnectionPool routes requests between the pools
+ */
+class ConnectionPool {
+
+    // JDBC url of the database
+    private final String connectionUrl;
+
+    // getConnection timeout
+    private final long timeoutValue;
+    private final TimeUnit timeoutUnit;
+
+    private final Lock lock;
+    private final BlockingQueue<DatabaseConnection> idleConnections;
+    private final BlockingQueue<DatabaseConnection> activeConnections;
+
+    private int maxPoolSize;
+
+    private boolean testingEnabled;
+
+    /**
+     * Creates an empty pool. Connections are created by initialize, or by getConnection as they are needed
+     *
+     * @param connectionUrl JDBC url of the database
+     * @param maxPoolSize   maximum number of active and idle connections
+     * @param timeoutValue  time to wait for an idle connection once the pool is at its maximum size
+     * @param timeoutUnit   unit of timeoutValue
+     */
+    ConnectionPool(String connectionUrl, int maxPoolSize, long timeoutValue, TimeUnit timeoutUnit) {
+        this.connectionUrl = connectionUrl;
+        this.maxPoolSize = maxPoolSize;
+        this.timeoutValue = timeoutValue;
+        this.timeoutUnit = timeoutUnit;
+
+        lock = new ReentrantLock();
+        idleConnections = new LinkedBlockingQueue<>();
+        activeConnections = new LinkedBlockingQueue<>();
+    }
+
+    /**
+     * Gets a connection from the pool
+     *
+     * @return a DatabaseConnection object
+     * @throws RuntimeException if a connection cannot be opened, or none becomes idle before the timeout
+     */
+    DatabaseConnection getConnection() {
+        DatabaseConnection dbconn = tryGetConnection();
+        if (dbconn == null) {
+            throw new RuntimeException("DatabaseConnection deadlock");
+        }
+        return dbconn;
+    }
+
+    /**
+     * Gets a connection from the pool, unless none becomes idle before the timeout
+     *
+     * @return a DatabaseConnection object. null if the pool is at its maximum size and no connection became idle
+     * @throws RuntimeException if a connection cannot be opened
+     */
+    DatabaseConnection tryGetConnection() {
+        lock.lock();
+
+        try {
+            if (idleConnections.size() == 0 && size() < maxPoolSize) {
+                // If there are no idle connections and pool size is below max, then create new connection
+                DatabaseConnection dbconn = new DatabaseConnection(connectionUrl, testingEnabled);
+                activeConnections.put(dbconn);
+                return dbconn;
+            } else {
+                // Otherwise wait for idle connection
+                DatabaseConnection dbconn = idleConnections.poll(timeoutValue, timeoutUnit);
+                if (dbconn == null) {
+                    return null;
+                }
+
+                // If idle connection has closed, then create new connection
+                try {
+                    dbconn.getTransactionCount();
+                } catch (Exception e) {
+                    dbconn = new DatabaseConnection(connectionUrl, testingEnabled);
+                }
+                activeConnections.put(dbconn);
+                return dbconn;
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a connection back to the pool
+     *
+     * @param dbconn DatabaseConnection to be released
+     * @return true iff the connection was obtained from this pool
+     */
+    boolean releaseConnection(DatabaseConnection dbconn) {
+        try {
+            if (activeConnections.remove(dbconn)) {
+                idleConnections.put(dbconn);
+                return true;
+            }
+            return false;
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns whether a connection was obtained from this pool and has not been released
+     */
+    boolean isActive(DatabaseConnection dbconn) {
+        return activeConnections.contains(dbconn);
+    }
+
+    /**
+     * Returns the total number of active and idle connections in the pool
+     */
+    int size() {
+        return idleConnections.size() + activeConnections.size();
+    }
+
+    /**
+     * Releases all connections back to the pool
+     */
+    void releaseAllConnections() {
+        while (activeConnections.size() > 0) {
+            releaseConnection(activeConnections.peek());
+        }
+    }
+
+    /**
+     * Closes all connections in the pool. These connections can no longer be used
+     */
+    void closeAllConnections() {
+        closeConnections(idleConnections);
+        closeConnections(activeConnections);
+    }
+
+    /**
+     * Replaces the connections in the pool with new connections in accordance with the testingEnabled flag
+     *
+     * @param size           number of connections to initialize
+     * @param maxPoolSize    maximum number of active and idle connections
+     * @param testingEnabled flag enabling the use of testing features
+     */
+    void initialize(int size, int maxPoolSize, boolean testingEnabled) {
+        try {
+            closeAllConnections();
+            idleConnections.clear();
+            activeConnections.clear();
+
+            this.maxPoolSize = maxPoolSize;
+            this.testingEnabled = testingEnabled;
+            for (int i = 0; i < size; i++) {
+                idleConnections.put(new DatabaseConnection(connectionUrl, testingEnabled));
+            }
+
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Closes all connections in the list
+     *
+     * @param dbconns list containing connections to be closed
+     */
+    private static void closeConnections(BlockingQueue<DatabaseConnection> dbconns) {
+        for (DatabaseConnection dbconn : dbconns) {
+            try {
+                dbconn.closeConnection();
+            } catch (SQLException ignored) {}
+        }
+    }
+}
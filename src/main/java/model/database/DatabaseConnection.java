@@ -3,9 +3,11 @@ package model.database;
 import java.io.*;
 import java.sql.*;
 import java.sql.Date;
-import java.text.SimpleDateFormat;
+import java.text.*;
 import java.time.temporal.*;
 import java.util.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
 import java.time.*;
 import java.time.format.*;
 import java.security.*;
@@ -14,12 +16,20 @@ import java.security.spec.*;
 import javax.crypto.*;
 import javax.crypto.spec.*;
 
+import com.google.gson.*;
 import org.springframework.http.*;
-import org.springframework.util.ResourceUtils;
 
 import exceptions.*;
+import helpers.Configuration;
+import services.CatalogService;
+import services.CoEnrollmentIndex;
+import services.RelationshipGraph;
+import services.SwipeIngestionService;
+import services.SwipeJournal;
+import services.UserSearchIndex;
 import types.*;
 
+import static model.database.DatabaseRecords.*;
 import static model.database.DatabaseStatements.*;
 import static helpers.Utilities.*;
 
@@ -44,6 +54,9 @@ public class DatabaseConnection {
     // Number of attempts when encountering deadlock
     private static final int MAX_ATTEMPTS = 16;
 
+    // Number of users reconciled per transaction by transaction_reconcileUserAggregates
+    private static final int RECONCILIATION_BATCH_SIZE = 500;
+
     // Account verification code expiration
     private static final int VERIFICATION_CODE_EXPIRATION_VALUE = 24;
     private static final ChronoUnit VERIFICATION_CODE_EXPIRATION_UNIT = ChronoUnit.HOURS;
@@ -53,54 +66,73 @@ public class DatabaseConnection {
     private static final ChronoUnit PASSWORD_RESET_CODE_EXPIRATION_UNIT = ChronoUnit.MINUTES;
 
     // System statements
-    private PreparedStatement systemTransactionCountStatement;
+    private BoundStatement systemTransactionCountStatement;
 
     // Create statements
-    private PreparedStatement createCourseStatement;
-    private PreparedStatement createMediaStatement;
-    private PreparedStatement createRegistrationStatement;
-    private PreparedStatement createRelationshipStatement;
-    private PreparedStatement createUniversityStatement;
-    private PreparedStatement createUserStatement;
+    private BoundStatement createCourseStatement;
+    private BoundStatement createMediaStatement;
+    private BoundStatement createRegistrationStatement;
+    private BoundStatement createRelationshipStatement;
+    private BoundStatement createUniversityStatement;
+    private BoundStatement createUserStatement;
 
     // Delete statements
-    private PreparedStatement deleteMediaStatement;
-    private PreparedStatement deleteRegistrationStatement;
-    private PreparedStatement deleteRelationshipStatement;
-    private PreparedStatement deleteUnverifiedUserStatement;
+    private BoundStatement deleteMediaStatement;
+    private BoundStatement deleteRegistrationStatement;
+    private BoundStatement deleteRelationshipStatement;
+    private BoundStatement deleteRelationshipsStatement;
+    private BoundStatement deleteUnverifiedUserStatement;
 
     // Update statements
-    private PreparedStatement updateBiographyStatement;
-    private PreparedStatement updateCardColorStatement;
-    private PreparedStatement updateCredentialsStatement;
-    private PreparedStatement updateDateOfBirthStatement;
-    private PreparedStatement updateEducationInformationStatement;
-    private PreparedStatement updateEmailVerificationStatement;
-    private PreparedStatement updatePasswordResetCodeStatement;
-    private PreparedStatement updatePersonalInformationStatement;
-    private PreparedStatement updateProfilePictureStatement;
-    private PreparedStatement updateRefreshTokenStatement;
-    private PreparedStatement updateRelationshipStatement;
+    private BoundStatement updateAllUserAggregatesStatement;
+    private BoundStatement updateBiographyStatement;
+    private BoundStatement updateCardColorStatement;
+    private BoundStatement updateCredentialsStatement;
+    private BoundStatement updateDateOfBirthStatement;
+    private BoundStatement updateDriftedUserAggregatesStatement;
+    private BoundStatement updateEducationInformationStatement;
+    private BoundStatement updateEmailVerificationStatement;
+    private BoundStatement updatePasswordResetCodeStatement;
+    private BoundStatement updatePersonalInformationStatement;
+    private BoundStatement updateProfilePictureStatement;
+    private BoundStatement updateRefreshTokenStatement;
+    private BoundStatement updateRelationshipStatement;
+    private BoundStatement updateRelationshipStatusStatement;
+    private BoundStatement updateRelationshipStatusesStatement;
+    private BoundStatement updateRelationshipsStatement;
 
     // Select statements
-    private PreparedStatement resolveCourseCodeUniversityIdToCourseRecordStatement;
-    private PreparedStatement resolveEmailToUserRecordStatement;
-    private PreparedStatement resolvePasswordResetCodeToUserRecord;
-    private PreparedStatement resolveUniversityIdToUniversityRecordStatement;
-    private PreparedStatement resolveUniversityNameToUniversityRecordStatement;
-    private PreparedStatement resolveUserHandleToUserRecordStatement;
-    private PreparedStatement resolveUserIdOtherUserIdToRelationshipRecordStatement;
-    private PreparedStatement resolveUserIdToCourseRecordsStatement;
-    private PreparedStatement resolveUserIdToMediaRecordsStatement;
-    private PreparedStatement resolveUserIdToNumberOfFriendsStatement;
-    private PreparedStatement resolveUserIdToRatingStatement;
-    private PreparedStatement resolveUserIdToUserRecordStatement;
-    private PreparedStatement resolveVerificationCodeToUserRecordStatement;
+    private BoundStatement resolveAllCourseRecordsStatement;
+    private BoundStatement resolveAllRelationshipRatingRecordsStatement;
+    private BoundStatement resolveAllRelationshipRecordsStatement;
+    private BoundStatement resolveAllRegistrationRecordsStatement;
+    private BoundStatement resolveAllUniversityRecordsStatement;
+    private BoundStatement resolveAllUserMiniRecordsStatement;
+    private BoundStatement resolveAllVerifiedUserRecordsStatement;
+    private BoundStatement resolveCourseCodeUniversityIdToCourseRecordStatement;
+    private BoundStatement resolveCourseIdToCourseRecordStatement;
+    private BoundStatement resolveEmailToCredentialsRecordStatement;
+    private BoundStatement resolveEmailToLifecycleRecordStatement;
+    private BoundStatement resolveEmailToProfileCompletedStatement;
+    private BoundStatement resolveEmailToUserRecordStatement;
+    private BoundStatement resolvePasswordResetCodeToLifecycleRecordStatement;
+    private BoundStatement resolveUniversityIdToUniversityRecordStatement;
+    private BoundStatement resolveUniversityNameToUniversityRecordStatement;
+    private BoundStatement resolveUserHandleToUserRecordStatement;
+    private BoundStatement resolveUserIdToCredentialsRecordStatement;
+    private BoundStatement resolveUserIdToMediaRecordsStatement;
+    private BoundStatement resolveUserIdToProfileRecordStatement;
+    private BoundStatement resolveUserIdToRegistrationRecordsStatement;
+    private BoundStatement resolveUserIdToUserAggregatesRecordStatement;
+    private BoundStatement resolveUserIdToUserMiniRecordStatement;
+    private BoundStatement resolveUserIdsAfterUserIdStatement;
+    private BoundStatement resolveUserIdsToDiscoverCardRecordsStatement;
+    private BoundStatement resolveVerificationCodeToLifecycleRecordStatement;
 
     /**
      * Creates a connection to the database specified in database.credentials
      */
-    public DatabaseConnection() throws IOException, SQLException {
+    public DatabaseConnection() throws SQLException {
         this(false);
     }
 
@@ -109,27 +141,115 @@ public class DatabaseConnection {
      *
      * @param testEnabled flag enabling the use of testing features
      */
-    public DatabaseConnection(Boolean testEnabled) throws IOException, SQLException {
+    public DatabaseConnection(Boolean testEnabled) throws SQLException {
+        this(getConnectionUrl(), testEnabled);
+    }
+
+    /**
+     * Creates a connection to the database at the JDBC url
+     *
+     * @param connectionUrl JDBC url of the primary database or one of its replicas
+     * @param testEnabled   flag enabling the use of testing features
+     */
+    public DatabaseConnection(String connectionUrl, Boolean testEnabled) throws SQLException {
         this.testEnabled = testEnabled;
-        conn = openConnection();
+        conn = openConnection(connectionUrl);
         prepareStatements();
     }
 
     /**
-     * Returns a connection to the database specified in database.credentials
+     * Returns the JDBC url of the database specified in database.credentials
+     */
+    public static String getConnectionUrl() {
+        Configuration.Database database = Configuration.get().database();
+        return formatConnectionUrl(database, database.endpoint(), String.valueOf(database.port()), database.name());
+    }
+
+    /**
+     * Returns the JDBC urls of the read replicas specified in database.credentials. RDS_REPLICA_ENDPOINTS is a
+     * comma-separated list of endpoint or endpoint:port entries, which default to RDS_PORT. Replica connections
+     * declare a read-only intent
+     *
+     * @return JDBC urls of the replicas. empty if no replicas are specified
+     */
+    public static List<String> getReplicaConnectionUrls() {
+        Configuration.Database database = Configuration.get().database();
+
+        List<String> connectionUrls = new ArrayList<>();
+        for (String replicaEndpoint : database.replicaEndpoints().split(",")) {
+            replicaEndpoint = replicaEndpoint.trim();
+            if (replicaEndpoint.isEmpty()) {
+                continue;
+            }
+
+            int separator = replicaEndpoint.lastIndexOf(':');
+            String endpoint = (separator == -1) ? replicaEndpoint : replicaEndpoint.substring(0, separator);
+            String port = (separator == -1) ? String.valueOf(database.port()) : replicaEndpoint.substring(separator + 1);
+            connectionUrls.add(formatConnectionUrl(database, endpoint, port, database.name()) + ";applicationIntent=ReadOnly");
+        }
+        return connectionUrls;
+    }
+
+    /**
+     * Returns the JDBC urls of the relationship shards specified in database.credentials, by shard name.
+     * RDS_SHARD_ENDPOINTS is a comma-separated list of name=endpoint[:port][/database] entries
+     *
+     * @return JDBC urls of the shards, in the order they are specified. empty if the database is not sharded
+     */
+    public static Map<String, String> getShardConnectionUrls() {
+        return parseShardEndpoints(Configuration.get().database().shardEndpoints());
+    }
+
+    /**
+     * Parses a comma-separated list of name=endpoint[:port][/database] entries. The port defaults to RDS_PORT and
+     * the database to RDS_DB_NAME
+     *
+     * @return JDBC urls of the shards, by shard name, in the order they are listed
      */
-    private static Connection openConnection() throws IOException, SQLException {
-        Properties configProps = new Properties();
-        configProps.load(new FileInputStream(ResourceUtils.getFile("classpath:credentials/database.credentials")));
+    public static Map<String, String> parseShardEndpoints(String shardEndpoints) {
+        Configuration.Database database = Configuration.get().database();
+
+        Map<String, String> connectionUrls = new LinkedHashMap<>();
+        for (String shardEndpoint : shardEndpoints.split(",")) {
+            shardEndpoint = shardEndpoint.trim();
+            if (shardEndpoint.isEmpty()) {
+                continue;
+            }
+
+            int nameSeparator = shardEndpoint.indexOf('=');
+            if (nameSeparator == -1) {
+                throw new IllegalArgumentException("Shard endpoint is not of the form name=endpoint[:port][/database]: " + shardEndpoint);
+            }
+            String shardName = shardEndpoint.substring(0, nameSeparator).trim();
+            String endpoint = shardEndpoint.substring(nameSeparator + 1).trim();
+
+            String dbName = database.name();
+            int databaseSeparator = endpoint.indexOf('/');
+            if (databaseSeparator != -1) {
+                dbName = endpoint.substring(databaseSeparator + 1);
+                endpoint = endpoint.substring(0, databaseSeparator);
+            }
+            int portSeparator = endpoint.lastIndexOf(':');
+            String port = (portSeparator == -1) ? String.valueOf(database.port()) : endpoint.substring(portSeparator + 1);
+            endpoint = (portSeparator == -1) ? endpoint : endpoint.substring(0, portSeparator);
 
-        String endpoint = configProps.getProperty("RDS_ENDPOINT");
-        String port = configProps.getProperty("RDS_PORT");
-        String dbName = configProps.getProperty("RDS_DB_NAME");
-        String username = configProps.getProperty("RDS_USERNAME");
-        String password = configProps.getProperty("RDS_PASSWORD");
+            if (connectionUrls.put(shardName, formatConnectionUrl(database, endpoint, port, dbName)) != null) {
+                throw new IllegalArgumentException("Shard " + shardName + " is specified more than once");
+            }
+        }
+        return connectionUrls;
+    }
 
-        String connectionUrl = String.format("jdbc:sqlserver://%s:%s;databaseName=%s;user=%s;password=%s",
-            endpoint, port, dbName, username, password);
+    private static String formatConnectionUrl(Configuration.Database database, String endpoint, String port, String dbName) {
+        // String parameters are sent as varchar, so that comparisons against varchar columns do not convert the column
+        return String.format("jdbc:sqlserver://%s:%s;databaseName=%s;user=%s;password=%s;sendStringParametersAsUnicode=false",
+            endpoint, port, dbName, database.username(), database.password());
+    }
+
+    /**
+     * Returns a connection to the database at the JDBC url
+     */
+    private static Connection openConnection(String connectionUrl) throws SQLException {
         Connection conn = DriverManager.getConnection(connectionUrl);
 
         // Automatically commit after each statement
@@ -154,49 +274,68 @@ public class DatabaseConnection {
      */
     private void prepareStatements() throws SQLException {
         // System statements
-        systemTransactionCountStatement = conn.prepareStatement(SYSTEM_TRANSACTION_COUNT);
+        systemTransactionCountStatement = BoundStatement.prepare(conn, SYSTEM_TRANSACTION_COUNT);
 
         // Create statements
-        createCourseStatement = conn.prepareStatement(CREATE_COURSE);
-        createMediaStatement = conn.prepareStatement(CREATE_MEDIA);
-        createRegistrationStatement = conn.prepareStatement(CREATE_REGISTRATION);
-        createRelationshipStatement = conn.prepareStatement(CREATE_RELATIONSHIP);
-        createUniversityStatement = conn.prepareStatement(CREATE_UNIVERSITY);
-        createUserStatement = conn.prepareStatement(CREATE_USER);
+        createCourseStatement = BoundStatement.prepare(conn, CREATE_COURSE);
+        createMediaStatement = BoundStatement.prepare(conn, CREATE_MEDIA);
+        createRegistrationStatement = BoundStatement.prepare(conn, CREATE_REGISTRATION);
+        createRelationshipStatement = BoundStatement.prepare(conn, CREATE_RELATIONSHIP);
+        createUniversityStatement = BoundStatement.prepare(conn, CREATE_UNIVERSITY);
+        createUserStatement = BoundStatement.prepare(conn, CREATE_USER);
 
         // Delete statements
-        deleteMediaStatement = conn.prepareStatement(DELETE_MEDIA);
-        deleteRegistrationStatement = conn.prepareStatement(DELETE_REGISTRATION);
-        deleteRelationshipStatement = conn.prepareStatement(DELETE_RELATIONSHIP);
-        deleteUnverifiedUserStatement = conn.prepareStatement(DELETE_UNVERIFIED_USER);
+        deleteMediaStatement = BoundStatement.prepare(conn, DELETE_MEDIA);
+        deleteRegistrationStatement = BoundStatement.prepare(conn, DELETE_REGISTRATION);
+        deleteRelationshipStatement = BoundStatement.prepare(conn, DELETE_RELATIONSHIP);
+        deleteRelationshipsStatement = BoundStatement.prepare(conn, DELETE_RELATIONSHIPS);
+        deleteUnverifiedUserStatement = BoundStatement.prepare(conn, DELETE_UNVERIFIED_USER);
 
         // Update statements
-        updateBiographyStatement = conn.prepareStatement(UPDATE_BIOGRAPHY);
-        updateCardColorStatement = conn.prepareStatement(UPDATE_CARD_COLOR);
-        updateCredentialsStatement = conn.prepareStatement(UPDATE_CREDENTIALS);
-        updateDateOfBirthStatement = conn.prepareStatement(UPDATE_DATE_OF_BIRTH);
-        updateEducationInformationStatement = conn.prepareStatement(UPDATE_EDUCATION_INFORMATION);
-        updateEmailVerificationStatement = conn.prepareStatement(UPDATE_EMAIL_VERIFICATION);
-        updatePasswordResetCodeStatement = conn.prepareStatement(UPDATE_PASSWORD_RESET_CODE);
-        updatePersonalInformationStatement = conn.prepareStatement(UPDATE_PERSONAL_INFORMATION);
-        updateProfilePictureStatement = conn.prepareStatement(UPDATE_PROFILE_PICTURE);
-        updateRefreshTokenStatement = conn.prepareStatement(UPDATE_REFRESH_TOKEN);
-        updateRelationshipStatement = conn.prepareStatement(UPDATE_RELATIONSHIP);
+        updateAllUserAggregatesStatement = BoundStatement.prepare(conn, UPDATE_ALL_USER_AGGREGATES);
+        updateBiographyStatement = BoundStatement.prepare(conn, UPDATE_BIOGRAPHY);
+        updateCardColorStatement = BoundStatement.prepare(conn, UPDATE_CARD_COLOR);
+        updateCredentialsStatement = BoundStatement.prepare(conn, UPDATE_CREDENTIALS);
+        updateDateOfBirthStatement = BoundStatement.prepare(conn, UPDATE_DATE_OF_BIRTH);
+        updateDriftedUserAggregatesStatement = BoundStatement.prepare(conn, UPDATE_DRIFTED_USER_AGGREGATES);
+        updateEducationInformationStatement = BoundStatement.prepare(conn, UPDATE_EDUCATION_INFORMATION);
+        updateEmailVerificationStatement = BoundStatement.prepare(conn, UPDATE_EMAIL_VERIFICATION);
+        updatePasswordResetCodeStatement = BoundStatement.prepare(conn, UPDATE_PASSWORD_RESET_CODE);
+        updatePersonalInformationStatement = BoundStatement.prepare(conn, UPDATE_PERSONAL_INFORMATION);
+        updateProfilePictureStatement = BoundStatement.prepare(conn, UPDATE_PROFILE_PICTURE);
+        updateRefreshTokenStatement = BoundStatement.prepare(conn, UPDATE_REFRESH_TOKEN);
+        updateRelationshipStatement = BoundStatement.prepare(conn, UPDATE_RELATIONSHIP);
+        updateRelationshipStatusStatement = BoundStatement.prepare(conn, UPDATE_RELATIONSHIP_STATUS);
+        updateRelationshipStatusesStatement = BoundStatement.prepare(conn, UPDATE_RELATIONSHIP_STATUSES);
+        updateRelationshipsStatement = BoundStatement.prepare(conn, UPDATE_RELATIONSHIPS);
 
         // Select statements
-        resolveCourseCodeUniversityIdToCourseRecordStatement = conn.prepareStatement(RESOLVE_COURSE_CODE_UNIVERSITY_ID_TO_COURSE_RECORD);
-        resolveEmailToUserRecordStatement = conn.prepareStatement(RESOLVE_EMAIL_TO_USER_RECORD);
-        resolvePasswordResetCodeToUserRecord = conn.prepareStatement(RESOLVE_PASSWORD_RESET_CODE_TO_USER_RECORD);
-        resolveUniversityIdToUniversityRecordStatement = conn.prepareStatement(RESOLVE_UNIVERSITY_ID_TO_UNIVERSITY_RECORD);
-        resolveUniversityNameToUniversityRecordStatement = conn.prepareStatement(RESOLVE_UNIVERSITY_NAME_TO_UNIVERSITY_RECORD);
-        resolveUserHandleToUserRecordStatement = conn.prepareStatement(RESOLVE_USER_HANDLE_TO_USER_RECORD);
-        resolveUserIdOtherUserIdToRelationshipRecordStatement = conn.prepareStatement(RESOLVE_USER_ID_OTHER_USER_ID_TO_RELATIONSHIP_RECORD);
-        resolveUserIdToCourseRecordsStatement = conn.prepareStatement(RESOLVE_USER_ID_TO_COURSE_RECORDS);
-        resolveUserIdToMediaRecordsStatement = conn.prepareStatement(RESOLVE_USER_ID_TO_MEDIA_RECORDS);
-        resolveUserIdToNumberOfFriendsStatement = conn.prepareStatement(RESOLVE_USER_ID_TO_NUMBER_OF_FRIENDS);
-        resolveUserIdToRatingStatement = conn.prepareStatement(RESOLVE_USER_ID_TO_RATING);
-        resolveUserIdToUserRecordStatement = conn.prepareStatement(RESOLVE_USER_ID_TO_USER_RECORD);
-        resolveVerificationCodeToUserRecordStatement = conn.prepareStatement(RESOLVE_VERIFICATION_CODE_TO_USER_RECORD);
+        resolveAllCourseRecordsStatement = BoundStatement.prepare(conn, RESOLVE_ALL_COURSE_RECORDS);
+        resolveAllRelationshipRatingRecordsStatement = BoundStatement.prepare(conn, RESOLVE_ALL_RELATIONSHIP_RATING_RECORDS);
+        resolveAllRelationshipRecordsStatement = BoundStatement.prepare(conn, RESOLVE_ALL_RELATIONSHIP_RECORDS);
+        resolveAllRegistrationRecordsStatement = BoundStatement.prepare(conn, RESOLVE_ALL_REGISTRATION_RECORDS);
+        resolveAllUniversityRecordsStatement = BoundStatement.prepare(conn, RESOLVE_ALL_UNIVERSITY_RECORDS);
+        resolveAllUserMiniRecordsStatement = BoundStatement.prepare(conn, RESOLVE_ALL_USER_MINI_RECORDS);
+        resolveAllVerifiedUserRecordsStatement = BoundStatement.prepare(conn, RESOLVE_ALL_VERIFIED_USER_RECORDS);
+        resolveCourseCodeUniversityIdToCourseRecordStatement = BoundStatement.prepare(conn, RESOLVE_COURSE_CODE_UNIVERSITY_ID_TO_COURSE_RECORD);
+        resolveCourseIdToCourseRecordStatement = BoundStatement.prepare(conn, RESOLVE_COURSE_ID_TO_COURSE_RECORD);
+        resolveEmailToCredentialsRecordStatement = BoundStatement.prepare(conn, RESOLVE_EMAIL_TO_CREDENTIALS_RECORD);
+        resolveEmailToLifecycleRecordStatement = BoundStatement.prepare(conn, RESOLVE_EMAIL_TO_LIFECYCLE_RECORD);
+        resolveEmailToProfileCompletedStatement = BoundStatement.prepare(conn, RESOLVE_EMAIL_TO_PROFILE_COMPLETED);
+        resolveEmailToUserRecordStatement = BoundStatement.prepare(conn, RESOLVE_EMAIL_TO_USER_RECORD);
+        resolvePasswordResetCodeToLifecycleRecordStatement = BoundStatement.prepare(conn, RESOLVE_PASSWORD_RESET_CODE_TO_LIFECYCLE_RECORD);
+        resolveUniversityIdToUniversityRecordStatement = BoundStatement.prepare(conn, RESOLVE_UNIVERSITY_ID_TO_UNIVERSITY_RECORD);
+        resolveUniversityNameToUniversityRecordStatement = BoundStatement.prepare(conn, RESOLVE_UNIVERSITY_NAME_TO_UNIVERSITY_RECORD);
+        resolveUserHandleToUserRecordStatement = BoundStatement.prepare(conn, RESOLVE_USER_HANDLE_TO_USER_RECORD);
+        resolveUserIdToCredentialsRecordStatement = BoundStatement.prepare(conn, RESOLVE_USER_ID_TO_CREDENTIALS_RECORD);
+        resolveUserIdToMediaRecordsStatement = BoundStatement.prepare(conn, RESOLVE_USER_ID_TO_MEDIA_RECORDS);
+        resolveUserIdToProfileRecordStatement = BoundStatement.prepare(conn, RESOLVE_USER_ID_TO_PROFILE_RECORD);
+        resolveUserIdToRegistrationRecordsStatement = BoundStatement.prepare(conn, RESOLVE_USER_ID_TO_REGISTRATION_RECORDS);
+        resolveUserIdToUserAggregatesRecordStatement = BoundStatement.prepare(conn, RESOLVE_USER_ID_TO_USER_AGGREGATES_RECORD);
+        resolveUserIdToUserMiniRecordStatement = BoundStatement.prepare(conn, RESOLVE_USER_ID_TO_USER_MINI_RECORD);
+        resolveUserIdsAfterUserIdStatement = BoundStatement.prepare(conn, RESOLVE_USER_IDS_AFTER_USER_ID);
+        resolveUserIdsToDiscoverCardRecordsStatement = BoundStatement.prepare(conn, RESOLVE_USER_IDS_TO_DISCOVER_CARD_RECORDS);
+        resolveVerificationCodeToLifecycleRecordStatement = BoundStatement.prepare(conn, RESOLVE_VERIFICATION_CODE_TO_LIFECYCLE_RECORD);
     }
 
     private void closeStatements() throws SQLException {
@@ -215,12 +354,16 @@ public class DatabaseConnection {
         deleteMediaStatement.close();
         deleteRegistrationStatement.close();
         deleteRelationshipStatement.close();
+        deleteRelationshipsStatement.close();
         deleteUnverifiedUserStatement.close();
 
         // Update statements
+        updateAllUserAggregatesStatement.close();
         updateBiographyStatement.close();
         updateCardColorStatement.close();
         updateCredentialsStatement.close();
+        updateDateOfBirthStatement.close();
+        updateDriftedUserAggregatesStatement.close();
         updateEducationInformationStatement.close();
         updateEmailVerificationStatement.close();
         updatePasswordResetCodeStatement.close();
@@ -228,27 +371,43 @@ public class DatabaseConnection {
         updateProfilePictureStatement.close();
         updateRefreshTokenStatement.close();
         updateRelationshipStatement.close();
+        updateRelationshipStatusStatement.close();
+        updateRelationshipStatusesStatement.close();
+        updateRelationshipsStatement.close();
 
         // Select statements
+        resolveAllCourseRecordsStatement.close();
+        resolveAllRelationshipRatingRecordsStatement.close();
+        resolveAllRelationshipRecordsStatement.close();
+        resolveAllRegistrationRecordsStatement.close();
+        resolveAllUniversityRecordsStatement.close();
+        resolveAllUserMiniRecordsStatement.close();
+        resolveAllVerifiedUserRecordsStatement.close();
         resolveCourseCodeUniversityIdToCourseRecordStatement.close();
+        resolveCourseIdToCourseRecordStatement.close();
+        resolveEmailToCredentialsRecordStatement.close();
+        resolveEmailToLifecycleRecordStatement.close();
+        resolveEmailToProfileCompletedStatement.close();
         resolveEmailToUserRecordStatement.close();
-        resolvePasswordResetCodeToUserRecord.close();
+        resolvePasswordResetCodeToLifecycleRecordStatement.close();
         resolveUniversityIdToUniversityRecordStatement.close();
         resolveUniversityNameToUniversityRecordStatement.close();
         resolveUserHandleToUserRecordStatement.close();
-        resolveUserIdOtherUserIdToRelationshipRecordStatement.close();
-        resolveUserIdToCourseRecordsStatement.close();
+        resolveUserIdToCredentialsRecordStatement.close();
         resolveUserIdToMediaRecordsStatement.close();
-        resolveUserIdToNumberOfFriendsStatement.close();
-        resolveUserIdToRatingStatement.close();
-        resolveUserIdToUserRecordStatement.close();
-        resolveVerificationCodeToUserRecordStatement.close();
+        resolveUserIdToProfileRecordStatement.close();
+        resolveUserIdToRegistrationRecordsStatement.close();
+        resolveUserIdToUserAggregatesRecordStatement.close();
+        resolveUserIdToUserMiniRecordStatement.close();
+        resolveUserIdsAfterUserIdStatement.close();
+        resolveUserIdsToDiscoverCardRecordsStatement.close();
+        resolveVerificationCodeToLifecycleRecordStatement.close();
     }
 
     /**
      * Creates a new user with an unverified email
      *
-     * @effect tbl_users (RW), acquires lock
+     * @effect tbl_user_credentials (W), tbl_user_lifecycle (W), tbl_user_profiles (W), tbl_users (RW), acquires lock
      * @return true / 200 status code iff successfully created new user
      */
     public ResponseEntity<Boolean> transaction_createUser(String userHandle, String name, String email,
@@ -259,22 +418,25 @@ public class DatabaseConnection {
                 beginTransaction();
 
                 // Checks that email is not mapped to a user record
-                ResultSet resolveEmailToUserRecordRS = executeQuery(resolveEmailToUserRecordStatement, email);
-                if (resolveEmailToUserRecordRS.next()) {
-                    resolveEmailToUserRecordRS.close();
-
+                if (executeQueryForRecord(resolveEmailToUserRecordStatement.bind().setString(email), UserRecord.MAPPER) != null) {
                     rollbackTransaction();
                     return new ResponseEntity<>(false, HttpStatus.BAD_REQUEST);
                 }
-                resolveEmailToUserRecordRS.close();
 
                 byte[] salt = getSalt();
                 byte[] hash = getHash(password, salt);
 
                 // Creates the user
-                executeUpdate(createUserStatement, userHandle, name, email, salt, hash, verificationCode);
+                executeUpdate(createUserStatement.bind().setString(userHandle).setString(name).setString(email).setBytes(salt)
+                                                 .setBytes(hash).setString(verificationCode));
+
+                String userId = executeQueryForRecord(resolveEmailToUserRecordStatement.bind().setString(email),
+                                                      UserRecord.MAPPER).userId();
 
                 commitTransaction();
+
+                // Only index the user once it has been committed. The user is not searchable until verified
+                UserSearchIndex.putUser(userId, userHandle, name, null);
                 return new ResponseEntity<>(true, HttpStatus.OK);
 
             } catch (Exception e) {
@@ -294,12 +456,23 @@ public class DatabaseConnection {
     /**
      * Deletes a user with an unverified email
      *
-     * @effect tbl_users (W), non-locking
+     * @effect tbl_user_lifecycle (R), tbl_users (RW), non-locking
      * @return true / 200 status code iff successfully deleted user
      */
     public ResponseEntity<Boolean> transaction_deleteUnverifiedUser(String email) {
         try {
-            executeUpdate(deleteUnverifiedUserStatement, email);
+            String userId = null;
+            LifecycleRecord lifecycleRecord = executeQueryForRecord(resolveEmailToLifecycleRecordStatement.bind().setString(email),
+                                                                    LifecycleRecord.MAPPER);
+            if (lifecycleRecord != null && !lifecycleRecord.verificationConfirmed()) {
+                userId = lifecycleRecord.userId();
+            }
+
+            executeUpdate(deleteUnverifiedUserStatement.bind().setString(email));
+
+            if (userId != null) {
+                UserSearchIndex.removeUser(userId);
+            }
             return new ResponseEntity<>(true, HttpStatus.OK);
 
         } catch (Exception e) {
@@ -320,16 +493,12 @@ public class DatabaseConnection {
     public ResponseEntity<String> transaction_resolveUserHandleToUserId(String userHandle) {
         try {
             // Checks that user handle is not mapped to a user id
-            ResultSet resolveUserHandleToUserRecordRS = executeQuery(resolveUserHandleToUserRecordStatement,
-                    userHandle);
-            if (!resolveUserHandleToUserRecordRS.next()) {
-                resolveUserHandleToUserRecordRS.close();
+            UserRecord userRecord = executeQueryForRecord(resolveUserHandleToUserRecordStatement.bind().setString(userHandle),
+                                                          UserRecord.MAPPER);
+            if (userRecord == null) {
                 return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
             }
-            String userId = resolveUserHandleToUserRecordRS.getString("user_id");
-            resolveUserHandleToUserRecordRS.close();
-
-            return new ResponseEntity<>(userId, HttpStatus.OK);
+            return new ResponseEntity<>(userRecord.userId(), HttpStatus.OK);
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -349,15 +518,11 @@ public class DatabaseConnection {
     public ResponseEntity<String> transaction_resolveEmailToUserName(String email) {
         try {
             // Retrieves the user record that the email is mapped to
-            ResultSet resolveEmailToUserRecordRS = executeQuery(resolveEmailToUserRecordStatement, email);
-            if (!resolveEmailToUserRecordRS.next()) {
-                resolveEmailToUserRecordRS.close();
+            UserRecord userRecord = executeQueryForRecord(resolveEmailToUserRecordStatement.bind().setString(email), UserRecord.MAPPER);
+            if (userRecord == null) {
                 return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
             }
-            String name = resolveEmailToUserRecordRS.getString("user_name");
-            resolveEmailToUserRecordRS.close();
-
-            return new ResponseEntity<>(name, HttpStatus.OK);
+            return new ResponseEntity<>(userRecord.userName(), HttpStatus.OK);
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -377,15 +542,11 @@ public class DatabaseConnection {
     public ResponseEntity<String> transaction_resolveEmailToUserId(String email) {
         try {
             // Retrieves the name that the email is mapped to
-            ResultSet resolveEmailToUserRecordRS = executeQuery(resolveEmailToUserRecordStatement, email);
-            if (!resolveEmailToUserRecordRS.next()) {
-                resolveEmailToUserRecordRS.close();
+            UserRecord userRecord = executeQueryForRecord(resolveEmailToUserRecordStatement.bind().setString(email), UserRecord.MAPPER);
+            if (userRecord == null) {
                 return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
             }
-            String userId = resolveEmailToUserRecordRS.getString("user_id");
-            resolveEmailToUserRecordRS.close();
-
-            return new ResponseEntity<>(userId, HttpStatus.OK);
+            return new ResponseEntity<>(userRecord.userId(), HttpStatus.OK);
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -400,21 +561,18 @@ public class DatabaseConnection {
      * Gets the most recent email type for an email. <br>
      * This is the type of the most recent email sent to the user
      *
-     * @effect tbl_users (R), non-locking
+     * @effect tbl_user_lifecycle (R), tbl_users (R), non-locking
      * @return user_id / 200 status code if email exists. otherwise, return null
      */
     public ResponseEntity<String> transaction_resolveEmailToMostRecentEmailType(String email) {
         try {
             // Retrieves the most recent email type that the email is mapped to
-            ResultSet resolveEmailToUserRecordRS = executeQuery(resolveEmailToUserRecordStatement, email);
-            if (!resolveEmailToUserRecordRS.next()) {
-                resolveEmailToUserRecordRS.close();
+            LifecycleRecord lifecycleRecord = executeQueryForRecord(resolveEmailToLifecycleRecordStatement.bind().setString(email),
+                                                                    LifecycleRecord.MAPPER);
+            if (lifecycleRecord == null) {
                 return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
             }
-            String mostRecentEmailType = resolveEmailToUserRecordRS.getString("most_recent_email_type");
-            resolveEmailToUserRecordRS.close();
-
-            return new ResponseEntity<>(mostRecentEmailType, HttpStatus.OK);
+            return new ResponseEntity<>(lifecycleRecord.mostRecentEmailType(), HttpStatus.OK);
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -428,20 +586,17 @@ public class DatabaseConnection {
     /**
      * Gets the profile_completed value for an email
      *
-     * @effect tbl_users (R), non-locking
+     * @effect tbl_user_profiles (R), tbl_users (R), non-locking
      * @return profile_completed / 200 status code if email exists. otherwise, return null
      */
     public ResponseEntity<Boolean> transaction_resolveEmailToProfileCompleted(String email) {
         try {
-            // Retrieves the most recent email type that the email is mapped to
-            ResultSet resolveUserIdToUserRecordRS = executeQuery(resolveUserIdToUserRecordStatement, email);
-            if (!resolveUserIdToUserRecordRS.next()) {
-                resolveUserIdToUserRecordRS.close();
+            // Retrieves the profile_completed value that the email is mapped to
+            Boolean profileCompleted = executeQueryForRecord(resolveEmailToProfileCompletedStatement.bind().setString(email),
+                                                             RowMapper.BOOLEAN);
+            if (profileCompleted == null) {
                 return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
             }
-            Boolean profileCompleted = resolveUserIdToUserRecordRS.getBoolean("profile_completed");
-            resolveUserIdToUserRecordRS.close();
-
             return new ResponseEntity<>(profileCompleted, HttpStatus.OK);
 
         } catch (Exception e) {
@@ -456,7 +611,7 @@ public class DatabaseConnection {
     /**
      * Gets the verification_code for an email
      *
-     * @effect tbl_users (R), non-locking
+     * @effect tbl_user_lifecycle (R), tbl_users (R), non-locking
      * @return verification_code / 200 status code if email exists and verification code is active.
      *         verification_code / 400 status code if email exists and verification code is expired.
      *         null / 404 status code if email does not exist
@@ -464,22 +619,18 @@ public class DatabaseConnection {
     public ResponseEntity<String> transaction_resolveEmailToVerificationCode(String email) {
         try {
             // Retrieves the user record that the email is mapped to
-            ResultSet resolveEmailToUserRecordRS = executeQuery(resolveEmailToUserRecordStatement, email);
-            if (!resolveEmailToUserRecordRS.next()) {
-                resolveEmailToUserRecordRS.close();
+            LifecycleRecord lifecycleRecord = executeQueryForRecord(resolveEmailToLifecycleRecordStatement.bind().setString(email),
+                                                                    LifecycleRecord.MAPPER);
+            if (lifecycleRecord == null) {
                 return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
             }
 
             // Check whether verification code is active
-            String verificationCode = resolveEmailToUserRecordRS.getString("verification_code");
-            if (parseDateTimeString(resolveEmailToUserRecordRS.getString("verification_timestamp"))
+            String verificationCode = lifecycleRecord.verificationCode();
+            if (toInstant(lifecycleRecord.verificationTimestamp())
                            .isBefore(Instant.now().minus(VERIFICATION_CODE_EXPIRATION_VALUE, VERIFICATION_CODE_EXPIRATION_UNIT))) {
-
-                resolveEmailToUserRecordRS.close();
                 return new ResponseEntity<>(verificationCode, HttpStatus.BAD_REQUEST);
-
             } else {
-                resolveEmailToUserRecordRS.close();
                 return new ResponseEntity<>(verificationCode, HttpStatus.OK);
             }
 
@@ -495,20 +646,19 @@ public class DatabaseConnection {
     /**
      * Gets the password_reset_code for an email
      *
-     * @effect tbl_users (R), non-locking
+     * @effect tbl_user_lifecycle (R), tbl_users (R), non-locking
      * @return password_reset_code / 200 status code if email exists. otherwise, return null
      */
     public ResponseEntity<String> transaction_resolveEmailToPasswordResetCode(String email) {
         try {
             // Retrieves the user record that the email is mapped to
-            ResultSet resolveEmailToUserRecordRS = executeQuery(resolveEmailToUserRecordStatement, email);
-            if (!resolveEmailToUserRecordRS.next()) {
-                resolveEmailToUserRecordRS.close();
+            LifecycleRecord lifecycleRecord = executeQueryForRecord(resolveEmailToLifecycleRecordStatement.bind().setString(email),
+                                                                    LifecycleRecord.MAPPER);
+            if (lifecycleRecord == null) {
                 return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
             }
 
-            String passwordResetCode = resolveEmailToUserRecordRS.getString("password_reset_code");
-            resolveEmailToUserRecordRS.close();
+            String passwordResetCode = lifecycleRecord.passwordResetCode();
             if (passwordResetCode == null) {
                 return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
             }
@@ -526,7 +676,7 @@ public class DatabaseConnection {
     /**
      * Gets the password_reset_code for an email. If password_reset_code is null, then generate new one
      *
-     * @effect tbl_users (RW), locking
+     * @effect tbl_user_lifecycle (W), tbl_users (R), acquires lock
      * @return password_reset_code / 200 status code if email exists. otherwise, return null
      */
     public ResponseEntity<String> transaction_generatePasswordResetCode(String email) {
@@ -535,18 +685,14 @@ public class DatabaseConnection {
                 beginTransaction();
 
                 // Retrieves the user record that the email is mapped to
-                ResultSet resolveEmailToUserRecordRS = executeQuery(resolveEmailToUserRecordStatement, email);
-                if (!resolveEmailToUserRecordRS.next()) {
-                    resolveEmailToUserRecordRS.close();
-
+                if (executeQueryForRecord(resolveEmailToUserRecordStatement.bind().setString(email), UserRecord.MAPPER) == null) {
                     rollbackTransaction();
                     return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
                 }
-                resolveEmailToUserRecordRS.close();
 
                 // Generate a new password reset code
                 String passwordResetCode = generateSecureString(RESET_CODE_LENGTH);
-                executeUpdate(updatePasswordResetCodeStatement, passwordResetCode, email);
+                executeUpdate(updatePasswordResetCodeStatement.bind().setString(passwordResetCode).setString(email));
 
                 commitTransaction();
                 return new ResponseEntity<>(passwordResetCode, HttpStatus.OK);
@@ -568,17 +714,17 @@ public class DatabaseConnection {
     /**
      * Checks whether the user's email has been verified
      *
-     * @effect tbl_users (R), non-locking
+     * @effect tbl_user_lifecycle (R), tbl_users (R), non-locking
      * @return true iff email has been verified. 200 status code if email corresponds to a user
      */
     public ResponseEntity<Boolean> transaction_checkEmailVerified(String email) {
         try {
             // Retrieves the verification code that the email is mapped to
-            ResultSet resolveEmailToUserRecordRS = executeQuery(resolveEmailToUserRecordStatement, email);
-            if (!resolveEmailToUserRecordRS.next()) {
-                resolveEmailToUserRecordRS.close();
+            LifecycleRecord lifecycleRecord = executeQueryForRecord(resolveEmailToLifecycleRecordStatement.bind().setString(email),
+                                                                    LifecycleRecord.MAPPER);
+            if (lifecycleRecord == null) {
                 return new ResponseEntity<>(false, HttpStatus.NOT_FOUND);
-            } else if (resolveEmailToUserRecordRS.getBoolean("verification_confirmed")) {
+            } else if (lifecycleRecord.verificationConfirmed()) {
                 return new ResponseEntity<>(true, HttpStatus.OK);
             } else {
                 return new ResponseEntity<>(false, HttpStatus.OK);
@@ -596,7 +742,7 @@ public class DatabaseConnection {
     /**
      * Processes the verification code
      *
-     * @effect tbl_users (RW), acquires lock
+     * @effect tbl_user_lifecycle (RW), acquires lock
      * @return true / 200 status code iff user is successfully verified
      */
     public ResponseEntity<Boolean> transaction_processAccountVerificationCode(String verificationCode) {
@@ -605,31 +751,30 @@ public class DatabaseConnection {
                 beginTransaction();
 
                 // Checks whether verification code exists, has not expired, and has not been used
-                ResultSet resolveVerificationCodeToUserRecordRS = executeQuery(resolveVerificationCodeToUserRecordStatement, verificationCode);
-                if (!resolveVerificationCodeToUserRecordRS.next()) {
-                    resolveVerificationCodeToUserRecordRS.close();
-
+                LifecycleRecord lifecycleRecord = executeQueryForRecord(resolveVerificationCodeToLifecycleRecordStatement.bind()
+                                                                                .setString(verificationCode), LifecycleRecord.MAPPER);
+                if (lifecycleRecord == null) {
                     rollbackTransaction();
                     return new ResponseEntity<>(false, HttpStatus.NOT_FOUND);
-                } else if (resolveVerificationCodeToUserRecordRS.getBoolean("verification_confirmed")) {
-                    resolveVerificationCodeToUserRecordRS.close();
-
+                } else if (lifecycleRecord.verificationConfirmed()) {
                     rollbackTransaction();
                     return new ResponseEntity<>(true, HttpStatus.BAD_REQUEST);
-                } else if (parseDateTimeString(resolveVerificationCodeToUserRecordRS.getString("verification_timestamp"))
+                } else if (toInstant(lifecycleRecord.verificationTimestamp())
                            .isBefore(Instant.now().minus(VERIFICATION_CODE_EXPIRATION_VALUE, VERIFICATION_CODE_EXPIRATION_UNIT))) {
-                    resolveVerificationCodeToUserRecordRS.close();
-
                     rollbackTransaction();
                     return new ResponseEntity<>(false, HttpStatus.NOT_FOUND);
                 }
 
-                resolveVerificationCodeToUserRecordRS.close();
+                String userId = lifecycleRecord.userId();
 
                 // Verifies the user
-                executeUpdate(updateEmailVerificationStatement, verificationCode);
+                executeUpdate(updateEmailVerificationStatement.bind().setString(verificationCode));
 
                 commitTransaction();
+
+                // Verified users can be discovered and searched
+                CoEnrollmentIndex.addUser(userId);
+                UserSearchIndex.verifyUser(userId);
                 return new ResponseEntity<>(true, HttpStatus.OK);
 
             } catch (Exception e) {
@@ -649,20 +794,19 @@ public class DatabaseConnection {
     /**
      * Checks whether the password reset code is valid
      *
-     * @effect tbl_users (R), non-locking
+     * @effect tbl_user_lifecycle (R), tbl_users (R), non-locking
      * @return true / 200 status code iff password reset code is valid
      */
     public ResponseEntity<Boolean> transaction_verifyPasswordResetCode(String passwordResetCode) {
         try {
             // Checks whether the password reset code exists, has not expired, and has not been used
-            ResultSet checkVerificationCodeUsedRS = executeQuery(resolvePasswordResetCodeToUserRecord, passwordResetCode);
-            if (!checkVerificationCodeUsedRS.next() || checkVerificationCodeUsedRS.getString("password_reset_code") == null ||
-                parseDateTimeString(checkVerificationCodeUsedRS.getString("password_reset_timestamp"))
+            LifecycleRecord lifecycleRecord = executeQueryForRecord(resolvePasswordResetCodeToLifecycleRecordStatement.bind()
+                                                                            .setString(passwordResetCode), LifecycleRecord.MAPPER);
+            if (lifecycleRecord == null || lifecycleRecord.passwordResetCode() == null ||
+                toInstant(lifecycleRecord.passwordResetTimestamp())
                         .isBefore(Instant.now().minus(PASSWORD_RESET_CODE_EXPIRATION_VALUE, PASSWORD_RESET_CODE_EXPIRATION_UNIT))) {
-                checkVerificationCodeUsedRS.close();
                 return new ResponseEntity<>(false, HttpStatus.UNAUTHORIZED);
             }
-            checkVerificationCodeUsedRS.close();
             return new ResponseEntity<>(true, HttpStatus.OK);
 
         } catch (Exception e) {
@@ -677,7 +821,7 @@ public class DatabaseConnection {
     /**
      * Processes the password reset code
      *
-     * @effect tbl_users (RW), acquires lock
+     * @effect tbl_user_credentials (W), tbl_user_lifecycle (RW), tbl_users (R), acquires lock
      * @return true / 200 status code iff user's credentials have been successfully updated
      */
     public ResponseEntity<Boolean> transaction_processPasswordResetCode(String passwordResetCode, String password) {
@@ -686,28 +830,25 @@ public class DatabaseConnection {
                 beginTransaction();
 
                 // Checks whether the password reset code exists and has not been used
-                ResultSet resolvePasswordResetCodeToUserRecordRS = executeQuery(resolvePasswordResetCodeToUserRecord,
-                        passwordResetCode);
-                if (!resolvePasswordResetCodeToUserRecordRS.next() || resolvePasswordResetCodeToUserRecordRS.getString("password_reset_code") == null ||
-                    parseDateTimeString(resolvePasswordResetCodeToUserRecordRS.getString("password_reset_timestamp"))
+                LifecycleRecord lifecycleRecord = executeQueryForRecord(resolvePasswordResetCodeToLifecycleRecordStatement.bind()
+                                                                                .setString(passwordResetCode), LifecycleRecord.MAPPER);
+                if (lifecycleRecord == null || lifecycleRecord.passwordResetCode() == null ||
+                    toInstant(lifecycleRecord.passwordResetTimestamp())
                         .isBefore(Instant.now().minus(PASSWORD_RESET_CODE_EXPIRATION_VALUE, PASSWORD_RESET_CODE_EXPIRATION_UNIT))) {
-                    resolvePasswordResetCodeToUserRecordRS.close();
-
                     rollbackTransaction();
                     return new ResponseEntity<>(false, HttpStatus.UNAUTHORIZED);
                 }
-                String userId = resolvePasswordResetCodeToUserRecordRS.getString("user_id");
-                String email = resolvePasswordResetCodeToUserRecordRS.getString("email");
-                resolvePasswordResetCodeToUserRecordRS.close();
+                String userId = lifecycleRecord.userId();
+                String email = lifecycleRecord.email();
 
                 byte[] newSalt = getSalt();
                 byte[] newHash = getHash(password, newSalt);
 
                 // Updates the user's credentials
-                executeUpdate(updateCredentialsStatement, newSalt, newHash, userId);
+                executeUpdate(updateCredentialsStatement.bind().setBytes(newSalt).setBytes(newHash).setString(userId));
 
                 // Disables the password reset code
-                executeUpdate(updatePasswordResetCodeStatement, null, email);
+                executeUpdate(updatePasswordResetCodeStatement.bind().setString(null).setString(email));
 
                 commitTransaction();
 
@@ -732,24 +873,20 @@ public class DatabaseConnection {
     /**
      * Verifies the user's credentials
      *
-     * @effect tbl_user (R), non-locking
+     * @effect tbl_user_credentials (R), tbl_users (R), non-locking
      * @return true / 200 status code iff user's email and password matches
      */
     public ResponseEntity<Boolean> transaction_verifyCredentials(String email, String password) {
         try {
             // Retrieves the user record that the email is mapped to
-            ResultSet resolveEmailToUserRecordRS = executeQuery(resolveEmailToUserRecordStatement, email);
-            if (!resolveEmailToUserRecordRS.next()) {
+            CredentialsRecord credentialsRecord = executeQueryForRecord(resolveEmailToCredentialsRecordStatement.bind().setString(email),
+                                                                        CredentialsRecord.MAPPER);
+            if (credentialsRecord == null) {
                 // If user does not exist, vaguely claim that credentials are incorrect
-                resolveEmailToUserRecordRS.close();
                 return new ResponseEntity<>(false, HttpStatus.UNAUTHORIZED);
             }
 
-            byte[] salt = resolveEmailToUserRecordRS.getBytes("salt");
-            byte[] hash = resolveEmailToUserRecordRS.getBytes("hash");
-            resolveEmailToUserRecordRS.close();
-
-            if (Arrays.equals(hash, getHash(password, salt))) {
+            if (Arrays.equals(credentialsRecord.hash(), getHash(password, credentialsRecord.salt()))) {
                 return new ResponseEntity<>(true, HttpStatus.OK);
             } else {
                 return new ResponseEntity<>(false, HttpStatus.UNAUTHORIZED);
@@ -767,7 +904,7 @@ public class DatabaseConnection {
     /**
      * Updates the user's credentials
      *
-     * @effect tbl_user (RW), acquires lock
+     * @effect tbl_user_credentials (RW), acquires lock
      * @return true / 200 status code iff user's credentials have been successfully updated
      */
     public ResponseEntity<Boolean> transaction_updateCredentials(String userId, String password, String newPassword) {
@@ -775,22 +912,17 @@ public class DatabaseConnection {
             try {
                 beginTransaction();
 
-                // Retrieves the user record that the email is mapped to
-                ResultSet resolveEmailToUserRecordRS = executeQuery(resolveUserIdToUserRecordStatement, userId);
-                if (!resolveEmailToUserRecordRS.next()) {
+                // Retrieves the credentials that the user id is mapped to
+                CredentialsRecord credentialsRecord = executeQueryForRecord(resolveUserIdToCredentialsRecordStatement.bind()
+                                                                                    .setString(userId), CredentialsRecord.MAPPER);
+                if (credentialsRecord == null) {
                     // If user does not exist, vaguely claim that credentials are incorrect
-                    resolveEmailToUserRecordRS.close();
-
                     rollbackTransaction();
                     return new ResponseEntity<>(false, HttpStatus.UNAUTHORIZED);
                 }
 
-                byte[] salt = resolveEmailToUserRecordRS.getBytes("salt");
-                byte[] hash = resolveEmailToUserRecordRS.getBytes("hash");
-                resolveEmailToUserRecordRS.close();
-
                 // Check that credentials are correct
-                if (!Arrays.equals(hash, getHash(password, salt))) {
+                if (!Arrays.equals(credentialsRecord.hash(), getHash(password, credentialsRecord.salt()))) {
                     rollbackTransaction();
                     return new ResponseEntity<>(false, HttpStatus.UNAUTHORIZED);
                 }
@@ -799,7 +931,7 @@ public class DatabaseConnection {
                 byte[] newHash = getHash(newPassword, newSalt);
 
                 // Updates the user's credentials
-                executeUpdate(updateCredentialsStatement, newSalt, newHash, userId);
+                executeUpdate(updateCredentialsStatement.bind().setBytes(newSalt).setBytes(newHash).setString(userId));
 
                 commitTransaction();
                 return new ResponseEntity<>(true, HttpStatus.OK);
@@ -821,22 +953,19 @@ public class DatabaseConnection {
     /**
      * Verifies the supplied refresh token
      *
-     * @effect tbl_user (R), non-locking
+     * @effect tbl_user_credentials (R), non-locking
      * @return true / 200 status code iff refresh token is valid
      */
     public ResponseEntity<Boolean> transaction_verifyRefreshTokenId(String userId, String tokenId) {
         try {
             // Retrieves the refresh token id that the user id is mapped to
-            ResultSet resolveUserIdToUserRecordRS = executeQuery(resolveUserIdToUserRecordStatement, userId);
-            if (!resolveUserIdToUserRecordRS.next()) {
-                resolveUserIdToUserRecordRS.close();
+            CredentialsRecord credentialsRecord = executeQueryForRecord(resolveUserIdToCredentialsRecordStatement.bind().setString(userId),
+                                                                        CredentialsRecord.MAPPER);
+            if (credentialsRecord == null) {
                 return new ResponseEntity<>(false, HttpStatus.UNAUTHORIZED);
             }
 
-            String refreshTokenId = resolveUserIdToUserRecordRS.getString("refresh_token_id");
-            resolveUserIdToUserRecordRS.close();
-
-            if (tokenId.equals(refreshTokenId)) {
+            if (tokenId.equals(credentialsRecord.refreshTokenId())) {
                 return new ResponseEntity<>(true, HttpStatus.OK);
             } else {
                 return new ResponseEntity<>(false, HttpStatus.UNAUTHORIZED);
@@ -854,22 +983,19 @@ public class DatabaseConnection {
     /**
      * Checks whether the supplied token family is current
      *
-     * @effect tbl_user (R), non-locking
+     * @effect tbl_user_credentials (R), non-locking
      * @return true / 200 status code iff token family is current
      */
     public ResponseEntity<Boolean> transaction_verifyRefreshTokenFamily(String userId, String tokenFamily) {
         try {
             // Retrieves the refresh token family that the user id is mapped to
-            ResultSet resolveUserIdToUserRecordRS = executeQuery(resolveUserIdToUserRecordStatement, userId);
-            if (!resolveUserIdToUserRecordRS.next()) {
-                resolveUserIdToUserRecordRS.close();
+            CredentialsRecord credentialsRecord = executeQueryForRecord(resolveUserIdToCredentialsRecordStatement.bind().setString(userId),
+                                                                        CredentialsRecord.MAPPER);
+            if (credentialsRecord == null) {
                 return new ResponseEntity<>(false, HttpStatus.BAD_REQUEST);
             }
 
-            String refreshTokenFamily = resolveUserIdToUserRecordRS.getString("refresh_token_family");
-            resolveUserIdToUserRecordRS.close();
-
-            if (tokenFamily.equals(refreshTokenFamily)) {
+            if (tokenFamily.equals(credentialsRecord.refreshTokenFamily())) {
                 return new ResponseEntity<>(true, HttpStatus.OK);
             } else {
                 return new ResponseEntity<>(false, HttpStatus.BAD_REQUEST);
@@ -887,12 +1013,12 @@ public class DatabaseConnection {
     /**
      * Updates the user's refresh token
      *
-     * @effect tbl_user (W), non-locking
+     * @effect tbl_user_credentials (W), non-locking
      * @return true / 200 status code iff refresh token has been successfully updated
      */
     public ResponseEntity<Boolean> transaction_updateRefreshToken(String userId, String refreshTokenId, String refreshTokenFamily) {
         try {
-            executeUpdate(updateRefreshTokenStatement, refreshTokenId, refreshTokenFamily, userId);
+            executeUpdate(updateRefreshTokenStatement.bind().setString(refreshTokenId).setString(refreshTokenFamily).setString(userId));
             return new ResponseEntity<>(true, HttpStatus.OK);
 
         } catch (Exception e) {
@@ -907,13 +1033,17 @@ public class DatabaseConnection {
     /**
      * Updates the user's personal information
      *
-     * @effect tbl_user (W), non-locking
+     * @effect tbl_user_profiles (W), tbl_users (W), non-locking
      * @return true / 200 status iff user's personal information has been successfully updated
      */
     public ResponseEntity<Boolean> transaction_updatePersonalInformation(String userId, String userHandle, String name,
                                                                          String email, String dateOfBirth) {
         try {
-            executeUpdate(updatePersonalInformationStatement, userHandle, name, email, dateOfBirth, userId);
+            executeUpdate(updatePersonalInformationStatement.bind().setString(userHandle).setString(name).setString(email)
+                                                            .setString(userId).setDate(parseDateOfBirth(dateOfBirth))
+                                                            .setString(userId));
+
+            UserSearchIndex.updateUser(userId, userHandle, name);
             return new ResponseEntity<>(true, HttpStatus.OK);
 
         } catch (Exception e) {
@@ -928,7 +1058,7 @@ public class DatabaseConnection {
     /**
      * Updates the user's education information
      *
-     * @effect tbl_user (W), non-locking
+     * @effect tbl_user_profiles (W), non-locking
      * @return true / 200 status iff user's education information has been successfully updated
      */
     public ResponseEntity<Boolean> transaction_updateEducationInformation(String userId, String universityName, String major,
@@ -937,21 +1067,27 @@ public class DatabaseConnection {
             try {
                 beginTransaction();
 
-                ResultSet resolveUniversityNameToUniversityRecordRS = executeQuery(resolveUniversityNameToUniversityRecordStatement, universityName);
-                if (!resolveUniversityNameToUniversityRecordRS.next()) {
-                    executeUpdate(createUniversityStatement, universityName);
-                    resolveUniversityNameToUniversityRecordRS.close();
+                // If university does not exist, then create new university
+                boolean universityCreated = false;
+                String universityId = resolveUniversityId(universityName);
+                if (universityId == null) {
+                    executeUpdate(createUniversityStatement.bind().setString(universityName));
 
-                    // Update result set
-                    resolveUniversityNameToUniversityRecordRS = executeQuery(resolveUniversityNameToUniversityRecordStatement, universityName);
-                    resolveUniversityNameToUniversityRecordRS.next();
+                    universityId = executeQueryForRecord(resolveUniversityNameToUniversityRecordStatement.bind().setString(universityName),
+                                                         UniversityRecord.MAPPER).universityId();
+                    universityCreated = true;
                 }
-                String universityId = resolveUniversityNameToUniversityRecordRS.getString("university_id");
-                resolveUniversityNameToUniversityRecordRS.close();
 
-                executeUpdate(updateEducationInformationStatement, universityId, major, standing, gpa, userId);
+                executeUpdate(updateEducationInformationStatement.bind().setString(universityId).setString(major).setString(standing)
+                                                                 .setString(gpa).setString(userId));
 
                 commitTransaction();
+
+                // Only catalog the new university once it has been committed
+                if (universityCreated) {
+                    CatalogService.addUniversity(universityId, universityName);
+                }
+                CoEnrollmentIndex.updateUniversity(userId, universityId);
                 return new ResponseEntity<>(true, HttpStatus.OK);
 
             } catch (Exception e) {
@@ -980,34 +1116,38 @@ public class DatabaseConnection {
                 beginTransaction();
 
                 // Get university id
-                ResultSet resolveUniversityNameToUniversityRecordRS = executeQuery(resolveUniversityNameToUniversityRecordStatement, universityName);
-                if (!resolveUniversityNameToUniversityRecordRS.next()) {
-                    resolveUniversityNameToUniversityRecordRS.close();
+                String universityId = resolveUniversityId(universityName);
+                if (universityId == null) {
+                    rollbackTransaction();
                     return new ResponseEntity<>(false, HttpStatus.BAD_REQUEST);
                 }
-                String universityId = resolveUniversityNameToUniversityRecordRS.getString("university_id");
-                resolveUniversityNameToUniversityRecordRS.close();
 
-                executeUpdate(deleteRegistrationStatement, userId);
+                executeUpdate(deleteRegistrationStatement.bind().setString(userId));
 
+                Map<String, String> createdCourses = new HashMap<>();
+                List<String> courseIds = new ArrayList<>();
                 for (String courseCode : courseCodes) {
                     // If course does not exist, then create new course
-                    ResultSet resolveCourseCodeUniversityIdToCourseRecordRS = executeQuery(resolveCourseCodeUniversityIdToCourseRecordStatement, courseCode, universityId);
-                    if (!resolveCourseCodeUniversityIdToCourseRecordRS.next()) {
-                        executeUpdate(createCourseStatement, courseCode, universityId);
-                        resolveCourseCodeUniversityIdToCourseRecordRS.close();
-
-                        // Update result set
-                        resolveCourseCodeUniversityIdToCourseRecordRS = executeQuery(resolveCourseCodeUniversityIdToCourseRecordStatement, courseCode, universityId);
-                        resolveCourseCodeUniversityIdToCourseRecordRS.next();
+                    String courseId = resolveCourseId(courseCode, universityId);
+                    if (courseId == null) {
+                        executeUpdate(createCourseStatement.bind().setString(courseCode).setString(universityId));
+
+                        courseId = executeQueryForRecord(resolveCourseCodeUniversityIdToCourseRecordStatement.bind().setString(courseCode)
+                                                                 .setString(universityId), CourseRecord.MAPPER).courseId();
+                        createdCourses.put(courseId, courseCode);
                     }
-                    String courseId = resolveCourseCodeUniversityIdToCourseRecordRS.getString("course_id");
-                    resolveCourseCodeUniversityIdToCourseRecordRS.close();
 
-                    executeUpdate(createRegistrationStatement, userId, courseId);
+                    executeUpdate(createRegistrationStatement.bind().setString(userId).setString(courseId));
+                    courseIds.add(courseId);
                 }
 
                 commitTransaction();
+
+                // Only catalog the new courses once they have been committed
+                for (Map.Entry<String, String> createdCourse : createdCourses.entrySet()) {
+                    CatalogService.addCourse(createdCourse.getKey(), createdCourse.getValue(), universityId);
+                }
+                CoEnrollmentIndex.updateRegistration(userId, universityId, courseIds);
                 return new ResponseEntity<>(true, HttpStatus.OK);
 
             } catch (Exception e) {
@@ -1027,12 +1167,12 @@ public class DatabaseConnection {
     /**
      * Updates the user's biography
      *
-     * @effect tbl_user (W), non-locking
+     * @effect tbl_user_profiles (W), non-locking
      * @return true / 200 status iff user's biography has been successfully updated
      */
     public ResponseEntity<Boolean> transaction_updateBiography(String userId, String biography) {
         try {
-            executeUpdate(updateBiographyStatement, biography, userId);
+            executeUpdate(updateBiographyStatement.bind().setString(biography).setString(userId));
             return new ResponseEntity<>(true, HttpStatus.OK);
 
         } catch (Exception e) {
@@ -1047,12 +1187,12 @@ public class DatabaseConnection {
     /**
      * Updates the user's card color
      *
-     * @effect tbl_user (W), non-locking
+     * @effect tbl_user_profiles (W), non-locking
      * @return true / 200 status iff user's card color has been successfully updated
      */
     public ResponseEntity<Boolean> transaction_updateCardColor(String userId, String cardColor) {
         try {
-            executeUpdate(updateCardColorStatement, cardColor, userId);
+            executeUpdate(updateCardColorStatement.bind().setString(cardColor).setString(userId));
             return new ResponseEntity<>(true, HttpStatus.OK);
 
         } catch (Exception e) {
@@ -1075,11 +1215,11 @@ public class DatabaseConnection {
             try {
                 beginTransaction();
 
-                executeUpdate(deleteMediaStatement, userId);
+                executeUpdate(deleteMediaStatement.bind().setString(userId));
 
                 for (int i = 0; i < mediaUrls.size(); i++) {
                     String mediaUrl = mediaUrls.get(i);
-                    executeUpdate(createMediaStatement, userId, i, mediaUrl);
+                    executeUpdate(createMediaStatement.bind().setString(userId).setInt(i).setString(mediaUrl));
                 }
 
                 commitTransaction();
@@ -1100,14 +1240,21 @@ public class DatabaseConnection {
     }
 
     /**
-     * Updates the user's profile picture
+     * Updates the user's profile picture to a set of renditions
      *
-     * @effect tbl_user (W), non-locking
+     * @param profilePictureUrl url of the full rendition
+     * @param profilePictureCardUrl url of the card rendition
+     * @param profilePictureThumbnailUrl url of the thumbnail rendition, which mini profiles use
+     * @effect tbl_users (W), non-locking
      * @return true / 200 status iff user's profile picture has been successfully updated
      */
-    public ResponseEntity<Boolean> transaction_updateProfilePicture(String userId, String profilePictureUrl) {
+    public ResponseEntity<Boolean> transaction_updateProfilePicture(String userId, String profilePictureUrl, String profilePictureCardUrl,
+                                                                    String profilePictureThumbnailUrl) {
         try {
-            executeUpdate(updateProfilePictureStatement, profilePictureUrl, userId);
+            executeUpdate(updateProfilePictureStatement.bind().setString(profilePictureUrl).setString(profilePictureCardUrl)
+                                                        .setString(profilePictureThumbnailUrl).setString(userId));
+
+            UserSearchIndex.updateProfilePicture(userId, profilePictureThumbnailUrl);
             return new ResponseEntity<>(true, HttpStatus.OK);
 
         } catch (Exception e) {
@@ -1122,13 +1269,14 @@ public class DatabaseConnection {
     /**
      * Updates the user's date of birth
      *
-     * @effect tbl_user (W), non-locking
+     * @effect tbl_user_profiles (W), non-locking
      * @return true / 200 status iff user's date of birth has been successfully updated
      */
     public ResponseEntity<Boolean> transaction_updateDateOfBirth(String userId, String dateOfBirth) {
         System.out.println(dateOfBirth);
         try {
-            executeUpdate(updateDateOfBirthStatement, new SimpleDateFormat("MM/dd/yyyy").parse(dateOfBirth), userId);
+            executeUpdate(updateDateOfBirthStatement.bind().setDate(parseDateOfBirth(dateOfBirth))
+                                                    .setString(userId));
             return new ResponseEntity<>(true, HttpStatus.OK);
 
         } catch (Exception e) {
@@ -1141,217 +1289,311 @@ public class DatabaseConnection {
     }
 
     /**
-     * User likes other user
+     * Writes a batch of likes and dislikes accepted by the SwipeIngestionService. Friend counts are updated in the same transaction <br><br>
+     *
+     * If the database is sharded, then each swipe is written to the shard of the user who swiped, in a transaction per shard.
+     * The batch is only reported as written once every shard has committed its swipes. Until then, the SwipeIngestionService
+     * keeps the batch and writes it again, which leaves the swipes that were already committed unchanged
      *
-     * @effect tbl_relationships (RW), acquires lock
-     * @return relationship_status / 200 status if successfully liked other user
+     * @effect tbl_relationships (W), tbl_user_aggregates (W), acquires lock
+     * @return true / 200 status iff every swipe in the batch has been written
      */
-    public ResponseEntity<Boolean> transaction_likeUser(String userId, String otherUserId) {
-        for (int attempts = 0; attempts < MAX_ATTEMPTS; attempts++) {
-            try {
-                beginTransaction();
+    public ResponseEntity<Boolean> transaction_writeSwipes(List<SwipeJournal.Swipe> swipes) {
+        if (!DatabaseConnectionPool.isSharded()) {
+            return writeSwipes(swipes);
+        }
 
-                ResultSet resolveUserIdOtherUserIdToRecordRS = executeQuery(resolveUserIdOtherUserIdToRelationshipRecordStatement, otherUserId, userId);
+        Map<String, List<SwipeJournal.Swipe>> swipesByShard = new LinkedHashMap<>();
+        for (SwipeJournal.Swipe swipe : swipes) {
+            swipesByShard.computeIfAbsent(DatabaseConnectionPool.getShard(swipe.userId()), shardName -> new ArrayList<>()).add(swipe);
+        }
 
-                if (!resolveUserIdOtherUserIdToRecordRS.next()) {
-                    // If other user has no relationship with user, then user likes other user
-                    executeUpdate(updateRelationshipStatement, "liked", null, userId, otherUserId);
+        for (Map.Entry<String, List<SwipeJournal.Swipe>> entry : swipesByShard.entrySet()) {
+            List<SwipeJournal.Swipe> shardSwipes = entry.getValue();
+            ResponseEntity<Boolean> writeStatus = DatabaseConnectionPool.ownsUser(this, shardSwipes.get(0).userId())
+                    ? writeSwipes(shardSwipes)
+                    : onShard(entry.getKey(), dbconn -> dbconn.writeSwipes(shardSwipes));
+            if (writeStatus.getStatusCode() != HttpStatus.OK) {
+                return writeStatus;
+            }
+        }
+        return new ResponseEntity<>(true, HttpStatus.OK);
+    }
 
-                } else if (resolveUserIdOtherUserIdToRecordRS.getString("relationship_status").equals("liked")) {
-                    // If other user also likes user, then user and other user are now friends
-                    executeUpdate(updateRelationshipStatement, "friends", null, userId, otherUserId);
-                    executeUpdate(updateRelationshipStatement, "friends", null, otherUserId, userId);
-                }
-                resolveUserIdOtherUserIdToRecordRS.close();
+    /**
+     * User rates other user. The rating is added to other user's received ratings in the same transaction. Pending
+     * swipes between the users must have been written with SwipeIngestionService.flushPair under the pair lock first
+     *
+     * @effect tbl_relationships (W), tbl_user_aggregates (W), acquires lock
+     * @return true / 200 status iff successfully rated other user
+     */
+    public ResponseEntity<Boolean> transaction_rateUser(String userId, String otherUserId, int rating) {
+        // The user's relationship and the rating it gives are both stored on the user's shard
+        if (!DatabaseConnectionPool.ownsUser(this, userId)) {
+            return onShardOf(userId, dbconn -> dbconn.transaction_rateUser(userId, otherUserId, rating));
+        }
 
-                commitTransaction();
-                return new ResponseEntity<>(true, HttpStatus.OK);
+        Lock pairLock = RelationshipGraph.getPairLock(userId, otherUserId);
+        pairLock.lock();
 
-            } catch (Exception e) {
-                e.printStackTrace();
-                rollbackTransaction();
+        try {
+            // Only friends can be rated
+            if (RelationshipGraph.getRelationship(userId, otherUserId) != RelationshipGraph.Status.FRIENDS) {
+                return new ResponseEntity<>(false, HttpStatus.BAD_REQUEST);
+            }
 
-                if (!isDeadLock(e)) {
-                    return new ResponseEntity<>(false, HttpStatus.INTERNAL_SERVER_ERROR);
+            // The friends record must have been flushed from the swipe journal by the caller
+            if (SwipeIngestionService.hasPendingSwipes(userId, otherUserId)) {
+                return new ResponseEntity<>(false, HttpStatus.CONFLICT);
+            }
+
+            for (int attempts = 0; attempts < MAX_ATTEMPTS; attempts++) {
+                try {
+                    beginTransaction();
+                    executeUpdate(updateRelationshipStatement.bind().setString("friends").setInt(rating).setString(userId)
+                                                             .setString(otherUserId));
+                    commitTransaction();
+                    return new ResponseEntity<>(true, HttpStatus.OK);
+
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    rollbackTransaction();
+
+                    if (!isDeadLock(e)) {
+                        return new ResponseEntity<>(false, HttpStatus.INTERNAL_SERVER_ERROR);
+                    }
+                } finally {
+                    checkDanglingTransaction();
                 }
-            } finally {
-                checkDanglingTransaction();
             }
+            return new ResponseEntity<>(false, HttpStatus.CONFLICT);
+
+        } finally {
+            pairLock.unlock();
         }
-        return new ResponseEntity<>(false, HttpStatus.CONFLICT);
     }
 
     /**
-     * User dislikes other user
+     * User blocks other user. Only user's relationship is written, so other user's relationship, and its rating,
+     * is left unchanged. Pending swipes between the users must have been written with SwipeIngestionService.flushPair
+     * under the pair lock first
      *
-     * @effect tbl_relationships (RW), acquires lock
-     * @return relationship_status / 200 status if successfully liked other user
+     * @effect tbl_relationships (W), tbl_user_aggregates (W), acquires lock
+     * @return true / 200 status iff successfully blocked other user
      */
-    public ResponseEntity<Boolean> transaction_dislikeUser(String userId, String otherUserId) {
-        for (int attempts = 0; attempts < MAX_ATTEMPTS; attempts++) {
-            try {
-                beginTransaction();
+    public ResponseEntity<Boolean> transaction_blockUser(String userId, String otherUserId) {
+        if (!DatabaseConnectionPool.ownsUser(this, userId)) {
+            return onShardOf(userId, dbconn -> dbconn.transaction_blockUser(userId, otherUserId));
+        }
 
-                ResultSet resolveUserIdOtherUserIdToRecordRS = executeQuery(resolveUserIdOtherUserIdToRelationshipRecordStatement, otherUserId, userId);
+        Lock pairLock = RelationshipGraph.getPairLock(userId, otherUserId);
+        pairLock.lock();
 
-                // If other user likes user, then delete that record
-                if (resolveUserIdOtherUserIdToRecordRS.next()) {
-                    executeUpdate(deleteRegistrationStatement, otherUserId, otherUserId);
-                }
-                resolveUserIdOtherUserIdToRecordRS.close();
+        try {
+            if (userId.equals(otherUserId)) {
+                return new ResponseEntity<>(false, HttpStatus.BAD_REQUEST);
+            }
 
-                commitTransaction();
-                return new ResponseEntity<>(true, HttpStatus.OK);
+            // Pending swipes between the users must have been flushed by the caller, so they cannot overwrite the block
+            if (SwipeIngestionService.hasPendingSwipes(userId, otherUserId)) {
+                return new ResponseEntity<>(false, HttpStatus.CONFLICT);
+            }
 
-            } catch (Exception e) {
-                e.printStackTrace();
-                rollbackTransaction();
+            for (int attempts = 0; attempts < MAX_ATTEMPTS; attempts++) {
+                try {
+                    beginTransaction();
 
-                if (!isDeadLock(e)) {
-                    return new ResponseEntity<>(false, HttpStatus.INTERNAL_SERVER_ERROR);
+                    // The user's rating is preserved
+                    setRelationshipStatus(userId, otherUserId, RelationshipGraph.Status.BLOCKED);
+
+                    commitTransaction();
+
+                    // Only update the graph once the relationship has been committed
+                    RelationshipGraph.setRelationship(userId, otherUserId, RelationshipGraph.Status.BLOCKED);
+                    return new ResponseEntity<>(true, HttpStatus.OK);
+
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    rollbackTransaction();
+
+                    if (!isDeadLock(e)) {
+                        return new ResponseEntity<>(false, HttpStatus.INTERNAL_SERVER_ERROR);
+                    }
+                } finally {
+                    checkDanglingTransaction();
                 }
-            } finally {
-                checkDanglingTransaction();
             }
+            return new ResponseEntity<>(false, HttpStatus.CONFLICT);
+
+        } finally {
+            pairLock.unlock();
         }
-        return new ResponseEntity<>(false, HttpStatus.CONFLICT);
     }
 
     /**
-     * User rates other user
+     * Recomputes the friend count and received rating aggregates of every user from tbl_relationships, correcting
+     * those that have drifted. Users are reconciled in batches, each in its own transaction. Also backfills the
+     * aggregates of users that have none. If the database is sharded, then each shard reconciles the partial
+     * aggregates of its own relationships
      *
-     * @effect tbl_relationships (RW), acquires lock
-     * @return true / 200 status iff successfully rated other user
+     * @effect tbl_relationships (R), tbl_user_aggregates (W), tbl_users (R), acquires lock
+     * @return number of users whose aggregates had drifted / 200 status iff every user has been reconciled
      */
-    public ResponseEntity<Boolean> transaction_rateUser(String userId, String otherUserId, int rating) {
-        for (int attempts = 0; attempts < MAX_ATTEMPTS; attempts++) {
-            try {
-                beginTransaction();
+    public ResponseEntity<Integer> transaction_reconcileUserAggregates() {
+        int numberOfDriftedUsers = 0;
+        // Smallest uniqueidentifier, so the first batch starts at the first user
+        String lastUserId = new UUID(0, 0).toString();
 
-                ResultSet resolveUserIdOtherUserIdToRecordRS = executeQuery(resolveUserIdOtherUserIdToRelationshipRecordStatement, userId, otherUserId);
-                if (!resolveUserIdOtherUserIdToRecordRS.next() || !resolveUserIdOtherUserIdToRecordRS.getString("relationship_status").equals("friends")) {
-                    resolveUserIdOtherUserIdToRecordRS.close();
+        try {
+            while (true) {
+                List<String> userIds = executeQueryForRecords(resolveUserIdsAfterUserIdStatement.bind().setInt(RECONCILIATION_BATCH_SIZE)
+                                                                                                .setString(lastUserId), RowMapper.STRING);
 
-                    rollbackTransaction();
-                    return new ResponseEntity<>(false, HttpStatus.BAD_REQUEST);
+                if (userIds.isEmpty()) {
+                    return new ResponseEntity<>(numberOfDriftedUsers, HttpStatus.OK);
                 }
-                resolveUserIdOtherUserIdToRecordRS.close();
+                lastUserId = userIds.get(userIds.size() - 1);
 
-                executeUpdate(updateRelationshipStatement, "friends", rating, userId, otherUserId);
-
-                commitTransaction();
-                return new ResponseEntity<>(true, HttpStatus.OK);
-
-            } catch (Exception e) {
-                e.printStackTrace();
-                rollbackTransaction();
+                List<ResponseEntity<Integer>> reconcileStatuses = new ArrayList<>();
+                if (DatabaseConnectionPool.isSharded()) {
+                    for (String shardName : DatabaseConnectionPool.getShardNames()) {
+                        reconcileStatuses.add(onShard(shardName, dbconn -> dbconn.reconcileUserAggregates(userIds)));
+                    }
+                } else {
+                    reconcileStatuses.add(reconcileUserAggregates(userIds));
+                }
 
-                if (!isDeadLock(e)) {
-                    return new ResponseEntity<>(false, HttpStatus.INTERNAL_SERVER_ERROR);
+                for (ResponseEntity<Integer> reconcileStatus : reconcileStatuses) {
+                    numberOfDriftedUsers += reconcileStatus.getBody();
+                    if (reconcileStatus.getStatusCode() != HttpStatus.OK) {
+                        return new ResponseEntity<>(numberOfDriftedUsers, reconcileStatus.getStatusCode());
+                    }
                 }
-            } finally {
-                checkDanglingTransaction();
             }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new ResponseEntity<>(numberOfDriftedUsers, HttpStatus.INTERNAL_SERVER_ERROR);
+
+        } finally {
+            checkDanglingTransaction();
         }
-        return new ResponseEntity<>(false, HttpStatus.CONFLICT);
     }
 
     /**
-     * User blocks other user
+     * Streams every relationship stored by this connection's database. Used by ReshardingTool to scan a shard
      *
-     * @effect tbl_relationships (W), acquires lock
-     * @return true / 200 status iff successfully rated other user
+     * @effect tbl_relationships (R), non-locking
+     * @param action consumes each relationship record as it is read
+     * @return 200 status iff every relationship has been read
      */
-    public ResponseEntity<Boolean> transaction_blockUser(String userId, String otherUserId) {
-        for (int attempts = 0; attempts < MAX_ATTEMPTS; attempts++) {
-            try {
-                beginTransaction();
+    public ResponseEntity<Object> transaction_forEachRelationship(Consumer<RelationshipRatingRecord> action) {
+        try {
+            executeQueryForEachRecord(resolveAllRelationshipRatingRecordsStatement, RelationshipRatingRecord.MAPPER, action);
+            return new ResponseEntity<>(HttpStatus.OK);
 
-                Integer rating;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
 
-                // If user rating exists, then preserve it
-                ResultSet resolveUserIdOtherUserIdToRecordRS = executeQuery(resolveUserIdOtherUserIdToRelationshipRecordStatement, userId, otherUserId);
-                if (resolveUserIdOtherUserIdToRecordRS.next()) {
-                    rating = resolveUserIdOtherUserIdToRecordRS.getInt("rating");
-                } else {
-                    rating = null;
-                }
-                resolveUserIdOtherUserIdToRecordRS.close();
+        } finally {
+            checkDanglingTransaction();
+        }
+    }
 
-                executeUpdate(updateRelationshipStatement, "blocked", rating, userId, otherUserId);
+    /**
+     * Writes a batch of relationships with their statuses and ratings, as copied from another shard, in a single
+     * transaction. Does not change the aggregates, which are rebuilt by transaction_rebuildUserAggregates once
+     * resharding has finished. Writing the same batch again has no further effect
+     *
+     * @effect tbl_relationships (W), acquires lock
+     * @return 200 status iff the batch has been written
+     */
+    public ResponseEntity<Object> transaction_updateRelationships(List<RelationshipRatingRecord> relationshipRecords) {
+        return executeRelationshipBatch(updateRelationshipsStatement, relationshipRecords);
+    }
 
+    /**
+     * Removes a batch of relationships, as moved to another shard, in a single transaction. Does not change the
+     * aggregates, which are rebuilt by transaction_rebuildUserAggregates once resharding has finished
+     *
+     * @effect tbl_relationships (W), acquires lock
+     * @return 200 status iff the batch has been removed
+     */
+    public ResponseEntity<Object> transaction_deleteRelationships(List<RelationshipRatingRecord> relationshipRecords) {
+        return executeRelationshipBatch(deleteRelationshipsStatement, relationshipRecords);
+    }
+
+    /**
+     * Recomputes every aggregate record stored by this connection's database from its relationships
+     *
+     * @effect tbl_relationships (R), tbl_user_aggregates (W), acquires lock
+     * @return 200 status iff the aggregates have been rebuilt
+     */
+    public ResponseEntity<Object> transaction_rebuildUserAggregates() {
+        for (int attempts = 0; attempts < MAX_ATTEMPTS; attempts++) {
+            try {
+                beginTransaction();
+                executeUpdate(updateAllUserAggregatesStatement);
                 commitTransaction();
-                return new ResponseEntity<>(true, HttpStatus.OK);
+                return new ResponseEntity<>(HttpStatus.OK);
 
             } catch (Exception e) {
                 e.printStackTrace();
                 rollbackTransaction();
 
                 if (!isDeadLock(e)) {
-                    return new ResponseEntity<>(false, HttpStatus.INTERNAL_SERVER_ERROR);
+                    return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
                 }
             } finally {
                 checkDanglingTransaction();
             }
         }
-        return new ResponseEntity<>(false, HttpStatus.CONFLICT);
+        return new ResponseEntity<>(HttpStatus.CONFLICT);
     }
 
     /**
-     * Gets the complete profile for user
+     * Gets the complete profile for user. If the database is sharded, then the user's aggregates are summed across shards
      *
-     * @effect tbl_courses (R), tbl_media (R), tbl_registration (R), tbl_relationships (R), tbl_universities (R), tbl_users (R), non-locking
+     * @effect tbl_courses (R), tbl_media (R), tbl_registration (R), tbl_universities (R), tbl_user_aggregates (R), tbl_user_profiles (R), tbl_users (R), non-locking
      * @return User object / 200 status iff successfully retrieved complete profile
      */
     public ResponseEntity<User> transaction_getUser(String userId) {
         try {
-            ResultSet resolveUserIdToUserRecordRS = executeQuery(resolveUserIdToUserRecordStatement, userId);
-            if (!resolveUserIdToUserRecordRS.next()) {
-                resolveUserIdToUserRecordRS.close();
+            ProfileRecord profileRecord = executeQueryForRecord(resolveUserIdToProfileRecordStatement.bind().setString(userId),
+                                                                ProfileRecord.MAPPER);
+            if (profileRecord == null) {
                 return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
             }
-            String userHandle = resolveUserIdToUserRecordRS.getString("user_handle");
-            String userName = resolveUserIdToUserRecordRS.getString("user_name");
-            String cardColor = resolveUserIdToUserRecordRS.getString("card_color");
-            String dateOfBirth = resolveUserIdToUserRecordRS.getString("date_of_birth");
-            String universityId = resolveUserIdToUserRecordRS.getString("university_id");
-            String major = resolveUserIdToUserRecordRS.getString("major");
-            String standing = resolveUserIdToUserRecordRS.getString("standing");
-            String gpa = resolveUserIdToUserRecordRS.getString("gpa");
-            String biography = resolveUserIdToUserRecordRS.getString("biography");
-            String profilePictureUrl = resolveUserIdToUserRecordRS.getString("profile_picture_url");
-            resolveUserIdToUserRecordRS.close();
-
-            ResultSet resolveUniversityIdToUniversityRecordRS = executeQuery(resolveUniversityIdToUniversityRecordStatement, universityId);
-            String universityName = (!resolveUniversityIdToUniversityRecordRS.next()) ? null : resolveUniversityIdToUniversityRecordRS.getString("university_name");
-            resolveUniversityIdToUniversityRecordRS.close();
-
-            ResultSet resolveUserIdToNumberOfFriendsRS = executeQuery(resolveUserIdToNumberOfFriendsStatement, userId);
-            String numberOfFriends = (!resolveUserIdToNumberOfFriendsRS.next()) ? null : resolveUserIdToNumberOfFriendsRS.getString("number_of_friends");
-            resolveUserIdToNumberOfFriendsRS.close();
-
-            ResultSet resolveUserIdToRatingRS = executeQuery(resolveUserIdToRatingStatement, userId);
-            String rating = (!resolveUserIdToRatingRS.next()) ? null : resolveUserIdToRatingRS.getString("rating");
-            resolveUserIdToRatingRS.close();
-
-            List<String> mediaUrls = new ArrayList<>();
-            ResultSet resolveUserIdToMediaRecordsRS = executeQuery(resolveUserIdToMediaRecordsStatement, userId);
-            while (resolveUserIdToMediaRecordsRS.next()) {
-                String mediaUrl = resolveUserIdToMediaRecordsRS.getString("media_url");
-                mediaUrls.add(mediaUrl);
+
+            String universityName = resolveUniversityName(profileRecord.universityId());
+
+            // Users without an aggregates record have no friends and have not been rated
+            String numberOfFriends = "0";
+            String rating = null;
+            UserAggregatesRecord aggregatesRecord = resolveUserAggregates(userId);
+            if (aggregatesRecord != null) {
+                numberOfFriends = String.valueOf(aggregatesRecord.numberOfFriends());
+
+                // Same integer average as AVG over the int rating column
+                rating = (aggregatesRecord.ratingCount() == 0) ? null
+                        : String.valueOf(aggregatesRecord.ratingSum() / aggregatesRecord.ratingCount());
             }
-            resolveUserIdToMediaRecordsRS.close();
+
+            List<String> mediaUrls = executeQueryForRecords(resolveUserIdToMediaRecordsStatement.bind().setString(userId),
+                                                            RowMapper.STRING);
+            List<String> courseIds = executeQueryForRecords(resolveUserIdToRegistrationRecordsStatement.bind().setString(userId),
+                                                            RowMapper.STRING);
 
             List<String> courseCodes = new ArrayList<>();
-            ResultSet resolveUserIdToCourseRecordsRS = executeQuery(resolveUserIdToCourseRecordsStatement, userId);
-            while (resolveUserIdToCourseRecordsRS.next()) {
-                String courseCode = resolveUserIdToCourseRecordsRS.getString("course_code");
-                courseCodes.add(courseCode);
+            for (String courseId : courseIds) {
+                courseCodes.add(resolveCourseCode(courseId));
             }
-            resolveUserIdToCourseRecordsRS.close();
+            Collections.sort(courseCodes);
 
-            User user = new User(userId, userHandle, userName, cardColor, dateOfBirth, universityName, major, standing,
-                                 gpa, biography, profilePictureUrl, numberOfFriends, rating, mediaUrls, courseCodes);
+            User user = new User(userId, profileRecord.userHandle(), profileRecord.userName(), profileRecord.cardColor(),
+                                 profileRecord.dateOfBirth(), universityName, profileRecord.major(), profileRecord.standing(),
+                                 profileRecord.gpa(), profileRecord.biography(), profileRecord.profilePictureUrl(),
+                                 profileRecord.profilePictureCardUrl(), numberOfFriends, rating, mediaUrls, courseCodes);
 
             return new ResponseEntity<>(user, HttpStatus.OK);
 
@@ -1372,19 +1614,160 @@ public class DatabaseConnection {
      */
     public ResponseEntity<UserMini> transaction_getUserMini(String userId) {
         try {
-            ResultSet resolveUserIdToUserRecordRS = executeQuery(resolveUserIdToUserRecordStatement, userId);
-            if (!resolveUserIdToUserRecordRS.next()) {
-                resolveUserIdToUserRecordRS.close();
+            UserMiniRecord userMiniRecord = executeQueryForRecord(resolveUserIdToUserMiniRecordStatement.bind().setString(userId),
+                                                                  UserMiniRecord.MAPPER);
+            if (userMiniRecord == null) {
                 return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
             }
-            String userHandle = resolveUserIdToUserRecordRS.getString("user_handle");
-            String userName = resolveUserIdToUserRecordRS.getString("user_name");
-            String profilePictureUrl = resolveUserIdToUserRecordRS.getString("profile_picture_url");
-            resolveUserIdToUserRecordRS.close();
+            return new ResponseEntity<>(userMiniRecord.toUserMini(), HttpStatus.OK);
 
-            UserMini user = new UserMini(userId, userHandle, userName, profilePictureUrl);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
 
-            return new ResponseEntity<>(user, HttpStatus.OK);
+        } finally {
+            checkDanglingTransaction();
+        }
+    }
+
+    /**
+     * Loads the university and course catalog into the CatalogService
+     *
+     * @effect tbl_courses (R), tbl_universities (R), non-locking
+     * @return true / 200 status iff successfully loaded the catalog
+     */
+    public ResponseEntity<Boolean> transaction_loadCatalog() {
+        try {
+            Map<String, String> universityIdToName = new HashMap<>();
+            executeQueryForEachRecord(resolveAllUniversityRecordsStatement, UniversityRecord.MAPPER,
+                                      universityRecord -> universityIdToName.put(universityRecord.universityId(),
+                                                                                 universityRecord.universityName()));
+
+            Map<String, String> courseIdToCode = new HashMap<>();
+            Map<String, String> courseIdToUniversityId = new HashMap<>();
+            executeQueryForEachRecord(resolveAllCourseRecordsStatement, CourseRecord.MAPPER, courseRecord -> {
+                courseIdToCode.put(courseRecord.courseId(), courseRecord.courseCode());
+                courseIdToUniversityId.put(courseRecord.courseId(), courseRecord.universityId());
+            });
+
+            CatalogService.initialize(universityIdToName, courseIdToCode, courseIdToUniversityId);
+            return new ResponseEntity<>(true, HttpStatus.OK);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new ResponseEntity<>(false, HttpStatus.INTERNAL_SERVER_ERROR);
+
+        } finally {
+            checkDanglingTransaction();
+        }
+    }
+
+    /**
+     * Loads every relationship into the RelationshipGraph
+     *
+     * @effect tbl_relationships (R), non-locking
+     * @return true / 200 status iff successfully loaded the graph
+     */
+    public ResponseEntity<Boolean> transaction_loadRelationshipGraph() {
+        try {
+            List<String[]> relationships = new ArrayList<>();
+            Consumer<RelationshipRecord> addRelationship = relationshipRecord -> relationships.add(new String[] {relationshipRecord.userId(),
+                                                                                                                 relationshipRecord.otherUserId(),
+                                                                                                                 relationshipRecord.relationshipStatus()});
+            if (DatabaseConnectionPool.isSharded()) {
+                for (String shardName : DatabaseConnectionPool.getShardNames()) {
+                    DatabaseConnection dbconn = DatabaseConnectionPool.getShardConnectionByName(shardName);
+                    try {
+                        dbconn.executeQueryForEachRecord(dbconn.resolveAllRelationshipRecordsStatement, RelationshipRecord.MAPPER, addRelationship);
+                    } finally {
+                        DatabaseConnectionPool.releaseConnection(dbconn);
+                    }
+                }
+            } else {
+                executeQueryForEachRecord(resolveAllRelationshipRecordsStatement, RelationshipRecord.MAPPER, addRelationship);
+            }
+
+            RelationshipGraph.initialize(relationships);
+            return new ResponseEntity<>(true, HttpStatus.OK);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new ResponseEntity<>(false, HttpStatus.INTERNAL_SERVER_ERROR);
+
+        } finally {
+            checkDanglingTransaction();
+        }
+    }
+
+    /**
+     * Loads the co-enrollment index of every verified user into the CoEnrollmentIndex
+     *
+     * @effect tbl_registration (R), tbl_user_lifecycle (R), tbl_user_profiles (R), non-locking
+     * @return true / 200 status iff successfully loaded the index
+     */
+    public ResponseEntity<Boolean> transaction_loadCoEnrollmentIndex() {
+        try {
+            Map<String, String> userIdToUniversityId = new HashMap<>();
+            executeQueryForEachRecord(resolveAllVerifiedUserRecordsStatement, VerifiedUserRecord.MAPPER,
+                                      verifiedUserRecord -> userIdToUniversityId.put(verifiedUserRecord.userId(),
+                                                                                     verifiedUserRecord.universityId()));
+
+            Map<String, List<String>> userIdToCourseIds = new HashMap<>();
+            executeQueryForEachRecord(resolveAllRegistrationRecordsStatement, RegistrationRecord.MAPPER,
+                                      registrationRecord -> userIdToCourseIds.computeIfAbsent(registrationRecord.userId(), key -> new ArrayList<>())
+                                                                             .add(registrationRecord.courseId()));
+
+            CoEnrollmentIndex.initialize(userIdToUniversityId, userIdToCourseIds);
+            return new ResponseEntity<>(true, HttpStatus.OK);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new ResponseEntity<>(false, HttpStatus.INTERNAL_SERVER_ERROR);
+
+        } finally {
+            checkDanglingTransaction();
+        }
+    }
+
+    /**
+     * Gets the next batch of discover candidates for user. Candidates are ranked by the CoEnrollmentIndex by number
+     * of shared courses, then by whether they attend the same university. Users that the user has a relationship
+     * with and users that have blocked the user are excluded, as looked up in the RelationshipGraph
+     *
+     * @param after last candidate of the previous batch. null to start from the best-ranked candidate
+     * @param count maximum number of candidates
+     * @effect tbl_users (R), non-locking
+     * @return list of candidates / 200 status iff successfully retrieved candidates
+     */
+    public ResponseEntity<List<DiscoverCandidate>> transaction_loadUsers(String userId, DiscoverCandidate after, int count) {
+        try {
+            Set<String> excludedUserIds = RelationshipGraph.getSeenUserIds(userId);
+
+            CoEnrollmentIndex.Candidate cursor = (after == null) ? null
+                    : new CoEnrollmentIndex.Candidate(after.user.userId, after.sharedCourses, after.sameUniversity);
+            List<CoEnrollmentIndex.Candidate> rankedCandidates = CoEnrollmentIndex.rank(userId, cursor, count, excludedUserIds);
+            if (rankedCandidates.isEmpty()) {
+                return new ResponseEntity<>(new ArrayList<>(), HttpStatus.OK);
+            }
+
+            // Fetches the cards of the whole batch in a single round trip
+            StringJoiner candidateUserIds = new StringJoiner(",");
+            for (CoEnrollmentIndex.Candidate rankedCandidate : rankedCandidates) {
+                candidateUserIds.add(rankedCandidate.userId());
+            }
+            Map<String, DiscoverCard> users = new HashMap<>();
+            executeQueryForEachRecord(resolveUserIdsToDiscoverCardRecordsStatement.bind().setString(candidateUserIds.toString()),
+                                      DiscoverCardRecord.MAPPER,
+                                      discoverCardRecord -> users.put(discoverCardRecord.userId(), discoverCardRecord.toDiscoverCard()));
+
+            List<DiscoverCandidate> candidates = new ArrayList<>();
+            for (CoEnrollmentIndex.Candidate rankedCandidate : rankedCandidates) {
+                DiscoverCard user = users.get(rankedCandidate.userId());
+                if (user != null) {
+                    candidates.add(new DiscoverCandidate(user, rankedCandidate.sharedCourses(), rankedCandidate.sameUniversity()));
+                }
+            }
+            return new ResponseEntity<>(candidates, HttpStatus.OK);
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -1395,12 +1778,142 @@ public class DatabaseConnection {
         }
     }
 
-    public List<String> transaction_loadUsers() {
-        throw new NotYetImplementedException();
+    /**
+     * Loads the handle and name of every user into the UserSearchIndex
+     *
+     * @effect tbl_user_lifecycle (R), tbl_users (R), non-locking
+     * @return true / 200 status iff successfully loaded the index
+     */
+    public ResponseEntity<Boolean> transaction_loadUserSearchIndex() {
+        try {
+            List<UserMini> users = new ArrayList<>();
+            Set<String> verifiedUsers = new HashSet<>();
+            executeQueryForEachRecord(resolveAllUserMiniRecordsStatement, UserMiniVerificationRecord.MAPPER, userMiniRecord -> {
+                users.add(userMiniRecord.toUserMini());
+                if (userMiniRecord.verificationConfirmed()) {
+                    verifiedUsers.add(userMiniRecord.userId());
+                }
+            });
+
+            UserSearchIndex.initialize(users, verifiedUsers);
+            return new ResponseEntity<>(true, HttpStatus.OK);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new ResponseEntity<>(false, HttpStatus.INTERNAL_SERVER_ERROR);
+
+        } finally {
+            checkDanglingTransaction();
+        }
+    }
+
+    /**
+     * Gets a user's friend count and received rating aggregates. If the database is sharded,
+     * then they are the sum of the user's partial aggregates on every shard
+     *
+     * @return aggregates record if the user has one. otherwise, return null
+     */
+    private UserAggregatesRecord resolveUserAggregates(String userId) throws SQLException {
+        if (!DatabaseConnectionPool.isSharded()) {
+            return executeQueryForRecord(resolveUserIdToUserAggregatesRecordStatement.bind().setString(userId), UserAggregatesRecord.MAPPER);
+        }
+
+        UserAggregatesRecord aggregatesRecord = null;
+        for (String shardName : DatabaseConnectionPool.getShardNames()) {
+            DatabaseConnection dbconn = DatabaseConnectionPool.getShardConnectionByName(shardName);
+            try {
+                UserAggregatesRecord shardRecord = dbconn.executeQueryForRecord(dbconn.resolveUserIdToUserAggregatesRecordStatement.bind()
+                                                                                        .setString(userId), UserAggregatesRecord.MAPPER);
+                if (shardRecord != null) {
+                    aggregatesRecord = (aggregatesRecord == null) ? shardRecord
+                            : new UserAggregatesRecord(aggregatesRecord.numberOfFriends() + shardRecord.numberOfFriends(),
+                                                       aggregatesRecord.ratingSum() + shardRecord.ratingSum(),
+                                                       aggregatesRecord.ratingCount() + shardRecord.ratingCount());
+                }
+            } finally {
+                DatabaseConnectionPool.releaseConnection(dbconn);
+            }
+        }
+        return aggregatesRecord;
+    }
+
+    /**
+     * Gets the university_id for a university_name from the catalog.
+     * If the university has not been cataloged, then resolve it from the database and catalog it
+     *
+     * @return university_id if university exists. otherwise, return null
+     */
+    private String resolveUniversityId(String universityName) throws SQLException {
+        String universityId = CatalogService.resolveUniversityNameToUniversityId(universityName);
+        if (universityId == null) {
+            UniversityRecord universityRecord = executeQueryForRecord(resolveUniversityNameToUniversityRecordStatement.bind()
+                                                                              .setString(universityName), UniversityRecord.MAPPER);
+            if (universityRecord != null) {
+                universityId = universityRecord.universityId();
+                CatalogService.addUniversity(universityId, universityRecord.universityName());
+            }
+        }
+        return universityId;
+    }
+
+    /**
+     * Gets the university_name for a university_id from the catalog.
+     * If the university has not been cataloged, then resolve it from the database and catalog it
+     *
+     * @return university_name if university exists. otherwise, return null
+     */
+    private String resolveUniversityName(String universityId) throws SQLException {
+        if (universityId == null) {
+            return null;
+        }
+        String universityName = CatalogService.resolveUniversityIdToUniversityName(universityId);
+        if (universityName == null) {
+            UniversityRecord universityRecord = executeQueryForRecord(resolveUniversityIdToUniversityRecordStatement.bind()
+                                                                              .setString(universityId), UniversityRecord.MAPPER);
+            if (universityRecord != null) {
+                universityName = universityRecord.universityName();
+                CatalogService.addUniversity(universityId, universityName);
+            }
+        }
+        return universityName;
+    }
+
+    /**
+     * Gets the course_id for a course_code, university_id pair from the catalog.
+     * If the course has not been cataloged, then resolve it from the database and catalog it
+     *
+     * @return course_id if course exists. otherwise, return null
+     */
+    private String resolveCourseId(String courseCode, String universityId) throws SQLException {
+        String courseId = CatalogService.resolveCourseCodeUniversityIdToCourseId(courseCode, universityId);
+        if (courseId == null) {
+            CourseRecord courseRecord = executeQueryForRecord(resolveCourseCodeUniversityIdToCourseRecordStatement.bind()
+                                                                      .setString(courseCode).setString(universityId), CourseRecord.MAPPER);
+            if (courseRecord != null) {
+                courseId = courseRecord.courseId();
+                CatalogService.addCourse(courseId, courseRecord.courseCode(), universityId);
+            }
+        }
+        return courseId;
     }
 
-    public List<String> transaction_searchUsers() {
-        throw new NotYetImplementedException();
+    /**
+     * Gets the course_code for a course_id from the catalog.
+     * If the course has not been cataloged, then resolve it from the database and catalog it
+     *
+     * @return course_code if course exists. otherwise, return null
+     */
+    private String resolveCourseCode(String courseId) throws SQLException {
+        String courseCode = CatalogService.resolveCourseIdToCourseCode(courseId);
+        if (courseCode == null) {
+            CourseRecord courseRecord = executeQueryForRecord(resolveCourseIdToCourseRecordStatement.bind().setString(courseId),
+                                                              CourseRecord.MAPPER);
+            if (courseRecord != null) {
+                courseCode = courseRecord.courseCode();
+                CatalogService.addCourse(courseId, courseCode, courseRecord.universityId());
+            }
+        }
+        return courseCode;
     }
 
     /**
@@ -1444,10 +1957,7 @@ public class DatabaseConnection {
 
     public int getTransactionCount() {
         try {
-            ResultSet systemTransactionCountRS = executeQuery(systemTransactionCountStatement);
-            systemTransactionCountRS.next();
-
-            return systemTransactionCountRS.getInt("transaction_count");
+            return executeQueryForRecord(systemTransactionCountStatement, RowMapper.INTEGER);
         } catch (SQLException e) {
             throw new IllegalStateException("Database error", e);
         }
@@ -1459,10 +1969,7 @@ public class DatabaseConnection {
     private void checkDanglingTransaction() {
         try {
             try {
-                ResultSet systemTransactionCountRS = executeQuery(systemTransactionCountStatement);
-                systemTransactionCountRS.next();
-
-                int transactionCount = systemTransactionCountRS.getInt("transaction_count");
+                int transactionCount = executeQueryForRecord(systemTransactionCountStatement, RowMapper.INTEGER);
 
                 if ((!testEnabled && transactionCount > 0) || (testEnabled && transactionCount > 1)) {
                     throw new IllegalStateException(
@@ -1522,47 +2029,201 @@ public class DatabaseConnection {
     }
 
     /**
-     * Sets the statement's parameters to the method's arguments in the order they are passed in
+     * Executes the query statement with its bound parameters, and maps its first row
      *
-     * @param statement canned SQL statement
-     * @param args      statement parameters
+     * @param statement canned SQL statement, with its parameters bound
+     * @param mapper    reads a row of the statement's projection
+     * @return first row of the query results. null if there are no results
      */
-    private void setParameters(PreparedStatement statement, Object... args) throws SQLException {
-        int parameterIndex = 1;
-        statement.clearParameters();
-        for (Object arg : args) {
-            if (arg == null) {
-                statement.setNull(parameterIndex, Types.NULL);
-            } else {
-                statement.setObject(parameterIndex, arg);
-            }
-            parameterIndex++;
+    private <T> T executeQueryForRecord(BoundStatement statement, RowMapper<T> mapper) throws SQLException {
+        try (ResultSet rs = statement.executeQuery()) {
+            return rs.next() ? mapper.map(rs) : null;
         }
     }
 
     /**
-     * Executes the query statement with the specified parameters
+     * Executes the query statement with its bound parameters, and maps every row
+     *
+     * @param statement canned SQL statement, with its parameters bound
+     * @param mapper    reads a row of the statement's projection
+     * @return rows of the query results, in order
+     */
+    private <T> List<T> executeQueryForRecords(BoundStatement statement, RowMapper<T> mapper) throws SQLException {
+        List<T> records = new ArrayList<>();
+        executeQueryForEachRecord(statement, mapper, records::add);
+        return records;
+    }
+
+    /**
+     * Executes the query statement with its bound parameters, and passes each row to the action as it is mapped,
+     * so that large results are never held in memory at once
      *
-     * @param statement canned SQL statement
-     * @param args      statement parameters
-     * @return query results as a ResultSet
+     * @param statement canned SQL statement, with its parameters bound
+     * @param mapper    reads a row of the statement's projection
+     * @param action    consumes each mapped row
      */
-    private ResultSet executeQuery(PreparedStatement statement, Object... args) throws SQLException {
-        setParameters(statement, args);
-        return statement.executeQuery();
+    private <T> void executeQueryForEachRecord(BoundStatement statement, RowMapper<T> mapper, Consumer<T> action) throws SQLException {
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                action.accept(mapper.map(rs));
+            }
+        }
     }
 
     /**
-     * Executes the update statement with the specified parameters
+     * Executes the update statement with its bound parameters
      *
-     * @param statement canned SQL statement
-     * @param args      statement parameters
+     * @param statement canned SQL statement, with its parameters bound
      */
-    private void executeUpdate(PreparedStatement statement, Object... args) throws SQLException {
-        setParameters(statement, args);
+    private void executeUpdate(BoundStatement statement) throws SQLException {
         statement.executeUpdate();
     }
 
+    /**
+     * Writes a batch of swipes to the relationships stored by this connection's database
+     *
+     * @return true / 200 status iff every swipe in the batch has been written
+     */
+    private ResponseEntity<Boolean> writeSwipes(List<SwipeJournal.Swipe> swipes) {
+        JsonArray relationships = new JsonArray();
+        for (SwipeJournal.Swipe swipe : swipes) {
+            JsonObject relationship = new JsonObject();
+            relationship.addProperty("user_id", swipe.userId());
+            relationship.addProperty("other_user_id", swipe.otherUserId());
+            relationship.addProperty("relationship_status", swipe.status().value());
+            relationships.add(relationship);
+        }
+
+        for (int attempts = 0; attempts < MAX_ATTEMPTS; attempts++) {
+            try {
+                beginTransaction();
+                executeUpdate(updateRelationshipStatusesStatement.bind().setString(relationships.toString()));
+                commitTransaction();
+                return new ResponseEntity<>(true, HttpStatus.OK);
+
+            } catch (Exception e) {
+                e.printStackTrace();
+                rollbackTransaction();
+
+                if (!isDeadLock(e)) {
+                    return new ResponseEntity<>(false, HttpStatus.INTERNAL_SERVER_ERROR);
+                }
+            } finally {
+                checkDanglingTransaction();
+            }
+        }
+        return new ResponseEntity<>(false, HttpStatus.CONFLICT);
+    }
+
+    /**
+     * Recomputes the aggregates of a batch of users from the relationships stored by this connection's database,
+     * correcting those that have drifted, in a single transaction
+     *
+     * @return number of users whose aggregates had drifted / 200 status iff the batch has been reconciled
+     */
+    private ResponseEntity<Integer> reconcileUserAggregates(List<String> userIds) {
+        for (int attempts = 0; attempts < MAX_ATTEMPTS; attempts++) {
+            try {
+                beginTransaction();
+
+                List<DriftedUserAggregatesRecord> driftedRecords = executeQueryForRecords(updateDriftedUserAggregatesStatement.bind()
+                                                                                                  .setString(String.join(",", userIds)),
+                                                                                          DriftedUserAggregatesRecord.MAPPER);
+
+                commitTransaction();
+                return new ResponseEntity<>(driftedRecords.size(), HttpStatus.OK);
+
+            } catch (Exception e) {
+                e.printStackTrace();
+                rollbackTransaction();
+
+                if (!isDeadLock(e)) {
+                    return new ResponseEntity<>(0, HttpStatus.INTERNAL_SERVER_ERROR);
+                }
+            } finally {
+                checkDanglingTransaction();
+            }
+        }
+        return new ResponseEntity<>(0, HttpStatus.CONFLICT);
+    }
+
+    /**
+     * Executes a statement that takes a batch of relationships as a JSON array, in a single transaction
+     *
+     * @return 200 status iff the statement has been executed
+     */
+    private ResponseEntity<Object> executeRelationshipBatch(BoundStatement statement, List<RelationshipRatingRecord> relationshipRecords) {
+        JsonArray relationships = new JsonArray();
+        for (RelationshipRatingRecord relationshipRecord : relationshipRecords) {
+            JsonObject relationship = new JsonObject();
+            relationship.addProperty("user_id", relationshipRecord.userId());
+            relationship.addProperty("other_user_id", relationshipRecord.otherUserId());
+            relationship.addProperty("relationship_status", relationshipRecord.relationshipStatus());
+            relationship.addProperty("rating", relationshipRecord.rating());
+            relationships.add(relationship);
+        }
+
+        for (int attempts = 0; attempts < MAX_ATTEMPTS; attempts++) {
+            try {
+                beginTransaction();
+                executeUpdate(statement.bind().setString(relationships.toString()));
+                commitTransaction();
+                return new ResponseEntity<>(HttpStatus.OK);
+
+            } catch (Exception e) {
+                e.printStackTrace();
+                rollbackTransaction();
+
+                if (!isDeadLock(e)) {
+                    return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+                }
+            } finally {
+                checkDanglingTransaction();
+            }
+        }
+        return new ResponseEntity<>(HttpStatus.CONFLICT);
+    }
+
+    /**
+     * Runs a transaction on a pooled connection to a relationship shard
+     *
+     * @param shardName   one of DatabaseConnectionPool.getShardNames()
+     * @param transaction transaction to run on the shard's connection
+     * @return result of the transaction
+     */
+    private static <T> T onShard(String shardName, Function<DatabaseConnection, T> transaction) {
+        DatabaseConnection dbconn = DatabaseConnectionPool.getShardConnectionByName(shardName);
+        try {
+            return transaction.apply(dbconn);
+        } finally {
+            DatabaseConnectionPool.releaseConnection(dbconn);
+        }
+    }
+
+    /**
+     * Runs a transaction on a pooled connection to the shard that owns a user's relationships
+     *
+     * @param userId      user whose relationships are read or written
+     * @param transaction transaction to run on the shard's connection
+     * @return result of the transaction
+     */
+    private static <T> T onShardOf(String userId, Function<DatabaseConnection, T> transaction) {
+        DatabaseConnection dbconn = DatabaseConnectionPool.getShardConnection(userId);
+        try {
+            return transaction.apply(dbconn);
+        } finally {
+            DatabaseConnectionPool.releaseConnection(dbconn);
+        }
+    }
+
+    /**
+     * Sets the relationship_status of user to other user, creating the relationship record if it does not exist
+     */
+    private void setRelationshipStatus(String userId, String otherUserId, RelationshipGraph.Status status) throws SQLException {
+        executeUpdate(updateRelationshipStatusStatement.bind().setString(status.value()).setString(userId).setString(otherUserId)
+                                                       .setString(userId).setString(otherUserId).setString(status.value()));
+    }
+
     /**
      * Generates a random cryptographic salt
      *
@@ -1596,14 +2257,22 @@ public class DatabaseConnection {
     }
 
     /**
-     * Parses a DateTime string
+     * Parses a date of birth
+     *
+     * @param dateOfBirth date in MM/dd/yyyy format
+     * @return Date object to be bound to a date parameter
+     */
+    private Date parseDateOfBirth(String dateOfBirth) throws ParseException {
+        return new Date(new SimpleDateFormat("MM/dd/yyyy").parse(dateOfBirth).getTime());
+    }
+
+    /**
+     * Converts a datetime column value
      *
-     * @param dateTime in yyyy-MM-dd HH:mm:ss.SSS format
+     * @param dateTime datetime in UTC, as stored by GETUTCDATE()
      * @return Instant object representing UTC time
      */
-    private Instant parseDateTimeString(String dateTime) {
-        return LocalDateTime.parse(dateTime.substring(0, 19), DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-                                                              .atZone(ZoneId.of("UTC"))
-                                                              .toInstant();
+    private Instant toInstant(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneOffset.UTC).toInstant();
     }
 }
@@ -1,13 +1,20 @@
 package model.database;
 
-import java.sql.*;
+import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * DatabaseConnectionPool represents a pool of DatabaseConnections
  * Initialization of the pool is slow (about 1 second per connection)
  * but offers significant parallelism and caching improvements
+ *
+ * Connections to the primary and to each read replica specified in database.credentials are pooled separately.
+ * Read-only transactions may be routed to the replicas with getReadConnection. Everything else uses the primary
+ *
+ * If relationship shards are specified in database.credentials, then tbl_relationships and tbl_user_aggregates are
+ * stored on the shards instead of the primary, and connections to each shard are pooled separately. The ShardMap
+ * decides which shard owns each user's relationships
  */
 public class DatabaseConnectionPool {
 
@@ -17,21 +24,65 @@ public class DatabaseConnectionPool {
     public static final int REDUCED_MAX_POOL_SIZE = 1;
     public static final int MAX_POOL_SIZE = 20;
 
+    // Connections opened to each replica at startup
+    public static final int INITIAL_REPLICA_POOL_SIZE = 2;
+
+    // Connections opened to each relationship shard at startup
+    public static final int INITIAL_SHARD_POOL_SIZE = 2;
+
+    // Reads of a user's data are routed to the primary for this long after the user's own update,
+    // so that the user reads their own writes while the replicas catch up
+    public static final long READ_YOUR_WRITES_WINDOW_MILLIS = 5_000;
+
+    // A replica that fails to provide a connection is skipped for this long before it is tried again
+    public static final long REPLICA_RETRY_INTERVAL_MILLIS = 30_000;
+
+    // Number of recently updated users above which expired entries are pruned
+    private static final int MAX_TRACKED_WRITES = 10_000;
+
     private static int maxPoolSize = MAX_POOL_SIZE;
 
-    private static final Lock lock;
-    private static final BlockingQueue<DatabaseConnection> idleConnections;
-    private static final BlockingQueue<DatabaseConnection> activeConnections;
+    private static final ConnectionPool primaryPool;
+    private static volatile List<Replica> replicas;
+
+    // Connection pool of each relationship shard, by shard name. empty if the database is not sharded
+    private static volatile Map<String, ConnectionPool> shardPools;
+    private static volatile ShardMap shardMap;
+
+    // Index of the replica that the next read is routed to first
+    private static final AtomicInteger nextReplica;
+
+    // Time of each user's most recent update, within the read-your-writes window
+    private static final Map<String, Long> lastWriteTimes;
 
     // getConnection timeout
     private static final int TIMEOUT_VALUE = 30;
     private static final TimeUnit TIMEOUT_UNIT = TimeUnit.SECONDS;
 
+    // Time to wait for an idle replica connection before the read is routed elsewhere
+    private static final int REPLICA_TIMEOUT_VALUE = 1;
+
+    /**
+     * Connection pool of a read replica, and when it may next be tried after failing
+     */
+    private static class Replica {
+
+        final ConnectionPool pool;
+
+        volatile long unavailableUntil;
+
+        Replica(String connectionUrl) {
+            pool = new ConnectionPool(connectionUrl, MAX_POOL_SIZE, REPLICA_TIMEOUT_VALUE, TIMEOUT_UNIT);
+        }
+    }
+
     static {
         try {
-            lock = new ReentrantLock();
-            idleConnections = new LinkedBlockingQueue<>();
-            activeConnections = new LinkedBlockingQueue<>();
+            primaryPool = new ConnectionPool(DatabaseConnection.getConnectionUrl(), MAX_POOL_SIZE, TIMEOUT_VALUE, TIMEOUT_UNIT);
+            replicas = createReplicas(DatabaseConnection.getReplicaConnectionUrls());
+            setShards(DatabaseConnection.getShardConnectionUrls());
+            nextReplica = new AtomicInteger();
+            lastWriteTimes = new ConcurrentHashMap<>();
 
             initializePool(INITIAL_POOL_SIZE);
 
@@ -41,73 +92,165 @@ public class DatabaseConnectionPool {
     }
 
     /**
-     * Gets a connection from the connection pool
+     * Gets a connection to the primary from the connection pool
      * TODO: optimize check for broken pipe / closed connection such that
      *       it only checks if connection hasn't been used in a while
      *
      * @return a DatabaseConnection object
      */
     public static DatabaseConnection getConnection() {
-        lock.lock();
+        return primaryPool.getConnection();
+    }
 
-        try {
-            if (idleConnections.size() == 0 && size() < maxPoolSize) {
-                // If there are no idle connections and pool size is below max, then create new connection
-                try {
-                    DatabaseConnection dbconn = new DatabaseConnection();
-                    activeConnections.put(dbconn);
-                    return dbconn;
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            } else {
-                // Otherwise wait for idle connection
-                DatabaseConnection dbconn = idleConnections.poll(TIMEOUT_VALUE, TIMEOUT_UNIT);
-                if (dbconn == null) {
-                    throw new RuntimeException("DatabaseConnection deadlock");
-                }
+    /**
+     * Gets a connection for read-only transactions on behalf of a user. The connection is to a replica, unless
+     * the user has updated their data within the read-your-writes window, no replica is available, or the pool
+     * has been reduced. Replicas are tried in turn, and a replica that fails to provide a connection is skipped
+     * until the retry interval elapses. If no replica provides a connection, then the read fails over to the primary
+     *
+     * @param userId user on whose behalf the data is read
+     * @return a DatabaseConnection object, which must only be used for reads
+     */
+    public static DatabaseConnection getReadConnection(String userId) {
+        List<Replica> currentReplicas = replicas;
+        if (currentReplicas.isEmpty() || maxPoolSize == REDUCED_MAX_POOL_SIZE || hasRecentWrite(userId)) {
+            return getConnection();
+        }
+
+        int firstReplica = Math.floorMod(nextReplica.getAndIncrement(), currentReplicas.size());
+        for (int i = 0; i < currentReplicas.size(); i++) {
+            Replica replica = currentReplicas.get((firstReplica + i) % currentReplicas.size());
+            if (replica.unavailableUntil > System.currentTimeMillis()) {
+                continue;
+            }
 
-                // If idle connection has closed, then create new connection
-                try {
-                    dbconn.getTransactionCount();
-                } catch (Exception e) {
-                    dbconn = new DatabaseConnection();
+            try {
+                // A replica that is busy is passed over, but remains available
+                DatabaseConnection dbconn = replica.pool.tryGetConnection();
+                if (dbconn != null) {
+                    return dbconn;
                 }
-                activeConnections.put(dbconn);
-                return dbconn;
+            } catch (RuntimeException e) {
+                replica.unavailableUntil = System.currentTimeMillis() + REPLICA_RETRY_INTERVAL_MILLIS;
             }
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        }
+        return getConnection();
+    }
+
+    /**
+     * Records that a user has updated their data, so that the user's reads are routed to the primary
+     * for the read-your-writes window
+     *
+     * @param userId user whose data has been updated
+     */
+    public static void recordWrite(String userId) {
+        if (userId == null) {
+            return;
+        }
 
-        } finally {
-            lock.unlock();
+        long currentTime = System.currentTimeMillis();
+        if (lastWriteTimes.size() >= MAX_TRACKED_WRITES) {
+            lastWriteTimes.values().removeIf(lastWriteTime -> currentTime - lastWriteTime >= READ_YOUR_WRITES_WINDOW_MILLIS);
         }
+        lastWriteTimes.put(userId, currentTime);
+    }
+
+    /**
+     * Returns whether tbl_relationships and tbl_user_aggregates are stored on shards instead of the primary
+     */
+    public static boolean isSharded() {
+        return !shardPools.isEmpty();
+    }
+
+    /**
+     * Returns the names of the relationship shards. empty if the database is not sharded
+     */
+    public static List<String> getShardNames() {
+        return isSharded() ? shardMap.getShardNames() : List.of();
     }
 
     /**
-     * Releases a connection back to the connection pool
+     * Gets a connection to the shard that owns a user's relationships. If the database is not sharded,
+     * then the connection is to the primary
+     *
+     * @param userId user whose relationships are read or written
+     * @return a DatabaseConnection object
+     */
+    public static DatabaseConnection getShardConnection(String userId) {
+        return isSharded() ? shardPools.get(shardMap.getShard(userId)).getConnection() : getConnection();
+    }
+
+    /**
+     * Gets a connection to a relationship shard
+     *
+     * @param shardName one of getShardNames()
+     * @return a DatabaseConnection object
+     */
+    public static DatabaseConnection getShardConnectionByName(String shardName) {
+        ConnectionPool shardPool = shardPools.get(shardName);
+        if (shardPool == null) {
+            throw new IllegalArgumentException("No shard is named " + shardName);
+        }
+        return shardPool.getConnection();
+    }
+
+    /**
+     * Returns the shard that owns a user's relationships. null if the database is not sharded
+     */
+    public static String getShard(String userId) {
+        return isSharded() ? shardMap.getShard(userId) : null;
+    }
+
+    /**
+     * Returns whether a connection is to the database that stores a user's relationships,
+     * which is the primary if the database is not sharded
+     */
+    public static boolean ownsUser(DatabaseConnection dbconn, String userId) {
+        return isSharded() ? shardPools.get(shardMap.getShard(userId)).isActive(dbconn) : !isReplicaConnection(dbconn);
+    }
+
+    /**
+     * Returns whether a connection was obtained from a replica and has not been released
+     */
+    public static boolean isReplicaConnection(DatabaseConnection dbconn) {
+        for (Replica replica : replicas) {
+            if (replica.pool.isActive(dbconn)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Releases a connection back to the connection pool it was obtained from
      *
      * @param dbconn DatabaseConnection to be released
      * @return null. it is recommended to use this return value to overwrite the connection
      */
     public static DatabaseConnection releaseConnection(DatabaseConnection dbconn) {
-        try {
-            if (activeConnections.remove(dbconn)) {
-                idleConnections.put(dbconn);
+        if (primaryPool.releaseConnection(dbconn)) {
+            return null;
+        }
+        for (Replica replica : replicas) {
+            if (replica.pool.releaseConnection(dbconn)) {
+                return null;
+            }
+        }
+        for (ConnectionPool shardPool : shardPools.values()) {
+            if (shardPool.releaseConnection(dbconn)) {
+                return null;
             }
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
         }
         return null;
     }
 
     /**
-     * Returns the total number of active and idle connections in the connection pool
+     * Returns the total number of active and idle connections to the primary in the connection pool
      *
-     * @return total number of active and idle connections in the connection pool
+     * @return total number of active and idle connections to the primary in the connection pool
      */
     public static int size() {
-        return idleConnections.size() + activeConnections.size();
+        return primaryPool.size();
     }
 
     /**
@@ -135,8 +278,12 @@ public class DatabaseConnectionPool {
      */
     public static void releaseAllConnections() {
         if (testingEnabled) {
-            while (activeConnections.size() > 0) {
-                releaseConnection(activeConnections.peek());
+            primaryPool.releaseAllConnections();
+            for (Replica replica : replicas) {
+                replica.pool.releaseAllConnections();
+            }
+            for (ConnectionPool shardPool : shardPools.values()) {
+                shardPool.releaseAllConnections();
             }
         } else {
             throw new IllegalStateException("Enable testing to use releaseAllConnections()");
@@ -147,13 +294,18 @@ public class DatabaseConnectionPool {
      * Closes all connections in the pool. These connections can no longer be used
      */
     public static void closeAllConnections() {
-        closeConnections(idleConnections);
-        closeConnections(activeConnections);
+        primaryPool.closeAllConnections();
+        for (Replica replica : replicas) {
+            replica.pool.closeAllConnections();
+        }
+        for (ConnectionPool shardPool : shardPools.values()) {
+            shardPool.closeAllConnections();
+        }
     }
 
     /**
      * Reduces the number of connections in the pool to 1 and sets them in accordance with the testingEnabled flag.
-     * This forces all methods to utilize the same connection.
+     * This forces all methods to utilize the same connection, including reads that would be routed to a replica.
      * Very expensive method call and only meant for JUnit tests
      */
     public static void reducePoolSize() {
@@ -181,36 +333,113 @@ public class DatabaseConnectionPool {
     }
 
     /**
-     * Closes all connections in the list
+     * Replaces the replicas with the databases at the JDBC urls, and forgets recent updates.
+     * Only meant for JUnit tests
      *
-     * @param dbconns list containing connections to be closed
+     * @param connectionUrls JDBC urls of the replicas
      */
-    private static void closeConnections(BlockingQueue<DatabaseConnection> dbconns) {
-        for (DatabaseConnection dbconn : dbconns) {
-            try {
-                dbconn.closeConnection();
-            } catch (SQLException ignored) {}
+    public static void setReplicaConnectionUrls(List<String> connectionUrls) {
+        if (testingEnabled) {
+            for (Replica replica : replicas) {
+                replica.pool.closeAllConnections();
+            }
+            replicas = createReplicas(connectionUrls);
+            lastWriteTimes.clear();
+            initializeReplicas();
+
+        } else {
+            throw new IllegalStateException("Enable testing to use setReplicaConnectionUrls()");
         }
+    }
 
+    /**
+     * Replaces the relationship shards with the databases at the JDBC urls. Only meant for JUnit tests
+     *
+     * @param connectionUrls JDBC urls of the shards, by shard name. empty to store relationships on the primary
+     */
+    public static void setShardConnectionUrls(Map<String, String> connectionUrls) {
+        if (testingEnabled) {
+            for (ConnectionPool shardPool : shardPools.values()) {
+                shardPool.closeAllConnections();
+            }
+            setShards(connectionUrls);
+            initializeShards();
+
+        } else {
+            throw new IllegalStateException("Enable testing to use setShardConnectionUrls()");
+        }
+    }
+
+    /**
+     * Returns whether the user has updated their data within the read-your-writes window
+     */
+    private static boolean hasRecentWrite(String userId) {
+        if (userId == null) {
+            return true;
+        }
+
+        Long lastWriteTime = lastWriteTimes.get(userId);
+        if (lastWriteTime == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - lastWriteTime < READ_YOUR_WRITES_WINDOW_MILLIS) {
+            return true;
+        }
+        lastWriteTimes.remove(userId, lastWriteTime);
+        return false;
+    }
+
+    private static List<Replica> createReplicas(List<String> connectionUrls) {
+        List<Replica> replicas = new ArrayList<>();
+        for (String connectionUrl : connectionUrls) {
+            replicas.add(new Replica(connectionUrl));
+        }
+        return List.copyOf(replicas);
+    }
+
+    private static void setShards(Map<String, String> connectionUrls) {
+        Map<String, ConnectionPool> pools = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : connectionUrls.entrySet()) {
+            pools.put(entry.getKey(), new ConnectionPool(entry.getValue(), MAX_POOL_SIZE, TIMEOUT_VALUE, TIMEOUT_UNIT));
+        }
+        shardMap = pools.isEmpty() ? null : new ShardMap(pools.keySet());
+        shardPools = Collections.unmodifiableMap(pools);
     }
 
     /**
      * Initializes the connections in the pool in accordance with the testingEnabled flag
      *
-     * @param size number of connections to initialize
+     * @param size number of connections to the primary to initialize
      */
     private static void initializePool(int size) {
-        try {
-            closeAllConnections();
-            idleConnections.clear();
-            activeConnections.clear();
+        primaryPool.initialize(size, maxPoolSize, testingEnabled);
+        initializeReplicas();
+        initializeShards();
+    }
 
-            for (int i = 0; i < size; i++) {
-                idleConnections.put(new DatabaseConnection(testingEnabled));
-            }
+    /**
+     * Initializes the connections to each shard in accordance with the testingEnabled flag. Unlike replicas, every
+     * shard is required, since each one is the only copy of its users' relationships
+     */
+    private static void initializeShards() {
+        for (ConnectionPool shardPool : shardPools.values()) {
+            shardPool.initialize(INITIAL_SHARD_POOL_SIZE, MAX_POOL_SIZE, testingEnabled);
+        }
+    }
 
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+    /**
+     * Initializes the connections to each replica in accordance with the testingEnabled flag. A replica that cannot
+     * be reached is skipped until the retry interval elapses, rather than preventing startup
+     */
+    private static void initializeReplicas() {
+        for (Replica replica : replicas) {
+            try {
+                replica.pool.initialize(INITIAL_REPLICA_POOL_SIZE, MAX_POOL_SIZE, testingEnabled);
+                replica.unavailableUntil = 0;
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                replica.unavailableUntil = System.currentTimeMillis() + REPLICA_RETRY_INTERVAL_MILLIS;
+            }
         }
     }
 }
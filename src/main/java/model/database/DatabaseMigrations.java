@@ -0,0 +1,65 @@
+package model.database;
+
+import java.io.*;
+
+import org.flywaydb.core.*;
+import org.flywaydb.core.api.output.*;
+
+/**
+ * DatabaseMigrations applies the versioned schema migrations in resources/db/migration <br><br>
+ *
+ * Migrations are named V{version}__{description}.sql and are applied in version order, each exactly once.
+ * Databases created before migrations were versioned already have the tables in V1, so V1 is recorded as
+ * the baseline of a database that has tables but no migration history <br><br>
+ *
+ * Relationship shards have their own schema, versioned separately in resources/db/shard_migration
+ */
+public final class DatabaseMigrations {
+
+    private DatabaseMigrations() {}
+
+    /**
+     * Applies every pending migration to the database specified in database.credentials
+     *
+     * @return number of migrations applied
+     */
+    public static int migrate() throws IOException {
+        Flyway flyway = Flyway.configure()
+                              .dataSource(DatabaseConnection.getConnectionUrl(), null, null)
+                              .locations("classpath:db/migration")
+                              .baselineOnMigrate(true)
+                              .baselineVersion("1")
+                              .load();
+
+        MigrateResult migrateResult = flyway.migrate();
+        return migrateResult.migrationsExecuted;
+    }
+
+    /**
+     * Applies every pending shard migration to each relationship shard specified in database.credentials
+     *
+     * @return number of migrations applied, summed over the shards
+     */
+    public static int migrateShards() throws IOException {
+        int migrationsExecuted = 0;
+        for (String connectionUrl : DatabaseConnection.getShardConnectionUrls().values()) {
+            migrationsExecuted += migrateShard(connectionUrl);
+        }
+        return migrationsExecuted;
+    }
+
+    /**
+     * Applies every pending shard migration to the relationship shard at the JDBC url
+     *
+     * @return number of migrations applied
+     */
+    public static int migrateShard(String connectionUrl) {
+        Flyway flyway = Flyway.configure()
+                              .dataSource(connectionUrl, null, null)
+                              .locations("classpath:db/shard_migration")
+                              .load();
+
+        MigrateResult migrateResult = flyway.migrate();
+        return migrateResult.migrationsExecuted;
+    }
+}
@@ -0,0 +1,152 @@
+package model.database;
+
+import java.time.*;
+
+import types.DiscoverCard;
+import types.UserMini;
+
+/**
+ * Rows returned by the statements in DatabaseStatements. The components of each record are the columns projected
+ * by its statements, in the same order, and its MAPPER reads them by index
+ */
+public final class DatabaseRecords {
+
+    private DatabaseRecords() {}
+
+    // RESOLVE_ALL_COURSE_RECORDS, RESOLVE_COURSE_CODE_UNIVERSITY_ID_TO_COURSE_RECORD, RESOLVE_COURSE_ID_TO_COURSE_RECORD
+    public record CourseRecord(String courseId, String courseCode, String universityId) {
+
+        public static final RowMapper<CourseRecord> MAPPER = rs -> new CourseRecord(rs.getString(1), rs.getString(2),
+                                                                                    rs.getString(3));
+    }
+
+    // RESOLVE_EMAIL_TO_CREDENTIALS_RECORD, RESOLVE_USER_ID_TO_CREDENTIALS_RECORD
+    public record CredentialsRecord(String userId, byte[] salt, byte[] hash, String refreshTokenId, String refreshTokenFamily) {
+
+        public static final RowMapper<CredentialsRecord> MAPPER = rs -> new CredentialsRecord(rs.getString(1), rs.getBytes(2),
+                                                                                              rs.getBytes(3), rs.getString(4),
+                                                                                              rs.getString(5));
+    }
+
+    // UPDATE_DRIFTED_USER_AGGREGATES
+    // RESOLVE_USER_IDS_TO_DISCOVER_CARD_RECORDS
+    public record DiscoverCardRecord(String userId, String userHandle, String userName, String profilePictureUrl,
+                                     String profilePictureCardUrl) {
+
+        public static final RowMapper<DiscoverCardRecord> MAPPER = rs -> new DiscoverCardRecord(rs.getString(1), rs.getString(2),
+                                                                                                rs.getString(3), rs.getString(4),
+                                                                                                rs.getString(5));
+
+        public DiscoverCard toDiscoverCard() {
+            return new DiscoverCard(userId, userHandle, userName, profilePictureUrl, profilePictureCardUrl);
+        }
+    }
+
+    public record DriftedUserAggregatesRecord(String userId, int previousNumberOfFriends, int previousRatingSum,
+                                              int previousRatingCount, int numberOfFriends, int ratingSum, int ratingCount) {
+
+        public static final RowMapper<DriftedUserAggregatesRecord> MAPPER = rs -> new DriftedUserAggregatesRecord(rs.getString(1),
+                                                                                                                  rs.getInt(2), rs.getInt(3),
+                                                                                                                  rs.getInt(4), rs.getInt(5),
+                                                                                                                  rs.getInt(6), rs.getInt(7));
+    }
+
+    // RESOLVE_EMAIL_TO_LIFECYCLE_RECORD, RESOLVE_PASSWORD_RESET_CODE_TO_LIFECYCLE_RECORD, RESOLVE_VERIFICATION_CODE_TO_LIFECYCLE_RECORD.
+    // Timestamps are in UTC
+    public record LifecycleRecord(String userId, String email, String verificationCode, LocalDateTime verificationTimestamp,
+                                  boolean verificationConfirmed, String passwordResetCode, LocalDateTime passwordResetTimestamp,
+                                  String mostRecentEmailType) {
+
+        public static final RowMapper<LifecycleRecord> MAPPER = rs -> new LifecycleRecord(rs.getString(1), rs.getString(2),
+                                                                                          rs.getString(3),
+                                                                                          rs.getObject(4, LocalDateTime.class),
+                                                                                          rs.getBoolean(5), rs.getString(6),
+                                                                                          rs.getObject(7, LocalDateTime.class),
+                                                                                          rs.getString(8));
+    }
+
+    // RESOLVE_USER_ID_TO_PROFILE_RECORD
+    public record ProfileRecord(String userHandle, String userName, String profilePictureUrl, String profilePictureCardUrl,
+                                String cardColor, String dateOfBirth, String universityId, String major, String standing,
+                                String gpa, String biography) {
+
+        public static final RowMapper<ProfileRecord> MAPPER = rs -> new ProfileRecord(rs.getString(1), rs.getString(2),
+                                                                                      rs.getString(3), rs.getString(4),
+                                                                                      rs.getString(5), rs.getString(6),
+                                                                                      rs.getString(7), rs.getString(8),
+                                                                                      rs.getString(9), rs.getString(10),
+                                                                                      rs.getString(11));
+    }
+
+    // RESOLVE_ALL_REGISTRATION_RECORDS
+    public record RegistrationRecord(String userId, String courseId) {
+
+        public static final RowMapper<RegistrationRecord> MAPPER = rs -> new RegistrationRecord(rs.getString(1), rs.getString(2));
+    }
+
+    // RESOLVE_ALL_RELATIONSHIP_RATING_RECORDS. rating is null if the other user has not been rated
+    public record RelationshipRatingRecord(String userId, String otherUserId, String relationshipStatus, Integer rating) {
+
+        public static final RowMapper<RelationshipRatingRecord> MAPPER = rs -> new RelationshipRatingRecord(rs.getString(1), rs.getString(2),
+                                                                                                            rs.getString(3),
+                                                                                                            rs.getObject(4, Integer.class));
+    }
+
+    // RESOLVE_ALL_RELATIONSHIP_RECORDS
+    public record RelationshipRecord(String userId, String otherUserId, String relationshipStatus) {
+
+        public static final RowMapper<RelationshipRecord> MAPPER = rs -> new RelationshipRecord(rs.getString(1), rs.getString(2),
+                                                                                                rs.getString(3));
+    }
+
+    // RESOLVE_ALL_UNIVERSITY_RECORDS, RESOLVE_UNIVERSITY_ID_TO_UNIVERSITY_RECORD, RESOLVE_UNIVERSITY_NAME_TO_UNIVERSITY_RECORD
+    public record UniversityRecord(String universityId, String universityName) {
+
+        public static final RowMapper<UniversityRecord> MAPPER = rs -> new UniversityRecord(rs.getString(1), rs.getString(2));
+    }
+
+    // RESOLVE_USER_ID_TO_USER_AGGREGATES_RECORD
+    public record UserAggregatesRecord(int numberOfFriends, int ratingSum, int ratingCount) {
+
+        public static final RowMapper<UserAggregatesRecord> MAPPER = rs -> new UserAggregatesRecord(rs.getInt(1), rs.getInt(2),
+                                                                                                    rs.getInt(3));
+    }
+
+    // RESOLVE_USER_ID_TO_USER_MINI_RECORD
+    public record UserMiniRecord(String userId, String userHandle, String userName, String profilePictureUrl) {
+
+        public static final RowMapper<UserMiniRecord> MAPPER = rs -> new UserMiniRecord(rs.getString(1), rs.getString(2),
+                                                                                        rs.getString(3), rs.getString(4));
+
+        public UserMini toUserMini() {
+            return new UserMini(userId, userHandle, userName, profilePictureUrl);
+        }
+    }
+
+    // RESOLVE_ALL_USER_MINI_RECORDS
+    public record UserMiniVerificationRecord(String userId, String userHandle, String userName, String profilePictureUrl,
+                                             boolean verificationConfirmed) {
+
+        public static final RowMapper<UserMiniVerificationRecord> MAPPER = rs -> new UserMiniVerificationRecord(rs.getString(1),
+                                                                                                                rs.getString(2),
+                                                                                                                rs.getString(3),
+                                                                                                                rs.getString(4),
+                                                                                                                rs.getBoolean(5));
+
+        public UserMini toUserMini() {
+            return new UserMini(userId, userHandle, userName, profilePictureUrl);
+        }
+    }
+
+    // RESOLVE_EMAIL_TO_USER_RECORD, RESOLVE_USER_HANDLE_TO_USER_RECORD
+    public record UserRecord(String userId, String userHandle, String userName) {
+
+        public static final RowMapper<UserRecord> MAPPER = rs -> new UserRecord(rs.getString(1), rs.getString(2), rs.getString(3));
+    }
+
+    // RESOLVE_ALL_VERIFIED_USER_RECORDS
+    public record VerifiedUserRecord(String userId, String universityId) {
+
+        public static final RowMapper<VerifiedUserRecord> MAPPER = rs -> new VerifiedUserRecord(rs.getString(1), rs.getString(2));
+    }
+}
@@ -1,171 +1,399 @@
 package model.database;
 
+import static model.database.ParameterType.*;
+
 public final class DatabaseStatements {
 
+    // Collects the relationship records changed by a statement, so the user aggregates can be updated in the same batch
+    private static final String DECLARE_RELATIONSHIP_CHANGES = "DECLARE @relationship_changes TABLE (user_id uniqueidentifier, " +
+                                                               "other_user_id uniqueidentifier, previous_relationship_status varchar(32), " +
+                                                               "relationship_status varchar(32), previous_rating int, rating int); ";
+
+    private static final String OUTPUT_INSERTED_RELATIONSHIPS = "OUTPUT inserted.user_id, inserted.other_user_id, null, " +
+                                                                "inserted.relationship_status, null, inserted.rating " +
+                                                                "INTO @relationship_changes ";
+
+    private static final String OUTPUT_UPDATED_RELATIONSHIPS = "OUTPUT inserted.user_id, inserted.other_user_id, deleted.relationship_status, " +
+                                                               "inserted.relationship_status, deleted.rating, inserted.rating " +
+                                                               "INTO @relationship_changes ";
+
+    private static final String OUTPUT_DELETED_RELATIONSHIPS = "OUTPUT deleted.user_id, deleted.other_user_id, deleted.relationship_status, " +
+                                                               "null, deleted.rating, null " +
+                                                               "INTO @relationship_changes ";
+
+    // Applies the collected relationship changes to the friend count of each user and the ratings received by each other user
+    private static final String APPLY_RELATIONSHIP_CHANGES = "MERGE tbl_user_aggregates WITH (HOLDLOCK) AS target " +
+                                                             "USING (SELECT user_id, SUM(friends_delta) AS friends_delta, " +
+                                                             "SUM(rating_sum_delta) AS rating_sum_delta, SUM(rating_count_delta) AS rating_count_delta " +
+                                                             "FROM (SELECT user_id, " +
+                                                             "IIF(relationship_status = 'friends', 1, 0) - IIF(previous_relationship_status = 'friends', 1, 0) AS friends_delta, " +
+                                                             "0 AS rating_sum_delta, 0 AS rating_count_delta " +
+                                                             "FROM @relationship_changes " +
+                                                             "UNION ALL " +
+                                                             "SELECT other_user_id, 0, ISNULL(rating, 0) - ISNULL(previous_rating, 0), " +
+                                                             "IIF(rating IS NULL, 0, 1) - IIF(previous_rating IS NULL, 0, 1) " +
+                                                             "FROM @relationship_changes) AS deltas " +
+                                                             "GROUP BY user_id " +
+                                                             "HAVING SUM(friends_delta) <> 0 OR SUM(rating_sum_delta) <> 0 OR SUM(rating_count_delta) <> 0) AS source " +
+                                                             "ON target.user_id = source.user_id " +
+                                                             "WHEN MATCHED THEN UPDATE SET number_of_friends = target.number_of_friends + source.friends_delta, " +
+                                                             "rating_sum = target.rating_sum + source.rating_sum_delta, " +
+                                                             "rating_count = target.rating_count + source.rating_count_delta " +
+                                                             "WHEN NOT MATCHED THEN INSERT " +
+                                                             "VALUES (source.user_id, source.friends_delta, source.rating_sum_delta, source.rating_count_delta);";
+
     // Counts number of active transactions on the current connection
-    public static final String SYSTEM_TRANSACTION_COUNT = "SELECT @@TRANCOUNT AS transaction_count";
+    public static final SqlStatement SYSTEM_TRANSACTION_COUNT = new SqlStatement("SELECT @@TRANCOUNT AS transaction_count");
 
     // Creates a course record
-    public static final String CREATE_COURSE = "INSERT INTO tbl_courses " +
-                                               "VALUES (NEWID(), ?, ?)";
+    public static final SqlStatement CREATE_COURSE = new SqlStatement("INSERT INTO tbl_courses (course_code, university_id) " +
+                                                                      "VALUES (?, ?)", VARCHAR, UNIQUEIDENTIFIER);
 
     // Creates a user media record
-    public static final String CREATE_MEDIA = "INSERT INTO tbl_media " +
-                                              "VALUES (?, ?, ?)";
+    public static final SqlStatement CREATE_MEDIA = new SqlStatement("INSERT INTO tbl_media " +
+                                                                     "VALUES (?, ?, ?)", UNIQUEIDENTIFIER, INT, VARCHAR);
 
     // Creates a user course registration record
-    public static final String CREATE_REGISTRATION = "INSERT INTO tbl_registration " +
-                                                     "VALUES (NEWID(), ?, ?)";
+    public static final SqlStatement CREATE_REGISTRATION = new SqlStatement("INSERT INTO tbl_registration (user_id, course_id) " +
+                                                                            "VALUES (?, ?)", UNIQUEIDENTIFIER, UNIQUEIDENTIFIER);
 
     // Creates a relationship record between two users
-    public static final String CREATE_RELATIONSHIP = "INSERT INTO tbl_relationship " +
-                                                     "VALUES (NEWID(), ?, ?, ?, ?)";
+    public static final SqlStatement CREATE_RELATIONSHIP = new SqlStatement(DECLARE_RELATIONSHIP_CHANGES +
+                                                                            "INSERT INTO tbl_relationships (user_id, other_user_id, relationship_status, rating) " +
+                                                                            OUTPUT_INSERTED_RELATIONSHIPS +
+                                                                            "VALUES (?, ?, ?, ?); " +
+                                                                            APPLY_RELATIONSHIP_CHANGES, UNIQUEIDENTIFIER, UNIQUEIDENTIFIER, VARCHAR, INT);
 
     // Creates a university record
-    public static final String CREATE_UNIVERSITY = "INSERT INTO tbl_universities " +
-                                                   "VALUES (NEWID(), ?)";
-
-    // Creates a user record
-    public static final String CREATE_USER = "INSERT INTO tbl_users " +
-                                             "VALUES (NEWID(), ?, ?, ?, ?, ?, null, null, ?, GETUTCDATE(), 0," +
-                                             "null, null, 'verification', 0, null, null, null, null, null, null, null, null)";
+    public static final SqlStatement CREATE_UNIVERSITY = new SqlStatement("INSERT INTO tbl_universities (university_name) " +
+                                                                          "VALUES (?)", VARCHAR);
+
+    // Creates a user record, along with its credentials, lifecycle, and profile records
+    public static final SqlStatement CREATE_USER = new SqlStatement("DECLARE @user_ids TABLE (user_id uniqueidentifier); " +
+                                                                    "INSERT INTO tbl_users (user_handle, user_name, email) " +
+                                                                    "OUTPUT inserted.user_id INTO @user_ids " +
+                                                                    "VALUES (?, ?, ?); " +
+                                                                    "INSERT INTO tbl_user_credentials (user_id, salt, hash) " +
+                                                                    "SELECT user_id, ?, ? FROM @user_ids; " +
+                                                                    "INSERT INTO tbl_user_lifecycle (user_id, verification_code, verification_timestamp, " +
+                                                                    "verification_confirmed, most_recent_email_type) " +
+                                                                    "SELECT user_id, ?, GETUTCDATE(), 0, 'verification' FROM @user_ids; " +
+                                                                    "INSERT INTO tbl_user_profiles (user_id, profile_completed) " +
+                                                                    "SELECT user_id, 0 FROM @user_ids;", VARCHAR, VARCHAR, VARCHAR, VARBINARY, VARBINARY, VARCHAR);
 
     // Removes a user's media
-    public static final String DELETE_MEDIA = "DELETE FROM tbl_media " +
-                                              "WHERE user_id = ?";
+    public static final SqlStatement DELETE_MEDIA = new SqlStatement("DELETE FROM tbl_media " +
+                                                                     "WHERE user_id = ?", UNIQUEIDENTIFIER);
 
     // Removes a user's registration data
-    public static final String DELETE_REGISTRATION = "DELETE FROM tbl_registration " +
-                                                     "WHERE user_id = ?";
+    public static final SqlStatement DELETE_REGISTRATION = new SqlStatement("DELETE FROM tbl_registration " +
+                                                                            "WHERE user_id = ?", UNIQUEIDENTIFIER);
 
     // Removes a user's relationship record
-    public static final String DELETE_RELATIONSHIP = "DELETE FROM tbl_relationship " +
-                                                     "WHERE user_id = ? " +
-                                                     "AND other_user_id = ?";
+    public static final SqlStatement DELETE_RELATIONSHIP = new SqlStatement(DECLARE_RELATIONSHIP_CHANGES +
+                                                                            "DELETE FROM tbl_relationships " +
+                                                                            OUTPUT_DELETED_RELATIONSHIPS +
+                                                                            "WHERE user_id = ? " +
+                                                                            "AND other_user_id = ?; " +
+                                                                            APPLY_RELATIONSHIP_CHANGES, UNIQUEIDENTIFIER, UNIQUEIDENTIFIER);
+
+    // Removes the relationship records of a JSON array of user_id, other_user_id objects, without changing the aggregates
+    public static final SqlStatement DELETE_RELATIONSHIPS = new SqlStatement("DELETE relationships FROM tbl_relationships AS relationships " +
+                                                                             "JOIN OPENJSON(?) WITH (user_id uniqueidentifier, other_user_id uniqueidentifier) AS source " +
+                                                                             "ON relationships.user_id = source.user_id " +
+                                                                             "AND relationships.other_user_id = source.other_user_id", NVARCHAR);
 
     // Removes an unverified user
-    public static final String DELETE_UNVERIFIED_USER = "DELETE FROM tbl_users " +
-                                                        "WHERE email = ? " +
-                                                        "AND verification_confirmed = 0";
+    public static final SqlStatement DELETE_UNVERIFIED_USER = new SqlStatement("DELETE users FROM tbl_users AS users " +
+                                                                               "JOIN tbl_user_lifecycle AS lifecycle ON lifecycle.user_id = users.user_id " +
+                                                                               "WHERE users.email = ? " +
+                                                                               "AND lifecycle.verification_confirmed = 0", VARCHAR);
+
+    // Recomputes every aggregate record from tbl_relationships, replacing the existing aggregate records
+    public static final SqlStatement UPDATE_ALL_USER_AGGREGATES = new SqlStatement("DELETE FROM tbl_user_aggregates; " +
+                                                                                   "INSERT INTO tbl_user_aggregates (user_id, number_of_friends, rating_sum, rating_count) " +
+                                                                                   "SELECT user_id, SUM(friends), SUM(rating_sum), SUM(rating_count) " +
+                                                                                   "FROM (SELECT user_id, IIF(relationship_status = 'friends', 1, 0) AS friends, " +
+                                                                                   "0 AS rating_sum, 0 AS rating_count " +
+                                                                                   "FROM tbl_relationships " +
+                                                                                   "UNION ALL " +
+                                                                                   "SELECT other_user_id, 0, ISNULL(rating, 0), IIF(rating IS NULL, 0, 1) " +
+                                                                                   "FROM tbl_relationships) AS aggregates " +
+                                                                                   "GROUP BY user_id " +
+                                                                                   "HAVING SUM(friends) <> 0 OR SUM(rating_count) <> 0;");
 
     // Sets a user's biography field
-    public static final String UPDATE_BIOGRAPHY = "UPDATE tbl_users " +
-                                                  "SET biography = ? " +
-                                                  "WHERE user_id = ?";
+    public static final SqlStatement UPDATE_BIOGRAPHY = new SqlStatement("UPDATE tbl_user_profiles " +
+                                                                         "SET biography = ? " +
+                                                                         "WHERE user_id = ?", VARCHAR, UNIQUEIDENTIFIER);
 
     // Sets a user's card_color field
-    public static final String UPDATE_CARD_COLOR = "UPDATE tbl_users " +
-                                                   "SET card_color = ? " +
-                                                   "WHERE user_id = ?";
+    public static final SqlStatement UPDATE_CARD_COLOR = new SqlStatement("UPDATE tbl_user_profiles " +
+                                                                          "SET card_color = ? " +
+                                                                          "WHERE user_id = ?", VARCHAR, UNIQUEIDENTIFIER);
 
     // Sets a user's salt and hash fields
-    public static final String UPDATE_CREDENTIALS = "UPDATE tbl_users " +
-                                                    "SET salt = ?, hash = ? " +
-                                                    "WHERE user_id = ?";
+    public static final SqlStatement UPDATE_CREDENTIALS = new SqlStatement("UPDATE tbl_user_credentials " +
+                                                                           "SET salt = ?, hash = ? " +
+                                                                           "WHERE user_id = ?", VARBINARY, VARBINARY, UNIQUEIDENTIFIER);
 
     // Sets a user's date of birth field
-    public static final String UPDATE_DATE_OF_BIRTH = "UPDATE tbl_users " +
-                                                      "SET date_of_birth = ? " +
-                                                      "WHERE user_id = ?";
+    public static final SqlStatement UPDATE_DATE_OF_BIRTH = new SqlStatement("UPDATE tbl_user_profiles " +
+                                                                             "SET date_of_birth = ? " +
+                                                                             "WHERE user_id = ?", DATE, UNIQUEIDENTIFIER);
+
+    // Recomputes the number_of_friends, rating_sum, and rating_count fields for a comma-separated list of user_ids
+    // from tbl_relationships, correcting and returning the aggregate records that have drifted
+    public static final SqlStatement UPDATE_DRIFTED_USER_AGGREGATES = new SqlStatement("MERGE tbl_user_aggregates WITH (HOLDLOCK) AS target " +
+                                                                                       "USING (SELECT users.user_id, " +
+                                                                                       "(SELECT COUNT(*) FROM tbl_relationships WITH (HOLDLOCK) " +
+                                                                                       "WHERE user_id = users.user_id AND relationship_status = 'friends') AS number_of_friends, " +
+                                                                                       "(SELECT ISNULL(SUM(rating), 0) FROM tbl_relationships WITH (HOLDLOCK) " +
+                                                                                       "WHERE other_user_id = users.user_id) AS rating_sum, " +
+                                                                                       "(SELECT COUNT(rating) FROM tbl_relationships WITH (HOLDLOCK) " +
+                                                                                       "WHERE other_user_id = users.user_id) AS rating_count " +
+                                                                                       "FROM (SELECT CAST(value AS uniqueidentifier) AS user_id " +
+                                                                                       "FROM STRING_SPLIT(?, ',')) AS users) AS source " +
+                                                                                       "ON target.user_id = source.user_id " +
+                                                                                       "WHEN MATCHED AND (target.number_of_friends <> source.number_of_friends " +
+                                                                                       "OR target.rating_sum <> source.rating_sum " +
+                                                                                       "OR target.rating_count <> source.rating_count) THEN UPDATE " +
+                                                                                       "SET number_of_friends = source.number_of_friends, " +
+                                                                                       "rating_sum = source.rating_sum, rating_count = source.rating_count " +
+                                                                                       "WHEN NOT MATCHED AND (source.number_of_friends <> 0 OR source.rating_count <> 0) THEN INSERT " +
+                                                                                       "VALUES (source.user_id, source.number_of_friends, source.rating_sum, source.rating_count) " +
+                                                                                       "OUTPUT inserted.user_id, " +
+                                                                                       "ISNULL(deleted.number_of_friends, 0) AS previous_number_of_friends, " +
+                                                                                       "ISNULL(deleted.rating_sum, 0) AS previous_rating_sum, " +
+                                                                                       "ISNULL(deleted.rating_count, 0) AS previous_rating_count, " +
+                                                                                       "inserted.number_of_friends, inserted.rating_sum, inserted.rating_count;", VARCHAR);
 
     // Sets a user's university_id, major, standing, and gpa fields
-    public static final String UPDATE_EDUCATION_INFORMATION = "UPDATE tbl_users " +
-                                                              "SET university_id = ?, major = ?, " +
-                                                              "standing = ?, gpa = ? " +
-                                                              "WHERE user_id = ?";
+    public static final SqlStatement UPDATE_EDUCATION_INFORMATION = new SqlStatement("UPDATE tbl_user_profiles " +
+                                                                                     "SET university_id = ?, major = ?, " +
+                                                                                     "standing = ?, gpa = ? " +
+                                                                                     "WHERE user_id = ?", UNIQUEIDENTIFIER, VARCHAR, VARCHAR, VARCHAR, UNIQUEIDENTIFIER);
 
-    // Sets a user's has_verified_email field
-    public static final String UPDATE_EMAIL_VERIFICATION = "UPDATE tbl_users " +
-                                                           "SET verification_confirmed = 1 " +
-                                                           "WHERE verification_code = ?";
+    // Sets a user's verification_confirmed field
+    public static final SqlStatement UPDATE_EMAIL_VERIFICATION = new SqlStatement("UPDATE tbl_user_lifecycle " +
+                                                                                  "SET verification_confirmed = 1 " +
+                                                                                  "WHERE verification_code = ?", VARCHAR);
 
     // Set's a user's password_reset_code, password_reset_timestamp fields
-    public static final String UPDATE_PASSWORD_RESET_CODE = "UPDATE tbl_users " +
-                                                            "SET password_reset_code = ?, " +
-                                                            "password_reset_timestamp = GETUTCDATE()," +
-                                                            "most_recent_email_type = 'password_reset'" +
-                                                            "WHERE email = ?";
-
-    // Sets a user's user_handle, user_name, email, date_of_birth, city, state, and country fields
-    public static final String UPDATE_PERSONAL_INFORMATION = "UPDATE tbl_users " +
-                                                             "SET user_handle = ?, user_name = ?, " +
-                                                             "email = ?, date_of_birth = ? " +
-                                                             "WHERE user_id = ?";
-
-    // Sets a user's profile_picture_url field
-    public static final String UPDATE_PROFILE_PICTURE = "UPDATE tbl_users " +
-                                                        "SET profile_picture_url = ? " +
-                                                        "WHERE user_id = ?";
+    public static final SqlStatement UPDATE_PASSWORD_RESET_CODE = new SqlStatement("UPDATE lifecycle " +
+                                                                                   "SET password_reset_code = ?, " +
+                                                                                   "password_reset_timestamp = GETUTCDATE(), " +
+                                                                                   "most_recent_email_type = 'password_reset' " +
+                                                                                   "FROM tbl_user_lifecycle AS lifecycle " +
+                                                                                   "JOIN tbl_users AS users ON users.user_id = lifecycle.user_id " +
+                                                                                   "WHERE users.email = ?", VARCHAR, VARCHAR);
+
+    // Sets a user's user_handle, user_name, email, and date_of_birth fields
+    public static final SqlStatement UPDATE_PERSONAL_INFORMATION = new SqlStatement("UPDATE tbl_users " +
+                                                                                    "SET user_handle = ?, user_name = ?, email = ? " +
+                                                                                    "WHERE user_id = ?; " +
+                                                                                    "UPDATE tbl_user_profiles " +
+                                                                                    "SET date_of_birth = ? " +
+                                                                                    "WHERE user_id = ?;", VARCHAR, VARCHAR, VARCHAR, UNIQUEIDENTIFIER, DATE, UNIQUEIDENTIFIER);
+
+    // Sets a user's profile_picture_url, profile_picture_card_url, and profile_picture_thumbnail_url fields
+    public static final SqlStatement UPDATE_PROFILE_PICTURE = new SqlStatement("UPDATE tbl_users " +
+                                                                               "SET profile_picture_url = ?, profile_picture_card_url = ?, " +
+                                                                               "profile_picture_thumbnail_url = ? " +
+                                                                               "WHERE user_id = ?", VARCHAR, VARCHAR, VARCHAR, UNIQUEIDENTIFIER);
 
     // Sets a user's refresh_token_id and refresh_token_family fields
-    public static final String UPDATE_REFRESH_TOKEN = "UPDATE tbl_users " +
-                                                      "SET refresh_token_id = ?, refresh_token_family = ? " +
-                                                      "WHERE user_id = ?";
+    public static final SqlStatement UPDATE_REFRESH_TOKEN = new SqlStatement("UPDATE tbl_user_credentials " +
+                                                                             "SET refresh_token_id = ?, refresh_token_family = ? " +
+                                                                             "WHERE user_id = ?", VARCHAR, VARCHAR, UNIQUEIDENTIFIER);
 
     // Sets a user's relationship_status and rating fields
-    public static final String UPDATE_RELATIONSHIP = "UPDATE tbl_relationships " +
-                                                     "SET relationship_status = ?, rating = ? " +
-                                                     "WHERE user_id = ? " +
-                                                     "AND other_user_id = ?";
-
-    // Gets the course record for a course_code, university_id pair
-    public static final String RESOLVE_COURSE_CODE_UNIVERSITY_ID_TO_COURSE_RECORD = "SELECT * FROM tbl_courses " +
-                                                                                  "WHERE course_code = ? " +
-                                                                                  "AND university_id = ?";
-
-    // Gets the user record for an email
-    public static final String RESOLVE_EMAIL_TO_USER_RECORD = "SELECT * FROM tbl_users " +
-                                                              "WHERE email = ?";
-
-    // Gets the user record for a password reset code
-    public static final String RESOLVE_PASSWORD_RESET_CODE_TO_USER_RECORD = "SELECT * FROM tbl_users " +
-                                                                            "WHERE password_reset_code = ?";
-
-    // Gets the university record for a university_id
-    public static final String RESOLVE_UNIVERSITY_ID_TO_UNIVERSITY_RECORD = "SELECT * FROM tbl_universities " +
-                                                                            "WHERE university_id = ?";
-
-    // Gets the university record for a university_name
-    public static final String RESOLVE_UNIVERSITY_NAME_TO_UNIVERSITY_RECORD = "SELECT * FROM tbl_universities " +
-                                                                              "WHERE university_name = ?";
-
-    // Gets the user record for a user_handle
-    public static final String RESOLVE_USER_HANDLE_TO_USER_RECORD = "SELECT * FROM tbl_users " +
-                                                                    "WHERE user_handle = ?";
-
-    // Gets the relationship record for a user_id, other_user_id pair
-    public static final String RESOLVE_USER_ID_OTHER_USER_ID_TO_RELATIONSHIP_RECORD = "SELECT * FROM tbl_relationships " +
-                                                                                      "WHERE user_id = ? " +
-                                                                                      "AND other_user_id ?";
-
-    // Gets the course records for a user_id
-    public static final String RESOLVE_USER_ID_TO_COURSE_RECORDS = "SELECT tbl_courses.* " +
-                                                                   "FROM tbl_courses, tbl_registration " +
-                                                                   "WHERE tbl_registration.user_id = ? " +
-                                                                   "AND tbl_courses.course_id = tbl_registration.course_id " +
-                                                                   "ORDER BY tbl_courses.course_code";
-
-    // Gets the media records for a user_id
-    public static final String RESOLVE_USER_ID_TO_MEDIA_RECORDS = "SELECT * FROM tbl_media " +
-                                                                  "WHERE user_id = ? " +
-                                                                  "ORDER BY ordering";
-
-    // Gets the number of friends for a user_id
-    public static final String RESOLVE_USER_ID_TO_NUMBER_OF_FRIENDS = "SELECT COUNT(*) AS number_of_friends " +
-                                                                      "FROM tbl_relationships " +
-                                                                      "WHERE user_id = ? " +
-                                                                      "AND relationship_status = 'friends'";
-
-    // Gets the rating for a user_id
-    public static final String RESOLVE_USER_ID_TO_RATING = "SELECT AVG(rating) AS rating " +
-                                                           "FROM tbl_relationships " +
-                                                           "WHERE user_id = ?";
-
-    // Gets the user record for a user_id
-    public static final String RESOLVE_USER_ID_TO_USER_RECORD = "SELECT * FROM tbl_users " +
-                                                                "WHERE user_id = ?";
-
-    // Gets the user record for a verification code
-    public static final String RESOLVE_VERIFICATION_CODE_TO_USER_RECORD = "SELECT * FROM tbl_users " +
-                                                                          "WHERE verification_code = ?";
+    public static final SqlStatement UPDATE_RELATIONSHIP = new SqlStatement(DECLARE_RELATIONSHIP_CHANGES +
+                                                                            "UPDATE tbl_relationships " +
+                                                                            "SET relationship_status = ?, rating = ? " +
+                                                                            OUTPUT_UPDATED_RELATIONSHIPS +
+                                                                            "WHERE user_id = ? " +
+                                                                            "AND other_user_id = ?; " +
+                                                                            APPLY_RELATIONSHIP_CHANGES, VARCHAR, INT, UNIQUEIDENTIFIER, UNIQUEIDENTIFIER);
+
+    // Sets a user's relationship_status field, creating the relationship record if it does not exist
+    public static final SqlStatement UPDATE_RELATIONSHIP_STATUS = new SqlStatement(DECLARE_RELATIONSHIP_CHANGES +
+                                                                                   "UPDATE tbl_relationships " +
+                                                                                   "SET relationship_status = ? " +
+                                                                                   OUTPUT_UPDATED_RELATIONSHIPS +
+                                                                                   "WHERE user_id = ? " +
+                                                                                   "AND other_user_id = ? " +
+                                                                                   "IF @@ROWCOUNT = 0 " +
+                                                                                   "INSERT INTO tbl_relationships (user_id, other_user_id, relationship_status) " +
+                                                                                   OUTPUT_INSERTED_RELATIONSHIPS +
+                                                                                   "VALUES (?, ?, ?); " +
+                                                                                   APPLY_RELATIONSHIP_CHANGES, VARCHAR, UNIQUEIDENTIFIER, UNIQUEIDENTIFIER, UNIQUEIDENTIFIER, UNIQUEIDENTIFIER, VARCHAR);
+
+    // Sets the relationship_status field of a JSON array of user_id, other_user_id, relationship_status objects,
+    // creating the relationship records that do not exist
+    public static final SqlStatement UPDATE_RELATIONSHIP_STATUSES = new SqlStatement(DECLARE_RELATIONSHIP_CHANGES +
+                                                                                     "MERGE tbl_relationships WITH (HOLDLOCK) AS target " +
+                                                                                     "USING (SELECT user_id, other_user_id, relationship_status FROM OPENJSON(?) WITH (user_id uniqueidentifier, " +
+                                                                                     "other_user_id uniqueidentifier, relationship_status varchar(32))) AS source " +
+                                                                                     "ON target.user_id = source.user_id " +
+                                                                                     "AND target.other_user_id = source.other_user_id " +
+                                                                                     "WHEN MATCHED THEN UPDATE SET relationship_status = source.relationship_status " +
+                                                                                     "WHEN NOT MATCHED THEN INSERT (user_id, other_user_id, relationship_status) " +
+                                                                                     "VALUES (source.user_id, source.other_user_id, source.relationship_status) " +
+                                                                                     OUTPUT_UPDATED_RELATIONSHIPS + "; " +
+                                                                                     APPLY_RELATIONSHIP_CHANGES, NVARCHAR);
+
+    // Sets the relationship_status and rating fields of a JSON array of user_id, other_user_id, relationship_status, rating
+    // objects, creating the relationship records that do not exist, without changing the aggregates
+    public static final SqlStatement UPDATE_RELATIONSHIPS = new SqlStatement("MERGE tbl_relationships WITH (HOLDLOCK) AS target " +
+                                                                             "USING (SELECT user_id, other_user_id, relationship_status, rating FROM OPENJSON(?) WITH (user_id uniqueidentifier, " +
+                                                                             "other_user_id uniqueidentifier, relationship_status varchar(32), rating int)) AS source " +
+                                                                             "ON target.user_id = source.user_id " +
+                                                                             "AND target.other_user_id = source.other_user_id " +
+                                                                             "WHEN MATCHED THEN UPDATE SET relationship_status = source.relationship_status, rating = source.rating " +
+                                                                             "WHEN NOT MATCHED THEN INSERT (user_id, other_user_id, relationship_status, rating) " +
+                                                                             "VALUES (source.user_id, source.other_user_id, source.relationship_status, source.rating);", NVARCHAR);
+
+    // Gets the course_id, course_code, and university_id of all courses
+    public static final SqlStatement RESOLVE_ALL_COURSE_RECORDS = new SqlStatement("SELECT course_id, course_code, university_id FROM tbl_courses");
+
+    // Gets the user_id, other_user_id, relationship_status, and rating of all relationship records
+    public static final SqlStatement RESOLVE_ALL_RELATIONSHIP_RATING_RECORDS = new SqlStatement("SELECT user_id, other_user_id, relationship_status, rating " +
+                                                                                                "FROM tbl_relationships");
+
+    // Gets the user_id, other_user_id, and relationship_status of all relationship records
+    public static final SqlStatement RESOLVE_ALL_RELATIONSHIP_RECORDS = new SqlStatement("SELECT user_id, other_user_id, relationship_status " +
+                                                                                         "FROM tbl_relationships");
+
+    // Gets the user_id and course_id of all registration records
+    public static final SqlStatement RESOLVE_ALL_REGISTRATION_RECORDS = new SqlStatement("SELECT user_id, course_id FROM tbl_registration");
+
+    // Gets the university_id and university_name of all universities
+    public static final SqlStatement RESOLVE_ALL_UNIVERSITY_RECORDS = new SqlStatement("SELECT university_id, university_name FROM tbl_universities");
+
+    // Gets the mini profile records and verification status of all users. Mini profiles use the thumbnail profile picture
+    public static final SqlStatement RESOLVE_ALL_USER_MINI_RECORDS = new SqlStatement("SELECT users.user_id, users.user_handle, users.user_name, " +
+                                                                                      "COALESCE(users.profile_picture_thumbnail_url, users.profile_picture_url) AS profile_picture_url, " +
+                                                                                      "lifecycle.verification_confirmed " +
+                                                                                      "FROM tbl_users AS users " +
+                                                                                      "JOIN tbl_user_lifecycle AS lifecycle ON lifecycle.user_id = users.user_id");
+
+    // Gets the user_id and university_id of all verified users
+    public static final SqlStatement RESOLVE_ALL_VERIFIED_USER_RECORDS = new SqlStatement("SELECT profiles.user_id, profiles.university_id " +
+                                                                                          "FROM tbl_user_profiles AS profiles " +
+                                                                                          "JOIN tbl_user_lifecycle AS lifecycle ON lifecycle.user_id = profiles.user_id " +
+                                                                                          "WHERE lifecycle.verification_confirmed = 1");
+
+    // Gets the course_id, course_code, and university_id for a course_code, university_id pair
+    public static final SqlStatement RESOLVE_COURSE_CODE_UNIVERSITY_ID_TO_COURSE_RECORD = new SqlStatement("SELECT course_id, course_code, university_id " +
+                                                                                                         "FROM tbl_courses " +
+                                                                                                         "WHERE course_code = ? " +
+                                                                                                         "AND university_id = ?", VARCHAR, UNIQUEIDENTIFIER);
+
+    // Gets the course_id, course_code, and university_id for a course_id
+    public static final SqlStatement RESOLVE_COURSE_ID_TO_COURSE_RECORD = new SqlStatement("SELECT course_id, course_code, university_id " +
+                                                                                           "FROM tbl_courses " +
+                                                                                           "WHERE course_id = ?", UNIQUEIDENTIFIER);
+
+    // Gets the user_id, salt, hash, refresh_token_id, and refresh_token_family for an email
+    public static final SqlStatement RESOLVE_EMAIL_TO_CREDENTIALS_RECORD = new SqlStatement("SELECT users.user_id, credentials.salt, credentials.hash, " +
+                                                                                            "credentials.refresh_token_id, credentials.refresh_token_family " +
+                                                                                            "FROM tbl_users AS users " +
+                                                                                            "JOIN tbl_user_credentials AS credentials ON credentials.user_id = users.user_id " +
+                                                                                            "WHERE users.email = ?", VARCHAR);
+
+    // Gets the user_id, email, and verification and password reset state for an email
+    public static final SqlStatement RESOLVE_EMAIL_TO_LIFECYCLE_RECORD = new SqlStatement("SELECT users.user_id, users.email, lifecycle.verification_code, " +
+                                                                                          "lifecycle.verification_timestamp, lifecycle.verification_confirmed, " +
+                                                                                          "lifecycle.password_reset_code, lifecycle.password_reset_timestamp, " +
+                                                                                          "lifecycle.most_recent_email_type " +
+                                                                                          "FROM tbl_users AS users " +
+                                                                                          "JOIN tbl_user_lifecycle AS lifecycle ON lifecycle.user_id = users.user_id " +
+                                                                                          "WHERE users.email = ?", VARCHAR);
+
+    // Gets the profile_completed field for an email
+    public static final SqlStatement RESOLVE_EMAIL_TO_PROFILE_COMPLETED = new SqlStatement("SELECT profiles.profile_completed " +
+                                                                                           "FROM tbl_users AS users " +
+                                                                                           "JOIN tbl_user_profiles AS profiles ON profiles.user_id = users.user_id " +
+                                                                                           "WHERE users.email = ?", VARCHAR);
+
+    // Gets the user_id, user_handle, and user_name for an email
+    public static final SqlStatement RESOLVE_EMAIL_TO_USER_RECORD = new SqlStatement("SELECT user_id, user_handle, user_name FROM tbl_users " +
+                                                                                     "WHERE email = ?", VARCHAR);
+
+    // Gets the user_id, email, and verification and password reset state for a password reset code
+    public static final SqlStatement RESOLVE_PASSWORD_RESET_CODE_TO_LIFECYCLE_RECORD = new SqlStatement("SELECT lifecycle.user_id, users.email, " +
+                                                                                                        "lifecycle.verification_code, lifecycle.verification_timestamp, " +
+                                                                                                        "lifecycle.verification_confirmed, lifecycle.password_reset_code, " +
+                                                                                                        "lifecycle.password_reset_timestamp, lifecycle.most_recent_email_type " +
+                                                                                                        "FROM tbl_user_lifecycle AS lifecycle " +
+                                                                                                        "JOIN tbl_users AS users ON users.user_id = lifecycle.user_id " +
+                                                                                                        "WHERE lifecycle.password_reset_code = ?", VARCHAR);
+
+    // Gets the university_id and university_name for a university_id
+    public static final SqlStatement RESOLVE_UNIVERSITY_ID_TO_UNIVERSITY_RECORD = new SqlStatement("SELECT university_id, university_name FROM tbl_universities " +
+                                                                                                   "WHERE university_id = ?", UNIQUEIDENTIFIER);
+
+    // Gets the university_id and university_name for a university_name
+    public static final SqlStatement RESOLVE_UNIVERSITY_NAME_TO_UNIVERSITY_RECORD = new SqlStatement("SELECT university_id, university_name FROM tbl_universities " +
+                                                                                                     "WHERE university_name = ?", VARCHAR);
+
+    // Gets the user_id, user_handle, and user_name for a user_handle
+    public static final SqlStatement RESOLVE_USER_HANDLE_TO_USER_RECORD = new SqlStatement("SELECT user_id, user_handle, user_name FROM tbl_users " +
+                                                                                           "WHERE user_handle = ?", VARCHAR);
+
+    // Gets the user_id, salt, hash, refresh_token_id, and refresh_token_family for a user_id
+    public static final SqlStatement RESOLVE_USER_ID_TO_CREDENTIALS_RECORD = new SqlStatement("SELECT user_id, salt, hash, refresh_token_id, refresh_token_family " +
+                                                                                              "FROM tbl_user_credentials " +
+                                                                                              "WHERE user_id = ?", UNIQUEIDENTIFIER);
+
+    // Gets the media_urls for a user_id, in order
+    public static final SqlStatement RESOLVE_USER_ID_TO_MEDIA_RECORDS = new SqlStatement("SELECT media_url FROM tbl_media " +
+                                                                                         "WHERE user_id = ? " +
+                                                                                         "ORDER BY ordering", UNIQUEIDENTIFIER);
+
+    // Gets the complete profile fields for a user_id, with the full and card profile pictures
+    public static final SqlStatement RESOLVE_USER_ID_TO_PROFILE_RECORD = new SqlStatement("SELECT users.user_handle, users.user_name, users.profile_picture_url, " +
+                                                                                          "COALESCE(users.profile_picture_card_url, users.profile_picture_url) AS profile_picture_card_url, " +
+                                                                                          "profiles.card_color, profiles.date_of_birth, profiles.university_id, " +
+                                                                                          "profiles.major, profiles.standing, profiles.gpa, profiles.biography " +
+                                                                                          "FROM tbl_users AS users " +
+                                                                                          "JOIN tbl_user_profiles AS profiles ON profiles.user_id = users.user_id " +
+                                                                                          "WHERE users.user_id = ?", UNIQUEIDENTIFIER);
+
+    // Gets the course_ids that a user_id is registered in
+    public static final SqlStatement RESOLVE_USER_ID_TO_REGISTRATION_RECORDS = new SqlStatement("SELECT course_id FROM tbl_registration " +
+                                                                                                "WHERE user_id = ?", UNIQUEIDENTIFIER);
+
+    // Gets the friend count and received rating aggregates for a user_id
+    public static final SqlStatement RESOLVE_USER_ID_TO_USER_AGGREGATES_RECORD = new SqlStatement("SELECT number_of_friends, rating_sum, rating_count " +
+                                                                                                  "FROM tbl_user_aggregates " +
+                                                                                                  "WHERE user_id = ?", UNIQUEIDENTIFIER);
+
+    // Gets the mini profile record for a user_id, with the thumbnail profile picture
+    public static final SqlStatement RESOLVE_USER_ID_TO_USER_MINI_RECORD = new SqlStatement("SELECT user_id, user_handle, user_name, " +
+                                                                                            "COALESCE(profile_picture_thumbnail_url, profile_picture_url) AS profile_picture_url " +
+                                                                                            "FROM tbl_users " +
+                                                                                            "WHERE user_id = ?", UNIQUEIDENTIFIER);
+
+    // Gets the next user_ids after a user_id, in user_id order
+    public static final SqlStatement RESOLVE_USER_IDS_AFTER_USER_ID = new SqlStatement("SELECT TOP (?) user_id FROM tbl_users " +
+                                                                                       "WHERE user_id > ? " +
+                                                                                       "ORDER BY user_id", INT, UNIQUEIDENTIFIER);
+
+    // Gets the discover card records for a comma-separated list of user_ids, with the thumbnail and card profile pictures
+    public static final SqlStatement RESOLVE_USER_IDS_TO_DISCOVER_CARD_RECORDS = new SqlStatement("SELECT user_id, user_handle, user_name, " +
+                                                                                                  "COALESCE(profile_picture_thumbnail_url, profile_picture_url) AS profile_picture_url, " +
+                                                                                                  "COALESCE(profile_picture_card_url, profile_picture_url) AS profile_picture_card_url " +
+                                                                                                  "FROM tbl_users " +
+                                                                                                  "WHERE user_id IN (SELECT CAST(value AS uniqueidentifier) FROM STRING_SPLIT(?, ','))", VARCHAR);
+
+    // Gets the user_id, email, and verification and password reset state for a verification code
+    public static final SqlStatement RESOLVE_VERIFICATION_CODE_TO_LIFECYCLE_RECORD = new SqlStatement("SELECT lifecycle.user_id, users.email, " +
+                                                                                                      "lifecycle.verification_code, lifecycle.verification_timestamp, " +
+                                                                                                      "lifecycle.verification_confirmed, lifecycle.password_reset_code, " +
+                                                                                                      "lifecycle.password_reset_timestamp, lifecycle.most_recent_email_type " +
+                                                                                                      "FROM tbl_user_lifecycle AS lifecycle " +
+                                                                                                      "JOIN tbl_users AS users ON users.user_id = lifecycle.user_id " +
+                                                                                                      "WHERE lifecycle.verification_code = ?", VARCHAR);
 }
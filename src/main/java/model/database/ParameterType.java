@@ -0,0 +1,26 @@
+package model.database;
+
+import java.sql.*;
+
+/**
+ * SQL Server type of a statement parameter. Each parameter is sent as the type of the column it is compared to or
+ * stored in, so that the server does not convert the column to the parameter's type and can seek its indexes
+ */
+public enum ParameterType {
+
+    DATE(Types.DATE),
+    INT(Types.INTEGER),
+    // Only for parameters the server reads as Unicode, such as the input of OPENJSON
+    NVARCHAR(Types.NVARCHAR),
+    UNIQUEIDENTIFIER(microsoft.sql.Types.GUID),
+    VARBINARY(Types.VARBINARY),
+    // Sent as varchar, since the connection does not send string parameters as Unicode
+    VARCHAR(Types.VARCHAR);
+
+    // Type code of the parameter, as bound by setNull and setObject
+    final int sqlType;
+
+    ParameterType(int sqlType) {
+        this.sqlType = sqlType;
+    }
+}
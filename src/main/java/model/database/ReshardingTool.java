@@ -0,0 +1,160 @@
+package model.database;
+
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+
+import org.springframework.http.*;
+
+import static model.database.DatabaseRecords.*;
+
+/**
+ * ReshardingTool moves relationships between shards when shards are added, removed, or moved to another endpoint <br><br>
+ *
+ * Every relationship is scanned on its current shard, and those whose user is owned by a different shard in the
+ * target layout are copied to that shard in batches, then removed from the current shard. Once every relationship
+ * is on its owner's shard, the aggregates of every shard are rebuilt from its relationships. Since a relationship
+ * is only removed after it has been copied, an interrupted run loses nothing and can be run again <br><br>
+ *
+ * The backend must be stopped while resharding. Once resharding has finished, set RDS_SHARD_ENDPOINTS in
+ * database.credentials to the target layout and start the backend <br><br>
+ *
+ * Usage: ReshardingTool name=endpoint[:port][/database],...
+ */
+public final class ReshardingTool {
+
+    // Number of relationships copied or removed per transaction
+    public static final int BATCH_SIZE = 1000;
+
+    // Name of the primary database when the relationships have not been sharded
+    public static final String PRIMARY_SHARD_NAME = "primary";
+
+    private ReshardingTool() {}
+
+    public static void main(String[] args) throws IOException, SQLException {
+        if (args.length != 1) {
+            System.err.println("Usage: ReshardingTool name=endpoint[:port][/database],...");
+            System.exit(1);
+        }
+
+        Map<String, String> currentConnectionUrls = DatabaseConnection.getShardConnectionUrls();
+        if (currentConnectionUrls.isEmpty()) {
+            currentConnectionUrls = Map.of(PRIMARY_SHARD_NAME, DatabaseConnection.getConnectionUrl());
+        }
+        Map<String, String> targetConnectionUrls = DatabaseConnection.parseShardEndpoints(args[0]);
+
+        long numberOfMovedRelationships = reshard(currentConnectionUrls, targetConnectionUrls);
+        System.out.println("Moved " + numberOfMovedRelationships + " relationships to " + targetConnectionUrls.size() + " shards");
+        System.out.println("Set RDS_SHARD_ENDPOINTS=" + args[0] + " in database.credentials before starting the backend");
+    }
+
+    /**
+     * Moves every relationship from the current layout to its owner's shard in the target layout, and rebuilds the
+     * aggregates of every shard
+     *
+     * @param currentConnectionUrls JDBC urls of the shards the relationships are stored on, by shard name
+     * @param targetConnectionUrls  JDBC urls of the shards the relationships are moved to, by shard name
+     * @return number of relationships moved
+     * @throws RuntimeException if a batch cannot be copied or removed. the relationships are left on the shards
+     *                          they were on, so resharding can be run again
+     */
+    public static long reshard(Map<String, String> currentConnectionUrls, Map<String, String> targetConnectionUrls) throws SQLException {
+        ShardMap targetShardMap = new ShardMap(targetConnectionUrls.keySet());
+
+        for (Map.Entry<String, String> targetShard : targetConnectionUrls.entrySet()) {
+            int migrationsExecuted = DatabaseMigrations.migrateShard(targetShard.getValue());
+            System.out.println("Applied " + migrationsExecuted + " migrations to shard " + targetShard.getKey());
+        }
+
+        Map<String, DatabaseConnection> targetConnections = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, String> targetShard : targetConnectionUrls.entrySet()) {
+                targetConnections.put(targetShard.getKey(), new DatabaseConnection(targetShard.getValue(), false));
+            }
+
+            long numberOfMovedRelationships = 0;
+            for (Map.Entry<String, String> currentShard : currentConnectionUrls.entrySet()) {
+                long numberOfMovedShardRelationships = moveRelationships(currentShard.getValue(), targetShardMap,
+                                                                         targetConnectionUrls, targetConnections);
+                System.out.println("Moved " + numberOfMovedShardRelationships + " relationships from shard " + currentShard.getKey());
+                numberOfMovedRelationships += numberOfMovedShardRelationships;
+            }
+
+            // Shards that are removed from the layout are left without relationships, so their aggregates are cleared
+            for (String connectionUrl : currentConnectionUrls.values()) {
+                if (!targetConnectionUrls.containsValue(connectionUrl)) {
+                    DatabaseConnection dbconn = new DatabaseConnection(connectionUrl, false);
+                    try {
+                        check(dbconn.transaction_rebuildUserAggregates(), "rebuild aggregates");
+                    } finally {
+                        dbconn.closeConnection();
+                    }
+                }
+            }
+            for (Map.Entry<String, DatabaseConnection> targetConnection : targetConnections.entrySet()) {
+                check(targetConnection.getValue().transaction_rebuildUserAggregates(), "rebuild aggregates");
+                System.out.println("Rebuilt aggregates of shard " + targetConnection.getKey());
+            }
+            return numberOfMovedRelationships;
+
+        } finally {
+            for (DatabaseConnection dbconn : targetConnections.values()) {
+                dbconn.closeConnection();
+            }
+        }
+    }
+
+    /**
+     * Copies the relationships of a shard that belong on other shards in the target layout, then removes them
+     *
+     * @return number of relationships moved
+     */
+    private static long moveRelationships(String connectionUrl, ShardMap targetShardMap, Map<String, String> targetConnectionUrls,
+                                          Map<String, DatabaseConnection> targetConnections) throws SQLException {
+        Map<String, List<RelationshipRatingRecord>> batches = new HashMap<>();
+        // The scan holds the connection until it has finished, so the relationships are removed after the scan
+        List<RelationshipRatingRecord> movedRecords = new ArrayList<>();
+
+        DatabaseConnection dbconn = new DatabaseConnection(connectionUrl, false);
+        try {
+            check(dbconn.transaction_forEachRelationship(relationshipRecord -> {
+                String targetShardName = targetShardMap.getShard(relationshipRecord.userId());
+                if (targetConnectionUrls.get(targetShardName).equals(connectionUrl)) {
+                    return;
+                }
+
+                List<RelationshipRatingRecord> batch = batches.computeIfAbsent(targetShardName, shardName -> new ArrayList<>());
+                batch.add(relationshipRecord);
+                movedRecords.add(relationshipRecord);
+                if (batch.size() == BATCH_SIZE) {
+                    check(targetConnections.get(targetShardName).transaction_updateRelationships(batch), "copy relationships");
+                    batch.clear();
+                }
+            }), "scan relationships");
+
+            for (Map.Entry<String, List<RelationshipRatingRecord>> batch : batches.entrySet()) {
+                if (!batch.getValue().isEmpty()) {
+                    check(targetConnections.get(batch.getKey()).transaction_updateRelationships(batch.getValue()), "copy relationships");
+                }
+            }
+
+            for (int i = 0; i < movedRecords.size(); i += BATCH_SIZE) {
+                List<RelationshipRatingRecord> batch = movedRecords.subList(i, Math.min(i + BATCH_SIZE, movedRecords.size()));
+                check(dbconn.transaction_deleteRelationships(batch), "remove relationships");
+            }
+            return movedRecords.size();
+
+        } finally {
+            dbconn.closeConnection();
+        }
+    }
+
+    /**
+     * Stops resharding if a transaction has failed
+     */
+    private static void check(ResponseEntity<Object> status, String action) {
+        if (status.getStatusCode() != HttpStatus.OK) {
+            throw new RuntimeException("Failed to " + action + ": " + status.getStatusCode());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package model.database;
+
+import java.sql.*;
+
+/**
+ * Reads the current row of a ResultSet. Mappers read columns by index, in the order they are projected by their
+ * statement in DatabaseStatements, so no column is looked up by name
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    // Reads the only column of a single-column projection
+    RowMapper<Boolean> BOOLEAN = rs -> rs.getBoolean(1);
+    RowMapper<Integer> INTEGER = rs -> rs.getInt(1);
+    RowMapper<String> STRING = rs -> rs.getString(1);
+
+    T map(ResultSet rs) throws SQLException;
+}
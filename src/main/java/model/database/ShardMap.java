@@ -0,0 +1,76 @@
+package model.database;
+
+import java.nio.charset.*;
+import java.security.*;
+import java.util.*;
+
+/**
+ * ShardMap maps each user_id to the shard that owns the user's relationships by consistent hashing <br><br>
+ *
+ * Each shard is placed at VIRTUAL_NODES points on a ring of 64-bit hashes, and a user_id belongs to the shard at the
+ * first point at or after the user_id's hash. Adding or removing a shard only moves the user_ids between that shard
+ * and its neighbours on the ring, so resharding copies about 1/n of the relationships. Shards are placed by name,
+ * so a shard can be moved to another endpoint without moving its users
+ */
+public final class ShardMap {
+
+    // Points each shard is placed at on the ring. More points spread the users more evenly across the shards
+    public static final int VIRTUAL_NODES = 128;
+
+    private final List<String> shardNames;
+
+    private final NavigableMap<Long, String> ring;
+
+    /**
+     * Creates a ring of the shards
+     *
+     * @param shardNames names of the shards. must not be empty
+     */
+    public ShardMap(Collection<String> shardNames) {
+        if (shardNames.isEmpty()) {
+            throw new IllegalArgumentException("ShardMap requires at least one shard");
+        }
+        this.shardNames = List.copyOf(shardNames);
+
+        ring = new TreeMap<>();
+        for (String shardName : this.shardNames) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(shardName + "#" + i), shardName);
+            }
+        }
+    }
+
+    /**
+     * Gets the shard that owns a user's relationships
+     *
+     * @param userId user_id in any letter case, as SQL Server returns uniqueidentifiers in upper case
+     * @return name of the shard
+     */
+    public String getShard(String userId) {
+        Map.Entry<Long, String> point = ring.ceilingEntry(hash(userId.toLowerCase()));
+        return (point == null) ? ring.firstEntry().getValue() : point.getValue();
+    }
+
+    /**
+     * Returns the names of the shards, in the order they were specified
+     */
+    public List<String> getShardNames() {
+        return shardNames;
+    }
+
+    /**
+     * Hashes a key to a point on the ring. The hash must not change across JVMs, since it decides where rows are stored
+     */
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package model.database;
+
+import java.util.*;
+
+/**
+ * SQL text of a statement, and the types of its parameters in the order they appear in the text
+ */
+public record SqlStatement(String sql, List<ParameterType> parameterTypes) {
+
+    public SqlStatement {
+        long numberOfParameters = sql.chars().filter(c -> c == '?').count();
+        if (numberOfParameters != parameterTypes.size()) {
+            throw new IllegalArgumentException("Statement has " + numberOfParameters + " parameters, but " +
+                                               parameterTypes.size() + " parameter types are declared: " + sql);
+        }
+    }
+
+    public SqlStatement(String sql, ParameterType... parameterTypes) {
+        this(sql, List.of(parameterTypes));
+    }
+}
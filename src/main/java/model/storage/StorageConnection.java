@@ -2,41 +2,89 @@ package model.storage;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import com.azure.core.util.BinaryData;
+import com.azure.core.util.Context;
 import com.azure.storage.blob.*;
-import com.azure.storage.common.*;
+import com.azure.storage.blob.models.*;
+import com.azure.storage.blob.options.*;
+import com.azure.storage.common.StorageSharedKeyCredential;
+
+import helpers.Configuration;
+
+/**
+ * StorageConnection is a client for the blob storage server, shared by every request <br><br>
+ *
+ * The shared connection keeps one HTTP pipeline and connection pool to the storage server, and remembers which
+ * containers are known to exist. Uploads go straight to the blob, so an upload to an existing container costs one
+ * round trip. A container is only created when the server reports that it is missing
+ */
+public class StorageConnection {
 
-import org.springframework.util.ResourceUtils;
+    // Streamed uploads are sent in blocks of this size, so at most this many bytes of a block are held per
+    // concurrent block. Streams no larger than one block are sent in one request
+    public static final long UPLOAD_BLOCK_SIZE = 1024 * 1024;
 
+    // Number of blocks of one streamed upload sent at once
+    private static final int UPLOAD_CONCURRENCY = 2;
 
-public class StorageConnection {
+    private static final ParallelTransferOptions UPLOAD_TRANSFER_OPTIONS = new ParallelTransferOptions()
+        .setBlockSizeLong(UPLOAD_BLOCK_SIZE)
+        .setMaxSingleUploadSizeLong(UPLOAD_BLOCK_SIZE)
+        .setMaxConcurrency(UPLOAD_CONCURRENCY);
+
+    private static volatile SharedConnection sharedConnection;
 
     // Storage connection
     private final BlobServiceClient conn;
 
+    // Clients of the containers known to exist, by container name
+    private final Map<String, BlobContainerClient> knownContainers = new ConcurrentHashMap<>();
+
     /**
-     * Creates a connection to the storage server specified in storage.credentials
+     * Shared connection, and the credentials it was opened with
      */
-    public StorageConnection() throws IOException {
-        conn = openConnection();
-    }
+    private record SharedConnection(Configuration.Storage credentials, StorageConnection connection) {}
 
     /**
-     * Returns a connection to the storage server specified in storage.credentials
+     * Creates a connection to the storage server at the endpoint
+     *
+     * @param endpoint    url of the blob service
+     * @param accountName storage account name
+     * @param key         storage account key
      */
-    private static BlobServiceClient openConnection() throws IOException {
-        Properties configProps = new Properties();
-        configProps.load(new FileInputStream(ResourceUtils.getFile("classpath:credentials/storage.credentials")));
+    public StorageConnection(String endpoint, String accountName, String key) {
+        conn = new BlobServiceClientBuilder()
+            .endpoint(endpoint)
+            .credential(new StorageSharedKeyCredential(accountName, key))
+            .buildClient();
+    }
 
-        String accountName = configProps.getProperty("STS_ACCOUNT_NAME");
-        String key = configProps.getProperty("STS_KEY");
+    /**
+     * Returns the shared connection to the storage server specified in storage.credentials. The connection is
+     * opened again if the credentials have been reloaded since it was opened
+     *
+     * @throws IllegalStateException if storage.credentials is missing or invalid
+     */
+    public static StorageConnection getConnection() {
+        Configuration.Storage credentials = Configuration.get().storage();
+        SharedConnection shared = sharedConnection;
+        if (shared != null && shared.credentials() == credentials) {
+            return shared.connection();
+        }
 
-        StorageSharedKeyCredential credential = new StorageSharedKeyCredential(accountName, key);
-        return new BlobServiceClientBuilder()
-            .endpoint(String.format("https://%s.blob.core.windows.net/", accountName))
-            .credential(credential)
-            .buildClient();
+        synchronized (StorageConnection.class) {
+            shared = sharedConnection;
+            if (shared == null || !shared.credentials().equals(credentials)) {
+                shared = new SharedConnection(credentials, new StorageConnection(
+                        String.format("https://%s.blob.core.windows.net/", credentials.accountName()), credentials.accountName(), credentials.key()));
+            } else {
+                shared = new SharedConnection(credentials, shared.connection());
+            }
+            sharedConnection = shared;
+            return shared.connection();
+        }
     }
 
     /**
@@ -47,9 +95,11 @@ public class StorageConnection {
      * @return container client
      */
     public BlobContainerClient storage_createContainer(String containerName) {
-        BlobContainerClient containerClient = conn.getBlobContainerClient(containerName);
-        containerClient.createIfNotExists();
-        return containerClient;
+        return knownContainers.computeIfAbsent(containerName, name -> {
+            BlobContainerClient containerClient = conn.getBlobContainerClient(name);
+            containerClient.createIfNotExists();
+            return containerClient;
+        });
     }
 
     /**
@@ -58,8 +108,8 @@ public class StorageConnection {
      * @param containerName container name
      */
     public void storage_deleteContainer(String containerName) {
-        BlobContainerClient containerClient = conn.getBlobContainerClient(containerName);
-        containerClient.delete();
+        knownContainers.remove(containerName);
+        conn.getBlobContainerClient(containerName).delete();
     }
 
     /**
@@ -69,55 +119,102 @@ public class StorageConnection {
      * @return container client if container exists. otherwise, return null
      */
     public BlobContainerClient storage_getContainer(String containerName) {
-        BlobContainerClient containerClient = conn.getBlobContainerClient(containerName);
-        return (containerClient.exists()) ? containerClient : null;
+        BlobContainerClient containerClient = knownContainers.get(containerName);
+        if (containerClient != null) {
+            return containerClient;
+        }
+        containerClient = conn.getBlobContainerClient(containerName);
+        if (!containerClient.exists()) {
+            return null;
+        }
+        knownContainers.put(containerName, containerClient);
+        return containerClient;
     }
 
     /**
-     * Uploads data to a blob with the specified name in the supplied container.
-     * If no blob exists, create a blob. If a blob exists, overwrite the data.
+     * Uploads data to a blob with the specified name in the specified container.
+     * If no container exists, create a container. If no blob exists, create a blob. If a blob exists, overwrite the data.
      *
-     * @param containerClient container client. must correspond to an existing container
+     * @param containerName container name
      * @param blobName blob name
      * @param blobData data to be uploaded
      * @return blob client
      */
-    public BlobClient storage_uploadBlob(BlobContainerClient containerClient, String blobName, String blobData) {
-        if (containerClient == null || !containerClient.exists()) {
-            throw new RuntimeException("Must supply an existing container client");
+    public BlobClient storage_uploadBlob(String containerName, String blobName, String blobData) {
+        BlobClient blobClient = getContainerClient(containerName).getBlobClient(blobName);
+        try {
+            blobClient.upload(BinaryData.fromString(blobData), true);
+
+        } catch (BlobStorageException e) {
+            if (e.getErrorCode() != BlobErrorCode.CONTAINER_NOT_FOUND) {
+                throw e;
+            }
+            // The container was never created, or was deleted since it was last used
+            knownContainers.remove(containerName);
+            blobClient = storage_createContainer(containerName).getBlobClient(blobName);
+            blobClient.upload(BinaryData.fromString(blobData), true);
         }
-        BlobClient blobClient = containerClient.getBlobClient(blobName);
-        blobClient.upload(BinaryData.fromString(blobData), true);
+        knownContainers.putIfAbsent(containerName, getContainerClient(containerName));
         return blobClient;
     }
 
     /**
-     * Deletes the blob in the supplied container
+     * Streams data to a blob with the specified name in the specified container, holding at most a few blocks of
+     * it in memory. If no container exists, create a container. If a blob exists, overwrite the data. <br><br>
+     *
+     * A stream cannot be sent twice, so a container that is not known to exist is created before the upload,
+     * rather than after the server reports it missing. If a known container has been deleted since it was last
+     * used, the upload fails and the container is forgotten, so the next upload creates it again
      *
-     * @param containerClient container client. must correspond to an existing container
+     * @param containerName container name
      * @param blobName blob name
+     * @param data data to be uploaded. read until length bytes have been read
+     * @param length number of bytes in data
+     * @param contentType MIME type of the data
+     * @return blob client
      */
-    public void storage_deleteBlob(BlobContainerClient containerClient, String blobName) {
-        if (containerClient == null || !containerClient.exists()) {
-            throw new RuntimeException("Must supply an existing container client");
+    public BlobClient storage_uploadBlob(String containerName, String blobName, InputStream data, long length, String contentType) {
+        BlobClient blobClient = storage_createContainer(containerName).getBlobClient(blobName);
+        try {
+            blobClient.uploadWithResponse(new BlobParallelUploadOptions(data, length)
+                                              .setParallelTransferOptions(UPLOAD_TRANSFER_OPTIONS)
+                                              .setHeaders(new BlobHttpHeaders().setContentType(contentType)), null, Context.NONE);
+        } catch (BlobStorageException e) {
+            if (e.getErrorCode() == BlobErrorCode.CONTAINER_NOT_FOUND) {
+                knownContainers.remove(containerName);
+            }
+            throw e;
         }
-        BlobClient blobClient = containerClient.getBlobClient(blobName);
-        blobClient.delete();
+        return blobClient;
     }
 
     /**
-     * Gets the blob with the specified name in the supplied container
+     * Deletes the blob in the specified container
      *
-     * @param containerClient container client. must correspond to an existing container
+     * @param containerName container name
+     * @param blobName blob name
+     */
+    public void storage_deleteBlob(String containerName, String blobName) {
+        getContainerClient(containerName).getBlobClient(blobName).delete();
+    }
+
+    /**
+     * Gets the blob with the specified name in the specified container
+     *
+     * @param containerName container name
      * @param blobName blob name
      * @return blob client if blob exists. otherwise, return null
      */
-    public BlobClient storage_getBlob(BlobContainerClient containerClient, String blobName) {
-        if (containerClient == null || !containerClient.exists()) {
-            throw new RuntimeException("Must supply an existing container client");
-        }
-        BlobClient blobClient = containerClient.getBlobClient(blobName);
+    public BlobClient storage_getBlob(String containerName, String blobName) {
+        BlobClient blobClient = getContainerClient(containerName).getBlobClient(blobName);
         return (blobClient.exists()) ? blobClient : null;
     }
 
+    /**
+     * Returns the client of a container, without checking whether the container exists
+     */
+    private BlobContainerClient getContainerClient(String containerName) {
+        BlobContainerClient containerClient = knownContainers.get(containerName);
+        return (containerClient != null) ? containerClient : conn.getBlobContainerClient(containerName);
+    }
 }
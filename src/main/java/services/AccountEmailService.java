@@ -0,0 +1,94 @@
+package services;
+
+import org.springframework.http.*;
+
+import model.database.*;
+import static helpers.Utilities.*;
+
+/**
+ * AccountEmailService resolves the code and recipient name for account emails, and sends them through the
+ * MailDeduplicator <br><br>
+ *
+ * The email endpoints and ServicesController.resendEmail share these flows, so a resend is handled on the thread
+ * and database connection of the request that asked for it
+ */
+public final class AccountEmailService {
+
+    private AccountEmailService() {}
+
+    /**
+     * Sends an account verification email.
+     * <ul>
+     *     <li> If email does not exist, then return email sent message </li>
+     *     <li> If email exists and verification code is active, then send verification email </li>
+     *     <li> If email exists, verification code has expired, and user is verified, then send verification email </li>
+     *     <li> If email exists, verification code has expired, and user is unverified, then delete old user account and
+     *          return verification code expired message </li>
+     * </ul>
+     *
+     * @param dbconn database connection of the request
+     * @param email recipient address
+     *
+     * @return JSON object containing status message. 200 status code iff success or user does not exist
+     */
+    public static ResponseEntity<Object> sendAccountVerificationEmail(DatabaseConnection dbconn, String email) {
+        // Gets the verification code for the user and identifies whether the verification code is active
+        ResponseEntity<String> resolveEmailToVerificationCodeStatus = dbconn.transaction_resolveEmailToVerificationCode(email);
+        String verificationCode = resolveEmailToVerificationCodeStatus.getBody();
+
+        // Checks whether the user is verified
+        ResponseEntity<Boolean> checkEmailVerifiedStatus = dbconn.transaction_checkEmailVerified(email);
+
+        if (resolveEmailToVerificationCodeStatus.getStatusCode() == HttpStatus.OK ||
+            resolveEmailToVerificationCodeStatus.getStatusCode() == HttpStatus.BAD_REQUEST && Boolean.TRUE.equals(checkEmailVerifiedStatus.getBody())) {
+            // If (email exists and verification code is active) or (email exists, verification code has expired, and user is verified),
+            // then send verification email, unless one was sent moments ago
+            return MailDeduplicator.send(email, MailDeduplicator.EmailType.VERIFICATION, () -> {
+                ResponseEntity<String> resolveEmailToUserNameStatus = dbconn.transaction_resolveEmailToUserName(email);
+                if (resolveEmailToUserNameStatus.getStatusCode() != HttpStatus.OK) {
+                    // If could not find a name for the user, then return internal server error
+                    return createStatusJSON("Internal server error", HttpStatus.INTERNAL_SERVER_ERROR);
+                }
+
+                return MailService.sendVerificationEmail(resolveEmailToUserNameStatus.getBody(), email, verificationCode);
+            });
+
+        } else if (resolveEmailToVerificationCodeStatus.getStatusCode() == HttpStatus.BAD_REQUEST && Boolean.FALSE.equals(checkEmailVerifiedStatus.getBody())) {
+            // If email exists, verification code has expired, and user is unverified, then delete old user account
+            dbconn.transaction_deleteUnverifiedUser(email);
+        }
+        // If email does not exist, then return email sent message
+        return createStatusJSON("Successfully sent email", HttpStatus.OK);
+    }
+
+    /**
+     * Generates a password reset code and sends it in a password reset email
+     *
+     * @param dbconn database connection of the request
+     * @param email recipient address
+     *
+     * @return JSON object containing status message. 200 status code iff success or user does not exist
+     */
+    public static ResponseEntity<Object> sendPasswordResetEmail(DatabaseConnection dbconn, String email) {
+        // Gets the name of the user
+        ResponseEntity<String> resolveEmailToUserNameStatus = dbconn.transaction_resolveEmailToUserName(email);
+        if (resolveEmailToUserNameStatus.getStatusCode() != HttpStatus.OK) {
+            // If user does not exist, vaguely claim that email has been sent
+            return createStatusJSON("Successfully sent email", HttpStatus.OK);
+        }
+        String name = resolveEmailToUserNameStatus.getBody();
+
+        // A new code replaces the one in the email already sent, so repeated requests neither generate a code nor send an email
+        return MailDeduplicator.send(email, MailDeduplicator.EmailType.PASSWORD_RESET, () -> {
+            // Gets the password reset code for the user
+            ResponseEntity<String> resolveEmailToPasswordResetCodeStatus = dbconn.transaction_generatePasswordResetCode(email);
+            if (resolveEmailToPasswordResetCodeStatus.getStatusCode() != HttpStatus.OK) {
+                return createStatusJSON("Request failed", HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+            String passwordResetCode = resolveEmailToPasswordResetCodeStatus.getBody();
+
+            // On success, send password reset email
+            return MailService.sendPasswordResetEmail(name, email, passwordResetCode);
+        });
+    }
+}
@@ -0,0 +1,75 @@
+package services;
+
+import java.util.concurrent.*;
+
+import org.slf4j.*;
+import org.springframework.http.*;
+
+import model.database.*;
+
+/**
+ * AggregateReconciliationService periodically checks the friend count and rating aggregates in tbl_user_aggregates
+ * against tbl_relationships <br><br>
+ *
+ * The aggregates are updated in the same transaction as every relationship write, so they should never drift.
+ * Any drift that is found is corrected, and the number of corrected users is logged once per pass. The first pass also backfills users that have no aggregates yet
+ */
+public final class AggregateReconciliationService {
+
+    // Time between reconciliation passes
+    private static final long RECONCILIATION_INTERVAL_HOURS = 24;
+
+    private static final Logger logger = LoggerFactory.getLogger(AggregateReconciliationService.class);
+
+    private static ScheduledExecutorService reconciliationExecutor;
+
+    private AggregateReconciliationService() {}
+
+    /**
+     * Schedules reconciliation passes, starting with one immediately
+     */
+    public static synchronized void start() {
+        if (reconciliationExecutor != null) {
+            return;
+        }
+        reconciliationExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "aggregate-reconciliation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconciliationExecutor.scheduleWithFixedDelay(() -> {
+            // An exception would cancel every later pass
+            try {
+                reconcile();
+            } catch (Exception e) {
+                logger.error("Aggregate reconciliation failed", e);
+            }
+        }, 0, RECONCILIATION_INTERVAL_HOURS, TimeUnit.HOURS);
+    }
+
+    /**
+     * Reconciles the aggregates of every user
+     *
+     * @return number of users whose aggregates had drifted. -1 if the pass did not complete
+     */
+    public static int reconcile() {
+        DatabaseConnection dbconn = DatabaseConnectionPool.getConnection();
+
+        try {
+            ResponseEntity<Integer> reconcileStatus = dbconn.transaction_reconcileUserAggregates();
+            if (reconcileStatus.getStatusCode() != HttpStatus.OK) {
+                logger.warn("Aggregate reconciliation did not complete after correcting {} users", reconcileStatus.getBody());
+                return -1;
+            }
+            logger.info("Aggregate reconciliation corrected {} users", reconcileStatus.getBody());
+            return reconcileStatus.getBody();
+
+        } catch (Exception e) {
+            logger.error("Aggregate reconciliation failed", e);
+            return -1;
+
+        } finally {
+            DatabaseConnectionPool.releaseConnection(dbconn);
+        }
+    }
+}
@@ -10,8 +10,8 @@ import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTDecodeException;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import org.springframework.http.*;
-import org.springframework.util.ResourceUtils;
 
+import helpers.Configuration;
 import types.AuthTokens;
 import model.database.DatabaseConnection;
 
@@ -25,11 +25,8 @@ import model.database.DatabaseConnection;
  */
 public class AuthTokenService {
 
-    private final String apiHost;
-
-    private final Algorithm HMAC256Algorithm;
-    private final JWTVerifier accessTokenVerifier;
-    private final JWTVerifier refreshTokenVerifier;
+    // Signing key and verifiers for the current api host and private key. Rebuilt when either is reloaded
+    private volatile TokenKeys tokenKeys;
 
     // Access token expiration
     private static final int ACCESS_TOKEN_EXPIRATION_VALUE = 60;
@@ -39,30 +36,14 @@ public class AuthTokenService {
     private static final int REFRESH_TOKEN_EXPIRATION_VALUE = 180;
     private static final ChronoUnit REFRESH_TOKEN_EXPIRATION_UNIT = ChronoUnit.DAYS;
 
+    private record TokenKeys(String apiHost, String privateKey, Algorithm HMAC256Algorithm, JWTVerifier accessTokenVerifier,
+                             JWTVerifier refreshTokenVerifier) {}
+
     /**
      * Creates a new AuthTokenService instance
      */
-    public AuthTokenService() throws IOException {
-        Properties configProps = new Properties();
-        configProps.load(new FileInputStream(ResourceUtils.getFile("classpath:properties/api.properties")));
-        configProps.load(new FileInputStream(ResourceUtils.getFile("classpath:credentials/jwt.credentials")));
-
-        apiHost = configProps.getProperty("API_HOST");
-        String privateKey = configProps.getProperty("JWT_PRIVATE_KEY");
-
-        HMAC256Algorithm = Algorithm.HMAC256(privateKey);
-
-        accessTokenVerifier = JWT.require(HMAC256Algorithm)
-                .withIssuer("auth0")
-                .withAudience(apiHost)
-                .withClaim("token_type", "access")
-                .build();
-
-        refreshTokenVerifier = JWT.require(HMAC256Algorithm)
-                .withIssuer("auth0")
-                .withAudience(apiHost)
-                .withClaim("token_type", "refresh")
-                .build();
+    public AuthTokenService() {
+        getTokenKeys();
     }
 
     /**
@@ -96,8 +77,9 @@ public class AuthTokenService {
      * @return a signed JSON Web Token
      */
     public String generateAccessToken(String userId) {
-        return generateToken("auth0", userId, apiHost, Instant.now(), Instant.now().plus(ACCESS_TOKEN_EXPIRATION_VALUE, ACCESS_TOKEN_EXPIRATION_UNIT),
-                             UUID.randomUUID().toString(), null, "access", HMAC256Algorithm);
+        TokenKeys keys = getTokenKeys();
+        return generateToken("auth0", userId, keys.apiHost(), Instant.now(), Instant.now().plus(ACCESS_TOKEN_EXPIRATION_VALUE, ACCESS_TOKEN_EXPIRATION_UNIT),
+                             UUID.randomUUID().toString(), null, "access", keys.HMAC256Algorithm());
     }
 
     /**
@@ -106,8 +88,9 @@ public class AuthTokenService {
      * @return a signed JSON Web Token
      */
     public String generateRefreshToken(String userId, String refreshTokenId, String refreshTokenFamily) {
-        return generateToken("auth0", userId, apiHost, Instant.now(), Instant.now().plus(REFRESH_TOKEN_EXPIRATION_VALUE, REFRESH_TOKEN_EXPIRATION_UNIT),
-                             refreshTokenId, refreshTokenFamily, "refresh", HMAC256Algorithm);
+        TokenKeys keys = getTokenKeys();
+        return generateToken("auth0", userId, keys.apiHost(), Instant.now(), Instant.now().plus(REFRESH_TOKEN_EXPIRATION_VALUE, REFRESH_TOKEN_EXPIRATION_UNIT),
+                             refreshTokenId, refreshTokenFamily, "refresh", keys.HMAC256Algorithm());
     }
 
     /**
@@ -148,7 +131,7 @@ public class AuthTokenService {
      */
     public Boolean verifyAccessToken(String userId, String token) {
         try {
-            DecodedJWT decodedToken = accessTokenVerifier.verify(token);
+            DecodedJWT decodedToken = getTokenKeys().accessTokenVerifier().verify(token);
 
             assert(decodedToken.getSubject().equals(userId));
             assert(decodedToken.getExpiresAtAsInstant().isAfter(Instant.now()));
@@ -170,7 +153,7 @@ public class AuthTokenService {
      */
     public AuthTokens verifyRefreshToken(DatabaseConnection dbconn, String userId, String token) {
         try {
-            DecodedJWT decodedToken = refreshTokenVerifier.verify(token);
+            DecodedJWT decodedToken = getTokenKeys().refreshTokenVerifier().verify(token);
 
             assert(decodedToken.getSubject().equals(userId));
             assert(decodedToken.getExpiresAtAsInstant().isAfter(Instant.now()));
@@ -210,4 +193,37 @@ public class AuthTokenService {
     public Boolean revokeTokens(DatabaseConnection dbconn, String userId) {
         return dbconn.transaction_updateRefreshToken(userId, null, null).getBody();
     }
+
+    /**
+     * Gets the signing key and verifiers for the current configuration, rebuilding them if the api host or
+     * private key has been reloaded since they were built
+     */
+    private TokenKeys getTokenKeys() {
+        Configuration configuration = Configuration.get();
+        String apiHost = configuration.api().host();
+        String privateKey = configuration.jwt().privateKey();
+
+        TokenKeys keys = tokenKeys;
+        if (keys != null && keys.apiHost().equals(apiHost) && keys.privateKey().equals(privateKey)) {
+            return keys;
+        }
+
+        Algorithm HMAC256Algorithm = Algorithm.HMAC256(privateKey);
+
+        JWTVerifier accessTokenVerifier = JWT.require(HMAC256Algorithm)
+                .withIssuer("auth0")
+                .withAudience(apiHost)
+                .withClaim("token_type", "access")
+                .build();
+
+        JWTVerifier refreshTokenVerifier = JWT.require(HMAC256Algorithm)
+                .withIssuer("auth0")
+                .withAudience(apiHost)
+                .withClaim("token_type", "refresh")
+                .build();
+
+        keys = new TokenKeys(apiHost, privateKey, HMAC256Algorithm, accessTokenVerifier, refreshTokenVerifier);
+        tokenKeys = keys;
+        return keys;
+    }
 }
@@ -0,0 +1,178 @@
+package services;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * CatalogService holds the university and course catalog in memory. <br><br>
+ *
+ * The catalog is loaded once at startup into compact immutable maps. Records that are not part
+ * of the startup snapshot are added to a small concurrent overlay the first time they are resolved
+ * from the database, so every subsequent lookup is served without a database round trip
+ */
+public final class CatalogService {
+
+    // Immutable catalog loaded at startup
+    private static volatile Snapshot snapshot = new Snapshot(Map.of(), Map.of(), Map.of(), Map.of());
+
+    // Records added after startup
+    private static final Map<String, String> addedUniversityNameToId = new ConcurrentHashMap<>();
+    private static final Map<String, String> addedUniversityIdToName = new ConcurrentHashMap<>();
+    private static final Map<String, String> addedCourseKeyToId = new ConcurrentHashMap<>();
+    private static final Map<String, String> addedCourseIdToCode = new ConcurrentHashMap<>();
+
+    // Incremented whenever the set of universities changes
+    private static final AtomicLong universityVersion = new AtomicLong();
+
+    private CatalogService() {}
+
+    /**
+     * Replaces the catalog with the supplied records
+     *
+     * @param universityIdToName    maps university_id to university_name
+     * @param courseIdToCode        maps course_id to course_code
+     * @param courseIdToUniversityId maps course_id to university_id
+     */
+    public static void initialize(Map<String, String> universityIdToName, Map<String, String> courseIdToCode,
+                                  Map<String, String> courseIdToUniversityId) {
+
+        Map<String, String> universityNameToId = new HashMap<>(universityIdToName.size() * 2);
+        for (Map.Entry<String, String> entry : universityIdToName.entrySet()) {
+            universityNameToId.put(normalize(entry.getValue()), entry.getKey());
+        }
+
+        Map<String, String> courseKeyToId = new HashMap<>(courseIdToCode.size() * 2);
+        for (Map.Entry<String, String> entry : courseIdToCode.entrySet()) {
+            courseKeyToId.put(courseKey(entry.getValue(), courseIdToUniversityId.get(entry.getKey())), entry.getKey());
+        }
+
+        snapshot = new Snapshot(Map.copyOf(universityNameToId), Map.copyOf(universityIdToName),
+                                Map.copyOf(courseKeyToId), Map.copyOf(courseIdToCode));
+
+        addedUniversityNameToId.clear();
+        addedUniversityIdToName.clear();
+        addedCourseKeyToId.clear();
+        addedCourseIdToCode.clear();
+        universityVersion.incrementAndGet();
+    }
+
+    /**
+     * Gets the university_id for a university_name
+     *
+     * @return university_id if university is cataloged. otherwise, return null
+     */
+    public static String resolveUniversityNameToUniversityId(String universityName) {
+        if (universityName == null) {
+            return null;
+        }
+        String key = normalize(universityName);
+        String universityId = snapshot.universityNameToId.get(key);
+        return (universityId != null) ? universityId : addedUniversityNameToId.get(key);
+    }
+
+    /**
+     * Gets the university_name for a university_id
+     *
+     * @return university_name if university is cataloged. otherwise, return null
+     */
+    public static String resolveUniversityIdToUniversityName(String universityId) {
+        if (universityId == null) {
+            return null;
+        }
+        String universityName = snapshot.universityIdToName.get(universityId);
+        return (universityName != null) ? universityName : addedUniversityIdToName.get(universityId);
+    }
+
+    /**
+     * Gets the course_id for a course_code, university_id pair
+     *
+     * @return course_id if course is cataloged. otherwise, return null
+     */
+    public static String resolveCourseCodeUniversityIdToCourseId(String courseCode, String universityId) {
+        if (courseCode == null || universityId == null) {
+            return null;
+        }
+        String key = courseKey(courseCode, universityId);
+        String courseId = snapshot.courseKeyToId.get(key);
+        return (courseId != null) ? courseId : addedCourseKeyToId.get(key);
+    }
+
+    /**
+     * Gets the course_code for a course_id
+     *
+     * @return course_code if course is cataloged. otherwise, return null
+     */
+    public static String resolveCourseIdToCourseCode(String courseId) {
+        if (courseId == null) {
+            return null;
+        }
+        String courseCode = snapshot.courseIdToCode.get(courseId);
+        return (courseCode != null) ? courseCode : addedCourseIdToCode.get(courseId);
+    }
+
+    /**
+     * Adds a university to the catalog. The university must already be committed to the database
+     */
+    public static void addUniversity(String universityId, String universityName) {
+        addedUniversityIdToName.put(universityId, universityName);
+        if (addedUniversityNameToId.put(normalize(universityName), universityId) == null) {
+            universityVersion.incrementAndGet();
+        }
+    }
+
+    /**
+     * Adds a course to the catalog. The course must already be committed to the database
+     */
+    public static void addCourse(String courseId, String courseCode, String universityId) {
+        addedCourseIdToCode.put(courseId, courseCode);
+        addedCourseKeyToId.put(courseKey(courseCode, universityId), courseId);
+    }
+
+    /**
+     * Returns the names of all cataloged universities
+     */
+    public static List<String> getUniversityNames() {
+        List<String> universityNames = new ArrayList<>(snapshot.universityIdToName.values());
+        universityNames.addAll(addedUniversityIdToName.values());
+        return universityNames;
+    }
+
+    /**
+     * Returns a counter that changes whenever a university is added to the catalog
+     */
+    public static long getUniversityVersion() {
+        return universityVersion.get();
+    }
+
+    /**
+     * Returns the number of cataloged universities
+     */
+    public static int numberOfUniversities() {
+        return snapshot.universityIdToName.size() + addedUniversityIdToName.size();
+    }
+
+    /**
+     * Returns the number of cataloged courses
+     */
+    public static int numberOfCourses() {
+        return snapshot.courseIdToCode.size() + addedCourseIdToCode.size();
+    }
+
+    /**
+     * Normalizes a name the way the database collation compares it (case-insensitive, trailing spaces ignored)
+     */
+    private static String normalize(String name) {
+        return name.stripTrailing().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Builds the lookup key for a course_code, university_id pair
+     */
+    private static String courseKey(String courseCode, String universityId) {
+        return universityId + '\u0000' + normalize(courseCode);
+    }
+
+    private record Snapshot(Map<String, String> universityNameToId, Map<String, String> universityIdToName,
+                            Map<String, String> courseKeyToId, Map<String, String> courseIdToCode) {}
+}
@@ -0,0 +1,313 @@
+package services;
+
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+import org.roaringbitmap.*;
+
+/**
+ * CoEnrollmentIndex ranks discover candidates by the courses they share with a user <br><br>
+ *
+ * Every verified user is assigned a dense ordinal, and every course maps to a compressed bitmap of the ordinals
+ * of the users registered in it. The users sharing at least t courses with a user are found by intersecting and
+ * unioning the bitmaps of the user's courses, so ranking never joins tbl_registration with itself.
+ * Universities are indexed the same way to rank candidates at the same university first
+ */
+public final class CoEnrollmentIndex {
+
+    private static final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Dense user ordinals. Ordinals are never reused
+    private static Map<String, Integer> userIdToOrdinal = new HashMap<>();
+    private static List<String> ordinalToUserId = new ArrayList<>();
+
+    // Course and university ids of every user, by ordinal. null if none
+    private static List<String[]> ordinalToCourseIds = new ArrayList<>();
+    private static List<String> ordinalToUniversityId = new ArrayList<>();
+
+    // Users registered in each course, and users attending each university
+    private static Map<String, RoaringBitmap> courseIdToUsers = new HashMap<>();
+    private static Map<String, RoaringBitmap> universityIdToUsers = new HashMap<>();
+
+    // Every indexed user
+    private static RoaringBitmap users = new RoaringBitmap();
+
+    private CoEnrollmentIndex() {}
+
+    /**
+     * Replaces the index with the supplied users
+     *
+     * @param userIdToUniversityId  maps the user_id of every verified user to university_id. university_id may be null
+     * @param userIdToCourseIds     maps user_id to the course_ids the user is registered in
+     */
+    public static void initialize(Map<String, String> userIdToUniversityId, Map<String, List<String>> userIdToCourseIds) {
+        lock.writeLock().lock();
+        try {
+            userIdToOrdinal = new HashMap<>(userIdToUniversityId.size() * 2);
+            ordinalToUserId = new ArrayList<>(userIdToUniversityId.size());
+            ordinalToCourseIds = new ArrayList<>(userIdToUniversityId.size());
+            ordinalToUniversityId = new ArrayList<>(userIdToUniversityId.size());
+            courseIdToUsers = new HashMap<>();
+            universityIdToUsers = new HashMap<>();
+            users = new RoaringBitmap();
+
+            // Ordinals are assigned in user_id order, so bitmaps are built by appending in increasing order
+            for (String userId : new TreeSet<>(userIdToUniversityId.keySet())) {
+                List<String> courseIds = userIdToCourseIds.get(userId);
+                addUser(userId, userIdToUniversityId.get(userId),
+                        (courseIds == null || courseIds.isEmpty()) ? null : courseIds.toArray(new String[0]));
+            }
+
+            for (RoaringBitmap bitmap : courseIdToUsers.values()) {
+                bitmap.runOptimize();
+            }
+            for (RoaringBitmap bitmap : universityIdToUsers.values()) {
+                bitmap.runOptimize();
+            }
+            users.runOptimize();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a verified user to the index. Does nothing if the user is already indexed
+     */
+    public static void addUser(String userId) {
+        lock.writeLock().lock();
+        try {
+            if (!userIdToOrdinal.containsKey(userId)) {
+                addUser(userId, null, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Updates the university of a user
+     */
+    public static void updateUniversity(String userId, String universityId) {
+        lock.writeLock().lock();
+        try {
+            int ordinal = ordinalOf(userId);
+            setUniversity(ordinal, universityId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the university and course registrations of a user
+     */
+    public static void updateRegistration(String userId, String universityId, Collection<String> courseIds) {
+        lock.writeLock().lock();
+        try {
+            int ordinal = ordinalOf(userId);
+            setUniversity(ordinal, universityId);
+
+            String[] previousCourseIds = ordinalToCourseIds.get(ordinal);
+            if (previousCourseIds != null) {
+                for (String courseId : previousCourseIds) {
+                    RoaringBitmap bitmap = courseIdToUsers.get(courseId);
+                    bitmap.remove(ordinal);
+                    if (bitmap.isEmpty()) {
+                        courseIdToUsers.remove(courseId);
+                    }
+                }
+            }
+
+            String[] newCourseIds = new LinkedHashSet<>(courseIds).toArray(new String[0]);
+            for (String courseId : newCourseIds) {
+                courseIdToUsers.computeIfAbsent(courseId, key -> new RoaringBitmap()).add(ordinal);
+            }
+            ordinalToCourseIds.set(ordinal, (newCourseIds.length == 0) ? null : newCourseIds);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ranks candidates for a user by number of shared courses, then by whether they attend the same university,
+     * then by ordinal. Ranking resumes after the supplied cursor
+     *
+     * @param after            last candidate of the previous batch. null to start from the best-ranked candidate
+     * @param count            maximum number of candidates
+     * @param excludedUserIds  user_ids that must not be ranked
+     * @return ranked candidates. empty if the user is not indexed
+     */
+    public static List<Candidate> rank(String userId, Candidate after, int count, Collection<String> excludedUserIds) {
+        lock.readLock().lock();
+        try {
+            Integer self = userIdToOrdinal.get(userId);
+            if (self == null || count <= 0) {
+                return List.of();
+            }
+
+            RoaringBitmap excluded = RoaringBitmap.bitmapOf(self);
+            for (String excludedUserId : excludedUserIds) {
+                Integer ordinal = userIdToOrdinal.get(excludedUserId);
+                if (ordinal != null) {
+                    excluded.add(ordinal);
+                }
+            }
+
+            // atLeast[t] holds the users sharing at least t of the user's courses. Each course updates the
+            // counts from the highest down, so atLeast[t - 1] still reflects the previous courses when it is read
+            String[] courseIds = ordinalToCourseIds.get(self);
+            int numberOfCourses = (courseIds == null) ? 0 : courseIds.length;
+            RoaringBitmap[] atLeast = new RoaringBitmap[numberOfCourses + 2];
+            atLeast[0] = users;
+            for (int t = 1; t < atLeast.length; t++) {
+                atLeast[t] = new RoaringBitmap();
+            }
+            for (int i = 0; i < numberOfCourses; i++) {
+                RoaringBitmap courseUsers = courseIdToUsers.get(courseIds[i]);
+                for (int t = i + 1; t >= 1; t--) {
+                    RoaringBitmap reached = (t == 1) ? courseUsers : RoaringBitmap.and(atLeast[t - 1], courseUsers);
+                    atLeast[t] = RoaringBitmap.or(atLeast[t], reached);
+                }
+            }
+
+            String universityId = ordinalToUniversityId.get(self);
+            RoaringBitmap universityUsers = (universityId == null) ? new RoaringBitmap()
+                                                                   : universityIdToUsers.getOrDefault(universityId, new RoaringBitmap());
+            Integer afterOrdinal = (after == null) ? null : userIdToOrdinal.get(after.userId());
+
+            List<Candidate> candidates = new ArrayList<>(count);
+            for (int sharedCourses = numberOfCourses; sharedCourses >= 0; sharedCourses--) {
+                if (after != null && sharedCourses > after.sharedCourses()) {
+                    continue;
+                }
+                RoaringBitmap exact = RoaringBitmap.andNot(atLeast[sharedCourses], atLeast[sharedCourses + 1]);
+                exact.andNot(excluded);
+
+                for (boolean sameUniversity : new boolean[] {true, false}) {
+                    int start = 0;
+                    if (after != null && sharedCourses == after.sharedCourses()) {
+                        if (sameUniversity && !after.sameUniversity()) {
+                            continue;
+                        }
+                        if (sameUniversity == after.sameUniversity() && afterOrdinal != null) {
+                            start = afterOrdinal + 1;
+                        }
+                    }
+
+                    RoaringBitmap tier = sameUniversity ? RoaringBitmap.and(exact, universityUsers)
+                                                        : RoaringBitmap.andNot(exact, universityUsers);
+                    PeekableIntIterator iterator = tier.getIntIterator();
+                    iterator.advanceIfNeeded(start);
+                    while (iterator.hasNext()) {
+                        candidates.add(new Candidate(ordinalToUserId.get(iterator.next()), sharedCourses, sameUniversity));
+                        if (candidates.size() == count) {
+                            return candidates;
+                        }
+                    }
+                }
+            }
+            return candidates;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether user is an indexed, verified user
+     */
+    public static boolean containsUser(String userId) {
+        lock.readLock().lock();
+        try {
+            return userIdToOrdinal.containsKey(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of indexed users
+     */
+    public static int numberOfUsers() {
+        lock.readLock().lock();
+        try {
+            return ordinalToUserId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the serialized size of the course and university bitmaps in bytes
+     */
+    public static long getBitmapSizeInBytes() {
+        lock.readLock().lock();
+        try {
+            long sizeInBytes = users.getLongSizeInBytes();
+            for (RoaringBitmap bitmap : courseIdToUsers.values()) {
+                sizeInBytes += bitmap.getLongSizeInBytes();
+            }
+            for (RoaringBitmap bitmap : universityIdToUsers.values()) {
+                sizeInBytes += bitmap.getLongSizeInBytes();
+            }
+            return sizeInBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Assigns the next ordinal to a user. Caller must hold the write lock
+     */
+    private static void addUser(String userId, String universityId, String[] courseIds) {
+        int ordinal = ordinalToUserId.size();
+        userIdToOrdinal.put(userId, ordinal);
+        ordinalToUserId.add(userId);
+        ordinalToUniversityId.add(null);
+        ordinalToCourseIds.add(courseIds);
+        users.add(ordinal);
+
+        setUniversity(ordinal, universityId);
+        if (courseIds != null) {
+            for (String courseId : courseIds) {
+                courseIdToUsers.computeIfAbsent(courseId, key -> new RoaringBitmap()).add(ordinal);
+            }
+        }
+    }
+
+    /**
+     * Gets the ordinal of a user, adding the user if it is not indexed. Caller must hold the write lock
+     */
+    private static int ordinalOf(String userId) {
+        Integer ordinal = userIdToOrdinal.get(userId);
+        if (ordinal == null) {
+            addUser(userId, null, null);
+            ordinal = userIdToOrdinal.get(userId);
+        }
+        return ordinal;
+    }
+
+    /**
+     * Moves a user to a university. Caller must hold the write lock
+     */
+    private static void setUniversity(int ordinal, String universityId) {
+        String previousUniversityId = ordinalToUniversityId.get(ordinal);
+        if (Objects.equals(previousUniversityId, universityId)) {
+            return;
+        }
+        if (previousUniversityId != null) {
+            RoaringBitmap bitmap = universityIdToUsers.get(previousUniversityId);
+            bitmap.remove(ordinal);
+            if (bitmap.isEmpty()) {
+                universityIdToUsers.remove(previousUniversityId);
+            }
+        }
+        if (universityId != null) {
+            universityIdToUsers.computeIfAbsent(universityId, key -> new RoaringBitmap()).add(ordinal);
+        }
+        ordinalToUniversityId.set(ordinal, universityId);
+    }
+
+    /**
+     * Ranked discover candidate
+     */
+    public record Candidate(String userId, int sharedCourses, boolean sameUniversity) {}
+}
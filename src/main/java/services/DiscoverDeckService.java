@@ -0,0 +1,185 @@
+package services;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.springframework.http.*;
+
+import model.database.*;
+import types.*;
+
+/**
+ * DiscoverDeckService deals discover candidates to users from precomputed decks <br><br>
+ *
+ * Each user's deck is filled from the database in batches and cached in memory, so loading cards
+ * is served from memory. Once a deck runs low, it is refilled asynchronously. A deck walks through the
+ * ranked candidates with a keyset cursor and starts over once it has gone through all of them.
+ * Decks that have not been used for a while are evicted
+ */
+public final class DiscoverDeckService {
+
+    // Number of candidates fetched per refill
+    public static final int DECK_BATCH_SIZE = 50;
+
+    // Decks with fewer cards than this are refilled in the background
+    public static final int REFILL_THRESHOLD = 20;
+
+    // Maximum number of cards dealt per load
+    public static final int MAX_LOAD_SIZE = 20;
+
+    // Minimum time between passes through the candidates, so a small pool of candidates is not refetched on every load
+    private static final long RECYCLE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    // Decks idle for longer than this are evicted
+    private static final long IDLE_DECK_EXPIRATION_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private static final Map<String, Deck> decks = new ConcurrentHashMap<>();
+
+    private static final ThreadPoolExecutor refillExecutor;
+    private static final ScheduledExecutorService evictionExecutor;
+
+    static {
+        refillExecutor = new ThreadPoolExecutor(4, 4, 1, TimeUnit.MINUTES, new ArrayBlockingQueue<>(1024),
+                                                daemonThreadFactory("discover-deck-refill"),
+                                                new ThreadPoolExecutor.DiscardPolicy());
+        refillExecutor.allowCoreThreadTimeOut(true);
+
+        evictionExecutor = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("discover-deck-eviction"));
+        evictionExecutor.scheduleWithFixedDelay(DiscoverDeckService::evictIdleDecks, 1, 1, TimeUnit.MINUTES);
+    }
+
+    private DiscoverDeckService() {}
+
+    /**
+     * Deals the next cards from the user's deck. If the user has no cards cached, the deck is filled before dealing
+     *
+     * @param count number of cards. capped at MAX_LOAD_SIZE
+     * @return cards of the dealt candidates, with their thumbnail and card profile pictures
+     */
+    public static List<DiscoverCard> deal(String userId, int count) {
+        Deck deck = decks.computeIfAbsent(userId, Deck::new);
+        deck.lastAccessTime = System.currentTimeMillis();
+
+        if (deck.cards.isEmpty()) {
+            deck.refill();
+        }
+
+        List<DiscoverCard> cards = new ArrayList<>();
+        while (cards.size() < Math.min(count, MAX_LOAD_SIZE)) {
+            DiscoverCard card = deck.cards.poll();
+            if (card == null) {
+                break;
+            }
+            deck.queuedUserIds.remove(card.userId);
+
+            // Skip candidates the user has swiped on or blocked, or that have blocked the user, since the deck was filled
+            if (RelationshipGraph.getRelationship(userId, card.userId) == null && !RelationshipGraph.isBlocked(userId, card.userId)) {
+                cards.add(card);
+            }
+        }
+
+        if (deck.cards.size() < REFILL_THRESHOLD && deck.refillScheduled.compareAndSet(false, true)) {
+            refillExecutor.execute(() -> {
+                try {
+                    deck.refill();
+                } finally {
+                    deck.refillScheduled.set(false);
+                }
+            });
+        }
+        return cards;
+    }
+
+    /**
+     * Removes a candidate from the user's deck
+     */
+    public static void discard(String userId, String otherUserId) {
+        Deck deck = decks.get(userId);
+        if (deck != null && deck.queuedUserIds.remove(otherUserId)) {
+            deck.cards.removeIf(card -> card.userId.equals(otherUserId));
+        }
+    }
+
+    /**
+     * Drops the user's deck, so the next load is ranked from scratch
+     */
+    public static void invalidate(String userId) {
+        decks.remove(userId);
+    }
+
+    /**
+     * Evicts decks that have not been used recently
+     */
+    private static void evictIdleDecks() {
+        long expirationTime = System.currentTimeMillis() - IDLE_DECK_EXPIRATION_MILLIS;
+        decks.values().removeIf(deck -> deck.lastAccessTime < expirationTime);
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Cached discover candidates for a single user
+     */
+    private static final class Deck {
+
+        private final String userId;
+
+        private final Queue<DiscoverCard> cards = new ConcurrentLinkedQueue<>();
+        private final Set<String> queuedUserIds = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean refillScheduled = new AtomicBoolean();
+
+        // Last candidate fetched. null once the deck has gone through every candidate
+        private DiscoverCandidate cursor = null;
+
+        private long lastRecycleTime = 0;
+        private volatile long lastAccessTime = System.currentTimeMillis();
+
+        Deck(String userId) {
+            this.userId = userId;
+        }
+
+        /**
+         * Fetches the next batch of candidates into the deck
+         */
+        synchronized void refill() {
+            if (cards.size() >= REFILL_THRESHOLD) {
+                return;
+            }
+            if (cursor == null) {
+                // Starting a new pass through the candidates
+                if (System.currentTimeMillis() - lastRecycleTime < RECYCLE_INTERVAL_MILLIS) {
+                    return;
+                }
+                lastRecycleTime = System.currentTimeMillis();
+            }
+
+            DatabaseConnection dbconn = DatabaseConnectionPool.getReadConnection(userId);
+
+            try {
+                ResponseEntity<List<DiscoverCandidate>> loadUsersStatus = dbconn.transaction_loadUsers(userId, cursor, DECK_BATCH_SIZE);
+                if (loadUsersStatus.getStatusCode() != HttpStatus.OK || loadUsersStatus.getBody() == null) {
+                    return;
+                }
+                List<DiscoverCandidate> candidates = loadUsersStatus.getBody();
+
+                for (DiscoverCandidate candidate : candidates) {
+                    if (queuedUserIds.add(candidate.user.userId)) {
+                        cards.add(candidate.user);
+                    }
+                }
+                cursor = (candidates.size() < DECK_BATCH_SIZE) ? null : candidates.get(candidates.size() - 1);
+
+            } finally {
+                DatabaseConnectionPool.releaseConnection(dbconn);
+            }
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package services;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.imageio.*;
+import javax.imageio.metadata.*;
+import javax.imageio.stream.*;
+import org.w3c.dom.*;
+
+import model.storage.StorageConnection;
+
+/**
+ * ImagePipeline turns uploaded profile pictures into the renditions clients display, on a bounded pool of workers <br><br>
+ *
+ * An uploaded picture is copied to a temporary file and decoded from it as it is read, so the upload is never held
+ * in memory in full. It is decoded without its metadata, turned upright according to its EXIF orientation, and
+ * re-encoded as a JPEG at each Rendition size. Pictures much larger than the FULL rendition are subsampled while they are decoded,
+ * so their full resolution is never held in memory. Each smaller rendition is scaled from the next larger one. The
+ * renditions are stored under names unique to the upload, and their urls returned, so only the original's pixels,
+ * and never its metadata, reach storage, and an upload that is abandoned never replaces the renditions of a later one <br><br>
+ *
+ * At most NUMBER_OF_WORKERS pictures are decoded at once, which bounds both the CPU and the memory pictures take.
+ * Once MAX_QUEUED_PICTURES are waiting for a worker, further pictures are rejected until the backlog has been processed
+ */
+public final class ImagePipeline {
+
+    /**
+     * Size a picture is stored at, smallest first
+     */
+    public enum Rendition {
+
+        // Mini profiles, such as search results and friend lists
+        THUMBNAIL(160, 0.80f),
+
+        // Discover cards and profiles
+        CARD(720, 0.82f),
+
+        // Full screen
+        FULL(1600, 0.85f);
+
+        // Largest width or height. Pictures are never scaled up
+        public final int maxDimension;
+
+        // JPEG quality, between 0 and 1
+        public final float quality;
+
+        Rendition(int maxDimension, float quality) {
+            this.maxDimension = maxDimension;
+            this.quality = quality;
+        }
+    }
+
+    // Largest number of pixels a picture may have. Larger pictures are rejected before they are decoded
+    public static final long MAX_PIXELS = 50_000_000;
+
+    // Number of pictures processed at once
+    public static final int NUMBER_OF_WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    // Maximum number of pictures waiting for a worker. Further pictures are rejected
+    public static final int MAX_QUEUED_PICTURES = 16;
+
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+
+    // Marker of the JPEG segment that holds EXIF metadata
+    private static final int APP1_MARKER = 0xE1;
+
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+
+    private static volatile ThreadPoolExecutor executor;
+
+    private ImagePipeline() {}
+
+    /**
+     * Starts processing pictures with NUMBER_OF_WORKERS workers
+     */
+    public static void start() {
+        start(NUMBER_OF_WORKERS, MAX_QUEUED_PICTURES);
+    }
+
+    /**
+     * Starts processing pictures
+     *
+     * @param numberOfWorkers number of pictures processed at once
+     * @param maxQueuedPictures maximum number of pictures waiting for a worker
+     */
+    public static synchronized void start(int numberOfWorkers, int maxQueuedPictures) {
+        stop();
+
+        executor = new ThreadPoolExecutor(numberOfWorkers, numberOfWorkers, 0, TimeUnit.MILLISECONDS,
+                                          new ArrayBlockingQueue<>(maxQueuedPictures), new ThreadFactory() {
+            private int numberOfThreads = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "image-pipeline-" + numberOfThreads++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Stops processing pictures. Pictures that are being processed are interrupted
+     */
+    public static synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Queues a profile picture to be rendered and stored in the user's container. If the returned future is
+     * cancelled before the renditions are stored, then the remaining renditions are not stored
+     *
+     * @param stconn storage connection the renditions are stored with
+     * @param userId id of the user whose profile picture it is
+     * @param picture file holding the JPEG or PNG picture, copied from the request. it must not be deleted until the
+     *                returned future completes
+     * @return future of the url of each rendition. fails with IllegalArgumentException if the picture cannot be
+     *         decoded or is too large
+     * @throws RejectedExecutionException if MAX_QUEUED_PICTURES are already waiting, or the pipeline is not running
+     */
+    public static Future<Map<Rendition, String>> submitProfilePicture(StorageConnection stconn, String userId, Path picture) {
+        ThreadPoolExecutor executor = ImagePipeline.executor;
+        if (executor == null) {
+            throw new RejectedExecutionException("Image pipeline is not running");
+        }
+
+        String uploadId = UUID.randomUUID().toString();
+        return executor.submit(() -> {
+            Map<Rendition, byte[]> renditions;
+            try (ImageInputStream in = new FileImageInputStream(picture.toFile())) {
+                renditions = render(in);
+            }
+
+            Map<Rendition, String> urls = new EnumMap<>(Rendition.class);
+            for (Map.Entry<Rendition, byte[]> rendition : renditions.entrySet()) {
+                // The request has given up on the picture, so it is not stored
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+
+                byte[] data = rendition.getValue();
+                String blobName = "profile-picture-" + uploadId + "-" + rendition.getKey().name().toLowerCase() + ".jpg";
+                urls.put(rendition.getKey(), stconn.storage_uploadBlob(userId.toLowerCase(), blobName, new ByteArrayInputStream(data),
+                                                                       data.length, "image/jpeg").getBlobUrl());
+            }
+            return urls;
+        });
+    }
+
+    /**
+     * Decodes a picture and encodes each of its renditions, on the calling thread
+     *
+     * @param picture JPEG or PNG picture
+     * @return JPEG of each rendition, without metadata
+     * @throws IllegalArgumentException if the picture cannot be decoded or has more than MAX_PIXELS pixels
+     */
+    public static Map<Rendition, byte[]> render(InputStream picture) throws IOException {
+        // The encoded picture is buffered in memory rather than in a temporary file
+        try (ImageInputStream in = new MemoryCacheImageInputStream(picture)) {
+            return render(in);
+        }
+    }
+
+    /**
+     * Decodes a picture and encodes each of its renditions, on the calling thread. The picture is read from the
+     * stream as it is decoded, so a picture read from a file is never held in memory in full
+     *
+     * @param picture JPEG or PNG picture
+     * @return JPEG of each rendition, without metadata
+     * @throws IllegalArgumentException if the picture cannot be decoded or has more than MAX_PIXELS pixels
+     */
+    private static Map<Rendition, byte[]> render(ImageInputStream picture) throws IOException {
+        BufferedImage image = decode(picture);
+
+        // Each rendition is scaled from the next larger one, which is both faster and smoother than scaling from the original
+        Map<Rendition, byte[]> renditions = new EnumMap<>(Rendition.class);
+        Rendition[] smallestFirst = Rendition.values();
+        for (int i = smallestFirst.length - 1; i >= 0; i--) {
+            Rendition rendition = smallestFirst[i];
+            image = scale(image, rendition.maxDimension);
+            renditions.put(rendition, encode(image, rendition.quality));
+        }
+        return renditions;
+    }
+
+    /**
+     * Decodes a picture, upright and without transparency. Pictures at least four times the size of the FULL
+     * rendition are subsampled as they are decoded, down to no less than twice its size
+     */
+    private static BufferedImage decode(ImageInputStream in) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) {
+            throw new IllegalArgumentException("Picture is not a supported image");
+        }
+
+        ImageReader reader = readers.next();
+        try {
+            // Only JPEG metadata is read, for the orientation. Everything else about the picture is dropped
+            boolean isJpeg = reader.getFormatName().equalsIgnoreCase("jpeg");
+            reader.setInput(in, true, !isJpeg);
+
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            if ((long) width * height > MAX_PIXELS) {
+                throw new IllegalArgumentException("Picture has more than " + MAX_PIXELS + " pixels");
+            }
+
+            ImageReadParam param = reader.getDefaultReadParam();
+            int subsampling = Math.max(1, Math.max(width, height) / (2 * Rendition.FULL.maxDimension));
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+            BufferedImage image = reader.read(0, param);
+            int orientation = isJpeg ? readOrientation(reader.getImageMetadata(0)) : 1;
+            return orient(toRgb(image), orientation);
+
+        } catch (IIOException e) {
+            throw new IllegalArgumentException("Picture could not be decoded", e);
+
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Reads the EXIF orientation of a JPEG. 1, upright, if it has none
+     */
+    private static int readOrientation(IIOMetadata metadata) {
+        if (metadata == null || !Arrays.asList(metadata.getMetadataFormatNames()).contains(JPEG_METADATA_FORMAT)) {
+            return 1;
+        }
+
+        NodeList segments = ((Element) metadata.getAsTree(JPEG_METADATA_FORMAT)).getElementsByTagName("unknown");
+        for (int i = 0; i < segments.getLength(); i++) {
+            IIOMetadataNode segment = (IIOMetadataNode) segments.item(i);
+            if (segment.getAttribute("MarkerTag").equals(String.valueOf(APP1_MARKER)) && segment.getUserObject() instanceof byte[] exif) {
+                int orientation = readOrientation(exif);
+                if (orientation != 0) {
+                    return orientation;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Reads the orientation tag from the first image file directory of an EXIF segment
+     *
+     * @return orientation between 1 and 8. 0 if the segment is not EXIF or has no orientation
+     */
+    static int readOrientation(byte[] exif) {
+        // "Exif\0\0", then a TIFF header whose first two bytes give the byte order
+        int tiff = 6;
+        if (exif.length < tiff + 8 || exif[0] != 'E' || exif[1] != 'x' || exif[2] != 'i' || exif[3] != 'f') {
+            return 0;
+        }
+        boolean littleEndian = exif[tiff] == 'I';
+
+        long directory = tiff + readUnsigned(exif, tiff + 4, 4, littleEndian);
+        if (directory + 2 > exif.length) {
+            return 0;
+        }
+        int numberOfEntries = (int) readUnsigned(exif, (int) directory, 2, littleEndian);
+        for (int i = 0; i < numberOfEntries; i++) {
+            int entry = (int) directory + 2 + 12 * i;
+            if (entry + 12 > exif.length) {
+                break;
+            }
+            if (readUnsigned(exif, entry, 2, littleEndian) == EXIF_ORIENTATION_TAG) {
+                int orientation = (int) readUnsigned(exif, entry + 8, 2, littleEndian);
+                return (orientation >= 1 && orientation <= 8) ? orientation : 0;
+            }
+        }
+        return 0;
+    }
+
+    private static long readUnsigned(byte[] data, int offset, int length, boolean littleEndian) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            int b = data[offset + (littleEndian ? length - 1 - i : i)] & 0xff;
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+
+    /**
+     * Turns an image upright according to its EXIF orientation
+     */
+    private static BufferedImage orient(BufferedImage image, int orientation) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        AffineTransform transform = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, width, 0);
+            case 3 -> new AffineTransform(-1, 0, 0, -1, width, height);
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, height);
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6 -> new AffineTransform(0, 1, -1, 0, height, 0);
+            case 7 -> new AffineTransform(0, -1, -1, 0, height, width);
+            case 8 -> new AffineTransform(0, -1, 1, 0, 0, width);
+            default -> null;
+        };
+        if (transform == null) {
+            return image;
+        }
+
+        boolean transposed = orientation >= 5;
+        BufferedImage oriented = new BufferedImage(transposed ? height : width, transposed ? width : height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = oriented.createGraphics();
+        try {
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return oriented;
+    }
+
+    /**
+     * Converts an image to RGB, with any transparency over white
+     */
+    private static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return rgb;
+    }
+
+    /**
+     * Scales an image down so that neither side is larger than maxDimension, halving it first while it is more
+     * than twice too large, so that bilinear scaling samples every pixel
+     */
+    private static BufferedImage scale(BufferedImage image, int maxDimension) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double ratio = (double) maxDimension / Math.max(width, height);
+        if (ratio >= 1) {
+            return image;
+        }
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+
+        while (width != targetWidth || height != targetHeight) {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+
+            BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = scaled.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(image, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            image = scaled;
+        }
+        return image;
+    }
+
+    /**
+     * Encodes an image as a progressive JPEG, with no metadata beyond the JFIF header
+     */
+    private static byte[] encode(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(imageOut);
+
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.write(null, new IIOImage(image, null, null), param);
+
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
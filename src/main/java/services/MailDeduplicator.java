@@ -0,0 +1,238 @@
+package services;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+import org.slf4j.*;
+import org.springframework.http.*;
+
+import static helpers.Utilities.*;
+
+/**
+ * MailDeduplicator collapses repeated requests for the same email into one send <br><br>
+ *
+ * Sends are keyed on recipient and email type. Once an email has been sent, further sends of the same type to
+ * the same recipient are suppressed until DEDUPLICATION_WINDOW_MILLIS has passed, and are answered as if they had
+ * been sent. A send that fails does not hold the window, so it can be retried straight away <br><br>
+ *
+ * Keys are expired by a time wheel with a slot per TICK_MILLIS. Each key is added to the slot of the tick it was
+ * sent in, and a slot is cleared once every key in it has outlived the window, so expiry costs nothing per send
+ * and nothing per key that is still live. Whether a key is in its window is decided by its timestamp, so
+ * a key the wheel has not reached yet is never suppressed after its window <br><br>
+ *
+ * The number of suppressed sends is logged every REPORT_INTERVAL_MILLIS, whenever it has grown since the last report
+ */
+public final class MailDeduplicator {
+
+    public enum EmailType {
+        VERIFICATION,
+        PASSWORD_RESET
+    }
+
+    // Time during which repeated sends of an email are suppressed
+    public static final long DEDUPLICATION_WINDOW_MILLIS = 60_000;
+
+    // Time covered by each slot of the time wheel
+    public static final long TICK_MILLIS = 1_000;
+
+    // Time between reports of the number of suppressed sends
+    public static final long REPORT_INTERVAL_MILLIS = 60 * 60 * 1000;
+
+    private static final Logger logger = LoggerFactory.getLogger(MailDeduplicator.class);
+
+    private static final Map<Key, Long> sentTimes = new ConcurrentHashMap<>();
+
+    private static final Map<EmailType, AtomicLong> numberOfSuppressedEmails = new EnumMap<>(EmailType.class);
+    static {
+        for (EmailType type : EmailType.values()) {
+            numberOfSuppressedEmails.put(type, new AtomicLong());
+        }
+    }
+
+    private static volatile long windowMillis = DEDUPLICATION_WINDOW_MILLIS;
+    private static volatile long tickMillis = TICK_MILLIS;
+
+    // Keys sent in each tick. There are enough slots that a slot is only reused once every key in it has expired
+    private static volatile Queue<Entry>[] wheel = createWheel(DEDUPLICATION_WINDOW_MILLIS, TICK_MILLIS);
+
+    // Last tick whose expired slot has been cleared
+    private static long lastTick;
+
+    // Number of suppressed sends at the last report
+    private static long numberOfReportedSuppressedEmails;
+
+    private static ScheduledExecutorService tickExecutor;
+
+    private MailDeduplicator() {}
+
+    private record Key(String toAddress, EmailType type) {}
+
+    private record Entry(Key key, Long sentTime) {}
+
+    /**
+     * Starts expiring keys with the default window
+     */
+    public static void start() {
+        start(DEDUPLICATION_WINDOW_MILLIS, TICK_MILLIS);
+    }
+
+    /**
+     * Starts expiring keys. Keys sent before starting are forgotten
+     *
+     * @param windowMillis time during which repeated sends of an email are suppressed
+     * @param tickMillis   time covered by each slot of the time wheel
+     */
+    public static synchronized void start(long windowMillis, long tickMillis) {
+        stop();
+
+        MailDeduplicator.windowMillis = windowMillis;
+        MailDeduplicator.tickMillis = tickMillis;
+        wheel = createWheel(windowMillis, tickMillis);
+        sentTimes.clear();
+        lastTick = Math.floorDiv(currentTimeMillis(), tickMillis);
+
+        tickExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mail-deduplication");
+            thread.setDaemon(true);
+            return thread;
+        });
+        tickExecutor.scheduleAtFixedRate(MailDeduplicator::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        tickExecutor.scheduleAtFixedRate(MailDeduplicator::report, REPORT_INTERVAL_MILLIS, REPORT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void stop() {
+        if (tickExecutor != null) {
+            tickExecutor.shutdownNow();
+            tickExecutor = null;
+        }
+    }
+
+    /**
+     * Sends an email unless the same email has been sent to the recipient within the window
+     *
+     * @param toAddress recipient address
+     * @param type      type of the email
+     * @param send      sends the email. only called if the email is not a duplicate
+     *
+     * @return status of send. 200 status code without sending iff the email is a duplicate
+     */
+    public static ResponseEntity<Object> send(String toAddress, EmailType type, Supplier<ResponseEntity<Object>> send) {
+        Key key = new Key(toAddress, type);
+        Long sentTime = currentTimeMillis();
+
+        // Claims the key before sending, so that concurrent duplicates are suppressed rather than racing the send
+        Long previousSentTime = sentTimes.putIfAbsent(key, sentTime);
+        while (previousSentTime != null) {
+            if (sentTime - previousSentTime < windowMillis) {
+                numberOfSuppressedEmails.get(type).incrementAndGet();
+                return createStatusJSON("Successfully sent email", HttpStatus.OK);
+            }
+            // The wheel has not reached the expired key yet
+            if (sentTimes.replace(key, previousSentTime, sentTime)) {
+                break;
+            }
+            previousSentTime = sentTimes.putIfAbsent(key, sentTime);
+        }
+        Queue<Entry>[] wheel = MailDeduplicator.wheel;
+        wheel[(int) Math.floorMod(Math.floorDiv(sentTime, tickMillis), (long) wheel.length)].add(new Entry(key, sentTime));
+
+        ResponseEntity<Object> sendStatus;
+        try {
+            sendStatus = send.get();
+        } catch (RuntimeException e) {
+            sentTimes.remove(key, sentTime);
+            throw e;
+        }
+        if (sendStatus.getStatusCode() != HttpStatus.OK) {
+            sentTimes.remove(key, sentTime);
+        }
+        return sendStatus;
+    }
+
+    /**
+     * Returns the number of sends suppressed since startup
+     */
+    public static long numberOfSuppressedEmails() {
+        long total = 0;
+        for (AtomicLong count : numberOfSuppressedEmails.values()) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of sends of an email type suppressed since startup
+     */
+    public static long numberOfSuppressedEmails(EmailType type) {
+        return numberOfSuppressedEmails.get(type).get();
+    }
+
+    /**
+     * Returns the number of recipients whose emails are being deduplicated, including those whose window has passed
+     * but whose slot has not been cleared yet
+     */
+    public static int numberOfTrackedEmails() {
+        return sentTimes.size();
+    }
+
+    /**
+     * Clears the slots of every tick since the last tick. A slot is cleared one tick before it is reused, when the
+     * keys in it were sent more than the window ago
+     */
+    private static synchronized void tick() {
+        Queue<Entry>[] wheel = MailDeduplicator.wheel;
+        long now = currentTimeMillis();
+        long currentTick = Math.floorDiv(now, tickMillis);
+
+        // After a long pause, each slot only needs to be cleared once
+        long firstTick = Math.max(lastTick + 1, currentTick - wheel.length + 1);
+        for (long tick = firstTick; tick <= currentTick; tick++) {
+            Iterator<Entry> slot = wheel[(int) Math.floorMod(tick + 1, (long) wheel.length)].iterator();
+            while (slot.hasNext()) {
+                Entry entry = slot.next();
+                // Keys sent into the slot as the tick turned over are left for the next lap
+                if (now - entry.sentTime() >= windowMillis) {
+                    slot.remove();
+                    // Keys sent again since are left for their own slot
+                    sentTimes.remove(entry.key(), entry.sentTime());
+                }
+            }
+        }
+        lastTick = Math.max(lastTick, currentTick);
+    }
+
+    /**
+     * Logs the number of sends suppressed since the last report, by email type since startup, unless there are none
+     */
+    private static void report() {
+        long numberOfSuppressedEmails = numberOfSuppressedEmails();
+        if (numberOfSuppressedEmails == numberOfReportedSuppressedEmails) {
+            return;
+        }
+
+        StringJoiner numberOfSuppressedEmailsByType = new StringJoiner(", ");
+        for (EmailType type : EmailType.values()) {
+            numberOfSuppressedEmailsByType.add(numberOfSuppressedEmails(type) + " " + type.name().toLowerCase().replace('_', ' '));
+        }
+        logger.info("Suppressed {} duplicate emails since the last report ({} since startup)",
+                    numberOfSuppressedEmails - numberOfReportedSuppressedEmails, numberOfSuppressedEmailsByType);
+        numberOfReportedSuppressedEmails = numberOfSuppressedEmails;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Queue<Entry>[] createWheel(long windowMillis, long tickMillis) {
+        // A slot is cleared when it is one tick ahead of the current tick, which is the window plus up to two ticks after it was filled
+        int numberOfSlots = (int) ((windowMillis + tickMillis - 1) / tickMillis) + 2;
+        Queue<Entry>[] wheel = new Queue[numberOfSlots];
+        for (int i = 0; i < numberOfSlots; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        return wheel;
+    }
+
+    private static long currentTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
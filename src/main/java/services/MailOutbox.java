@@ -0,0 +1,305 @@
+package services;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * MailOutbox is an append-only, memory-mapped file of emails that have been accepted but not yet delivered <br><br>
+ *
+ * Each email is appended as one checksummed record holding its id and its MIME content, and is removed by
+ * appending a record of its id once it has been delivered or abandoned. Records are written to a shared mapping
+ * of the file, so they survive the process being killed as soon as they are written, and are made durable
+ * against the machine crashing with group commit: callers append, then sync, and a single fsync covers every
+ * record appended before it. A torn record at the end of the file, left by a crash in the middle of an append,
+ * is discarded when the outbox is opened. Once most of the file is taken up by removed emails, the outbox is
+ * compacted by rewriting it with only the emails that are still pending
+ */
+public final class MailOutbox implements Closeable {
+
+    // Size the file is created with. The file is doubled in size whenever it is full
+    public static final int INITIAL_SIZE = 1024 * 1024;
+
+    // Size above which the outbox is compacted once removed emails take up more than half of it
+    public static final int COMPACTION_THRESHOLD = 4 * 1024 * 1024;
+
+    // Record header is the payload length followed by the payload checksum
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    // Records larger than this can only be the result of a torn or corrupted header
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+    // Record types
+    private static final byte PENDING = 1;
+    private static final byte REMOVED = 2;
+
+    private final Path path;
+    private final Object syncLock = new Object();
+    private final List<Entry> recoveredEntries;
+
+    // Position and length of the record of each pending email, by id, in the order they were appended
+    private final Map<Long, long[]> pendingRecords = new LinkedHashMap<>();
+
+    private FileChannel channel;
+    private volatile MappedByteBuffer buffer;
+
+    // Position the next record is appended at
+    private int position;
+
+    // Bytes taken up by the records of pending emails
+    private long pendingBytes;
+
+    private long nextId;
+
+    // Sequence number of the last appended and the last synced record
+    private volatile long appendedSequence;
+    private long syncedSequence;
+
+    /**
+     * Email accepted by the outbox
+     *
+     * @param id      id assigned by the outbox
+     * @param message MIME content of the email
+     */
+    public record Entry(long id, byte[] message) {}
+
+    /**
+     * Opens the outbox at path, creating it if it does not exist, and recovers its pending emails
+     */
+    public MailOutbox(Path path) throws IOException {
+        this.path = path;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), INITIAL_SIZE));
+
+        Map<Long, byte[]> pendingMessages = new LinkedHashMap<>();
+        position = readRecords(pendingMessages);
+
+        // Zero a torn record at the end of the file, so it is never mistaken for part of a later record
+        for (int i = position; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        buffer.force();
+
+        recoveredEntries = new ArrayList<>();
+        for (Map.Entry<Long, byte[]> pendingMessage : pendingMessages.entrySet()) {
+            recoveredEntries.add(new Entry(pendingMessage.getKey(), pendingMessage.getValue()));
+        }
+    }
+
+    /**
+     * Gets the emails that were pending when the outbox was opened, in the order they were appended
+     */
+    public List<Entry> getRecoveredEntries() {
+        return Collections.unmodifiableList(recoveredEntries);
+    }
+
+    /**
+     * Appends an email. The email is not durable until sync has been called
+     *
+     * @param message MIME content of the email
+     * @return id of the email
+     */
+    public synchronized long append(byte[] message) throws IOException {
+        long id = nextId++;
+        int recordPosition = position;
+        int recordLength = write(PENDING, id, message);
+        pendingRecords.put(id, new long[] {recordPosition, recordLength});
+        pendingBytes += recordLength;
+        return id;
+    }
+
+    /**
+     * Removes an email once it has been delivered or abandoned. The removal is not durable until sync has been called
+     */
+    public synchronized void remove(long id) throws IOException {
+        long[] pendingRecord = pendingRecords.remove(id);
+        if (pendingRecord != null) {
+            pendingBytes -= pendingRecord[1];
+            write(REMOVED, id, new byte[0]);
+        }
+    }
+
+    /**
+     * Blocks until every record appended before the call is durable. Records appended by other threads
+     * before the fsync are made durable along with it
+     */
+    public void sync() {
+        long sequence = appendedSequence;
+        synchronized (syncLock) {
+            if (syncedSequence >= sequence) {
+                return;
+            }
+            long sequenceToSync = appendedSequence;
+            buffer.force();
+            syncedSequence = sequenceToSync;
+        }
+    }
+
+    /**
+     * Returns the number of pending emails
+     */
+    public synchronized int numberOfPendingEmails() {
+        return pendingRecords.size();
+    }
+
+    /**
+     * Returns the size of the outbox file in bytes
+     */
+    public synchronized long size() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Rewrites the outbox with only its pending emails if removed emails take up more than half of a file larger
+     * than COMPACTION_THRESHOLD. The new outbox is written to a temporary file and moved over the old one, so a
+     * crash leaves either the old or the new outbox
+     *
+     * @return true iff the outbox has been compacted
+     */
+    public boolean compact() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (position <= COMPACTION_THRESHOLD || pendingBytes * 2 > position) {
+                    return false;
+                }
+
+                Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+                int size = (int) Math.max(INITIAL_SIZE, Long.highestOneBit(Math.max(pendingBytes, 1)) * 2);
+                Map<Long, long[]> compactedRecords = new LinkedHashMap<>();
+                try (FileChannel temporaryChannel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    MappedByteBuffer temporaryBuffer = temporaryChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                    for (Map.Entry<Long, long[]> pendingRecord : pendingRecords.entrySet()) {
+                        long[] record = pendingRecord.getValue();
+                        compactedRecords.put(pendingRecord.getKey(), new long[] {temporaryBuffer.position(), record[1]});
+                        temporaryBuffer.put(buffer.slice((int) record[0], (int) record[1]));
+                    }
+                    temporaryBuffer.force();
+                }
+
+                channel.close();
+                Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                position = (int) pendingBytes;
+                pendingRecords.clear();
+                pendingRecords.putAll(compactedRecords);
+
+                // Everything appended so far is either in the new outbox or no longer needed
+                syncedSequence = appendedSequence;
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                buffer.force();
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Writes a record as its header followed by its type, its id, and its message, growing the file if it is full
+     *
+     * @return length of the record in bytes
+     */
+    private int write(byte type, long id, byte[] message) throws IOException {
+        int length = Byte.BYTES + Long.BYTES + message.length;
+        if (length > MAX_RECORD_SIZE) {
+            throw new IOException("Email of " + message.length + " bytes exceeds the maximum record size");
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        payload.put(type);
+        payload.putLong(id);
+        payload.put(message);
+
+        CRC32 checksum = new CRC32();
+        checksum.update(payload.array());
+
+        if (position + HEADER_SIZE + length > buffer.capacity()) {
+            grow(position + HEADER_SIZE + length);
+        }
+
+        // The payload is written before the header, so a record torn by the process being killed has no header
+        buffer.put(position + HEADER_SIZE, payload.array());
+        buffer.putInt(position + Integer.BYTES, (int) checksum.getValue());
+        buffer.putInt(position, length);
+        position += HEADER_SIZE + length;
+        appendedSequence++;
+        return HEADER_SIZE + length;
+    }
+
+    /**
+     * Doubles the size of the file until it can hold the required number of bytes, and maps it again
+     */
+    private void grow(int requiredSize) throws IOException {
+        long size = buffer.capacity();
+        while (size < requiredSize) {
+            size *= 2;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Outbox cannot grow past 2GB");
+        }
+        buffer.force();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * Reads records from the start of the file until the end of the file or the first invalid record, and tracks
+     * the emails that have not been removed
+     *
+     * @return length of the valid records in bytes
+     */
+    private int readRecords(Map<Long, byte[]> pendingMessages) {
+        int recordPosition = 0;
+        while (recordPosition + HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(recordPosition);
+            int expectedChecksum = buffer.getInt(recordPosition + Integer.BYTES);
+            if (length < Byte.BYTES + Long.BYTES || length > MAX_RECORD_SIZE || recordPosition + HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            buffer.get(recordPosition + HEADER_SIZE, payload);
+            CRC32 checksum = new CRC32();
+            checksum.update(payload);
+            if ((int) checksum.getValue() != expectedChecksum) {
+                break;
+            }
+
+            ByteBuffer record = ByteBuffer.wrap(payload);
+            byte type = record.get();
+            long id = record.getLong();
+            if (type == PENDING) {
+                byte[] message = new byte[record.remaining()];
+                record.get(message);
+                pendingMessages.put(id, message);
+                pendingRecords.put(id, new long[] {recordPosition, HEADER_SIZE + length});
+                pendingBytes += HEADER_SIZE + length;
+            } else if (type == REMOVED) {
+                pendingMessages.remove(id);
+                long[] pendingRecord = pendingRecords.remove(id);
+                if (pendingRecord != null) {
+                    pendingBytes -= pendingRecord[1];
+                }
+            } else {
+                break;
+            }
+            nextId = Math.max(nextId, id + 1);
+            recordPosition += HEADER_SIZE + length;
+        }
+        return recordPosition;
+    }
+}
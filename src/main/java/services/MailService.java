@@ -1,73 +1,196 @@
 package services;
 
 import java.io.*;
+import java.net.*;
+import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.*;
-import static java.lang.Integer.*;
+import java.util.concurrent.atomic.*;
 
-import javax.mail.MessagingException;
+import javax.mail.*;
 import javax.mail.internet.MimeMessage;
+import javax.net.SocketFactory;
 import org.springframework.http.*;
 import org.springframework.mail.javamail.*;
-import org.springframework.util.ResourceUtils;
 import static org.apache.commons.lang3.StringUtils.*;
 
+import helpers.Configuration;
+import helpers.Template;
 import static helpers.Utilities.*;
 
-public class MailService {
+/**
+ * MailService sends emails in the background over persistent SMTP connections <br><br>
+ *
+ * An email is accepted once it has been built and appended to the MailOutbox, so emails that have been accepted
+ * are sent even if the backend restarts before sending them. Each of the NUMBER_OF_TRANSPORTS
+ * dispatcher threads keeps its own SMTP connection open, and sends the queued emails in batches of up to
+ * MAX_BATCH_SIZE, so the connection and TLS handshake are paid once per connection rather than once per email.
+ * Connections that have been idle for TRANSPORT_IDLE_MILLIS are closed, and reopened by the next batch. Emails
+ * are removed from the outbox as soon as the server has accepted them. Emails the server fails to accept are retried
+ * with exponential backoff, and abandoned after MAX_DELIVERY_ATTEMPTS. The number of pending emails is bounded.
+ * Once the bound is reached, emails are rejected until the backlog has been sent <br><br>
+ *
+ * After a crash, the emails in the outbox are sent on startup. An email the server accepted in the instant before
+ * the crash, before it was removed from the outbox, is sent again
+ */
+public final class MailService {
 
-    private final String API_HOST;
-    private final ThreadPoolExecutor executor;
-    private final JavaMailSenderImpl mailSender;
+    // Maximum number of pending emails, including those waiting to be retried. Further emails are rejected until the backlog has been sent
+    public static final int MAX_QUEUED_EMAILS = 1000;
 
-    public MailService() throws IOException {
-        Properties configProps = new Properties();
-        configProps.load(new FileInputStream(ResourceUtils.getFile("classpath:properties/api.properties")));
-        configProps.load(new FileInputStream(ResourceUtils.getFile("classpath:credentials/smtp.credentials")));
+    // Maximum number of emails sent per batch
+    public static final int MAX_BATCH_SIZE = 50;
 
-        API_HOST = configProps.getProperty("API_HOST");
+    // Number of dispatcher threads, each with its own SMTP connection
+    public static final int NUMBER_OF_TRANSPORTS = 2;
+
+    // Time an SMTP connection is kept open without sending. Servers close idle connections after a few minutes
+    public static final long TRANSPORT_IDLE_MILLIS = 30_000;
+
+    // Number of times an email is sent before it is abandoned
+    public static final int MAX_DELIVERY_ATTEMPTS = 8;
+
+    // Time before an email is retried, which doubles after each failed attempt
+    public static final long INITIAL_RETRY_DELAY_MILLIS = 1_000;
+    public static final long MAX_RETRY_DELAY_MILLIS = 300_000;
+
+    // Time a dispatcher waits for an email before checking whether to close its connection or stop
+    private static final long POLL_INTERVAL_MILLIS = 200;
+
+    // Time to wait for the SMTP server to connect, respond, or accept a write
+    private static final int SMTP_TIMEOUT_MILLIS = 10_000;
+
+    private static final String FROM_ADDRESS = "support@thejuniperapp.com";
+    private static final String SENDER_NAME = "The Juniper App";
+
+    // Emails waiting for a dispatcher. Emails waiting to be retried are added back once their delay has passed
+    private static final BlockingQueue<QueuedEmail> queue = new LinkedBlockingQueue<>();
+
+    // Emails in the outbox, including those waiting to be retried
+    private static final AtomicInteger numberOfPendingEmails = new AtomicInteger();
+
+    // Emails sent, and emails abandoned
+    private static final AtomicLong numberOfSentEmails = new AtomicLong();
+    private static final AtomicLong numberOfFailedEmails = new AtomicLong();
+
+    private static String apiHost;
+    private static JavaMailSenderImpl mailSender;
+    private static MailOutbox outbox;
+    private static ExecutorService dispatchExecutor;
+    private static ScheduledExecutorService retryExecutor;
+    private static volatile boolean running;
+
+    private MailService() {}
+
+    /**
+     * Email in the outbox that is waiting to be sent
+     *
+     * @param id       id of the email in the outbox
+     * @param attempts number of times the email has failed to be sent
+     */
+    private record QueuedEmail(long id, MimeMessage message, int attempts) {}
+
+    /**
+     * Starts sending emails with the SMTP server specified in smtp.credentials. Emails left in the outbox by the
+     * previous run are sent first
+     */
+    public static void start() throws IOException {
+        Configuration.Api api = Configuration.get().api();
+        Configuration.Smtp smtp = Configuration.get().smtp();
+
+        start(api.host(), smtp.host(), smtp.port(), smtp.address(), smtp.password(), api.mailOutboxPath());
+    }
+
+    /**
+     * Starts sending emails with the supplied SMTP server. Emails left in the outbox by the previous run are sent first
+     *
+     * @param apiHost      url of the api, which links in emails point to
+     * @param smtpHost     host of the SMTP server
+     * @param smtpPort     port of the SMTP server
+     * @param smtpAddress  address emails are sent from, and SMTP username
+     * @param smtpPassword SMTP password
+     * @param outboxPath   path of the mail outbox. emails left in the outbox by a previous run are recovered
+     */
+    public static synchronized void start(String apiHost, String smtpHost, int smtpPort, String smtpAddress, String smtpPassword,
+                                          Path outboxPath) throws IOException {
+        stop();
+
+        MailService.apiHost = apiHost;
 
         mailSender = new JavaMailSenderImpl();
-        mailSender.setHost(configProps.getProperty("SMTP_HOST"));
-        mailSender.setPort(parseInt(configProps.getProperty("SMTP_PORT")));
-        mailSender.setUsername(configProps.getProperty("SMTP_ADDRESS"));
-        mailSender.setPassword(configProps.getProperty("SMTP_PASSWORD"));
+        mailSender.setHost(smtpHost);
+        mailSender.setPort(smtpPort);
+        mailSender.setUsername(smtpAddress);
+        mailSender.setPassword(smtpPassword);
 
         Properties props = mailSender.getJavaMailProperties();
         props.put("mail.transport.protocol", "smtp");
         props.put("mail.smtp.auth", "true");
         props.put("mail.smtp.starttls.enable", "true");
-        props.put("mail.debug", "true");
         props.put("mail.smtp.allow8bitmime", "true");
         props.put("mail.smtps.allow8bitmime", "true");
+        props.put("mail.smtp.connectiontimeout", String.valueOf(SMTP_TIMEOUT_MILLIS));
+        props.put("mail.smtp.timeout", String.valueOf(SMTP_TIMEOUT_MILLIS));
+        props.put("mail.smtp.writetimeout", String.valueOf(SMTP_TIMEOUT_MILLIS));
+        props.put("mail.smtp.socketFactory", new NoDelaySocketFactory());
+
+        outbox = new MailOutbox(outboxPath);
+        for (MailOutbox.Entry entry : outbox.getRecoveredEntries()) {
+            try {
+                queue.add(new QueuedEmail(entry.id(), new MimeMessage(mailSender.getSession(), new ByteArrayInputStream(entry.message())), 0));
+                numberOfPendingEmails.incrementAndGet();
+            } catch (MessagingException e) {
+                e.printStackTrace();
+                outbox.remove(entry.id());
+                numberOfFailedEmails.incrementAndGet();
+            }
+        }
+
+        retryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mail-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
 
-        executor = new ThreadPoolExecutor(5, 20, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        running = true;
+        AtomicInteger threadNumber = new AtomicInteger();
+        dispatchExecutor = Executors.newFixedThreadPool(NUMBER_OF_TRANSPORTS, runnable -> {
+            Thread thread = new Thread(runnable, "mail-dispatch-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < NUMBER_OF_TRANSPORTS; i++) {
+            dispatchExecutor.execute(MailService::dispatch);
+        }
     }
 
     /**
-     * Builds emails and sends them in a new thread
-     *
-     * @param toAddress recipient address
-     * @param subject email subject
-     * @param content email body
+     * Stops accepting emails, sends the queued emails, and closes the SMTP connections. Emails waiting to be retried
+     * are left in the outbox
      */
-    private void sendEmail(String toAddress, String subject, String content, String name, String url) throws MessagingException, UnsupportedEncodingException {
-        String fromAddress = "support@thejuniperapp.com";
-        String senderName = "The Juniper App";
-
-        content = content.replace("[[name]]", substringBefore(name, " "));
-        content = content.replace("[[url]]", url);
-        content = content.replace("[[year]]", String.valueOf(Calendar.getInstance().get(Calendar.YEAR)));
-
-        MimeMessage message = mailSender.createMimeMessage();
-        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-
-        helper.setFrom(fromAddress, senderName);
-        helper.setTo(toAddress);
-        helper.setSubject(subject);
-        helper.setText(content, true);
+    public static synchronized void stop() {
+        if (dispatchExecutor == null) {
+            return;
+        }
+        running = false;
+        retryExecutor.shutdownNow();
+        dispatchExecutor.shutdown();
+        try {
+            dispatchExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        queue.clear();
+        numberOfPendingEmails.set(0);
 
-        executor.execute(() -> mailSender.send(message));
+        try {
+            outbox.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        outbox = null;
+        retryExecutor = null;
+        dispatchExecutor = null;
     }
 
     /**
@@ -79,19 +202,13 @@ public class MailService {
      *
      * @return JSON object containing status message. 200 status code iff success
      */
-    public ResponseEntity<Object> sendVerificationEmail(String name, String toAddress, String verificationCode) {
-        try {
-            String subject = "Please verify your email";
-            String content = loadTemplate("verify_account_email.html");
-            String verificationUrl = API_HOST + "/user/verify-account?code=" + verificationCode;
-
-            sendEmail(toAddress, subject, content, name, verificationUrl);
-
-            return createStatusJSON("Successfully sent email", HttpStatus.OK);
+    public static ResponseEntity<Object> sendVerificationEmail(String name, String toAddress, String verificationCode) {
+        String subject = "Please verify your email";
+        String verificationUrl = apiHost + "/user/verify-account?code=" + verificationCode;
+        String content = Template.VERIFY_ACCOUNT_EMAIL.render(substringBefore(name, " "), verificationUrl,
+                                                              String.valueOf(Calendar.getInstance().get(Calendar.YEAR)));
 
-        } catch (Exception e) {
-            return createStatusJSON("Failed to send email", HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+        return sendEmail(toAddress, subject, content);
     }
 
     /**
@@ -103,18 +220,251 @@ public class MailService {
      *
      * @return JSON object containing status message. 200 status code iff success
      */
-    public ResponseEntity<Object> sendPasswordResetEmail(String name, String toAddress, String passwordResetCode) {
+    public static ResponseEntity<Object> sendPasswordResetEmail(String name, String toAddress, String passwordResetCode) {
+        String subject = "Password reset request";
+        String passwordResetUrl = apiHost + "/auth/reset-password?code=" + passwordResetCode;
+        String content = Template.RESET_PASSWORD_EMAIL.render(substringBefore(name, " "), passwordResetUrl,
+                                                              String.valueOf(Calendar.getInstance().get(Calendar.YEAR)));
+
+        return sendEmail(toAddress, subject, content);
+    }
+
+    /**
+     * Returns the number of emails waiting to be sent, including those waiting to be retried
+     */
+    public static int numberOfPendingEmails() {
+        return numberOfPendingEmails.get();
+    }
+
+    /**
+     * Returns the number of emails sent since startup
+     */
+    public static long numberOfSentEmails() {
+        return numberOfSentEmails.get();
+    }
+
+    /**
+     * Returns the number of emails abandoned since startup
+     */
+    public static long numberOfFailedEmails() {
+        return numberOfFailedEmails.get();
+    }
+
+    /**
+     * Builds an email, appends it to the outbox, and adds it to the mail queue
+     *
+     * @param toAddress recipient address
+     * @param subject email subject
+     * @param content rendered email body
+     *
+     * @return JSON object containing status message. 200 status code iff the email has been durably queued.
+     *         503 status code iff the backlog is full or the service has stopped
+     */
+    private static ResponseEntity<Object> sendEmail(String toAddress, String subject, String content) {
+        if (!running) {
+            return createStatusJSON("Failed to send email", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        if (numberOfPendingEmails.incrementAndGet() > MAX_QUEUED_EMAILS) {
+            numberOfPendingEmails.decrementAndGet();
+            return createStatusJSON("Failed to send email", HttpStatus.SERVICE_UNAVAILABLE);
+        }
+
         try {
-            String subject = "Password reset request";
-            String content = loadTemplate("reset_password_email.html");
-            String passwordResetUrl = API_HOST + "/auth/reset-password?code=" + passwordResetCode;
+            MimeMessage message = mailSender.createMimeMessage();
+            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+
+            helper.setFrom(FROM_ADDRESS, SENDER_NAME);
+            helper.setTo(toAddress);
+            helper.setSubject(subject);
+            helper.setText(content, true);
 
-            sendEmail(toAddress, subject, content, name, passwordResetUrl);
+            // Headers are computed once here rather than by the dispatcher while it holds the connection
+            message.saveChanges();
 
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            message.writeTo(bytes);
+            long id = outbox.append(bytes.toByteArray());
+            outbox.sync();
+
+            queue.add(new QueuedEmail(id, message, 0));
             return createStatusJSON("Successfully sent email", HttpStatus.OK);
 
         } catch (Exception e) {
+            numberOfPendingEmails.decrementAndGet();
             return createStatusJSON("Failed to send email", HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
+
+    /**
+     * Sends batches of queued emails over a persistent SMTP connection until the service stops and the queue is empty
+     */
+    private static void dispatch() {
+        Transport transport = null;
+        long lastSendMillis = System.currentTimeMillis();
+        List<QueuedEmail> batch = new ArrayList<>(MAX_BATCH_SIZE);
+
+        try {
+            while (running || !queue.isEmpty()) {
+                QueuedEmail email;
+                try {
+                    email = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+
+                if (email == null) {
+                    // Idle, so close the connection rather than wait for the server to drop it
+                    if (transport != null && System.currentTimeMillis() - lastSendMillis > TRANSPORT_IDLE_MILLIS) {
+                        closeTransport(transport);
+                        transport = null;
+                    }
+                    continue;
+                }
+
+                batch.add(email);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                transport = sendBatch(transport, batch);
+                batch.clear();
+                lastSendMillis = System.currentTimeMillis();
+            }
+        } finally {
+            closeTransport(transport);
+        }
+    }
+
+    /**
+     * Sends a batch of emails over the connection, opening it if it is closed, and removes the emails the server has
+     * accepted from the outbox. An email that fails is sent once more over a new connection, since the server may have
+     * dropped the connection while it was idle, and is then retried later
+     *
+     * @return connection to be used for the next batch. null if it could not be opened
+     */
+    private static Transport sendBatch(Transport transport, List<QueuedEmail> batch) {
+        for (QueuedEmail email : batch) {
+            for (int attempts = 0; attempts < 2; attempts++) {
+                try {
+                    if (transport == null || !transport.isConnected()) {
+                        closeTransport(transport);
+                        transport = mailSender.getSession().getTransport("smtp");
+                        transport.connect(mailSender.getHost(), mailSender.getPort(), mailSender.getUsername(), mailSender.getPassword());
+                    }
+                    transport.sendMessage(email.message(), email.message().getAllRecipients());
+                    removeFromOutbox(email);
+                    numberOfSentEmails.incrementAndGet();
+                    break;
+
+                } catch (MessagingException e) {
+                    closeTransport(transport);
+                    transport = null;
+
+                    // Every recipient was rejected as invalid, so sending the email again cannot succeed
+                    if (e instanceof SendFailedException sendFailedException && sendFailedException.getInvalidAddresses() != null
+                            && (sendFailedException.getValidUnsentAddresses() == null || sendFailedException.getValidUnsentAddresses().length == 0)) {
+                        abandon(email, e);
+                        break;
+                    }
+                    if (attempts == 1) {
+                        retry(email, e);
+                    }
+                }
+            }
+        }
+
+        // Removals have already survived the process being killed once written, so one fsync per batch covers a machine crash
+        try {
+            outbox.sync();
+            outbox.compact();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return transport;
+    }
+
+    /**
+     * Adds an email that failed to be sent back to the mail queue once its backoff has passed, or abandons it once it
+     * has failed MAX_DELIVERY_ATTEMPTS times. Emails waiting to be retried when the service stops are left in the outbox
+     */
+    private static void retry(QueuedEmail email, MessagingException e) {
+        int attempts = email.attempts() + 1;
+        if (attempts >= MAX_DELIVERY_ATTEMPTS) {
+            abandon(email, e);
+            return;
+        }
+
+        long delayMillis = Math.min(INITIAL_RETRY_DELAY_MILLIS << (attempts - 1), MAX_RETRY_DELAY_MILLIS);
+        try {
+            retryExecutor.schedule(() -> queue.add(new QueuedEmail(email.id(), email.message(), attempts)), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {}
+    }
+
+    private static void abandon(QueuedEmail email, MessagingException e) {
+        e.printStackTrace();
+        removeFromOutbox(email);
+        numberOfFailedEmails.incrementAndGet();
+    }
+
+    private static void removeFromOutbox(QueuedEmail email) {
+        try {
+            outbox.remove(email.id());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        numberOfPendingEmails.decrementAndGet();
+    }
+
+    private static void closeTransport(Transport transport) {
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (MessagingException ignored) {}
+        }
+    }
+
+    /**
+     * Opens SMTP sockets with Nagle's algorithm disabled. Otherwise, the end of each email waits for the server to
+     * acknowledge the rest of it, and servers delay acknowledgements by up to 40ms, which dominates sending an email
+     * over a persistent connection
+     */
+    private static final class NoDelaySocketFactory extends SocketFactory {
+
+        @Override
+        public Socket createSocket() throws IOException {
+            Socket socket = new Socket();
+            socket.setTcpNoDelay(true);
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return connect(new InetSocketAddress(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return connect(new InetSocketAddress(host, port), new InetSocketAddress(localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return connect(new InetSocketAddress(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return connect(new InetSocketAddress(address, port), new InetSocketAddress(localAddress, localPort));
+        }
+
+        private Socket connect(InetSocketAddress address) throws IOException {
+            Socket socket = createSocket();
+            socket.connect(address, SMTP_TIMEOUT_MILLIS);
+            return socket;
+        }
+
+        private Socket connect(InetSocketAddress address, InetSocketAddress localAddress) throws IOException {
+            Socket socket = createSocket();
+            socket.bind(localAddress);
+            socket.connect(address, SMTP_TIMEOUT_MILLIS);
+            return socket;
+        }
+    }
 }
@@ -0,0 +1,298 @@
+package services;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+import org.roaringbitmap.*;
+
+/**
+ * RelationshipGraph mirrors tbl_relationships in memory <br><br>
+ *
+ * Every user is assigned a dense ordinal, and each user's outgoing likes, dislikes, and blocks are kept as
+ * compressed bitmaps of ordinals, along with the users that have blocked them. Users are spread over shards
+ * by ordinal, and each shard has its own lock, so lookups for different users do not contend. Mutual likes,
+ * seen users, and blocks are answered with bitmap lookups instead of queries. <br><br>
+ *
+ * The database stays the source of truth. The graph is loaded at startup and is only updated after a write
+ * to tbl_relationships has been committed, or after a swipe has been made durable in the SwipeJournal.
+ * Writes for a pair of users are serialized with a pair lock, so two users liking each other at the same
+ * time still produce a match
+ */
+public final class RelationshipGraph {
+
+    // Number of shards. Must be a power of two
+    private static final int NUMBER_OF_SHARDS = 64;
+
+    // Number of pair locks. Must be a power of two
+    private static final int NUMBER_OF_PAIR_LOCKS = 1024;
+
+    private static final Map<String, Integer> userIdToOrdinal = new ConcurrentHashMap<>();
+    private static final Map<Integer, String> ordinalToUserId = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextOrdinal = new AtomicInteger();
+
+    private static final Shard[] shards = new Shard[NUMBER_OF_SHARDS];
+    private static final Lock[] pairLocks = new Lock[NUMBER_OF_PAIR_LOCKS];
+
+    static {
+        for (int i = 0; i < NUMBER_OF_SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+        for (int i = 0; i < NUMBER_OF_PAIR_LOCKS; i++) {
+            pairLocks[i] = new ReentrantLock();
+        }
+    }
+
+    private RelationshipGraph() {}
+
+    /**
+     * Relationship of a user to another user, as recorded in relationship_status
+     */
+    public enum Status {
+        LIKED, FRIENDS, DISLIKED, BLOCKED;
+
+        /**
+         * Parses a relationship_status value
+         *
+         * @return status if relationship_status is known. otherwise, return null
+         */
+        public static Status parse(String relationshipStatus) {
+            return switch (relationshipStatus) {
+                case "liked" -> LIKED;
+                case "friends" -> FRIENDS;
+                case "disliked" -> DISLIKED;
+                case "blocked" -> BLOCKED;
+                default -> null;
+            };
+        }
+
+        /**
+         * Gets the relationship_status value of the status
+         */
+        public String value() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Replaces the graph with the supplied relationships
+     *
+     * @param relationships relationship records as user_id, other_user_id, relationship_status triples
+     */
+    public static void initialize(List<String[]> relationships) {
+        for (Shard shard : shards) {
+            shard.lock.writeLock().lock();
+        }
+        try {
+            for (Shard shard : shards) {
+                shard.adjacencies.clear();
+            }
+            userIdToOrdinal.clear();
+            ordinalToUserId.clear();
+            nextOrdinal.set(0);
+
+            for (String[] relationship : relationships) {
+                Status status = Status.parse(relationship[2]);
+                if (status != null) {
+                    apply(ordinalOf(relationship[0]), ordinalOf(relationship[1]), status);
+                }
+            }
+        } finally {
+            for (Shard shard : shards) {
+                shard.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Records a committed relationship of user to other user. Replaces any previous relationship between them
+     */
+    public static void setRelationship(String userId, String otherUserId, Status status) {
+        int user = ordinalOf(userId);
+        int otherUser = ordinalOf(otherUserId);
+
+        // Blocks are also recorded on the blocked user, so lock both shards in shard order
+        int userShard = user & (NUMBER_OF_SHARDS - 1);
+        int otherUserShard = otherUser & (NUMBER_OF_SHARDS - 1);
+        Shard first = shards[Math.min(userShard, otherUserShard)];
+        Shard second = shards[Math.max(userShard, otherUserShard)];
+        first.lock.writeLock().lock();
+        second.lock.writeLock().lock();
+        try {
+            apply(user, otherUser, status);
+        } finally {
+            second.lock.writeLock().unlock();
+            first.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the relationship of user to other user
+     *
+     * @return status if user has a relationship with other user. otherwise, return null
+     */
+    public static Status getRelationship(String userId, String otherUserId) {
+        Integer user = userIdToOrdinal.get(userId);
+        Integer otherUser = userIdToOrdinal.get(otherUserId);
+        if (user == null || otherUser == null) {
+            return null;
+        }
+
+        Shard shard = shardOf(user);
+        shard.lock.readLock().lock();
+        try {
+            Adjacency adjacency = shard.adjacencies.get(user);
+            if (adjacency == null) {
+                return null;
+            } else if (adjacency.friends.contains(otherUser)) {
+                return Status.FRIENDS;
+            } else if (adjacency.liked.contains(otherUser)) {
+                return Status.LIKED;
+            } else if (adjacency.disliked.contains(otherUser)) {
+                return Status.DISLIKED;
+            } else if (adjacency.blocked.contains(otherUser)) {
+                return Status.BLOCKED;
+            }
+            return null;
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether user likes other user, either as a pending like or as friends
+     */
+    public static boolean likes(String userId, String otherUserId) {
+        Status status = getRelationship(userId, otherUserId);
+        return status == Status.LIKED || status == Status.FRIENDS;
+    }
+
+    /**
+     * Checks whether either user has blocked the other
+     */
+    public static boolean isBlocked(String userId, String otherUserId) {
+        return getRelationship(userId, otherUserId) == Status.BLOCKED || getRelationship(otherUserId, userId) == Status.BLOCKED;
+    }
+
+    /**
+     * Gets the users that must not be shown to user as discover candidates. Includes users that the user
+     * has a relationship with and users that have blocked the user
+     */
+    public static Set<String> getSeenUserIds(String userId) {
+        return toUserIds(userId, true);
+    }
+
+    /**
+     * Gets the users that user has blocked or has been blocked by
+     */
+    public static Set<String> getBlockedUserIds(String userId) {
+        return toUserIds(userId, false);
+    }
+
+    /**
+     * Gets the pair lock for two users. Both orders of the pair map to the same lock
+     */
+    public static Lock getPairLock(String userId, String otherUserId) {
+        return pairLocks[(userId.hashCode() ^ otherUserId.hashCode()) & (NUMBER_OF_PAIR_LOCKS - 1)];
+    }
+
+    /**
+     * Returns the number of users with at least one relationship
+     */
+    public static int numberOfUsers() {
+        return nextOrdinal.get();
+    }
+
+    private static Set<String> toUserIds(String userId, boolean includeSeen) {
+        Integer user = userIdToOrdinal.get(userId);
+        if (user == null) {
+            return new HashSet<>();
+        }
+
+        RoaringBitmap ordinals;
+        Shard shard = shardOf(user);
+        shard.lock.readLock().lock();
+        try {
+            Adjacency adjacency = shard.adjacencies.get(user);
+            if (adjacency == null) {
+                return new HashSet<>();
+            }
+            ordinals = RoaringBitmap.or(adjacency.blocked, adjacency.blockedBy);
+            if (includeSeen) {
+                ordinals.or(adjacency.liked);
+                ordinals.or(adjacency.disliked);
+            }
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+
+        Set<String> userIds = new HashSet<>();
+        ordinals.forEach((int ordinal) -> userIds.add(ordinalToUserId.get(ordinal)));
+        return userIds;
+    }
+
+    /**
+     * Replaces the relationship of user to other user. Caller must hold the write locks of both users' shards
+     */
+    private static void apply(int user, int otherUser, Status status) {
+        Adjacency adjacency = adjacencyOf(user);
+        boolean wasBlocked = adjacency.blocked.contains(otherUser);
+
+        adjacency.liked.remove(otherUser);
+        adjacency.friends.remove(otherUser);
+        adjacency.disliked.remove(otherUser);
+        adjacency.blocked.remove(otherUser);
+
+        switch (status) {
+            case FRIENDS -> {
+                adjacency.liked.add(otherUser);
+                adjacency.friends.add(otherUser);
+            }
+            case LIKED -> adjacency.liked.add(otherUser);
+            case DISLIKED -> adjacency.disliked.add(otherUser);
+            case BLOCKED -> adjacency.blocked.add(otherUser);
+        }
+
+        if (status == Status.BLOCKED) {
+            adjacencyOf(otherUser).blockedBy.add(user);
+        } else if (wasBlocked) {
+            adjacencyOf(otherUser).blockedBy.remove(user);
+        }
+    }
+
+    private static Adjacency adjacencyOf(int user) {
+        return shardOf(user).adjacencies.computeIfAbsent(user, key -> new Adjacency());
+    }
+
+    private static int ordinalOf(String userId) {
+        return userIdToOrdinal.computeIfAbsent(userId, key -> {
+            int ordinal = nextOrdinal.getAndIncrement();
+            ordinalToUserId.put(ordinal, key);
+            return ordinal;
+        });
+    }
+
+    private static Shard shardOf(int user) {
+        return shards[user & (NUMBER_OF_SHARDS - 1)];
+    }
+
+    private static final class Shard {
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<Integer, Adjacency> adjacencies = new HashMap<>();
+    }
+
+    /**
+     * Outgoing relationships of a user, and the users that have blocked them
+     */
+    private static final class Adjacency {
+
+        // Users the user likes, including friends
+        private final RoaringBitmap liked = new RoaringBitmap();
+        private final RoaringBitmap friends = new RoaringBitmap();
+        private final RoaringBitmap disliked = new RoaringBitmap();
+        private final RoaringBitmap blocked = new RoaringBitmap();
+        private final RoaringBitmap blockedBy = new RoaringBitmap();
+    }
+}
@@ -0,0 +1,509 @@
+package services;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+import org.springframework.http.*;
+
+import model.database.*;
+import services.SwipeJournal.Swipe;
+
+/**
+ * SwipeIngestionService accepts likes and dislikes and writes them to the database in the background <br><br>
+ *
+ * A swipe is accepted once it has been made durable in the SwipeJournal and applied to the RelationshipGraph, so
+ * matches are still detected and reported while the user waits. Accepted swipes are coalesced per pair of users,
+ * so only the latest swipe of a user on another user is written, and are flushed to tbl_relationships in batches
+ * of one statement each. The number of pending swipes is bounded. Once the bound is reached, swipes are rejected
+ * until the backlog has been flushed. <br><br>
+ *
+ * After a crash, the swipes in the journal are applied to the RelationshipGraph and written again on startup.
+ * Writing a swipe is idempotent, so swipes that had already been written before the crash are harmless
+ */
+public final class SwipeIngestionService {
+
+    // Maximum number of pending swipes. Further swipes are rejected until the backlog has been flushed
+    public static final int MAX_PENDING_SWIPES = 10_000;
+
+    // Maximum number of swipes written per statement
+    public static final int FLUSH_BATCH_SIZE = 500;
+
+    // Time between flushes
+    private static final long FLUSH_INTERVAL_MILLIS = 200;
+
+    // Guards the pending swipes and the journal. Never held while writing to the database
+    private static final Lock ingestLock = new ReentrantLock();
+
+    // Signalled whenever pairs stop being written, so a pair is never written by two flushes at once
+    private static final Condition flushingPairsReleased = ingestLock.newCondition();
+
+    // Serializes flushes of every pending swipe. Never taken to flush a single pair
+    private static final Lock flushLock = new ReentrantLock();
+
+    private static final Map<Pair, Swipe> pendingSwipes = new LinkedHashMap<>();
+
+    // Swipes appended to the journal that are waiting for it to sync. They count towards MAX_PENDING_SWIPES
+    private static final Map<Pair, Swipe> syncingSwipes = new HashMap<>();
+
+    // Swipes taken out of pendingSwipes by a flush that is still writing them. They count towards MAX_PENDING_SWIPES,
+    // and are kept in the journal until they have been written
+    private static final Map<Pair, Swipe> flushingSwipes = new LinkedHashMap<>();
+    private static final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private static SwipeJournal journal;
+    private static SwipeWriter writer;
+    private static ScheduledExecutorService flushExecutor;
+
+    private SwipeIngestionService() {}
+
+    /**
+     * Writes a batch of swipes to the database
+     */
+    @FunctionalInterface
+    public interface SwipeWriter {
+
+        /**
+         * @return true iff every swipe in the batch has been written
+         */
+        boolean write(List<Swipe> swipes);
+    }
+
+    /**
+     * Starts accepting swipes, writing them to the database. Must be called after the RelationshipGraph has been loaded
+     *
+     * @param journalPath path of the swipe journal. swipes left in the journal by a previous run are recovered
+     */
+    public static void start(Path journalPath) throws IOException {
+        start(journalPath, SwipeIngestionService::writeToDatabase);
+    }
+
+    /**
+     * Starts accepting swipes, writing them with the supplied writer. Must be called after the RelationshipGraph has been loaded
+     *
+     * @param journalPath path of the swipe journal. swipes left in the journal by a previous run are recovered
+     */
+    public static synchronized void start(Path journalPath, SwipeWriter swipeWriter) throws IOException {
+        stop();
+
+        ingestLock.lock();
+        try {
+            journal = new SwipeJournal(journalPath);
+            writer = swipeWriter;
+
+            // Swipes in the journal may not have been written, so apply them on top of the relationships loaded from the database
+            for (List<Swipe> swipes : journal.getRecoveredRecords()) {
+                for (Swipe swipe : swipes) {
+                    pendingSwipes.put(new Pair(swipe.userId(), swipe.otherUserId()), swipe);
+                    RelationshipGraph.setRelationship(swipe.userId(), swipe.otherUserId(), swipe.status());
+                }
+            }
+        } finally {
+            ingestLock.unlock();
+        }
+
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "swipe-ingestion-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleWithFixedDelay(SwipeIngestionService::flush, 0, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops accepting swipes and flushes the pending swipes. Swipes that could not be written are left in the journal
+     */
+    public static synchronized void stop() {
+        if (flushExecutor == null) {
+            return;
+        }
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+
+        ingestLock.lock();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            journal = null;
+            pendingSwipes.clear();
+            syncingSwipes.clear();
+            ingestLock.unlock();
+        }
+        flushExecutor = null;
+    }
+
+    /**
+     * User likes other user. If other user already likes user, then user and other user become friends
+     *
+     * @return true / 200 status iff user and other user are friends. false / 200 status iff user likes other user
+     */
+    public static ResponseEntity<Boolean> like(String userId, String otherUserId) {
+        Lock pairLock = RelationshipGraph.getPairLock(userId, otherUserId);
+        pairLock.lock();
+
+        try {
+            // Blocked users cannot like each other
+            if (userId.equals(otherUserId) || !CoEnrollmentIndex.containsUser(otherUserId) || RelationshipGraph.isBlocked(userId, otherUserId)) {
+                return new ResponseEntity<>(false, HttpStatus.BAD_REQUEST);
+            }
+
+            // If other user also likes user, then user and other user are now friends
+            RelationshipGraph.Status status = RelationshipGraph.getRelationship(userId, otherUserId);
+            boolean matched = RelationshipGraph.likes(otherUserId, userId);
+            if (status == RelationshipGraph.Status.FRIENDS || (status == RelationshipGraph.Status.LIKED && !matched)) {
+                return new ResponseEntity<>(status == RelationshipGraph.Status.FRIENDS, HttpStatus.OK);
+            }
+
+            HttpStatus ingestStatus;
+            if (matched) {
+                ingestStatus = ingest(List.of(new Swipe(userId, otherUserId, RelationshipGraph.Status.FRIENDS),
+                                              new Swipe(otherUserId, userId, RelationshipGraph.Status.FRIENDS)));
+            } else {
+                ingestStatus = ingest(List.of(new Swipe(userId, otherUserId, RelationshipGraph.Status.LIKED)));
+            }
+            return new ResponseEntity<>(matched && ingestStatus == HttpStatus.OK, ingestStatus);
+
+        } finally {
+            pairLock.unlock();
+        }
+    }
+
+    /**
+     * User dislikes other user. The dislike is recorded so that other user is not shown to user again
+     *
+     * @return true / 200 status iff successfully disliked other user
+     */
+    public static ResponseEntity<Boolean> dislike(String userId, String otherUserId) {
+        Lock pairLock = RelationshipGraph.getPairLock(userId, otherUserId);
+        pairLock.lock();
+
+        try {
+            // Friends and blocked users cannot be disliked
+            RelationshipGraph.Status status = RelationshipGraph.getRelationship(userId, otherUserId);
+            if (userId.equals(otherUserId) || !CoEnrollmentIndex.containsUser(otherUserId) ||
+                status == RelationshipGraph.Status.FRIENDS || status == RelationshipGraph.Status.BLOCKED) {
+                return new ResponseEntity<>(false, HttpStatus.BAD_REQUEST);
+            } else if (status == RelationshipGraph.Status.DISLIKED) {
+                return new ResponseEntity<>(true, HttpStatus.OK);
+            }
+
+            HttpStatus ingestStatus = ingest(List.of(new Swipe(userId, otherUserId, RelationshipGraph.Status.DISLIKED)));
+            return new ResponseEntity<>(ingestStatus == HttpStatus.OK, ingestStatus);
+
+        } finally {
+            pairLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the pending swipes between two users, in both directions, ahead of the next flush. Must be called with
+     * the pair lock held before the relationship between the users is written directly, so a pending swipe cannot
+     * overwrite it later. Must not be called while holding a pooled connection, since writing the swipes borrows one
+     *
+     * @return true iff no swipes between the users are pending
+     */
+    public static boolean flushPair(String userId, String otherUserId) {
+        return flushPair(userId, otherUserId, SwipeIngestionService::writeToDatabase);
+    }
+
+    /**
+     * Writes the pending swipes between two users, in both directions, ahead of the next flush. If a flush is
+     * already writing swipes between the users, then waits for it to finish first, so they are written in order.
+     * Caller must hold the pair lock
+     *
+     * @param pairWriter writer for the swipes of the pair
+     * @return true iff no swipes between the users are pending
+     */
+    public static boolean flushPair(String userId, String otherUserId, SwipeWriter pairWriter) {
+        List<Pair> pairs = List.of(new Pair(userId, otherUserId), new Pair(otherUserId, userId));
+        List<Swipe> swipes = new ArrayList<>();
+
+        ingestLock.lock();
+        try {
+            while (pairs.stream().anyMatch(flushingSwipes::containsKey)) {
+                flushingPairsReleased.awaitUninterruptibly();
+            }
+            for (Pair pair : pairs) {
+                Swipe swipe = pendingSwipes.remove(pair);
+                if (swipe != null) {
+                    swipes.add(swipe);
+                    flushingSwipes.put(pair, swipe);
+                }
+            }
+        } finally {
+            ingestLock.unlock();
+        }
+        if (swipes.isEmpty()) {
+            return true;
+        }
+
+        boolean written = write(pairWriter, swipes);
+        ingestLock.lock();
+        try {
+            release(swipes);
+            if (written) {
+                compactJournal();
+            } else {
+                requeue(swipes);
+            }
+        } finally {
+            ingestLock.unlock();
+        }
+        return written;
+    }
+
+    /**
+     * Returns whether swipes between two users, in either direction, are pending or being written
+     */
+    public static boolean hasPendingSwipes(String userId, String otherUserId) {
+        List<Pair> pairs = List.of(new Pair(userId, otherUserId), new Pair(otherUserId, userId));
+        ingestLock.lock();
+        try {
+            return pairs.stream().anyMatch(pair -> pendingSwipes.containsKey(pair) || flushingSwipes.containsKey(pair));
+        } finally {
+            ingestLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the pending swipes to the database in batches, then compacts the journal
+     */
+    public static void flush() {
+        flushLock.lock();
+
+        try {
+            List<Swipe> swipes;
+            SwipeWriter swipeWriter;
+            ingestLock.lock();
+            try {
+                if (pendingSwipes.isEmpty()) {
+                    return;
+                }
+                swipes = new ArrayList<>(pendingSwipes.values());
+                swipeWriter = writer;
+                flushingSwipes.putAll(pendingSwipes);
+                pendingSwipes.clear();
+            } finally {
+                ingestLock.unlock();
+            }
+
+            int numberOfWrittenSwipes = 0;
+            while (numberOfWrittenSwipes < swipes.size()) {
+                List<Swipe> batch = swipes.subList(numberOfWrittenSwipes, Math.min(numberOfWrittenSwipes + FLUSH_BATCH_SIZE, swipes.size()));
+                if (!write(swipeWriter, batch)) {
+                    break;
+                }
+                numberOfWrittenSwipes += batch.size();
+
+                // Pairs in a written batch can be flushed on their own again without waiting for the rest
+                ingestLock.lock();
+                try {
+                    release(batch);
+                } finally {
+                    ingestLock.unlock();
+                }
+            }
+
+            ingestLock.lock();
+            try {
+                List<Swipe> unwrittenSwipes = swipes.subList(numberOfWrittenSwipes, swipes.size());
+                release(unwrittenSwipes);
+                requeue(unwrittenSwipes);
+                if (numberOfWrittenSwipes > 0) {
+                    compactJournal();
+                }
+            } finally {
+                ingestLock.unlock();
+            }
+
+        } finally {
+            flushScheduled.set(false);
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of swipes waiting to be written
+     */
+    public static int numberOfPendingSwipes() {
+        ingestLock.lock();
+        try {
+            return pendingSwipes.size();
+        } finally {
+            ingestLock.unlock();
+        }
+    }
+
+    /**
+     * Appends swipes to the journal, and once the journal has synced, queues them and applies them to the
+     * RelationshipGraph. Caller must hold the pair lock
+     *
+     * @return 200 status iff the swipes are durable
+     */
+    private static HttpStatus ingest(List<Swipe> swipes) {
+        SwipeJournal swipeJournal;
+        long sequence;
+
+        ingestLock.lock();
+        try {
+            if (journal == null) {
+                return HttpStatus.SERVICE_UNAVAILABLE;
+            }
+
+            int numberOfNewPairs = 0;
+            for (Swipe swipe : swipes) {
+                if (!pendingSwipes.containsKey(new Pair(swipe.userId(), swipe.otherUserId()))) {
+                    numberOfNewPairs++;
+                }
+            }
+            if (pendingSwipes.size() + flushingSwipes.size() + syncingSwipes.size() + numberOfNewPairs > MAX_PENDING_SWIPES) {
+                return HttpStatus.SERVICE_UNAVAILABLE;
+            }
+
+            swipeJournal = journal;
+            sequence = journal.append(swipes);
+
+            // Kept in the journal if it is compacted before it syncs
+            for (Swipe swipe : swipes) {
+                syncingSwipes.put(new Pair(swipe.userId(), swipe.otherUserId()), swipe);
+            }
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            return HttpStatus.INTERNAL_SERVER_ERROR;
+
+        } finally {
+            ingestLock.unlock();
+        }
+
+        boolean synced;
+        try {
+            swipeJournal.sync(sequence);
+            synced = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            synced = false;
+        }
+
+        boolean batchFilled;
+        ingestLock.lock();
+        try {
+            for (Swipe swipe : swipes) {
+                Pair pair = new Pair(swipe.userId(), swipe.otherUserId());
+                syncingSwipes.remove(pair);
+                if (synced) {
+                    pendingSwipes.put(pair, swipe);
+                    RelationshipGraph.setRelationship(swipe.userId(), swipe.otherUserId(), swipe.status());
+                }
+            }
+
+            // The swipes were rejected, so they must not be recovered from the journal after a restart
+            if (!synced) {
+                compactJournal();
+                return HttpStatus.INTERNAL_SERVER_ERROR;
+            }
+            batchFilled = pendingSwipes.size() >= FLUSH_BATCH_SIZE;
+
+        } finally {
+            ingestLock.unlock();
+        }
+
+        // Flush early once a full batch is pending, rather than waiting for the next scheduled flush
+        if (batchFilled && flushScheduled.compareAndSet(false, true)) {
+            try {
+                flushExecutor.execute(SwipeIngestionService::flush);
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+            }
+        }
+        return HttpStatus.OK;
+    }
+
+    /**
+     * Writes a batch of swipes with the writer
+     *
+     * @return true iff every swipe in the batch has been written
+     */
+    private static boolean write(SwipeWriter swipeWriter, List<Swipe> swipes) {
+        try {
+            return swipeWriter.write(swipes);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Marks the pairs of swipes as no longer being written, waking callers waiting to flush them. Caller must hold the ingest lock
+     */
+    private static void release(List<Swipe> swipes) {
+        for (Swipe swipe : swipes) {
+            flushingSwipes.remove(new Pair(swipe.userId(), swipe.otherUserId()));
+        }
+        flushingPairsReleased.signalAll();
+    }
+
+    /**
+     * Queues swipes that could not be written again, unless a newer swipe between the same users has been accepted since.
+     * Caller must hold the ingest lock
+     */
+    private static void requeue(List<Swipe> swipes) {
+        for (Swipe swipe : swipes) {
+            pendingSwipes.putIfAbsent(new Pair(swipe.userId(), swipe.otherUserId()), swipe);
+        }
+    }
+
+    /**
+     * Rewrites the journal with only the swipes that have not been written: those being flushed, the pending swipes,
+     * and the swipes waiting for it to sync. Caller must hold the ingest lock
+     */
+    private static void compactJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            // Swipes are recovered in order, so swipes between the same users are recovered oldest first
+            List<List<Swipe>> records = new ArrayList<>(flushingSwipes.size() + pendingSwipes.size() + syncingSwipes.size());
+            for (Swipe swipe : flushingSwipes.values()) {
+                records.add(List.of(swipe));
+            }
+            for (Swipe swipe : pendingSwipes.values()) {
+                records.add(List.of(swipe));
+            }
+            for (Swipe swipe : syncingSwipes.values()) {
+                records.add(List.of(swipe));
+            }
+            journal.rewrite(records);
+        } catch (IOException e) {
+            // The old journal still holds every pending swipe, so it is compacted on the next flush instead
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes a batch of swipes with a pooled database connection
+     */
+    private static boolean writeToDatabase(List<Swipe> swipes) {
+        DatabaseConnection dbconn = DatabaseConnectionPool.getShardConnection(swipes.get(0).userId());
+        try {
+            return dbconn.transaction_writeSwipes(swipes).getStatusCode() == HttpStatus.OK;
+        } finally {
+            DatabaseConnectionPool.releaseConnection(dbconn);
+        }
+    }
+
+    /**
+     * Ordered pair of users
+     */
+    private record Pair(String userId, String otherUserId) {}
+}
@@ -0,0 +1,237 @@
+package services;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * SwipeJournal is an append-only file of swipes that have been accepted but not yet written to the database <br><br>
+ *
+ * Each append is one checksummed record, so swipes that must be applied together, such as the two sides of a match,
+ * are recovered together or not at all. Appends are made durable with group commit: callers append, then sync,
+ * and a single fsync covers every record appended before it. A torn record at the end of the file, left by a
+ * crash in the middle of an append, is discarded when the journal is opened. Once swipes have been written to
+ * the database, the journal is compacted by rewriting it with only the swipes that are still pending
+ */
+public final class SwipeJournal implements Closeable {
+
+    // Record header is the payload length followed by the payload checksum
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    // Records larger than this can only be the result of a torn or corrupted header
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final Object syncLock = new Object();
+    private final List<List<Swipe>> recoveredRecords;
+
+    private volatile FileChannel channel;
+
+    // Sequence number of the last appended and the last synced record
+    private volatile long appendedSequence;
+    private long syncedSequence;
+
+    /**
+     * A swipe of user on other user
+     */
+    public record Swipe(String userId, String otherUserId, RelationshipGraph.Status status) {}
+
+    /**
+     * Opens the journal at path, creating it if it does not exist, and recovers its records
+     */
+    public SwipeJournal(Path path) throws IOException {
+        this.path = path;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recoveredRecords = new ArrayList<>();
+        long validLength = readRecords(channel, recoveredRecords);
+
+        // Drop a torn record at the end of the file, so new records are appended after the last valid one
+        channel.truncate(validLength);
+        channel.position(validLength);
+        channel.force(true);
+    }
+
+    /**
+     * Gets the records that were in the journal when it was opened, in the order they were appended
+     */
+    public List<List<Swipe>> getRecoveredRecords() {
+        return Collections.unmodifiableList(recoveredRecords);
+    }
+
+    /**
+     * Appends a record of swipes. The record is not durable until sync has been called with its sequence number
+     *
+     * @return sequence number of the record
+     */
+    public synchronized long append(List<Swipe> swipes) throws IOException {
+        ByteBuffer record = encode(swipes);
+        long position = channel.position();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            // Drop the partial record, otherwise every record appended after it would be lost on recovery
+            channel.truncate(position);
+            channel.position(position);
+            throw e;
+        }
+        return ++appendedSequence;
+    }
+
+    /**
+     * Blocks until the record with the sequence number is durable. Records appended by other threads
+     * before the fsync are made durable along with it
+     */
+    public void sync(long sequence) throws IOException {
+        synchronized (syncLock) {
+            if (syncedSequence >= sequence) {
+                return;
+            }
+            long sequenceToSync = appendedSequence;
+            channel.force(false);
+            syncedSequence = sequenceToSync;
+        }
+    }
+
+    /**
+     * Replaces the contents of the journal with the supplied records. The new journal is written to a temporary
+     * file and moved over the old one, so a crash leaves either the old or the new journal
+     */
+    public void rewrite(Collection<List<Swipe>> records) throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+                try (FileChannel temporaryChannel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE,
+                                                                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    for (List<Swipe> swipes : records) {
+                        ByteBuffer record = encode(swipes);
+                        while (record.hasRemaining()) {
+                            temporaryChannel.write(record);
+                        }
+                    }
+                    temporaryChannel.force(true);
+                }
+
+                channel.close();
+                Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel.position(channel.size());
+
+                // Everything appended so far is either in the new journal or no longer needed
+                syncedSequence = appendedSequence;
+            }
+        }
+    }
+
+    /**
+     * Returns the size of the journal in bytes
+     */
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                channel.force(true);
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Encodes a record as its header followed by the user_id, other_user_id, and relationship_status of each swipe
+     */
+    private static ByteBuffer encode(List<Swipe> swipes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(bytes);
+        payload.writeShort(swipes.size());
+        for (Swipe swipe : swipes) {
+            payload.writeUTF(swipe.userId());
+            payload.writeUTF(swipe.otherUserId());
+            payload.writeUTF(swipe.status().value());
+        }
+        payload.flush();
+
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes.toByteArray());
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + bytes.size());
+        record.putInt(bytes.size());
+        record.putInt((int) checksum.getValue());
+        record.put(bytes.toByteArray());
+        return record.flip();
+    }
+
+    /**
+     * Reads records from the start of the channel until the end of the file or the first invalid record
+     *
+     * @return length of the valid records in bytes
+     */
+    private static long readRecords(FileChannel channel, List<List<Swipe>> records) throws IOException {
+        long position = 0;
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            int length = header.getInt();
+            int expectedChecksum = header.getInt();
+            if (length <= 0 || length > MAX_RECORD_SIZE || position + HEADER_SIZE + length > size) {
+                break;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            while (payload.hasRemaining() && channel.read(payload, position + HEADER_SIZE + payload.position()) >= 0);
+            CRC32 checksum = new CRC32();
+            checksum.update(payload.array());
+            if ((int) checksum.getValue() != expectedChecksum) {
+                break;
+            }
+
+            List<Swipe> swipes = decode(payload.array());
+            if (swipes == null) {
+                break;
+            }
+            records.add(swipes);
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    /**
+     * Decodes the payload of a record
+     *
+     * @return swipes in the record. null if the record could not be decoded
+     */
+    private static List<Swipe> decode(byte[] bytes) {
+        try {
+            DataInputStream payload = new DataInputStream(new ByteArrayInputStream(bytes));
+            int numberOfSwipes = payload.readUnsignedShort();
+            List<Swipe> swipes = new ArrayList<>(numberOfSwipes);
+            for (int i = 0; i < numberOfSwipes; i++) {
+                String userId = payload.readUTF();
+                String otherUserId = payload.readUTF();
+                RelationshipGraph.Status status = RelationshipGraph.Status.parse(payload.readUTF());
+                if (status == null) {
+                    return null;
+                }
+                swipes.add(new Swipe(userId, otherUserId, status));
+            }
+            return swipes;
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package services;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+
+/**
+ * UniversitySuggestionService provides typeahead suggestions over the university catalog <br><br>
+ *
+ * Names are case and diacritic folded and indexed from every word boundary in a compressed (radix) trie.
+ * Every node stores the best-ranked names in its subtree, so a prefix lookup is a single walk down the trie.
+ * If the prefix does not produce enough suggestions, the trie is searched again allowing a small number of typos
+ */
+public final class UniversitySuggestionService {
+
+    // Maximum number of suggestions returned for a query
+    public static final int MAX_SUGGESTIONS = 10;
+
+    // Queries shorter than this are not corrected for typos
+    private static final int MIN_FUZZY_QUERY_LENGTH = 4;
+
+    // Queries at least this long may contain two typos instead of one
+    private static final int TWO_TYPO_QUERY_LENGTH = 8;
+
+    // Score flag for names that match at a word other than the first
+    private static final int INNER_WORD_FLAG = 1 << 30;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "university-suggestion-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile Index index = null;
+    private static volatile boolean rebuildPending = false;
+
+    private UniversitySuggestionService() {}
+
+    /**
+     * Suggests university names that match a partially typed query
+     *
+     * @param query partially typed university name
+     * @param limit maximum number of suggestions. capped at MAX_SUGGESTIONS
+     * @return university names ordered from best to worst match
+     */
+    public static List<String> suggest(String query, int limit) {
+        return getIndex().suggest(fold(query), Math.max(0, Math.min(limit, MAX_SUGGESTIONS)));
+    }
+
+    /**
+     * Returns an index over the current catalog. If the catalog has changed since the index was built,
+     * then the index is rebuilt in the background and the previous index keeps serving until it is replaced
+     */
+    private static Index getIndex() {
+        Index current = index;
+        long universityVersion = CatalogService.getUniversityVersion();
+
+        if (current == null) {
+            synchronized (UniversitySuggestionService.class) {
+                if (index == null) {
+                    index = new Index(CatalogService.getUniversityNames(), universityVersion);
+                }
+                return index;
+            }
+        }
+
+        if (current.universityVersion != universityVersion && !rebuildPending) {
+            rebuildPending = true;
+            rebuildExecutor.execute(() -> {
+                try {
+                    long version = CatalogService.getUniversityVersion();
+                    index = new Index(CatalogService.getUniversityNames(), version);
+                } finally {
+                    rebuildPending = false;
+                }
+            });
+        }
+        return current;
+    }
+
+    /**
+     * Folds a string for matching. Removes diacritics and case, and collapses punctuation and whitespace into single spaces
+     */
+    static String fold(String string) {
+        if (string == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(string, Normalizer.Form.NFD);
+        String stripped = DIACRITICS.matcher(decomposed).replaceAll("");
+        return SEPARATORS.matcher(stripped.toLowerCase(Locale.ROOT)).replaceAll(" ").strip();
+    }
+
+    /**
+     * Immutable radix trie over the folded university names
+     */
+    private static final class Index {
+
+        private final long universityVersion;
+
+        // University names. A name's position in the array is its rank among equally good matches
+        private final String[] names;
+
+        private final Node root;
+
+        Index(Collection<String> universityNames, long universityVersion) {
+            this.universityVersion = universityVersion;
+
+            // Shorter names rank first, since a short name that matches the query is usually the one being typed
+            names = universityNames.stream()
+                                   .distinct()
+                                   .sorted(Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder()))
+                                   .toArray(String[]::new);
+
+            // Index each name from every word boundary, so that "wash" finds "University of Washington"
+            List<Key> keys = new ArrayList<>();
+            for (int nameId = 0; nameId < names.length; nameId++) {
+                String folded = fold(names[nameId]);
+                for (int i = 0; i < folded.length(); i++) {
+                    if (i == 0 || folded.charAt(i - 1) == ' ') {
+                        keys.add(new Key(folded.substring(i), (i == 0) ? nameId : nameId | INNER_WORD_FLAG));
+                    }
+                }
+            }
+            keys.sort(Comparator.comparing(Key::text));
+
+            root = keys.isEmpty() ? new Node(new char[0], new char[0], new Node[0], new int[0])
+                                  : build(keys, 0, keys.size(), 0, 0, true);
+        }
+
+        /**
+         * Builds the subtree for keys[lo, hi). Every key in the range shares its first depth characters,
+         * and the edge leading into the subtree starts at character edgeStart. The root has no edge
+         */
+        private Node build(List<Key> keys, int lo, int hi, int depth, int edgeStart, boolean isRoot) {
+            // Since the keys are sorted, the common prefix of the range is the common prefix of its first and last keys
+            String first = keys.get(lo).text;
+            String last = keys.get(hi - 1).text;
+            int end = depth;
+            while (!isRoot && end < first.length() && end < last.length() && first.charAt(end) == last.charAt(end)) {
+                end++;
+            }
+
+            List<Integer> scores = new ArrayList<>();
+            List<Character> childChars = new ArrayList<>();
+            List<Node> children = new ArrayList<>();
+
+            int i = lo;
+            while (i < hi && keys.get(i).text.length() == end) {
+                scores.add(keys.get(i).score);
+                i++;
+            }
+            while (i < hi) {
+                char c = keys.get(i).text.charAt(end);
+                int j = i;
+                while (j < hi && keys.get(j).text.charAt(end) == c) {
+                    j++;
+                }
+                Node child = build(keys, i, j, end + 1, end, false);
+                childChars.add(c);
+                children.add(child);
+                for (int score : child.top) {
+                    scores.add(score);
+                }
+                i = j;
+            }
+
+            char[] childCharArray = new char[childChars.size()];
+            for (int k = 0; k < childCharArray.length; k++) {
+                childCharArray[k] = childChars.get(k);
+            }
+            return new Node(first.substring(edgeStart, end).toCharArray(), childCharArray,
+                            children.toArray(new Node[0]), best(scores));
+        }
+
+        /**
+         * Selects the best MAX_SUGGESTIONS scores, keeping only the best score for each name
+         */
+        private static int[] best(List<Integer> scores) {
+            Collections.sort(scores);
+            Set<Integer> seen = new HashSet<>();
+            int[] top = new int[Math.min(scores.size(), MAX_SUGGESTIONS)];
+            int n = 0;
+            for (int score : scores) {
+                if (n == top.length) {
+                    break;
+                }
+                if (seen.add(score & ~INNER_WORD_FLAG)) {
+                    top[n++] = score;
+                }
+            }
+            return Arrays.copyOf(top, n);
+        }
+
+        List<String> suggest(String query, int limit) {
+            Set<Integer> nameIds = new LinkedHashSet<>();
+            if (limit == 0) {
+                return List.of();
+            }
+
+            // Exact prefix matches
+            Node node = find(query);
+            if (node != null) {
+                for (int score : node.top) {
+                    if (nameIds.size() == limit) {
+                        break;
+                    }
+                    nameIds.add(score & ~INNER_WORD_FLAG);
+                }
+            }
+
+            // Typo-tolerant fallback
+            if (nameIds.size() < limit && query.length() >= MIN_FUZZY_QUERY_LENGTH) {
+                int maxEdits = (query.length() >= TWO_TYPO_QUERY_LENGTH) ? 2 : 1;
+                for (int nameId : fuzzyFind(query, maxEdits)) {
+                    if (nameIds.size() == limit) {
+                        break;
+                    }
+                    nameIds.add(nameId);
+                }
+            }
+
+            List<String> suggestions = new ArrayList<>(nameIds.size());
+            for (int nameId : nameIds) {
+                suggestions.add(names[nameId]);
+            }
+            return suggestions;
+        }
+
+        /**
+         * Finds the node whose subtree contains exactly the keys starting with prefix
+         *
+         * @return node if any key starts with prefix. otherwise, return null
+         */
+        private Node find(String prefix) {
+            Node node = root;
+            int i = 0;
+            while (i < prefix.length()) {
+                Node child = node.child(prefix.charAt(i));
+                if (child == null) {
+                    return null;
+                }
+                // The first character of the edge is matched by the child lookup
+                for (int j = 1; j < child.label.length; j++) {
+                    if (i + j == prefix.length()) {
+                        return child;
+                    }
+                    if (child.label[j] != prefix.charAt(i + j)) {
+                        return null;
+                    }
+                }
+                i += Math.max(child.label.length, 1);
+                node = child;
+            }
+            return node;
+        }
+
+        /**
+         * Finds names with a prefix within maxEdits Levenshtein edits of the query
+         *
+         * @return name ids ordered by number of edits, then by score
+         */
+        private List<Integer> fuzzyFind(String query, int maxEdits) {
+            int[] row = new int[query.length() + 1];
+            for (int j = 0; j < row.length; j++) {
+                row[j] = j;
+            }
+            List<long[]> matches = new ArrayList<>();
+            for (int k = 0; k < root.children.length; k++) {
+                fuzzyFind(root.children[k], query, row, maxEdits, matches);
+            }
+
+            // Order by edits, then by score
+            matches.sort(Comparator.<long[]>comparingLong(match -> match[0]).thenComparingLong(match -> match[1]));
+            List<Integer> nameIds = new ArrayList<>();
+            Set<Integer> seen = new HashSet<>();
+            for (long[] match : matches) {
+                int nameId = (int) match[1] & ~INNER_WORD_FLAG;
+                if (seen.add(nameId)) {
+                    nameIds.add(nameId);
+                }
+            }
+            return nameIds;
+        }
+
+        private void fuzzyFind(Node node, String query, int[] previousRow, int maxEdits, List<long[]> matches) {
+            int[] row = previousRow;
+            for (char c : node.label) {
+                int[] nextRow = new int[row.length];
+                nextRow[0] = row[0] + 1;
+                int rowMinimum = nextRow[0];
+                for (int j = 1; j < row.length; j++) {
+                    int substitution = row[j - 1] + ((query.charAt(j - 1) == c) ? 0 : 1);
+                    nextRow[j] = Math.min(substitution, Math.min(row[j] + 1, nextRow[j - 1] + 1));
+                    rowMinimum = Math.min(rowMinimum, nextRow[j]);
+                }
+                row = nextRow;
+
+                if (row[row.length - 1] <= maxEdits) {
+                    // The query matches a prefix of every key in the subtree
+                    for (int score : node.top) {
+                        matches.add(new long[] {row[row.length - 1], score});
+                    }
+                    return;
+                }
+                if (rowMinimum > maxEdits) {
+                    return;
+                }
+            }
+            for (Node child : node.children) {
+                fuzzyFind(child, query, row, maxEdits, matches);
+            }
+        }
+    }
+
+    private record Key(String text, int score) {}
+
+    /**
+     * Radix trie node. The label is the edge leading into the node
+     */
+    private record Node(char[] label, char[] childChars, Node[] children, int[] top) {
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(childChars, c);
+            return (i >= 0) ? children[i] : null;
+        }
+    }
+}
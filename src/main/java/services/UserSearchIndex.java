@@ -0,0 +1,412 @@
+package services;
+
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+import org.roaringbitmap.*;
+
+import types.*;
+
+/**
+ * UserSearchIndex searches users by user handle and name <br><br>
+ *
+ * Handles and names are folded the same way as university names, and every user is assigned a dense ordinal.
+ * Each trigram of a folded handle or name maps to a compressed bitmap of the ordinals containing it, so a
+ * substring query intersects the bitmaps of its trigrams and only verifies the users left. Queries shorter
+ * than a trigram match the start of a word instead, using bitmaps keyed by the first one to three characters of
+ * the handle, the name, and every word
+ */
+public final class UserSearchIndex {
+
+    // Maximum number of results returned per page
+    public static final int MAX_PAGE_SIZE = 50;
+
+    // Maximum number of results that can be paged through
+    public static final int MAX_RESULTS = 1000;
+
+    // Length of the n-grams indexed for substring matching
+    private static final int GRAM_LENGTH = 3;
+
+    // Key flags for short prefixes, so they do not collide with trigrams
+    private static final long HANDLE_PREFIX_FLAG = 1L << 60;
+    private static final long NAME_PREFIX_FLAG = 1L << 61;
+    private static final long WORD_PREFIX_FLAG = 1L << 62;
+
+    // Match scores. Lower scores rank first. Handles end in a discriminator, so a full handle is a prefix of no other handle
+    private static final int HANDLE_PREFIX = 0;
+    private static final int NAME_PREFIX = 1;
+    private static final int WORD_PREFIX = 2;
+    private static final int SUBSTRING = 3;
+
+    private static final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Dense user ordinals. Ordinals are never reused
+    private static Map<String, Integer> userIdToOrdinal = new HashMap<>();
+    private static List<Document> ordinalToDocument = new ArrayList<>();
+
+    // Users containing each n-gram
+    private static Map<Long, RoaringBitmap> gramToUsers = new HashMap<>();
+
+    // Users that can be found. Users are searchable once they have been verified
+    private static RoaringBitmap searchableUsers = new RoaringBitmap();
+
+    private UserSearchIndex() {}
+
+    /**
+     * Replaces the index with the supplied users
+     *
+     * @param users         mini profiles of every user
+     * @param verifiedUsers user_ids of the verified users
+     */
+    public static void initialize(Collection<UserMini> users, Set<String> verifiedUsers) {
+        lock.writeLock().lock();
+        try {
+            userIdToOrdinal = new HashMap<>(users.size() * 2);
+            ordinalToDocument = new ArrayList<>(users.size());
+            gramToUsers = new HashMap<>();
+            searchableUsers = new RoaringBitmap();
+
+            for (UserMini user : users) {
+                putUser(user, verifiedUsers.contains(user.userId));
+            }
+            for (RoaringBitmap bitmap : gramToUsers.values()) {
+                bitmap.runOptimize();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds or updates a user. Users added here are not searchable until they are verified
+     */
+    public static void putUser(String userId, String userHandle, String userName, String profilePictureUrl) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = userIdToOrdinal.get(userId);
+            putUser(new UserMini(userId, userHandle, userName, profilePictureUrl), ordinal != null && searchableUsers.contains(ordinal));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Updates the handle and name of a user. Does nothing if the user is not indexed
+     */
+    public static void updateUser(String userId, String userHandle, String userName) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = userIdToOrdinal.get(userId);
+            if (ordinal != null && ordinalToDocument.get(ordinal) != null) {
+                putUser(new UserMini(userId, userHandle, userName, ordinalToDocument.get(ordinal).user.profilePictureUrl),
+                        searchableUsers.contains(ordinal));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Updates the profile picture of a user to the url of its thumbnail rendition. Does nothing if the user is not indexed
+     */
+    public static void updateProfilePicture(String userId, String profilePictureUrl) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = userIdToOrdinal.get(userId);
+            if (ordinal != null && ordinalToDocument.get(ordinal) != null) {
+                // The handle and name are unchanged, so only the mini profile is replaced
+                Document document = ordinalToDocument.get(ordinal);
+                UserMini user = new UserMini(userId, document.user.userHandle, document.user.userName, profilePictureUrl);
+                ordinalToDocument.set(ordinal, new Document(user, document.foldedHandle, document.foldedName));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Makes a user searchable. Does nothing if the user is not indexed
+     */
+    public static void verifyUser(String userId) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = userIdToOrdinal.get(userId);
+            if (ordinal != null && ordinalToDocument.get(ordinal) != null) {
+                searchableUsers.add(ordinal);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a user from the index
+     */
+    public static void removeUser(String userId) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = userIdToOrdinal.get(userId);
+            if (ordinal != null && ordinalToDocument.get(ordinal) != null) {
+                Document document = ordinalToDocument.get(ordinal);
+                for (long gram : grams(document)) {
+                    RoaringBitmap bitmap = gramToUsers.get(gram);
+                    bitmap.remove(ordinal);
+                    if (bitmap.isEmpty()) {
+                        gramToUsers.remove(gram);
+                    }
+                }
+                ordinalToDocument.set(ordinal, null);
+                searchableUsers.remove(ordinal);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Searches users whose handle or name contains the query. Handle matches rank first, then name matches,
+     * then matches at the start of any other word, then matches anywhere else. Ties are broken by ordinal
+     *
+     * @param offset          number of results to skip. results past MAX_RESULTS are not returned
+     * @param count           maximum number of results. capped at MAX_PAGE_SIZE
+     * @param excludedUserIds user_ids that must not be returned
+     * @return mini profiles of the matching users
+     */
+    public static List<UserMini> search(String query, int offset, int count, Collection<String> excludedUserIds) {
+        String foldedQuery = UniversitySuggestionService.fold(query);
+        count = Math.min(count, Math.min(MAX_PAGE_SIZE, MAX_RESULTS - offset));
+        if (foldedQuery.isEmpty() || offset < 0 || count <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            RoaringBitmap excluded = new RoaringBitmap();
+            for (String excludedUserId : excludedUserIds) {
+                Integer ordinal = userIdToOrdinal.get(excludedUserId);
+                if (ordinal != null) {
+                    excluded.add(ordinal);
+                }
+            }
+
+            RoaringBitmap[] tiers = (foldedQuery.length() < GRAM_LENGTH) ? prefixTiers(foldedQuery, excluded)
+                                                                          : scoredTiers(foldedQuery, excluded, offset + count);
+
+            // Skips whole tiers until the page starts, then reads the page in ordinal order
+            List<UserMini> results = new ArrayList<>(count);
+            for (RoaringBitmap tier : tiers) {
+                if (offset >= tier.getCardinality()) {
+                    offset -= tier.getCardinality();
+                    continue;
+                }
+                PeekableIntIterator iterator = tier.getIntIterator();
+                iterator.advanceIfNeeded(tier.select(offset));
+                offset = 0;
+                while (iterator.hasNext() && results.size() < count) {
+                    results.add(ordinalToDocument.get(iterator.next()).user);
+                }
+                if (results.size() == count) {
+                    break;
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of indexed users
+     */
+    public static int numberOfUsers() {
+        lock.readLock().lock();
+        try {
+            return userIdToOrdinal.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits the users matching a query shorter than a trigram into tiers. Such queries only match the start
+     * of a word, and the prefix bitmaps are exact, so no user has to be verified. Caller must hold the read lock
+     */
+    private static RoaringBitmap[] prefixTiers(String foldedQuery, RoaringBitmap excluded) {
+        long key = pack(foldedQuery, 0, foldedQuery.length());
+        RoaringBitmap handlePrefix = searchable(gramToUsers.get(HANDLE_PREFIX_FLAG | key), excluded);
+        RoaringBitmap namePrefix = searchable(gramToUsers.get(NAME_PREFIX_FLAG | key), excluded);
+        RoaringBitmap wordPrefix = searchable(gramToUsers.get(WORD_PREFIX_FLAG | key), excluded);
+
+        namePrefix.andNot(handlePrefix);
+        wordPrefix.andNot(handlePrefix);
+        wordPrefix.andNot(namePrefix);
+        return new RoaringBitmap[] {handlePrefix, namePrefix, wordPrefix};
+    }
+
+    /**
+     * Splits the users matching a query of at least a trigram into tiers by score. The intersection of the query's
+     * trigrams may contain false positives, so candidates are verified. Each tier is drawn from the candidates that
+     * share its prefix key, and verification stops once the tiers hold limit users. Caller must hold the read lock
+     */
+    private static RoaringBitmap[] scoredTiers(String foldedQuery, RoaringBitmap excluded, int limit) {
+        // Intersect the rarest n-grams first, so the intersection shrinks as quickly as possible
+        List<RoaringBitmap> bitmaps = new ArrayList<>();
+        for (int i = 0; i + GRAM_LENGTH <= foldedQuery.length(); i++) {
+            RoaringBitmap bitmap = gramToUsers.get(pack(foldedQuery, i, GRAM_LENGTH));
+            if (bitmap == null) {
+                return new RoaringBitmap[0];
+            }
+            bitmaps.add(bitmap);
+        }
+        bitmaps.sort(Comparator.comparingInt(RoaringBitmap::getCardinality));
+
+        RoaringBitmap candidates = searchable(bitmaps.get(0), excluded);
+        for (int i = 1; i < bitmaps.size() && !candidates.isEmpty(); i++) {
+            candidates.and(bitmaps.get(i));
+        }
+
+        long key = pack(foldedQuery, 0, GRAM_LENGTH);
+        RoaringBitmap[] sources = {and(candidates, gramToUsers.get(HANDLE_PREFIX_FLAG | key)),
+                                   and(candidates, gramToUsers.get(NAME_PREFIX_FLAG | key)),
+                                   and(candidates, gramToUsers.get(WORD_PREFIX_FLAG | key)),
+                                   candidates};
+
+        RoaringBitmap[] tiers = new RoaringBitmap[sources.length];
+        String wordQuery = " " + foldedQuery;
+        int size = 0;
+        for (int score = 0; score < sources.length; score++) {
+            tiers[score] = new RoaringBitmap();
+            IntIterator iterator = sources[score].getIntIterator();
+            while (iterator.hasNext() && size < limit) {
+                int ordinal = iterator.next();
+                if (score(ordinalToDocument.get(ordinal), foldedQuery, wordQuery) == score) {
+                    tiers[score].add(ordinal);
+                    size++;
+                }
+            }
+        }
+        return tiers;
+    }
+
+    /**
+     * Intersects a bitmap with a bitmap that may be null
+     */
+    private static RoaringBitmap and(RoaringBitmap bitmap, RoaringBitmap other) {
+        return (other == null) ? new RoaringBitmap() : RoaringBitmap.and(bitmap, other);
+    }
+
+    /**
+     * Gets the searchable, non-excluded users of a bitmap. Caller must hold the read lock
+     */
+    private static RoaringBitmap searchable(RoaringBitmap bitmap, RoaringBitmap excluded) {
+        if (bitmap == null) {
+            return new RoaringBitmap();
+        }
+        RoaringBitmap users = RoaringBitmap.and(bitmap, searchableUsers);
+        users.andNot(excluded);
+        return users;
+    }
+
+    /**
+     * Scores how well a user matches a folded query of at least a trigram
+     *
+     * @param wordQuery folded query preceded by a space
+     * @return score if the user matches. otherwise, return -1
+     */
+    private static int score(Document document, String foldedQuery, String wordQuery) {
+        if (document.foldedHandle.startsWith(foldedQuery)) {
+            return HANDLE_PREFIX;
+        } else if (document.foldedName.startsWith(foldedQuery)) {
+            return NAME_PREFIX;
+        } else if (document.foldedName.contains(wordQuery) || document.foldedHandle.contains(wordQuery)) {
+            return WORD_PREFIX;
+        } else if (document.foldedName.contains(foldedQuery) || document.foldedHandle.contains(foldedQuery)) {
+            return SUBSTRING;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds or replaces the document of a user. Caller must hold the write lock
+     */
+    private static void putUser(UserMini user, boolean searchable) {
+        Integer ordinal = userIdToOrdinal.get(user.userId);
+        if (ordinal == null) {
+            ordinal = ordinalToDocument.size();
+            userIdToOrdinal.put(user.userId, ordinal);
+            ordinalToDocument.add(null);
+        }
+
+        Document previousDocument = ordinalToDocument.get(ordinal);
+        Document document = new Document(user, UniversitySuggestionService.fold(user.userHandle),
+                                         UniversitySuggestionService.fold(user.userName));
+        Set<Long> previousGrams = (previousDocument == null) ? Set.of() : grams(previousDocument);
+        Set<Long> grams = grams(document);
+
+        for (long gram : previousGrams) {
+            if (!grams.contains(gram)) {
+                RoaringBitmap bitmap = gramToUsers.get(gram);
+                bitmap.remove(ordinal);
+                if (bitmap.isEmpty()) {
+                    gramToUsers.remove(gram);
+                }
+            }
+        }
+        for (long gram : grams) {
+            if (!previousGrams.contains(gram)) {
+                gramToUsers.computeIfAbsent(gram, key -> new RoaringBitmap()).add(ordinal);
+            }
+        }
+
+        ordinalToDocument.set(ordinal, document);
+        if (searchable) {
+            searchableUsers.add(ordinal);
+        } else {
+            searchableUsers.remove(ordinal);
+        }
+    }
+
+    /**
+     * Gets the n-gram and short prefix keys of a document. Trigrams never span the handle and the name
+     */
+    private static Set<Long> grams(Document document) {
+        Set<Long> grams = new HashSet<>();
+        for (int length = 1; length <= GRAM_LENGTH; length++) {
+            if (length <= document.foldedHandle.length()) {
+                grams.add(HANDLE_PREFIX_FLAG | pack(document.foldedHandle, 0, length));
+            }
+            if (length <= document.foldedName.length()) {
+                grams.add(NAME_PREFIX_FLAG | pack(document.foldedName, 0, length));
+            }
+        }
+        for (String text : new String[] {document.foldedHandle, document.foldedName}) {
+            for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+                grams.add(pack(text, i, GRAM_LENGTH));
+            }
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) != ' ' && (i == 0 || text.charAt(i - 1) == ' ')) {
+                    for (int length = 1; length <= GRAM_LENGTH && i + length <= text.length(); length++) {
+                        grams.add(WORD_PREFIX_FLAG | pack(text, i, length));
+                    }
+                }
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * Packs up to three characters of a string into a key
+     */
+    private static long pack(String text, int start, int length) {
+        long key = length;
+        for (int i = start; i < start + length; i++) {
+            key = (key << 16) | text.charAt(i);
+        }
+        return key;
+    }
+
+    /**
+     * Indexed user. Folded fields are cached so matches can be verified without folding again
+     */
+    private record Document(UserMini user, String foldedHandle, String foldedName) {}
+}
@@ -0,0 +1,25 @@
+package types;
+
+public class DiscoverCandidate {
+
+    public DiscoverCard user;
+    public int sharedCourses;
+    public boolean sameUniversity;
+
+    public DiscoverCandidate(DiscoverCard user, int sharedCourses, boolean sameUniversity) {
+        this.user = user;
+        this.sharedCourses = sharedCourses;
+        this.sameUniversity = sameUniversity;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("DiscoverCandidate {\n");
+        sb.append("    user: ")          .append(user)          .append("\n");
+        sb.append("    sharedCourses: ") .append(sharedCourses) .append("\n");
+        sb.append("    sameUniversity: ").append(sameUniversity).append("\n");
+        sb.append("}");
+        return sb.toString();
+    }
+}
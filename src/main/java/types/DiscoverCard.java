@@ -0,0 +1,24 @@
+package types;
+
+public class DiscoverCard extends UserMini {
+
+    public String profilePictureCardUrl;
+
+    public DiscoverCard(String userId, String userHandle, String userName, String profilePictureUrl, String profilePictureCardUrl) {
+        super(userId, userHandle, userName, profilePictureUrl);
+        this.profilePictureCardUrl = profilePictureCardUrl;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("DiscoverCard {\n");
+        sb.append("    userId: ")               .append(userId)               .append("\n");
+        sb.append("    userHandle: ")           .append(userHandle)           .append("\n");
+        sb.append("    userName: ")             .append(userName)             .append("\n");
+        sb.append("    profilePictureUrl: ")    .append(profilePictureUrl)    .append("\n");
+        sb.append("    profilePictureCardUrl: ").append(profilePictureCardUrl).append("\n");
+        sb.append("}");
+        return sb.toString();
+    }
+}
@@ -15,6 +15,7 @@ public class User {
     public String gpa;
     public String biography;
     public String profilePictureUrl;
+    public String profilePictureCardUrl;
     public String numberOfFriends;
     public String rating;
 
@@ -24,7 +25,7 @@ public class User {
     public User(String userId, String userHandle, String userName,
                 String cardColor, String dateOfBirth, String universityName,
                 String major, String standing, String gpa, String biography,
-                String profilePictureUrl, String numberOfFriends, String rating,
+                String profilePictureUrl, String profilePictureCardUrl, String numberOfFriends, String rating,
                 List<String> mediaUrls, List<String> courseCodes) {
 
         this.userId = userId;
@@ -38,6 +39,7 @@ public class User {
         this.gpa = gpa;
         this.biography = biography;
         this.profilePictureUrl = profilePictureUrl;
+        this.profilePictureCardUrl = profilePictureCardUrl;
         this.numberOfFriends = numberOfFriends;
         this.rating = rating;
         this.mediaUrls = mediaUrls;
@@ -48,21 +50,22 @@ public class User {
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("User {\n");
-        sb.append("    userId: ")           .append(userId)           .append("\n");
-        sb.append("    userHandle: ")       .append(userHandle)       .append("\n");
-        sb.append("    userName: ")         .append(userName)         .append("\n");
-        sb.append("    cardColor: ")        .append(cardColor)        .append("\n");
-        sb.append("    dateOfBirth: ")      .append(dateOfBirth)      .append("\n");
-        sb.append("    universityName: ")   .append(universityName)   .append("\n");
-        sb.append("    major: ")            .append(major)            .append("\n");
-        sb.append("    standing: ")         .append(standing)         .append("\n");
-        sb.append("    gpa: ")              .append(gpa)              .append("\n");
-        sb.append("    biography: ")        .append(biography)        .append("\n");
-        sb.append("    profilePictureUrl: ").append(profilePictureUrl).append("\n");
-        sb.append("    numberOfFriends: ")  .append(numberOfFriends)  .append("\n");
-        sb.append("    rating: ")           .append(rating)           .append("\n");
-        sb.append("    mediaUrls: ")        .append(mediaUrls)        .append("\n");
-        sb.append("    courseCodes: ")      .append(courseCodes)      .append("\n");
+        sb.append("    userId: ")               .append(userId)               .append("\n");
+        sb.append("    userHandle: ")           .append(userHandle)           .append("\n");
+        sb.append("    userName: ")             .append(userName)             .append("\n");
+        sb.append("    cardColor: ")            .append(cardColor)            .append("\n");
+        sb.append("    dateOfBirth: ")          .append(dateOfBirth)          .append("\n");
+        sb.append("    universityName: ")       .append(universityName)       .append("\n");
+        sb.append("    major: ")                .append(major)                .append("\n");
+        sb.append("    standing: ")             .append(standing)             .append("\n");
+        sb.append("    gpa: ")                  .append(gpa)                  .append("\n");
+        sb.append("    biography: ")            .append(biography)            .append("\n");
+        sb.append("    profilePictureUrl: ")    .append(profilePictureUrl)    .append("\n");
+        sb.append("    profilePictureCardUrl: ").append(profilePictureCardUrl).append("\n");
+        sb.append("    numberOfFriends: ")      .append(numberOfFriends)      .append("\n");
+        sb.append("    rating: ")               .append(rating)               .append("\n");
+        sb.append("    mediaUrls: ")            .append(mediaUrls)            .append("\n");
+        sb.append("    courseCodes: ")          .append(courseCodes)          .append("\n");
         sb.append("}");
         return sb.toString();
     }
@@ -0,0 +1,10 @@
+CREATE TABLE tbl_user_aggregates
+(
+    user_id           varchar(36) NOT NULL,
+    number_of_friends int         NOT NULL,
+    rating_sum        int         NOT NULL,
+    rating_count      int         NOT NULL,
+
+    PRIMARY KEY (user_id),
+    FOREIGN KEY (user_id) REFERENCES tbl_users (user_id) ON UPDATE NO ACTION ON DELETE CASCADE
+);
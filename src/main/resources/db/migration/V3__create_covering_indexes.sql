@@ -0,0 +1,18 @@
+-- RESOLVE_PASSWORD_RESET_CODE_TO_USER_RECORD. Most users have no reset code, so only users with one are indexed
+CREATE UNIQUE INDEX idx_users_password_reset_code ON tbl_users (password_reset_code)
+    WHERE password_reset_code IS NOT NULL;
+
+
+-- UPDATE_DRIFTED_USER_AGGREGATES friend counts
+CREATE INDEX idx_relationships_friends ON tbl_relationships (user_id)
+    WHERE relationship_status = 'friends';
+
+
+-- UPDATE_DRIFTED_USER_AGGREGATES received ratings, and the other_user_id foreign key check when a user is deleted
+CREATE INDEX idx_relationships_other_user_id ON tbl_relationships (other_user_id)
+    INCLUDE (rating);
+
+
+-- Registrations by course, and the course_id foreign key cascade when a course is deleted
+CREATE INDEX idx_registration_course_id ON tbl_registration (course_id)
+    INCLUDE (user_id);
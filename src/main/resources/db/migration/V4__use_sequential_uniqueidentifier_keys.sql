@@ -0,0 +1,102 @@
+-- Converts every id column from varchar(36) to uniqueidentifier, and generates new ids with NEWSEQUENTIALID().
+-- A uniqueidentifier is 16 bytes instead of 36, and compares as binary instead of by collation. Sequential ids are
+-- appended at the end of the clustered indexes, instead of splitting pages at random positions like NEWID()
+
+-- A column cannot change type while a constraint or an index refers to it. The constraints of V1 were named by
+-- SQL Server, so they are looked up and dropped here, and recreated below with names
+DECLARE @drop_constraints nvarchar(max) = N'';
+
+SELECT @drop_constraints += N'ALTER TABLE ' + QUOTENAME(OBJECT_NAME(parent_object_id)) +
+                            N' DROP CONSTRAINT ' + QUOTENAME(name) + N'; '
+FROM sys.foreign_keys
+WHERE OBJECT_NAME(parent_object_id) IN (N'tbl_courses', N'tbl_users', N'tbl_registration', N'tbl_media',
+                                        N'tbl_relationships', N'tbl_user_aggregates');
+
+SELECT @drop_constraints += N'ALTER TABLE ' + QUOTENAME(OBJECT_NAME(parent_object_id)) +
+                            N' DROP CONSTRAINT ' + QUOTENAME(name) + N'; '
+FROM sys.key_constraints
+WHERE OBJECT_NAME(parent_object_id) IN (N'tbl_universities', N'tbl_courses', N'tbl_users', N'tbl_registration',
+                                        N'tbl_media', N'tbl_relationships', N'tbl_user_aggregates');
+
+EXEC sp_executesql @drop_constraints;
+
+DROP INDEX idx_relationships_friends ON tbl_relationships;
+DROP INDEX idx_relationships_other_user_id ON tbl_relationships;
+DROP INDEX idx_registration_course_id ON tbl_registration;
+GO
+
+
+ALTER TABLE tbl_universities ALTER COLUMN university_id uniqueidentifier NOT NULL;
+
+ALTER TABLE tbl_courses ALTER COLUMN course_id uniqueidentifier NOT NULL;
+ALTER TABLE tbl_courses ALTER COLUMN university_id uniqueidentifier NOT NULL;
+
+ALTER TABLE tbl_users ALTER COLUMN user_id uniqueidentifier NOT NULL;
+ALTER TABLE tbl_users ALTER COLUMN university_id uniqueidentifier NULL;
+
+ALTER TABLE tbl_registration ALTER COLUMN registration_id uniqueidentifier NOT NULL;
+ALTER TABLE tbl_registration ALTER COLUMN user_id uniqueidentifier NOT NULL;
+ALTER TABLE tbl_registration ALTER COLUMN course_id uniqueidentifier NOT NULL;
+
+ALTER TABLE tbl_media ALTER COLUMN user_id uniqueidentifier NOT NULL;
+
+ALTER TABLE tbl_relationships ALTER COLUMN relationship_id uniqueidentifier NOT NULL;
+ALTER TABLE tbl_relationships ALTER COLUMN user_id uniqueidentifier NOT NULL;
+ALTER TABLE tbl_relationships ALTER COLUMN other_user_id uniqueidentifier NOT NULL;
+
+ALTER TABLE tbl_user_aggregates ALTER COLUMN user_id uniqueidentifier NOT NULL;
+GO
+
+
+ALTER TABLE tbl_universities ADD
+    CONSTRAINT pk_universities PRIMARY KEY (university_id),
+    CONSTRAINT uq_universities_university_name UNIQUE (university_name),
+    CONSTRAINT df_universities_university_id DEFAULT NEWSEQUENTIALID() FOR university_id;
+
+ALTER TABLE tbl_courses ADD
+    CONSTRAINT pk_courses PRIMARY KEY (course_id),
+    CONSTRAINT fk_courses_university_id FOREIGN KEY (university_id) REFERENCES tbl_universities (university_id) ON UPDATE NO ACTION ON DELETE NO ACTION,
+    CONSTRAINT uq_courses_course_code_university_id UNIQUE (course_code, university_id),
+    CONSTRAINT df_courses_course_id DEFAULT NEWSEQUENTIALID() FOR course_id;
+
+ALTER TABLE tbl_users ADD
+    CONSTRAINT pk_users PRIMARY KEY (user_id),
+    CONSTRAINT fk_users_university_id FOREIGN KEY (university_id) REFERENCES tbl_universities (university_id) ON UPDATE NO ACTION ON DELETE NO ACTION,
+    CONSTRAINT uq_users_user_handle UNIQUE (user_handle),
+    CONSTRAINT uq_users_email UNIQUE (email),
+    CONSTRAINT uq_users_verification_code UNIQUE (verification_code),
+    CONSTRAINT df_users_user_id DEFAULT NEWSEQUENTIALID() FOR user_id;
+
+ALTER TABLE tbl_registration ADD
+    CONSTRAINT pk_registration PRIMARY KEY (registration_id),
+    CONSTRAINT fk_registration_user_id FOREIGN KEY (user_id) REFERENCES tbl_users (user_id) ON UPDATE NO ACTION ON DELETE CASCADE,
+    CONSTRAINT fk_registration_course_id FOREIGN KEY (course_id) REFERENCES tbl_courses (course_id) ON UPDATE NO ACTION ON DELETE CASCADE,
+    CONSTRAINT uq_registration_user_id_course_id UNIQUE (user_id, course_id),
+    CONSTRAINT df_registration_registration_id DEFAULT NEWSEQUENTIALID() FOR registration_id;
+
+ALTER TABLE tbl_media ADD
+    CONSTRAINT pk_media PRIMARY KEY (media_url),
+    CONSTRAINT fk_media_user_id FOREIGN KEY (user_id) REFERENCES tbl_users (user_id) ON UPDATE NO ACTION ON DELETE CASCADE,
+    CONSTRAINT uq_media_user_id_ordering UNIQUE (user_id, ordering);
+
+ALTER TABLE tbl_relationships ADD
+    CONSTRAINT pk_relationships PRIMARY KEY (relationship_id),
+    CONSTRAINT fk_relationships_user_id FOREIGN KEY (user_id) REFERENCES tbl_users (user_id) ON UPDATE NO ACTION ON DELETE CASCADE,
+    CONSTRAINT fk_relationships_other_user_id FOREIGN KEY (other_user_id) REFERENCES tbl_users (user_id) ON UPDATE NO ACTION ON DELETE NO ACTION,
+    CONSTRAINT uq_relationships_user_id_other_user_id UNIQUE (user_id, other_user_id),
+    CONSTRAINT df_relationships_relationship_id DEFAULT NEWSEQUENTIALID() FOR relationship_id;
+
+ALTER TABLE tbl_user_aggregates ADD
+    CONSTRAINT pk_user_aggregates PRIMARY KEY (user_id),
+    CONSTRAINT fk_user_aggregates_user_id FOREIGN KEY (user_id) REFERENCES tbl_users (user_id) ON UPDATE NO ACTION ON DELETE CASCADE;
+GO
+
+
+CREATE INDEX idx_relationships_friends ON tbl_relationships (user_id)
+    WHERE relationship_status = 'friends';
+
+CREATE INDEX idx_relationships_other_user_id ON tbl_relationships (other_user_id)
+    INCLUDE (rating);
+
+CREATE INDEX idx_registration_course_id ON tbl_registration (course_id)
+    INCLUDE (user_id);
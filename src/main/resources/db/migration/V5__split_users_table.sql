@@ -0,0 +1,89 @@
+-- Splits tbl_users by how often its columns are read. tbl_users keeps the identity and mini profile columns that
+-- most requests read. The credentials and refresh token read on every sign in and session renewal, the verification
+-- and password reset state read by the email flows, and the rest of the profile, including the biography, move to
+-- narrow tables keyed by user_id, so each path only reads the pages it needs
+CREATE TABLE tbl_user_credentials
+(
+    user_id              uniqueidentifier NOT NULL,
+    salt                 varbinary(16)    NOT NULL,
+    hash                 varbinary(20)    NOT NULL,
+    refresh_token_id     varchar(36),
+    refresh_token_family varchar(36),
+
+    CONSTRAINT pk_user_credentials PRIMARY KEY (user_id),
+    CONSTRAINT fk_user_credentials_user_id FOREIGN KEY (user_id) REFERENCES tbl_users (user_id) ON UPDATE NO ACTION ON DELETE CASCADE
+);
+
+
+CREATE TABLE tbl_user_lifecycle
+(
+    user_id                  uniqueidentifier NOT NULL,
+    verification_code        varchar(64),
+    verification_timestamp   datetime,
+    verification_confirmed   int              NOT NULL,
+    password_reset_code      varchar(64),
+    password_reset_timestamp datetime,
+    most_recent_email_type   varchar(20),
+
+    CONSTRAINT pk_user_lifecycle PRIMARY KEY (user_id),
+    CONSTRAINT fk_user_lifecycle_user_id FOREIGN KEY (user_id) REFERENCES tbl_users (user_id) ON UPDATE NO ACTION ON DELETE CASCADE,
+    CONSTRAINT uq_user_lifecycle_verification_code UNIQUE (verification_code)
+);
+
+
+CREATE TABLE tbl_user_profiles
+(
+    user_id           uniqueidentifier NOT NULL,
+    profile_completed int              NOT NULL,
+    card_color        varchar(15),
+    date_of_birth     date,
+    university_id     uniqueidentifier,
+    major             varchar(64),
+    standing          varchar(32),
+    gpa               varchar(4),
+    biography         varchar(max),
+
+    CONSTRAINT pk_user_profiles PRIMARY KEY (user_id),
+    CONSTRAINT fk_user_profiles_user_id FOREIGN KEY (user_id) REFERENCES tbl_users (user_id) ON UPDATE NO ACTION ON DELETE CASCADE,
+    CONSTRAINT fk_user_profiles_university_id FOREIGN KEY (university_id) REFERENCES tbl_universities (university_id) ON UPDATE NO ACTION ON DELETE NO ACTION
+);
+GO
+
+
+INSERT INTO tbl_user_credentials (user_id, salt, hash, refresh_token_id, refresh_token_family)
+SELECT user_id, salt, hash, refresh_token_id, refresh_token_family
+FROM tbl_users;
+
+INSERT INTO tbl_user_lifecycle (user_id, verification_code, verification_timestamp, verification_confirmed,
+                                password_reset_code, password_reset_timestamp, most_recent_email_type)
+SELECT user_id, verification_code, verification_timestamp, verification_confirmed,
+       password_reset_code, password_reset_timestamp, most_recent_email_type
+FROM tbl_users;
+
+INSERT INTO tbl_user_profiles (user_id, profile_completed, card_color, date_of_birth, university_id, major,
+                               standing, gpa, biography)
+SELECT user_id, profile_completed, card_color, date_of_birth, university_id, major, standing, gpa, biography
+FROM tbl_users;
+GO
+
+
+DROP INDEX idx_users_password_reset_code ON tbl_users;
+DROP INDEX idx_users_verification_timestamp ON tbl_users;
+
+ALTER TABLE tbl_users DROP CONSTRAINT uq_users_verification_code, fk_users_university_id;
+
+ALTER TABLE tbl_users DROP COLUMN salt, hash, refresh_token_id, refresh_token_family, verification_code,
+                                  verification_timestamp, verification_confirmed, password_reset_code,
+                                  password_reset_timestamp, most_recent_email_type, profile_completed, card_color,
+                                  date_of_birth, university_id, major, standing, gpa, biography;
+
+-- Dropping columns only changes metadata. Rebuilding rewrites the rows without them
+ALTER INDEX pk_users ON tbl_users REBUILD;
+GO
+
+
+-- RESOLVE_PASSWORD_RESET_CODE_TO_LIFECYCLE_RECORD. Most users have no reset code, so only users with one are indexed
+CREATE UNIQUE INDEX idx_user_lifecycle_password_reset_code ON tbl_user_lifecycle (password_reset_code)
+    WHERE password_reset_code IS NOT NULL;
+
+CREATE INDEX idx_user_lifecycle_verification_timestamp ON tbl_user_lifecycle (verification_timestamp);
@@ -0,0 +1,5 @@
+-- Profile pictures are stored as renditions of several sizes. profile_picture_url is the full rendition, and the card
+-- and thumbnail renditions are kept alongside it, so mini profiles and discover cards do not download the full
+-- picture. Pictures uploaded before renditions existed have neither, and are read from profile_picture_url
+ALTER TABLE tbl_users ADD profile_picture_card_url      varchar(512),
+                          profile_picture_thumbnail_url varchar(512);
@@ -0,0 +1,34 @@
+-- Relationship shards store the relationships owned by their users, and the partial aggregates of those
+-- relationships. Users are stored on the primary, so user_id and other_user_id are not foreign keys here
+CREATE TABLE tbl_relationships
+(
+    relationship_id     uniqueidentifier NOT NULL,
+    user_id             uniqueidentifier NOT NULL,
+    other_user_id       uniqueidentifier NOT NULL,
+    relationship_status varchar(32)      NOT NULL,
+    rating              int,
+
+    CONSTRAINT pk_relationships PRIMARY KEY (relationship_id),
+    CONSTRAINT uq_relationships_user_id_other_user_id UNIQUE (user_id, other_user_id),
+    CONSTRAINT df_relationships_relationship_id DEFAULT NEWSEQUENTIALID() FOR relationship_id
+);
+
+-- The friend counts of the shard's users, and the ratings that other users received from the shard's users.
+-- A user's aggregates are the sum of their rows on every shard
+CREATE TABLE tbl_user_aggregates
+(
+    user_id           uniqueidentifier NOT NULL,
+    number_of_friends int              NOT NULL,
+    rating_sum        int              NOT NULL,
+    rating_count      int              NOT NULL,
+
+    CONSTRAINT pk_user_aggregates PRIMARY KEY (user_id)
+);
+GO
+
+
+CREATE INDEX idx_relationships_friends ON tbl_relationships (user_id)
+    WHERE relationship_status = 'friends';
+
+CREATE INDEX idx_relationships_other_user_id ON tbl_relationships (other_user_id)
+    INCLUDE (rating);
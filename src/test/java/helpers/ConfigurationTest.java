@@ -0,0 +1,65 @@
+package helpers;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import static org.junit.Assert.*;
+
+public class ConfigurationTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(60);
+
+    private Path storageCredentials;
+
+    @Before
+    public void setUpBeforeTest() throws Exception {
+        storageCredentials = Paths.get(Configuration.class.getResource("/credentials").toURI()).resolve("storage.credentials");
+        Assume.assumeFalse("storage.credentials is already on the classpath", Files.exists(storageCredentials));
+    }
+
+    @After
+    public void tearDownAfterTest() throws IOException {
+        Configuration.stopWatching();
+        if (storageCredentials != null) {
+            Files.deleteIfExists(storageCredentials);
+            Configuration.reset();
+        }
+    }
+
+    @Test
+    public void testLoad() {
+        // Check that values are typed, and that a missing file only fails the values read from it
+        assertTrue(Configuration.get().api().host().startsWith("http"));
+        assertEquals(Paths.get("journal", "mail.outbox"), Configuration.get().api().mailOutboxPath());
+        assertThrows(IllegalStateException.class, () -> Configuration.get().storage());
+
+        // Check that reading a value does not read the file again
+        assertSame(Configuration.get().api(), Configuration.get().api());
+    }
+
+    @Test
+    public void testHotReload() throws IOException, InterruptedException {
+        assertTrue(Configuration.startWatching() > 0);
+        Files.writeString(storageCredentials, "STS_ACCOUNT_NAME=account\nSTS_KEY=key\n", StandardCharsets.UTF_8);
+
+        // Check that the configuration is reloaded once a watched file changes
+        while (true) {
+            try {
+                assertEquals(new Configuration.Storage("account", "key"), Configuration.get().storage());
+                break;
+            } catch (IllegalStateException e) {
+                Thread.sleep(20);
+            }
+        }
+
+        // Check that a file that becomes invalid keeps its previous values
+        Files.writeString(storageCredentials, "STS_ACCOUNT_NAME=other\n", StandardCharsets.UTF_8);
+        Configuration.reload();
+        assertEquals(new Configuration.Storage("account", "key"), Configuration.get().storage());
+    }
+}
@@ -0,0 +1,101 @@
+package helpers;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.zip.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+import org.springframework.http.*;
+
+import static org.junit.Assert.*;
+
+public class StaticPageTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(60);
+
+    private static final String YEAR = String.valueOf(Calendar.getInstance().get(Calendar.YEAR));
+
+    @Test
+    public void testServe() throws IOException {
+        ResponseEntity<byte[]> identity = StaticPage.VERIFY_ACCOUNT_SUCCESS_PAGE.serve(HttpStatus.OK, null, null);
+        ResponseEntity<byte[]> gzip = StaticPage.VERIFY_ACCOUNT_SUCCESS_PAGE.serve(HttpStatus.OK, "gzip, deflate, br", null);
+
+        // Check that both encodings are the page rendered for the current year
+        assertEquals(HttpStatus.OK, identity.getStatusCode());
+        assertNull(identity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(Template.VERIFY_ACCOUNT_SUCCESS_PAGE.render(YEAR), new String(identity.getBody(), StandardCharsets.UTF_8));
+        assertEquals("gzip", gzip.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(identity.getBody(), decompress(gzip.getBody()));
+        assertTrue(gzip.getBody().length < identity.getBody().length);
+
+        // Check that each encoding has its own strong ETag, and that both vary by Accept-Encoding
+        assertNotEquals(identity.getHeaders().getETag(), gzip.getHeaders().getETag());
+        assertFalse(identity.getHeaders().getETag().startsWith("W/"));
+        assertEquals(List.of(HttpHeaders.ACCEPT_ENCODING), gzip.getHeaders().getVary());
+
+        // Check that every request is served the same cached bytes
+        assertSame(gzip.getBody(), StaticPage.VERIFY_ACCOUNT_SUCCESS_PAGE.serve(HttpStatus.OK, "gzip", null).getBody());
+    }
+
+    @Test
+    public void testAcceptEncoding() {
+        // Check that gzip is only served to requests that accept it
+        assertEquals("gzip", contentEncoding("GZIP;q=0.5"));
+        assertEquals("gzip", contentEncoding("*"));
+        assertNull(contentEncoding("gzip;q=0"));
+        assertNull(contentEncoding("br, deflate"));
+        assertNull(contentEncoding(""));
+    }
+
+    @Test
+    public void testIfNoneMatch() {
+        String etag = StaticPage.RESET_PASSWORD_SUCCESS_PAGE.serve(HttpStatus.OK, "gzip", null).getHeaders().getETag();
+
+        // Check that a request that already has the page is served 304 without a body
+        ResponseEntity<byte[]> notModified = StaticPage.RESET_PASSWORD_SUCCESS_PAGE.serve(HttpStatus.OK, "gzip", "\"other\", " + etag);
+        assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+        assertNull(notModified.getBody());
+        assertEquals(etag, notModified.getHeaders().getETag());
+        assertEquals(HttpStatus.NOT_MODIFIED, StaticPage.RESET_PASSWORD_SUCCESS_PAGE.serve(HttpStatus.OK, "gzip", "W/" + etag).getStatusCode());
+
+        // Check that the ETag of one encoding does not match the other
+        assertEquals(HttpStatus.OK, StaticPage.RESET_PASSWORD_SUCCESS_PAGE.serve(HttpStatus.OK, null, etag).getStatusCode());
+
+        // Check that unsuccessful responses are served in full regardless
+        assertEquals(HttpStatus.NOT_FOUND, StaticPage.RESET_PASSWORD_SUCCESS_PAGE.serve(HttpStatus.NOT_FOUND, "gzip", etag).getStatusCode());
+    }
+
+    @Test
+    public void testRefresh() {
+        StaticPage page = StaticPage.VERIFY_ACCOUNT_FAILED_PAGE;
+        int year = Integer.parseInt(YEAR);
+        try {
+            ResponseEntity<byte[]> before = page.serve(HttpStatus.OK, null, null);
+
+            // Check that the page is not rendered again while the year is unchanged
+            page.refresh(year);
+            assertSame(before.getBody(), page.serve(HttpStatus.OK, null, null).getBody());
+
+            // Check that the page and its ETag change with the year
+            page.refresh(year + 1);
+            ResponseEntity<byte[]> after = page.serve(HttpStatus.OK, null, null);
+            assertEquals(Template.VERIFY_ACCOUNT_FAILED_PAGE.render(String.valueOf(year + 1)), new String(after.getBody(), StandardCharsets.UTF_8));
+            assertNotEquals(before.getHeaders().getETag(), after.getHeaders().getETag());
+        } finally {
+            page.refresh(year);
+        }
+    }
+
+    private static String contentEncoding(String acceptEncoding) {
+        return StaticPage.VERIFY_ACCOUNT_EXPIRED_PAGE.serve(HttpStatus.NOT_FOUND, acceptEncoding, null).getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+    }
+
+    private static byte[] decompress(byte[] bytes) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package helpers;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import static org.junit.Assert.*;
+
+public class TemplateBenchmarkTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(60);
+
+    private static final int NUMBER_OF_RENDERS = 2000;
+
+    @Test
+    public void testRenderThroughput() {
+        // Warms up both paths before measuring
+        for (int i = 0; i < NUMBER_OF_RENDERS / 10; i++) {
+            TemplateTest.renderByParsing("verify_account_email.html", "[[name]]", "Name" + i, "[[url]]", "url", "[[year]]", "2023");
+            Template.VERIFY_ACCOUNT_EMAIL.render("Name" + i, "url", "2023");
+        }
+
+        String parsed = null;
+        long startTime = System.nanoTime();
+        for (int i = 0; i < NUMBER_OF_RENDERS; i++) {
+            parsed = TemplateTest.renderByParsing("verify_account_email.html", "[[name]]", "Name" + i, "[[url]]", "url", "[[year]]", "2023");
+        }
+        long parsingNanos = System.nanoTime() - startTime;
+
+        String precompiled = null;
+        startTime = System.nanoTime();
+        for (int i = 0; i < NUMBER_OF_RENDERS; i++) {
+            precompiled = Template.VERIFY_ACCOUNT_EMAIL.render("Name" + i, "url", "2023");
+        }
+        long precompiledNanos = System.nanoTime() - startTime;
+
+        System.out.printf("Parsing and replacing: %8d renders/s%n", NUMBER_OF_RENDERS * 1_000_000_000L / parsingNanos);
+        System.out.printf("Precompiled:           %8d renders/s%n", NUMBER_OF_RENDERS * 1_000_000_000L / precompiledNanos);
+
+        // Check that both paths rendered the same email
+        assertEquals(parsed, precompiled);
+    }
+}
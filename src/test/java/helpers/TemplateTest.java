@@ -0,0 +1,62 @@
+package helpers;
+
+import org.jsoup.Jsoup;
+import org.junit.*;
+import org.junit.rules.*;
+import org.springframework.util.ResourceUtils;
+
+import static org.junit.Assert.*;
+
+public class TemplateTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(60);
+
+    @Test
+    public void testRender() {
+        Template template = Template.compile("<p>[[name]], [[year]] [[unknown]] [[name]]</p>", "name", "year");
+
+        // Check that every occurrence of a placeholder is rendered, and that unnamed placeholders are left as they are
+        assertEquals("<p>Name, 2023 [[unknown]] Name</p>", template.render("Name", "2023"));
+        assertEquals("<p>, 2023 [[unknown]] </p>", template.render("", "2023"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingPlaceholder() {
+        Template.compile("<p>[[name]]</p>", "name", "year");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongNumberOfValues() {
+        Template.compile("<p>[[name]]</p>", "name").render("Name", "2023");
+    }
+
+    @Test
+    public void testMatchesTemplateFiles() {
+        // Check that precompiled templates render exactly what parsing the file and replacing its placeholders renders
+        assertEquals(renderByParsing("verify_account_email.html", "[[name]]", "Name", "[[url]]", "http://localhost/user/verify-account?code=code",
+                                     "[[year]]", "2023"),
+                     Template.VERIFY_ACCOUNT_EMAIL.render("Name", "http://localhost/user/verify-account?code=code", "2023"));
+        assertEquals(renderByParsing("reset_password_page.html", "[[url]]", "http://localhost/auth/reset-password", "[[code]]", "code",
+                                     "[[year]]", "2023"),
+                     Template.RESET_PASSWORD_PAGE.render("http://localhost/auth/reset-password", "code", "2023"));
+        assertEquals(renderByParsing("verify_account_success_page.html", "[[year]]", "2023"),
+                     Template.VERIFY_ACCOUNT_SUCCESS_PAGE.render("2023"));
+        assertEquals(10, Template.numberOfTemplates());
+    }
+
+    /**
+     * Renders a template the way every template was rendered before templates were precompiled
+     */
+    static String renderByParsing(String fileName, String... replacements) {
+        try {
+            String html = Jsoup.parse(ResourceUtils.getFile("classpath:templates/" + fileName), "UTF-8").toString();
+            for (int i = 0; i < replacements.length; i += 2) {
+                html = html.replace(replacements[i], replacements[i + 1]);
+            }
+            return html;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
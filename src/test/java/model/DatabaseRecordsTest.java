@@ -0,0 +1,224 @@
+package model;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.time.*;
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import model.database.*;
+
+import static model.database.DatabaseRecords.*;
+import static org.junit.Assert.*;
+
+public class DatabaseRecordsTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(10);
+
+    // Statements whose rows are mapped to a record
+    private static final Map<String, Class<? extends Record>> RECORD_STATEMENTS = Map.ofEntries(
+            Map.entry("RESOLVE_ALL_COURSE_RECORDS", CourseRecord.class),
+            Map.entry("RESOLVE_ALL_REGISTRATION_RECORDS", RegistrationRecord.class),
+            Map.entry("RESOLVE_ALL_RELATIONSHIP_RATING_RECORDS", RelationshipRatingRecord.class),
+            Map.entry("RESOLVE_ALL_RELATIONSHIP_RECORDS", RelationshipRecord.class),
+            Map.entry("RESOLVE_ALL_UNIVERSITY_RECORDS", UniversityRecord.class),
+            Map.entry("RESOLVE_ALL_USER_MINI_RECORDS", UserMiniVerificationRecord.class),
+            Map.entry("RESOLVE_ALL_VERIFIED_USER_RECORDS", VerifiedUserRecord.class),
+            Map.entry("RESOLVE_COURSE_CODE_UNIVERSITY_ID_TO_COURSE_RECORD", CourseRecord.class),
+            Map.entry("RESOLVE_COURSE_ID_TO_COURSE_RECORD", CourseRecord.class),
+            Map.entry("RESOLVE_EMAIL_TO_CREDENTIALS_RECORD", CredentialsRecord.class),
+            Map.entry("RESOLVE_EMAIL_TO_LIFECYCLE_RECORD", LifecycleRecord.class),
+            Map.entry("RESOLVE_EMAIL_TO_USER_RECORD", UserRecord.class),
+            Map.entry("RESOLVE_PASSWORD_RESET_CODE_TO_LIFECYCLE_RECORD", LifecycleRecord.class),
+            Map.entry("RESOLVE_UNIVERSITY_ID_TO_UNIVERSITY_RECORD", UniversityRecord.class),
+            Map.entry("RESOLVE_UNIVERSITY_NAME_TO_UNIVERSITY_RECORD", UniversityRecord.class),
+            Map.entry("RESOLVE_USER_HANDLE_TO_USER_RECORD", UserRecord.class),
+            Map.entry("RESOLVE_USER_ID_TO_CREDENTIALS_RECORD", CredentialsRecord.class),
+            Map.entry("RESOLVE_USER_ID_TO_PROFILE_RECORD", ProfileRecord.class),
+            Map.entry("RESOLVE_USER_ID_TO_USER_AGGREGATES_RECORD", UserAggregatesRecord.class),
+            Map.entry("RESOLVE_USER_ID_TO_USER_MINI_RECORD", UserMiniRecord.class),
+            Map.entry("RESOLVE_USER_IDS_TO_DISCOVER_CARD_RECORDS", DiscoverCardRecord.class),
+            Map.entry("RESOLVE_VERIFICATION_CODE_TO_LIFECYCLE_RECORD", LifecycleRecord.class),
+            Map.entry("UPDATE_DRIFTED_USER_AGGREGATES", DriftedUserAggregatesRecord.class));
+
+    // Statements whose rows are a single column, read with a scalar mapper
+    private static final Map<String, String> SCALAR_STATEMENTS = Map.of(
+            "RESOLVE_EMAIL_TO_PROFILE_COMPLETED", "profileCompleted",
+            "RESOLVE_USER_ID_TO_MEDIA_RECORDS", "mediaUrl",
+            "RESOLVE_USER_ID_TO_REGISTRATION_RECORDS", "courseId",
+            "RESOLVE_USER_IDS_AFTER_USER_ID", "userId",
+            "SYSTEM_TRANSACTION_COUNT", "transactionCount");
+
+    @Test
+    public void testNoUnprojectedStatements() throws ReflectiveOperationException {
+        // Check that no statement selects every column of a table
+        for (Field field : DatabaseStatements.class.getFields()) {
+            assertFalse(field.getName(), ((SqlStatement) field.get(null)).sql().contains("SELECT *"));
+        }
+    }
+
+    @Test
+    public void testRecordsMatchProjections() throws ReflectiveOperationException {
+        // Check that each record's components are its statements' projected columns, in order
+        for (Map.Entry<String, Class<? extends Record>> entry : RECORD_STATEMENTS.entrySet()) {
+            List<String> components = new ArrayList<>();
+            for (RecordComponent component : entry.getValue().getRecordComponents()) {
+                components.add(component.getName());
+            }
+            assertEquals(entry.getKey(), components, getProjection(entry.getKey()));
+        }
+
+        // Check that scalar statements project a single column
+        for (Map.Entry<String, String> entry : SCALAR_STATEMENTS.entrySet()) {
+            assertEquals(entry.getKey(), List.of(entry.getValue()), getProjection(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testMappersReadByIndex() throws ReflectiveOperationException, SQLException {
+        // Check that each mapper reads component i from column i + 1, without looking up columns by name
+        for (Class<? extends Record> recordClass : new HashSet<>(RECORD_STATEMENTS.values())) {
+            RowMapper<?> mapper = (RowMapper<?>) recordClass.getField("MAPPER").get(null);
+            Record record = (Record) mapper.map(createIndexedResultSet());
+
+            RecordComponent[] components = recordClass.getRecordComponents();
+            for (int i = 0; i < components.length; i++) {
+                Object expected = getIndexedValue(components[i].getType(), i + 1);
+                Object actual = components[i].getAccessor().invoke(record);
+                if (expected instanceof byte[] bytes) {
+                    assertArrayEquals(recordClass.getSimpleName(), bytes, (byte[]) actual);
+                } else {
+                    assertEquals(recordClass.getSimpleName() + "." + components[i].getName(), expected, actual);
+                }
+            }
+        }
+
+        // Check that scalar mappers read the first column
+        assertEquals(true, RowMapper.BOOLEAN.map(createIndexedResultSet()));
+        assertEquals(Integer.valueOf(1), RowMapper.INTEGER.map(createIndexedResultSet()));
+        assertEquals("column1", RowMapper.STRING.map(createIndexedResultSet()));
+    }
+
+    /**
+     * Gets the names of the columns projected by a statement, in camelCase. Reads the outermost SELECT list or,
+     * for statements without one, the OUTPUT clause
+     */
+    private static List<String> getProjection(String statementName) throws ReflectiveOperationException {
+        String statement = ((SqlStatement) DatabaseStatements.class.getField(statementName).get(null)).sql();
+
+        String projection = null;
+        int depth = 0;
+        for (int i = 0; i < statement.length() && projection == null; i++) {
+            char c = statement.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && statement.startsWith("SELECT ", i)) {
+                String select = statement.substring(i + "SELECT ".length()).replaceFirst("^TOP \\(\\?\\) ", "");
+                projection = substringAtDepthZero(select, " FROM ");
+            }
+        }
+        if (projection == null) {
+            projection = substringAtDepthZero(statement.substring(statement.lastIndexOf("OUTPUT ") + "OUTPUT ".length()), ";");
+        }
+
+        List<String> columns = new ArrayList<>();
+        for (String column : splitAtDepthZero(projection)) {
+            column = column.trim();
+            if (column.contains(" AS ")) {
+                column = column.substring(column.lastIndexOf(" AS ") + " AS ".length());
+            } else {
+                column = column.substring(column.lastIndexOf('.') + 1);
+            }
+            columns.add(toCamelCase(column.trim()));
+        }
+        return columns;
+    }
+
+    /**
+     * Gets the prefix of a string up to the first occurrence of the delimiter outside of parentheses
+     */
+    private static String substringAtDepthZero(String string, String delimiter) {
+        int depth = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && string.startsWith(delimiter, i)) {
+                return string.substring(0, i);
+            }
+        }
+        return string;
+    }
+
+    /**
+     * Splits a string at the commas outside of parentheses
+     */
+    private static List<String> splitAtDepthZero(String string) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && c == ',') {
+                parts.add(string.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(string.substring(start));
+        return parts;
+    }
+
+    private static String toCamelCase(String column) {
+        StringBuilder camelCase = new StringBuilder();
+        for (String word : column.split("_")) {
+            camelCase.append(camelCase.length() == 0 ? word : Character.toUpperCase(word.charAt(0)) + word.substring(1));
+        }
+        return camelCase.toString();
+    }
+
+    /**
+     * Creates a single-row ResultSet whose column values are derived from their index. Looking up a column by name
+     * throws an UnsupportedOperationException
+     */
+    private static ResultSet createIndexedResultSet() {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+                (proxy, method, args) -> {
+                    if (args == null || !(args[0] instanceof Integer index)) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    return switch (method.getName()) {
+                        case "getBoolean" -> getIndexedValue(boolean.class, index);
+                        case "getBytes" -> getIndexedValue(byte[].class, index);
+                        case "getInt" -> getIndexedValue(int.class, index);
+                        case "getObject" -> getIndexedValue((Class<?>) args[1], index);
+                        case "getString" -> getIndexedValue(String.class, index);
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    };
+                });
+    }
+
+    private static Object getIndexedValue(Class<?> type, int index) {
+        if (type == boolean.class) {
+            return index % 2 == 1;
+        } else if (type == byte[].class) {
+            return new byte[] {(byte) index};
+        } else if (type == int.class || type == Integer.class) {
+            return index;
+        } else if (type == LocalDateTime.class) {
+            return LocalDateTime.of(2000, 1, 1, 0, 0).plusMinutes(index);
+        } else {
+            return "column" + index;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package model;
+
+import java.io.*;
+import java.sql.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import model.database.*;
+
+import static org.junit.Assert.*;
+
+public class KeyStorageBenchmarkTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(120);
+
+    private static final int NUMBER_OF_USERS = 50_000;
+
+    // Each user is related to the users at these distances in user_id order
+    private static final String RELATIONSHIP_OFFSETS = "(1), (7), (31), (127), (511)";
+
+    private static final int NUMBER_OF_JOINS = 5;
+
+    private static Connection conn;
+
+    /**
+     * Storage and join time of one kind of key
+     *
+     * @param size kilobytes used by tbl_users and tbl_relationships, including their indexes
+     * @param fragmentation percentage of out-of-order pages in the clustered index of tbl_relationships
+     * @param insertTime milliseconds to insert the relationships
+     * @param joinTime milliseconds of the fastest join of the relationships with the users
+     */
+    private record KeyMeasurement(long size, double fragmentation, long insertTime, long joinTime) {}
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws IOException, SQLException {
+        conn = DriverManager.getConnection(DatabaseConnection.getConnectionUrl());
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws SQLException {
+        conn.close();
+    }
+
+    @Test
+    public void testKeyStorage() throws SQLException {
+        KeyMeasurement varcharKeys = measure("varchar(36)", "NEWID()");
+        KeyMeasurement randomKeys = measure("uniqueidentifier", "NEWID()");
+        KeyMeasurement sequentialKeys = measure("uniqueidentifier", "NEWSEQUENTIALID()");
+
+        print("varchar(36) NEWID()", varcharKeys);
+        print("uniqueidentifier NEWID()", randomKeys);
+        print("uniqueidentifier NEWSEQUENTIALID()", sequentialKeys);
+
+        // Check that 16 byte keys take less space than 36 byte keys, and that sequential keys take the least
+        assertTrue(randomKeys.size() < varcharKeys.size());
+        assertTrue(sequentialKeys.size() <= randomKeys.size());
+    }
+
+    /**
+     * Builds users and relationships keyed by the supplied column type and id generator in temporary tables,
+     * and measures them
+     */
+    private static KeyMeasurement measure(String keyType, String keyDefault) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("CREATE TABLE #users (user_id " + keyType + " NOT NULL DEFAULT " + keyDefault + " PRIMARY KEY, " +
+                              "user_name varchar(256) NOT NULL)");
+            statement.execute("CREATE TABLE #relationships (relationship_id " + keyType + " NOT NULL DEFAULT " + keyDefault + " PRIMARY KEY, " +
+                              "user_id " + keyType + " NOT NULL, other_user_id " + keyType + " NOT NULL, " +
+                              "relationship_status varchar(32) NOT NULL, UNIQUE (user_id, other_user_id))");
+
+            try {
+                // Users sign up in small batches, the way they arrive
+                for (int i = 0; i < NUMBER_OF_USERS; i += 1000) {
+                    statement.execute("INSERT INTO #users (user_name) " +
+                                      "SELECT TOP (1000) 'user' FROM sys.all_columns AS a CROSS JOIN sys.all_columns AS b");
+                }
+
+                long startTime = System.nanoTime();
+                statement.execute("WITH numbered_users AS (SELECT user_id, ROW_NUMBER() OVER (ORDER BY user_id) - 1 AS n FROM #users) " +
+                                  "INSERT INTO #relationships (user_id, other_user_id, relationship_status) " +
+                                  "SELECT users.user_id, other_users.user_id, 'liked' " +
+                                  "FROM numbered_users AS users " +
+                                  "CROSS JOIN (VALUES " + RELATIONSHIP_OFFSETS + ") AS offsets (k) " +
+                                  "JOIN numbered_users AS other_users ON other_users.n = (users.n + offsets.k) % " + NUMBER_OF_USERS);
+                long insertTime = (System.nanoTime() - startTime) / 1_000_000;
+
+                long size;
+                try (ResultSet sizeRS = statement.executeQuery("SELECT SUM(used_page_count) * 8 AS size " +
+                                                               "FROM tempdb.sys.dm_db_partition_stats " +
+                                                               "WHERE object_id IN (OBJECT_ID('tempdb..#users'), OBJECT_ID('tempdb..#relationships'))")) {
+                    sizeRS.next();
+                    size = sizeRS.getLong("size");
+                }
+
+                double fragmentation;
+                try (ResultSet fragmentationRS = statement.executeQuery("SELECT avg_fragmentation_in_percent " +
+                                                                        "FROM sys.dm_db_index_physical_stats(DB_ID('tempdb'), " +
+                                                                        "OBJECT_ID('tempdb..#relationships'), 1, NULL, 'LIMITED')")) {
+                    fragmentationRS.next();
+                    fragmentation = fragmentationRS.getDouble("avg_fragmentation_in_percent");
+                }
+
+                // Friends lists and mini profiles join relationships to users on their keys
+                long joinTime = Long.MAX_VALUE;
+                for (int i = 0; i < NUMBER_OF_JOINS; i++) {
+                    startTime = System.nanoTime();
+                    try (ResultSet joinRS = statement.executeQuery("SELECT COUNT(*) FROM #relationships AS relationships " +
+                                                                   "JOIN #users AS users ON users.user_id = relationships.other_user_id " +
+                                                                   "OPTION (MAXDOP 1)")) {
+                        joinRS.next();
+                        assertEquals(NUMBER_OF_USERS * 5, joinRS.getInt(1));
+                    }
+                    joinTime = Math.min(joinTime, (System.nanoTime() - startTime) / 1_000_000);
+                }
+
+                return new KeyMeasurement(size, fragmentation, insertTime, joinTime);
+
+            } finally {
+                statement.execute("DROP TABLE #relationships");
+                statement.execute("DROP TABLE #users");
+            }
+        }
+    }
+
+    private static void print(String keys, KeyMeasurement measurement) {
+        System.out.printf("%-36s %8d KB, %5.1f%% fragmented, relationships inserted in %5dms, joined in %5dms%n", keys,
+                          measurement.size(), measurement.fragmentation(), measurement.insertTime(), measurement.joinTime());
+    }
+}
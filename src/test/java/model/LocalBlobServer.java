@@ -0,0 +1,245 @@
+package model;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.time.*;
+import java.time.format.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.regex.*;
+
+import com.sun.net.httpserver.*;
+
+/**
+ * Stand-in for a blob storage server that keeps containers and blobs in memory. It serves the container and blob
+ * operations StorageConnection uses at http://127.0.0.1:port/account, including uploads in blocks, and ignores
+ * authentication. Every request is recorded, so tests can count round trips, and every byte of a request body is
+ * counted as it is received
+ */
+public class LocalBlobServer implements Closeable {
+
+    public static final String ACCOUNT_NAME = "account";
+
+    private final HttpServer server;
+
+    // Blobs by name, by container name
+    private final Map<String, Map<String, byte[]>> containers = new ConcurrentHashMap<>();
+
+    // Blocks uploaded but not yet committed, by block id, by container name and blob name
+    private final Map<String, Map<String, byte[]>> uncommittedBlocks = new ConcurrentHashMap<>();
+
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong numberOfBytesReceived = new AtomicLong();
+
+    // Whether uploaded data is thrown away once received, to keep large uploads out of the heap
+    private final boolean discardData;
+
+    private static final Pattern BLOCK_ID = Pattern.compile("<(?:Latest|Committed|Uncommitted)>([^<]*)</");
+
+    /**
+     * Starts serving on a free local port
+     */
+    public LocalBlobServer() throws IOException {
+        this(false);
+    }
+
+    /**
+     * Starts serving on a free local port
+     *
+     * @param discardData whether to throw away uploaded data once it is received. blobs are then stored empty
+     */
+    public LocalBlobServer(boolean discardData) throws IOException {
+        this.discardData = discardData;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 50);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "local-blob-server");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+    }
+
+    /**
+     * Returns the endpoint of the blob service
+     */
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/" + ACCOUNT_NAME;
+    }
+
+    /**
+     * Returns the requests received since startup or the last clear, as "METHOD /container[/blob]"
+     */
+    public List<String> getRequests() {
+        return new ArrayList<>(requests);
+    }
+
+    public void clearRequests() {
+        requests.clear();
+    }
+
+    /**
+     * Returns the number of request body bytes received since startup
+     */
+    public long getNumberOfBytesReceived() {
+        return numberOfBytesReceived.get();
+    }
+
+    /**
+     * Returns the data of a blob. null if there is no such blob
+     */
+    public byte[] getBlob(String containerName, String blobName) {
+        Map<String, byte[]> blobs = containers.get(containerName);
+        return (blobs == null) ? null : blobs.get(blobName);
+    }
+
+    /**
+     * Deletes a container behind the client's back
+     */
+    public void deleteContainer(String containerName) {
+        containers.remove(containerName);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            String query = Objects.requireNonNullElse(exchange.getRequestURI().getRawQuery(), "");
+            byte[] body = readBody(exchange.getRequestBody(), !discardData || query.contains("comp=blocklist"));
+
+            // Paths are /account/container[/blob]
+            String[] segments = exchange.getRequestURI().getPath().split("/", 4);
+            String containerName = (segments.length > 2) ? segments[2] : "";
+            String blobName = (segments.length > 3) ? URLDecoder.decode(segments[3], StandardCharsets.UTF_8) : null;
+            requests.add(method + " /" + containerName + (blobName == null ? "" : "/" + blobName));
+
+            Headers headers = exchange.getResponseHeaders();
+            headers.set("x-ms-request-id", UUID.randomUUID().toString());
+            headers.set("x-ms-version", "2021-12-02");
+            headers.set("Date", DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC)));
+
+            if (blobName == null && query.contains("restype=container")) {
+                switch (method) {
+                    case "PUT" -> {
+                        if (containers.putIfAbsent(containerName, new ConcurrentHashMap<>()) != null) {
+                            sendError(exchange, 409, "ContainerAlreadyExists", method);
+                        } else {
+                            sendEmpty(exchange, 201);
+                        }
+                    }
+                    case "HEAD", "GET" -> {
+                        if (containers.containsKey(containerName)) {
+                            sendEmpty(exchange, 200);
+                        } else {
+                            sendError(exchange, 404, "ContainerNotFound", method);
+                        }
+                    }
+                    case "DELETE" -> {
+                        if (containers.remove(containerName) != null) {
+                            sendEmpty(exchange, 202);
+                        } else {
+                            sendError(exchange, 404, "ContainerNotFound", method);
+                        }
+                    }
+                    default -> sendError(exchange, 405, "UnsupportedHttpVerb", method);
+                }
+                return;
+            }
+
+            Map<String, byte[]> blobs = containers.get(containerName);
+            if (blobs == null) {
+                sendError(exchange, 404, "ContainerNotFound", method);
+                return;
+            }
+            String blobKey = containerName + "/" + blobName;
+            switch (method) {
+                case "PUT" -> {
+                    if (query.contains("comp=block")) {
+                        if (query.contains("comp=blocklist")) {
+                            // Commits the listed blocks, in order
+                            Map<String, byte[]> blocks = uncommittedBlocks.getOrDefault(blobKey, Map.of());
+                            ByteArrayOutputStream data = new ByteArrayOutputStream();
+                            Matcher matcher = BLOCK_ID.matcher(new String(body, StandardCharsets.UTF_8));
+                            while (matcher.find()) {
+                                byte[] block = blocks.get(matcher.group(1));
+                                if (block == null) {
+                                    sendError(exchange, 400, "InvalidBlockList", method);
+                                    return;
+                                }
+                                data.write(block);
+                            }
+                            uncommittedBlocks.remove(blobKey);
+                            blobs.put(blobName, data.toByteArray());
+                        } else {
+                            String blockId = URLDecoder.decode(query.replaceAll(".*blockid=([^&]*).*", "$1"), StandardCharsets.UTF_8);
+                            uncommittedBlocks.computeIfAbsent(blobKey, key -> new ConcurrentHashMap<>()).put(blockId, body);
+                        }
+                    } else {
+                        blobs.put(blobName, body);
+                    }
+                    sendEmpty(exchange, 201);
+                }
+                case "HEAD" -> {
+                    byte[] blob = blobs.get(blobName);
+                    if (blob == null) {
+                        sendError(exchange, 404, "BlobNotFound", method);
+                    } else {
+                        headers.set("x-ms-blob-type", "BlockBlob");
+                        headers.set("Content-Length", String.valueOf(blob.length));
+                        exchange.sendResponseHeaders(200, -1);
+                    }
+                }
+                case "DELETE" -> {
+                    if (blobs.remove(blobName) != null) {
+                        sendEmpty(exchange, 202);
+                    } else {
+                        sendError(exchange, 404, "BlobNotFound", method);
+                    }
+                }
+                default -> sendError(exchange, 405, "UnsupportedHttpVerb", method);
+            }
+        }
+    }
+
+    /**
+     * Reads a request body in small chunks, counting the bytes as they arrive
+     */
+    private byte[] readBody(InputStream in, boolean keep) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16 * 1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            numberOfBytesReceived.addAndGet(n);
+            if (keep) {
+                body.write(buffer, 0, n);
+            }
+        }
+        return body.toByteArray();
+    }
+
+    private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+        exchange.getResponseHeaders().set("ETag", "\"0x" + Long.toHexString(System.nanoTime()) + "\"");
+        exchange.getResponseHeaders().set("Last-Modified", exchange.getResponseHeaders().getFirst("Date"));
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String errorCode, String method) throws IOException {
+        exchange.getResponseHeaders().set("x-ms-error-code", errorCode);
+        if (method.equals("HEAD")) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] body = ("<?xml version=\"1.0\" encoding=\"utf-8\"?><Error><Code>" + errorCode + "</Code><Message>" + errorCode +
+                       "</Message></Error>").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+}
@@ -0,0 +1,172 @@
+package model;
+
+import java.io.*;
+import java.lang.management.*;
+import java.sql.*;
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import model.database.*;
+
+import static model.database.ParameterType.*;
+import static org.junit.Assert.*;
+
+public class ParameterBindingBenchmarkTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(120);
+
+    private static final int NUMBER_OF_ROWS = 50_000;
+
+    private static final int NUMBER_OF_BINDS = 100_000;
+
+    private static final SqlStatement LOOKUP = new SqlStatement("SELECT row_id FROM #rows WHERE handle = ? AND row_id = ?",
+                                                                VARCHAR, UNIQUEIDENTIFIER);
+
+    private static Connection conn;
+
+    private static Connection unicodeConn;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws IOException, SQLException {
+        conn = DriverManager.getConnection(DatabaseConnection.getConnectionUrl());
+        unicodeConn = DriverManager.getConnection(DatabaseConnection.getConnectionUrl()
+                .replace("sendStringParametersAsUnicode=false", "sendStringParametersAsUnicode=true"));
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws SQLException {
+        conn.close();
+        unicodeConn.close();
+    }
+
+    @Test
+    public void testBindingAllocations() throws SQLException {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        String handle = "handle";
+        String rowId = UUID.randomUUID().toString();
+
+        try (PreparedStatement statement = conn.prepareStatement(LOOKUP.sql());
+             BoundStatement boundStatement = BoundStatement.prepare(conn, LOOKUP)) {
+
+            // Warms up both paths before measuring
+            for (int i = 0; i < NUMBER_OF_BINDS; i++) {
+                bindObjects(statement, handle, rowId);
+                boundStatement.bind().setString(handle).setString(rowId);
+            }
+
+            long startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < NUMBER_OF_BINDS; i++) {
+                bindObjects(statement, handle, rowId);
+            }
+            long objectBytes = (threadMXBean.getThreadAllocatedBytes(threadId) - startBytes) / NUMBER_OF_BINDS;
+
+            startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < NUMBER_OF_BINDS; i++) {
+                boundStatement.bind().setString(handle).setString(rowId);
+            }
+            long typedBytes = (threadMXBean.getThreadAllocatedBytes(threadId) - startBytes) / NUMBER_OF_BINDS;
+
+            System.out.printf("setObject varargs binding: %5d bytes allocated per call%n", objectBytes);
+            System.out.printf("typed binding:             %5d bytes allocated per call%n", typedBytes);
+
+            // Check that typed binding allocates less than collecting the parameters into an array and binding them as objects
+            assertTrue(typedBytes < objectBytes);
+        }
+    }
+
+    @Test
+    public void testBindingPlans() throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("CREATE TABLE #rows (row_id uniqueidentifier NOT NULL DEFAULT NEWSEQUENTIALID() PRIMARY KEY, " +
+                              "handle varchar(32) COLLATE SQL_Latin1_General_CP1_CI_AS NOT NULL, " +
+                              "payload varchar(256) NOT NULL)");
+            statement.execute("CREATE INDEX IX_rows_handle ON #rows (handle)");
+            try {
+                statement.execute("INSERT INTO #rows (handle, payload) " +
+                                  "SELECT TOP (" + NUMBER_OF_ROWS + ") CONCAT('user', ROW_NUMBER() OVER (ORDER BY (SELECT NULL))), 'payload' " +
+                                  "FROM sys.all_columns AS a CROSS JOIN sys.all_columns AS b");
+
+                String sql = "SELECT payload FROM #rows WHERE handle = ?";
+                String unicodePlan;
+                try (PreparedStatement unicodeStatement = unicodeConn.prepareStatement(sql)) {
+                    unicodeStatement.setString(1, "user12345");
+                    unicodePlan = getPlan(unicodeConn, unicodeStatement::executeQuery);
+                }
+                String varcharPlan;
+                try (BoundStatement varcharStatement = BoundStatement.prepare(conn, new SqlStatement(sql, VARCHAR))) {
+                    varcharPlan = getPlan(conn, () -> varcharStatement.bind().setString("user12345").executeQuery());
+                }
+
+                System.out.println("nvarchar parameter: " + describe(unicodePlan));
+                System.out.println("varchar parameter:  " + describe(varcharPlan));
+
+                // Check that a varchar parameter seeks the index without converting the column, and that a Unicode
+                // parameter compared to a column of a SQL collation converts the column and scans
+                assertFalse(varcharPlan.contains("CONVERT_IMPLICIT"));
+                assertTrue(varcharPlan.contains("PhysicalOp=\"Index Seek\""));
+                assertTrue(unicodePlan.contains("CONVERT_IMPLICIT"));
+                assertTrue(unicodePlan.contains("Scan\""));
+            } finally {
+                statement.execute("DROP TABLE #rows");
+            }
+        }
+    }
+
+    /**
+     * Binds the parameters the way every statement was bound before parameter types were declared
+     */
+    private static void bindObjects(PreparedStatement statement, Object... args) throws SQLException {
+        for (int i = 0; i < args.length; i++) {
+            statement.setObject(i + 1, args[i]);
+        }
+    }
+
+    /**
+     * Query that is executed with its parameters bound
+     */
+    private interface Query {
+        ResultSet execute() throws SQLException;
+    }
+
+    /**
+     * Executes the query, and gets its actual plan, which follows its results
+     */
+    private static String getPlan(Connection connection, Query query) throws SQLException {
+        setStatisticsXml(connection, true);
+        try {
+            ResultSet rs = query.execute();
+            Statement statement = rs.getStatement();
+            String plan = null;
+            while (rs != null) {
+                try (ResultSet currentRS = rs) {
+                    while (currentRS.next()) {
+                        plan = currentRS.getString(1);
+                    }
+                }
+                rs = statement.getMoreResults() ? statement.getResultSet() : null;
+            }
+            return plan;
+        } finally {
+            setStatisticsXml(connection, false);
+        }
+    }
+
+    private static void setStatisticsXml(Connection connection, boolean on) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET STATISTICS XML " + (on ? "ON" : "OFF"));
+        }
+    }
+
+    private static String describe(String plan) {
+        List<String> operators = new ArrayList<>();
+        String[] parts = plan.split("PhysicalOp=\"");
+        for (int i = 1; i < parts.length; i++) {
+            operators.add(parts[i].substring(0, parts[i].indexOf('"')));
+        }
+        return operators + (plan.contains("CONVERT_IMPLICIT") ? ", CONVERT_IMPLICIT on the column" : "");
+    }
+}
@@ -0,0 +1,160 @@
+package model;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import model.storage.*;
+
+import static org.junit.Assert.*;
+
+public class ProfilePictureUploadBenchmarkTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(120);
+
+    private static final int NUMBER_OF_UPLOADS = 8;
+
+    private static final int PICTURE_SIZE = 10 * 1000 * 1000;
+
+    private static final String KEY = Base64.getEncoder().encodeToString("key".getBytes(StandardCharsets.UTF_8));
+
+    private LocalBlobServer blobServer;
+    private StorageConnection stconn;
+
+    // Bytes handed to the storage client by the uploads, whether read from a stream or held in a string
+    private final AtomicLong numberOfBytesSupplied = new AtomicLong();
+
+    /**
+     * Memory used by concurrent uploads
+     *
+     * @param peakInFlight most bytes supplied to the storage client but not yet received by the server
+     * @param peakHeapUsed most bytes of heap in use, garbage included
+     * @param time milliseconds to complete every upload
+     */
+    private record UploadMeasurement(long peakInFlight, long peakHeapUsed, long time) {}
+
+    @Before
+    public void setUpBeforeTest() throws IOException {
+        blobServer = new LocalBlobServer(true);
+        stconn = new StorageConnection(blobServer.getEndpoint(), LocalBlobServer.ACCOUNT_NAME, KEY);
+        stconn.storage_createContainer("user");
+    }
+
+    @After
+    public void tearDownAfterTest() {
+        blobServer.close();
+    }
+
+    @Test
+    public void testConcurrentUploads() throws Exception {
+        // Warms up the client on both paths
+        stconn.storage_uploadBlob("user", "warm-up", "picture");
+        stconn.storage_uploadBlob("user", "warm-up", new PictureStream(1000, true), 1000, "image/jpeg");
+
+        UploadMeasurement stringUploads = measure(i -> {
+            // The whole picture as a base64 string, the way it arrives in the JSON payload
+            String picture = Base64.getEncoder().encodeToString(new PictureStream(PICTURE_SIZE, false).readAllBytes());
+            numberOfBytesSupplied.addAndGet(picture.length());
+            stconn.storage_uploadBlob("user", "picture" + i, picture);
+        });
+        UploadMeasurement streamedUploads = measure(i -> {
+            stconn.storage_uploadBlob("user", "picture" + i, new PictureStream(PICTURE_SIZE, true), PICTURE_SIZE, "image/jpeg");
+        });
+
+        print("String uploads", stringUploads);
+        print("Streamed uploads", streamedUploads);
+
+        // Check that each streamed upload only holds a few blocks in memory, rather than the whole picture
+        assertTrue(streamedUploads.peakInFlight() <= NUMBER_OF_UPLOADS * 4 * StorageConnection.UPLOAD_BLOCK_SIZE);
+        assertTrue(streamedUploads.peakInFlight() < stringUploads.peakInFlight());
+    }
+
+    /**
+     * Runs one upload per thread at once, sampling the memory they use until they complete
+     */
+    private UploadMeasurement measure(Upload upload) throws Exception {
+        System.gc();
+        numberOfBytesSupplied.set(blobServer.getNumberOfBytesReceived());
+
+        ExecutorService executor = Executors.newFixedThreadPool(NUMBER_OF_UPLOADS);
+        List<Future<?>> uploads = new ArrayList<>();
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < NUMBER_OF_UPLOADS; i++) {
+            int index = i;
+            uploads.add(executor.submit(() -> {
+                upload.run(index);
+                return null;
+            }));
+        }
+        executor.shutdown();
+
+        long peakInFlight = 0;
+        long peakHeapUsed = 0;
+        Runtime runtime = Runtime.getRuntime();
+        while (!executor.awaitTermination(1, TimeUnit.MILLISECONDS)) {
+            peakInFlight = Math.max(peakInFlight, numberOfBytesSupplied.get() - blobServer.getNumberOfBytesReceived());
+            peakHeapUsed = Math.max(peakHeapUsed, runtime.totalMemory() - runtime.freeMemory());
+        }
+        long time = System.currentTimeMillis() - startTime;
+
+        for (Future<?> future : uploads) {
+            future.get();
+        }
+        return new UploadMeasurement(peakInFlight, peakHeapUsed, time);
+    }
+
+    private static void print(String name, UploadMeasurement measurement) {
+        System.out.printf("%-17s %,6d KB peak in flight, %,7d KB peak heap used, %,6d ms%n", name,
+                          measurement.peakInFlight() / 1024, measurement.peakHeapUsed() / 1024, measurement.time());
+    }
+
+    private interface Upload {
+        void run(int index) throws IOException;
+    }
+
+    /**
+     * Stream of pseudo-random picture data that is generated as it is read
+     */
+    private class PictureStream extends InputStream {
+
+        private final Random random = new Random(0);
+        private final boolean counted;
+        private long remaining;
+
+        /**
+         * @param counted whether bytes read are counted as supplied to the storage client
+         */
+        PictureStream(long size, boolean counted) {
+            this.counted = counted;
+            remaining = size;
+        }
+
+        @Override
+        public int read() {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (remaining == 0) {
+                return -1;
+            }
+            int n = (int) Math.min(len, remaining);
+            for (int i = off; i < off + n; i++) {
+                b[i] = (byte) random.nextInt();
+            }
+            remaining -= n;
+            if (counted) {
+                numberOfBytesSupplied.addAndGet(n);
+            }
+            return n;
+        }
+    }
+}
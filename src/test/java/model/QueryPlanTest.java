@@ -0,0 +1,131 @@
+package model;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+
+import javax.xml.parsers.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+import org.w3c.dom.*;
+import org.xml.sax.*;
+
+import model.database.*;
+
+import static org.junit.Assert.*;
+
+public class QueryPlanTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(120);
+
+    // Statements that read whole tables by design, when loading the in-memory indexes at startup or when resharding
+    private static final Set<String> FULL_SCAN_STATEMENTS = Set.of("SYSTEM_TRANSACTION_COUNT",
+                                                                   "RESOLVE_ALL_COURSE_RECORDS",
+                                                                   "RESOLVE_ALL_RELATIONSHIP_RECORDS",
+                                                                   "RESOLVE_ALL_RELATIONSHIP_RATING_RECORDS",
+                                                                   "RESOLVE_ALL_REGISTRATION_RECORDS",
+                                                                   "RESOLVE_ALL_UNIVERSITY_RECORDS",
+                                                                   "RESOLVE_ALL_USER_MINI_RECORDS",
+                                                                   "RESOLVE_ALL_VERIFIED_USER_RECORDS",
+                                                                   "UPDATE_ALL_USER_AGGREGATES");
+
+    // Physical operators that read a whole table or index
+    private static final Set<String> SCAN_OPERATORS = Set.of("Table Scan", "Clustered Index Scan", "Index Scan");
+
+    // Row count the tables are planned for. With the few rows of a test database, the optimizer prefers scans
+    private static final int PLANNED_ROW_COUNT = 1_000_000;
+
+    private static Connection conn;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws IOException, SQLException {
+        DatabaseMigrations.migrate();
+        conn = DriverManager.getConnection(DatabaseConnection.getConnectionUrl());
+
+        try (Statement statement = conn.createStatement()) {
+            for (String table : List.of("tbl_courses", "tbl_media", "tbl_registration", "tbl_relationships",
+                                        "tbl_universities", "tbl_user_aggregates", "tbl_user_credentials",
+                                        "tbl_user_lifecycle", "tbl_user_profiles", "tbl_users")) {
+                statement.execute("UPDATE STATISTICS " + table + " WITH ROWCOUNT = " + PLANNED_ROW_COUNT +
+                                  ", PAGECOUNT = " + PLANNED_ROW_COUNT / 10);
+            }
+        }
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws SQLException {
+        conn.close();
+    }
+
+    @Test
+    public void testNoScans() throws Exception {
+        List<String> scans = new ArrayList<>();
+        for (Field field : DatabaseStatements.class.getFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) || FULL_SCAN_STATEMENTS.contains(field.getName())) {
+                continue;
+            }
+            for (String scan : getScans(((SqlStatement) field.get(null)).sql())) {
+                scans.add(field.getName() + ": " + scan);
+            }
+        }
+
+        // Check that every statement served on a request seeks into its tables
+        assertEquals(List.of(), scans);
+    }
+
+    /**
+     * Gets the scans of permanent tables in the estimated plan of a statement
+     */
+    private static List<String> getScans(String sql) throws SQLException, ParserConfigurationException, IOException, SAXException {
+        // Parameters are replaced by literals, since the plan of an unprepared batch is requested
+        String batch = sql.replace("TOP (?)", "TOP (100)").replace("?", "'0'");
+
+        List<String> plans = new ArrayList<>();
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("SET SHOWPLAN_XML ON");
+            try {
+                boolean hasResultSet = statement.execute(batch);
+                while (hasResultSet || statement.getUpdateCount() != -1) {
+                    if (hasResultSet) {
+                        try (ResultSet planRS = statement.getResultSet()) {
+                            while (planRS.next()) {
+                                plans.add(planRS.getString(1));
+                            }
+                        }
+                    }
+                    hasResultSet = statement.getMoreResults();
+                }
+            } finally {
+                statement.execute("SET SHOWPLAN_XML OFF");
+            }
+        }
+
+        List<String> scans = new ArrayList<>();
+        DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        for (String plan : plans) {
+            Document document = documentBuilder.parse(new InputSource(new StringReader(plan)));
+            NodeList relOps = document.getElementsByTagName("RelOp");
+            for (int i = 0; i < relOps.getLength(); i++) {
+                Element relOp = (Element) relOps.item(i);
+                if (!SCAN_OPERATORS.contains(relOp.getAttribute("PhysicalOp"))) {
+                    continue;
+                }
+
+                // Table variables and table-valued functions such as STRING_SPLIT and OPENJSON are expected to be scanned
+                NodeList objects = relOp.getElementsByTagName("Object");
+                for (int j = 0; j < objects.getLength(); j++) {
+                    Element object = (Element) objects.item(j);
+                    if (object.getAttribute("Table").startsWith("[tbl_")) {
+                        scans.add(relOp.getAttribute("PhysicalOp") + " on " + object.getAttribute("Table") +
+                                  (object.hasAttribute("Index") ? "." + object.getAttribute("Index") : ""));
+                        break;
+                    }
+                }
+            }
+        }
+        return scans;
+    }
+}
@@ -0,0 +1,143 @@
+package model;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import model.database.*;
+
+import static org.junit.Assert.*;
+import static model.database.DatabaseConnectionPool.*;
+
+/**
+ * Routes reads between two local database instances. The second instance is specified as a replica
+ * by RDS_REPLICA_ENDPOINTS in database.credentials
+ */
+public class ReplicaRoutingTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(120);
+
+    // Database that refuses connections
+    private static final String UNREACHABLE_CONNECTION_URL = "jdbc:sqlserver://localhost:1;loginTimeout=1";
+
+    private static List<String> replicaConnectionUrls;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws IOException {
+        replicaConnectionUrls = DatabaseConnection.getReplicaConnectionUrls();
+        Assume.assumeFalse("No replica is specified in database.credentials", replicaConnectionUrls.isEmpty());
+
+        DatabaseConnectionPool.enableTesting();
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        if (!replicaConnectionUrls.isEmpty()) {
+            DatabaseConnectionPool.setReplicaConnectionUrls(replicaConnectionUrls);
+            DatabaseConnectionPool.disableTesting();
+        }
+    }
+
+    @Before
+    public void setUpBeforeTest() {
+        DatabaseConnectionPool.restorePoolSize();
+        DatabaseConnectionPool.setReplicaConnectionUrls(replicaConnectionUrls);
+    }
+
+    @After
+    public void tearDownAfterTest() {
+        DatabaseConnectionPool.releaseAllConnections();
+    }
+
+    @Test
+    public void testReadConnectionRoutedToReplica() {
+        // Check that reads are routed to the replica, and that everything else uses the primary
+        DatabaseConnection readConnection = DatabaseConnectionPool.getReadConnection("user");
+        assertTrue(DatabaseConnectionPool.isReplicaConnection(readConnection));
+        assertEquals(0, readConnection.getTransactionCount());
+
+        DatabaseConnection connection = DatabaseConnectionPool.getConnection();
+        assertFalse(DatabaseConnectionPool.isReplicaConnection(connection));
+    }
+
+    @Test
+    public void testReadConnectionReleased() {
+        // Check that replica connections are released back to the replica, and reused
+        DatabaseConnection readConnection = DatabaseConnectionPool.getReadConnection("user");
+        DatabaseConnectionPool.releaseConnection(readConnection);
+        assertFalse(DatabaseConnectionPool.isReplicaConnection(readConnection));
+        assertEquals(INITIAL_POOL_SIZE, DatabaseConnectionPool.size());
+
+        Set<DatabaseConnection> readConnections = new HashSet<>();
+        for (int i = 0; i < INITIAL_REPLICA_POOL_SIZE; i++) {
+            readConnections.add(DatabaseConnectionPool.getReadConnection("user"));
+        }
+        assertTrue(readConnections.contains(readConnection));
+    }
+
+    @Test
+    public void testReadYourWrites() {
+        DatabaseConnectionPool.recordWrite("user");
+
+        // Check that the user's reads are routed to the primary after their own update
+        DatabaseConnection readConnection = DatabaseConnectionPool.getReadConnection("user");
+        assertFalse(DatabaseConnectionPool.isReplicaConnection(readConnection));
+
+        // Check that other users' reads are still routed to the replica
+        DatabaseConnection otherReadConnection = DatabaseConnectionPool.getReadConnection("otherUser");
+        assertTrue(DatabaseConnectionPool.isReplicaConnection(otherReadConnection));
+    }
+
+    @Test
+    public void testReadYourWritesWindowExpires() throws InterruptedException {
+        DatabaseConnectionPool.recordWrite("user");
+        Thread.sleep(READ_YOUR_WRITES_WINDOW_MILLIS + 100);
+
+        // Check that the user's reads are routed to the replica once the window has passed
+        DatabaseConnection readConnection = DatabaseConnectionPool.getReadConnection("user");
+        assertTrue(DatabaseConnectionPool.isReplicaConnection(readConnection));
+    }
+
+    @Test
+    public void testFailoverToPrimary() {
+        DatabaseConnectionPool.setReplicaConnectionUrls(List.of(UNREACHABLE_CONNECTION_URL));
+
+        // Check that reads fail over to the primary when the replica is unreachable
+        DatabaseConnection readConnection = DatabaseConnectionPool.getReadConnection("user");
+        assertFalse(DatabaseConnectionPool.isReplicaConnection(readConnection));
+        assertEquals(0, readConnection.getTransactionCount());
+
+        // Check that the unreachable replica is skipped without waiting for it again
+        long startTime = System.currentTimeMillis();
+        readConnection = DatabaseConnectionPool.getReadConnection("user");
+        assertFalse(DatabaseConnectionPool.isReplicaConnection(readConnection));
+        assertTrue(System.currentTimeMillis() - startTime < 500);
+    }
+
+    @Test
+    public void testFailoverToAvailableReplica() {
+        List<String> connectionUrls = new ArrayList<>();
+        connectionUrls.add(UNREACHABLE_CONNECTION_URL);
+        connectionUrls.addAll(replicaConnectionUrls);
+        DatabaseConnectionPool.setReplicaConnectionUrls(connectionUrls);
+
+        // Check that every read is routed to the replica that is reachable
+        for (int i = 0; i < 4; i++) {
+            DatabaseConnection readConnection = DatabaseConnectionPool.getReadConnection("user");
+            assertTrue(DatabaseConnectionPool.isReplicaConnection(readConnection));
+        }
+    }
+
+    @Test
+    public void testReducedPoolSize() {
+        DatabaseConnectionPool.reducePoolSize();
+
+        // Check that reads use the single connection to the primary
+        DatabaseConnection readConnection = DatabaseConnectionPool.getReadConnection("user");
+        assertFalse(DatabaseConnectionPool.isReplicaConnection(readConnection));
+        assertEquals(REDUCED_MAX_POOL_SIZE, DatabaseConnectionPool.size());
+    }
+}
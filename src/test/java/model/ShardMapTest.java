@@ -0,0 +1,93 @@
+package model;
+
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import model.database.*;
+
+import static org.junit.Assert.*;
+
+public class ShardMapTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(60);
+
+    private static final int NUMBER_OF_USERS = 100_000;
+
+    private static List<String> userIds;
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        Random random = new Random(0);
+        userIds = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_USERS; i++) {
+            userIds.add(new UUID(random.nextLong(), random.nextLong()).toString());
+        }
+    }
+
+    @Test
+    public void testGetShardDeterministic() {
+        ShardMap shardMap = new ShardMap(List.of("a", "b", "c"));
+        ShardMap otherShardMap = new ShardMap(List.of("a", "b", "c"));
+
+        // Check that every map of the same shards places a user on the same shard, in any letter case
+        for (String userId : userIds.subList(0, 1000)) {
+            assertEquals(shardMap.getShard(userId), otherShardMap.getShard(userId));
+            assertEquals(shardMap.getShard(userId), shardMap.getShard(userId.toUpperCase()));
+        }
+    }
+
+    @Test
+    public void testGetShardBalanced() {
+        ShardMap shardMap = new ShardMap(List.of("a", "b", "c", "d"));
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (String userId : userIds) {
+            counts.merge(shardMap.getShard(userId), 1, Integer::sum);
+        }
+
+        // Check that every shard owns within a fifth of its fair share of the users
+        assertEquals(4, counts.size());
+        for (int count : counts.values()) {
+            assertTrue(Math.abs(count - NUMBER_OF_USERS / 4) < NUMBER_OF_USERS / 4 / 5);
+        }
+    }
+
+    @Test
+    public void testAddShardMovesOnlyToNewShard() {
+        ShardMap shardMap = new ShardMap(List.of("a", "b", "c"));
+        ShardMap newShardMap = new ShardMap(List.of("a", "b", "c", "d"));
+
+        int numberOfMovedUsers = 0;
+        for (String userId : userIds) {
+            if (!shardMap.getShard(userId).equals(newShardMap.getShard(userId))) {
+                // Check that users only move to the new shard
+                assertEquals("d", newShardMap.getShard(userId));
+                numberOfMovedUsers++;
+            }
+        }
+
+        // Check that about a quarter of the users move
+        assertTrue(Math.abs(numberOfMovedUsers - NUMBER_OF_USERS / 4) < NUMBER_OF_USERS / 4 / 5);
+    }
+
+    @Test
+    public void testRemoveShardMovesOnlyItsUsers() {
+        ShardMap shardMap = new ShardMap(List.of("a", "b", "c", "d"));
+        ShardMap newShardMap = new ShardMap(List.of("a", "b", "c"));
+
+        // Check that only the users of the removed shard move
+        for (String userId : userIds) {
+            if (!shardMap.getShard(userId).equals("d")) {
+                assertEquals(shardMap.getShard(userId), newShardMap.getShard(userId));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoShards() {
+        new ShardMap(List.of());
+    }
+}
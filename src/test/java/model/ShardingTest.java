@@ -0,0 +1,130 @@
+package model;
+
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+import org.springframework.http.*;
+
+import model.database.*;
+import services.*;
+
+import static org.junit.Assert.*;
+import static model.database.DatabaseRecords.*;
+
+/**
+ * Shards relationships between several local database instances. The instances are specified as shards
+ * by RDS_SHARD_ENDPOINTS in database.credentials
+ */
+public class ShardingTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(120);
+
+    private static final int NUMBER_OF_USERS = 50;
+
+    private static Map<String, String> shardConnectionUrls;
+
+    private static List<String> userIds;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws IOException {
+        shardConnectionUrls = DatabaseConnection.getShardConnectionUrls();
+        Assume.assumeTrue("Fewer than two shards are specified in database.credentials", shardConnectionUrls.size() >= 2);
+
+        DatabaseConnectionPool.enableTesting();
+        DatabaseConnectionPool.setShardConnectionUrls(shardConnectionUrls);
+
+        userIds = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_USERS; i++) {
+            userIds.add(UUID.randomUUID().toString());
+        }
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() {
+        if (shardConnectionUrls.size() >= 2) {
+            DatabaseConnectionPool.disableTesting();
+        }
+    }
+
+    @After
+    public void tearDownAfterTest() {
+        // Removes every relationship of the test users from every shard
+        for (String shardName : shardConnectionUrls.keySet()) {
+            DatabaseConnection dbconn = DatabaseConnectionPool.getShardConnectionByName(shardName);
+            dbconn.transaction_deleteRelationships(getTestRelationships(dbconn));
+        }
+        DatabaseConnectionPool.releaseAllConnections();
+    }
+
+    @Test
+    public void testWriteSwipesRoutedToOwnerShard() {
+        List<SwipeJournal.Swipe> swipes = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_USERS; i++) {
+            swipes.add(new SwipeJournal.Swipe(userIds.get(i), userIds.get((i + 1) % NUMBER_OF_USERS), RelationshipGraph.Status.LIKED));
+        }
+
+        // Check that a batch spanning every shard is written
+        DatabaseConnection dbconn = DatabaseConnectionPool.getShardConnection(userIds.get(0));
+        assertEquals(HttpStatus.OK, dbconn.transaction_writeSwipes(swipes).getStatusCode());
+
+        // Check that each relationship is stored only on the shard that owns its user
+        assertRelationshipsOnOwnerShards(NUMBER_OF_USERS);
+    }
+
+    @Test
+    public void testReshardMovesToOwnerShard() throws SQLException {
+        // Stores every relationship on the first shard, as if there were no other shards
+        String firstShardName = shardConnectionUrls.keySet().iterator().next();
+        List<RelationshipRatingRecord> relationshipRecords = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_USERS; i++) {
+            relationshipRecords.add(new RelationshipRatingRecord(userIds.get(i), userIds.get((i + 1) % NUMBER_OF_USERS), "liked", i % 5 + 1));
+        }
+        DatabaseConnection dbconn = DatabaseConnectionPool.getShardConnectionByName(firstShardName);
+        assertEquals(HttpStatus.OK, dbconn.transaction_updateRelationships(relationshipRecords).getStatusCode());
+        DatabaseConnectionPool.releaseConnection(dbconn);
+
+        ReshardingTool.reshard(Map.of(firstShardName, shardConnectionUrls.get(firstShardName)), shardConnectionUrls);
+
+        // Check that resharding moves each relationship to the shard that owns its user, keeping its rating
+        assertRelationshipsOnOwnerShards(NUMBER_OF_USERS);
+        int ratingSum = 0;
+        for (String shardName : shardConnectionUrls.keySet()) {
+            for (RelationshipRatingRecord relationshipRecord : getTestRelationships(DatabaseConnectionPool.getShardConnectionByName(shardName))) {
+                ratingSum += relationshipRecord.rating();
+            }
+        }
+        assertEquals(relationshipRecords.stream().mapToInt(RelationshipRatingRecord::rating).sum(), ratingSum);
+    }
+
+    /**
+     * Checks that the test users' relationships are each stored on the shard that owns the user
+     */
+    private static void assertRelationshipsOnOwnerShards(int numberOfRelationships) {
+        int count = 0;
+        for (String shardName : shardConnectionUrls.keySet()) {
+            for (RelationshipRatingRecord relationshipRecord : getTestRelationships(DatabaseConnectionPool.getShardConnectionByName(shardName))) {
+                assertEquals(shardName, DatabaseConnectionPool.getShard(relationshipRecord.userId()));
+                count++;
+            }
+        }
+        assertEquals(numberOfRelationships, count);
+    }
+
+    /**
+     * Gets the relationships of the test users stored by the connection's shard
+     */
+    private static List<RelationshipRatingRecord> getTestRelationships(DatabaseConnection dbconn) {
+        Set<String> testUserIds = new HashSet<>(userIds);
+        List<RelationshipRatingRecord> relationshipRecords = new ArrayList<>();
+        assertEquals(HttpStatus.OK, dbconn.transaction_forEachRelationship(relationshipRecord -> {
+            if (testUserIds.contains(relationshipRecord.userId().toLowerCase())) {
+                relationshipRecords.add(relationshipRecord);
+            }
+        }).getStatusCode());
+        return relationshipRecords;
+    }
+}
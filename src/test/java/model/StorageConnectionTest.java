@@ -0,0 +1,136 @@
+package model;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import com.azure.core.exception.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+import model.storage.*;
+
+import static org.junit.Assert.*;
+
+public class StorageConnectionTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(60);
+
+    private static final String KEY = Base64.getEncoder().encodeToString("key".getBytes(StandardCharsets.UTF_8));
+
+    private LocalBlobServer blobServer;
+    private StorageConnection stconn;
+
+    @Before
+    public void setUpBeforeTest() throws IOException {
+        blobServer = new LocalBlobServer();
+        stconn = new StorageConnection(blobServer.getEndpoint(), LocalBlobServer.ACCOUNT_NAME, KEY);
+    }
+
+    @After
+    public void tearDownAfterTest() {
+        blobServer.close();
+    }
+
+    @Test
+    public void testUploadToKnownContainer() {
+        stconn.storage_createContainer("user");
+        blobServer.clearRequests();
+
+        for (int i = 0; i < 10; i++) {
+            stconn.storage_uploadBlob("user", "profile-picture", "picture" + i);
+        }
+
+        // Check that each upload to a known container is exactly one round trip
+        assertEquals(Collections.nCopies(10, "PUT /user/profile-picture"), blobServer.getRequests());
+        assertArrayEquals(bytes("picture9"), blobServer.getBlob("user", "profile-picture"));
+    }
+
+    @Test
+    public void testUploadToExistingContainer() {
+        new StorageConnection(blobServer.getEndpoint(), LocalBlobServer.ACCOUNT_NAME, KEY).storage_createContainer("user");
+        blobServer.clearRequests();
+
+        // Check that a container this connection has not seen is not checked before uploading to it
+        stconn.storage_uploadBlob("user", "profile-picture", "picture");
+        assertEquals(List.of("PUT /user/profile-picture"), blobServer.getRequests());
+    }
+
+    @Test
+    public void testUploadCreatesMissingContainer() {
+        // Check that a missing container is created once the upload reports it missing
+        stconn.storage_uploadBlob("user", "profile-picture", "picture1");
+        assertEquals(List.of("PUT /user/profile-picture", "PUT /user", "PUT /user/profile-picture"), blobServer.getRequests());
+        assertArrayEquals(bytes("picture1"), blobServer.getBlob("user", "profile-picture"));
+
+        // Check that the created container is remembered
+        blobServer.clearRequests();
+        stconn.storage_uploadBlob("user", "profile-picture", "picture2");
+        assertEquals(List.of("PUT /user/profile-picture"), blobServer.getRequests());
+
+        // Check that a container deleted since it was remembered is created again
+        blobServer.deleteContainer("user");
+        stconn.storage_uploadBlob("user", "profile-picture", "picture3");
+        assertArrayEquals(bytes("picture3"), blobServer.getBlob("user", "profile-picture"));
+    }
+
+    @Test
+    public void testContainers() {
+        // Check that known containers are served from the cache, and forgotten once deleted
+        assertNull(stconn.storage_getContainer("user"));
+        stconn.storage_createContainer("user");
+        blobServer.clearRequests();
+        assertNotNull(stconn.storage_getContainer("user"));
+        assertNotNull(stconn.storage_createContainer("user"));
+        assertEquals(List.of(), blobServer.getRequests());
+
+        stconn.storage_deleteContainer("user");
+        assertNull(stconn.storage_getContainer("user"));
+    }
+
+    @Test
+    public void testBlobs() {
+        stconn.storage_uploadBlob("user", "profile-picture", "picture");
+
+        // Check that blobs can be read back and deleted
+        assertNotNull(stconn.storage_getBlob("user", "profile-picture"));
+        assertNull(stconn.storage_getBlob("user", "other"));
+        stconn.storage_deleteBlob("user", "profile-picture");
+        assertNull(stconn.storage_getBlob("user", "profile-picture"));
+    }
+
+    @Test
+    public void testStreamedUpload() {
+        byte[] smallPicture = new byte[1000];
+        byte[] largePicture = new byte[(int) (3.5 * StorageConnection.UPLOAD_BLOCK_SIZE)];
+        new Random(0).nextBytes(smallPicture);
+        new Random(1).nextBytes(largePicture);
+
+        // Check that a container that is not known to exist is created before streaming to it
+        stconn.storage_uploadBlob("user", "profile-picture", new ByteArrayInputStream(smallPicture), smallPicture.length, "image/png");
+        assertEquals(List.of("PUT /user", "PUT /user/profile-picture"), blobServer.getRequests());
+        assertArrayEquals(smallPicture, blobServer.getBlob("user", "profile-picture"));
+
+        // Check that a stream no larger than a block is one round trip
+        blobServer.clearRequests();
+        stconn.storage_uploadBlob("user", "profile-picture", new ByteArrayInputStream(smallPicture), smallPicture.length, "image/png");
+        assertEquals(List.of("PUT /user/profile-picture"), blobServer.getRequests());
+
+        // Check that a larger stream is sent in blocks, and put back together in order
+        blobServer.clearRequests();
+        stconn.storage_uploadBlob("user", "profile-picture", new ByteArrayInputStream(largePicture), largePicture.length, "image/png");
+        assertEquals(5, blobServer.getRequests().size());
+        assertArrayEquals(largePicture, blobServer.getBlob("user", "profile-picture"));
+    }
+
+    @Test(expected = UnexpectedLengthException.class)
+    public void testStreamedUploadShorterThanLength() {
+        // Check that a stream that ends before its length is rejected rather than stored
+        stconn.storage_uploadBlob("user", "profile-picture", new ByteArrayInputStream(new byte[500]), 1000, "image/png");
+    }
+
+    private static byte[] bytes(String data) {
+        return data.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,160 @@
+package model;
+
+import java.io.*;
+import java.sql.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import model.database.*;
+
+import static org.junit.Assert.*;
+
+public class UserTableSplitBenchmarkTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(120);
+
+    private static final int NUMBER_OF_USERS = 20_000;
+
+    // Number of sign ins and session renewals timed on each layout
+    private static final int NUMBER_OF_LOOKUPS = 5_000;
+
+    private static Connection conn;
+
+    /**
+     * Cost of one request path on one layout
+     *
+     * @param size kilobytes of the tables and indexes the path reads, which must be in the buffer pool to serve it
+     * @param rowSize bytes of column data sent to the server per request
+     * @param time milliseconds to serve every lookup
+     */
+    private record PathMeasurement(long size, long rowSize, long time) {}
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws IOException, SQLException {
+        conn = DriverManager.getConnection(DatabaseConnection.getConnectionUrl());
+
+        try (Statement statement = conn.createStatement()) {
+            // tbl_users before V5
+            statement.execute("CREATE TABLE #wide_users (user_id uniqueidentifier NOT NULL DEFAULT NEWSEQUENTIALID() PRIMARY KEY, " +
+                              "user_handle varchar(261) NOT NULL UNIQUE, user_name varchar(256) NOT NULL, email varchar(256) NOT NULL UNIQUE, " +
+                              "salt varbinary(16) NOT NULL, hash varbinary(20) NOT NULL, refresh_token_id varchar(36), " +
+                              "refresh_token_family varchar(36), verification_code varchar(64) UNIQUE, verification_timestamp datetime, " +
+                              "verification_confirmed int NOT NULL, password_reset_code varchar(64), password_reset_timestamp datetime, " +
+                              "most_recent_email_type varchar(20), profile_completed int NOT NULL, card_color varchar(15), " +
+                              "date_of_birth date, university_id uniqueidentifier, major varchar(64), standing varchar(32), " +
+                              "gpa varchar(4), biography text, profile_picture_url varchar(512))");
+            statement.execute("INSERT INTO #wide_users (user_handle, user_name, email, salt, hash, refresh_token_id, " +
+                              "refresh_token_family, verification_code, verification_timestamp, verification_confirmed, " +
+                              "most_recent_email_type, profile_completed, card_color, date_of_birth, major, standing, gpa, " +
+                              "biography, profile_picture_url) " +
+                              "SELECT TOP (" + NUMBER_OF_USERS + ") " +
+                              "CONCAT('@user', n), CONCAT('User ', n), CONCAT('user', n, '@uw.edu'), " +
+                              "CRYPT_GEN_RANDOM(16), CRYPT_GEN_RANDOM(20), CAST(NEWID() AS varchar(36)), CAST(NEWID() AS varchar(36)), " +
+                              "CONCAT(NEWID(), NEWID()), GETUTCDATE(), 1, 'verification', 1, '#ffffff', '2000-01-01', " +
+                              "'Computer Science', 'Junior', '3.50', REPLICATE('Biography. ', 60), " +
+                              "CONCAT('https://juniper.blob.core.windows.net/user', n, '/profile.jpg') " +
+                              "FROM (SELECT ROW_NUMBER() OVER (ORDER BY (SELECT NULL)) AS n " +
+                              "FROM sys.all_columns AS a CROSS JOIN sys.all_columns AS b) AS numbers");
+
+            // tbl_users and tbl_user_credentials after V5
+            statement.execute("SELECT user_id, user_handle, user_name, email, profile_picture_url INTO #users FROM #wide_users");
+            statement.execute("ALTER TABLE #users ADD PRIMARY KEY (user_id), UNIQUE (user_handle), UNIQUE (email)");
+            statement.execute("SELECT user_id, salt, hash, refresh_token_id, refresh_token_family INTO #user_credentials FROM #wide_users");
+            statement.execute("ALTER TABLE #user_credentials ADD PRIMARY KEY (user_id)");
+        }
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws SQLException {
+        conn.close();
+    }
+
+    @Test
+    public void testSignInPath() throws SQLException {
+        // Sign in resolves the salt and hash for an email
+        PathMeasurement wide = measure("SELECT * FROM #wide_users WHERE email = ?", "email",
+                                       "#wide_users");
+        PathMeasurement split = measure("SELECT users.user_id, credentials.salt, credentials.hash FROM #users AS users " +
+                                        "JOIN #user_credentials AS credentials ON credentials.user_id = users.user_id " +
+                                        "WHERE users.email = ?", "email", "#users", "#user_credentials");
+
+        print("Sign in", wide, split);
+        assertTrue(split.size() < wide.size());
+        assertTrue(split.rowSize() < wide.rowSize());
+    }
+
+    @Test
+    public void testRenewSessionPath() throws SQLException {
+        // Renewing a session resolves the refresh token for a user_id
+        PathMeasurement wide = measure("SELECT * FROM #wide_users WHERE user_id = ?", "user_id",
+                                       "#wide_users");
+        PathMeasurement split = measure("SELECT salt, hash, refresh_token_id, refresh_token_family FROM #user_credentials " +
+                                        "WHERE user_id = ?", "user_id", "#user_credentials");
+
+        print("Renew session", wide, split);
+        assertTrue(split.size() < wide.size());
+        assertTrue(split.rowSize() < wide.rowSize());
+    }
+
+    /**
+     * Looks up users by the key column with the query, and measures the lookups and the tables they read
+     */
+    private static PathMeasurement measure(String query, String keyColumn, String... tables) throws SQLException {
+        long size = 0;
+        try (Statement statement = conn.createStatement()) {
+            for (String table : tables) {
+                try (ResultSet sizeRS = statement.executeQuery("SELECT SUM(reserved_page_count) * 8 AS size " +
+                                                               "FROM tempdb.sys.dm_db_partition_stats " +
+                                                               "WHERE object_id = OBJECT_ID('tempdb.." + table + "')")) {
+                    sizeRS.next();
+                    size += sizeRS.getLong("size");
+                }
+            }
+        }
+
+        long rowSize = 0;
+        long startTime = System.nanoTime();
+        try (Statement keyStatement = conn.createStatement();
+             ResultSet keyRS = keyStatement.executeQuery("SELECT TOP (" + NUMBER_OF_LOOKUPS + ") " + keyColumn + " FROM #users " +
+                                                         "ORDER BY NEWID()");
+             PreparedStatement lookupStatement = conn.prepareStatement(query)) {
+
+            while (keyRS.next()) {
+                lookupStatement.setString(1, keyRS.getString(1));
+                try (ResultSet lookupRS = lookupStatement.executeQuery()) {
+                    assertTrue(lookupRS.next());
+                    rowSize += getRowSize(lookupRS);
+                }
+            }
+        }
+        long time = (System.nanoTime() - startTime) / 1_000_000;
+
+        return new PathMeasurement(size, rowSize / NUMBER_OF_LOOKUPS, time);
+    }
+
+    /**
+     * Gets the bytes of column data in the current row
+     */
+    private static long getRowSize(ResultSet rs) throws SQLException {
+        long rowSize = 0;
+        for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
+            Object value = rs.getObject(i);
+            if (value instanceof String string) {
+                rowSize += string.length();
+            } else if (value instanceof byte[] bytes) {
+                rowSize += bytes.length;
+            } else if (value != null) {
+                rowSize += 8;
+            }
+        }
+        return rowSize;
+    }
+
+    private static void print(String path, PathMeasurement wide, PathMeasurement split) {
+        System.out.printf("%s reads %d KB of tables and %d bytes per row in %dms before the split, " +
+                          "and %d KB and %d bytes per row in %dms after%n", path, wide.size(), wide.rowSize(), wide.time(),
+                          split.size(), split.rowSize(), split.time());
+    }
+}
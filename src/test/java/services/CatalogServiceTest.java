@@ -0,0 +1,71 @@
+package services;
+
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import static org.junit.Assert.*;
+
+public class CatalogServiceTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(10);
+
+    @Before
+    public void setUpBeforeTest() {
+        CatalogService.initialize(Map.of("universityId1", "University of Andorra",
+                                         "universityId2", "Abu Dhabi University"),
+                                  Map.of("courseId1", "ARCH 374",
+                                         "courseId2", "ARCH 374"),
+                                  Map.of("courseId1", "universityId1",
+                                         "courseId2", "universityId2"));
+    }
+
+    @Test
+    public void testResolveUniversity() {
+        // Check that universities resolve in both directions
+        assertEquals("universityId1", CatalogService.resolveUniversityNameToUniversityId("University of Andorra"));
+        assertEquals("Abu Dhabi University", CatalogService.resolveUniversityIdToUniversityName("universityId2"));
+
+        // Check that names are compared the same way as the database collation
+        assertEquals("universityId1", CatalogService.resolveUniversityNameToUniversityId("university of andorra  "));
+
+        // Check that unknown universities are not resolved
+        assertNull(CatalogService.resolveUniversityNameToUniversityId("University of Nowhere"));
+        assertNull(CatalogService.resolveUniversityIdToUniversityName("universityId3"));
+        assertNull(CatalogService.resolveUniversityIdToUniversityName(null));
+    }
+
+    @Test
+    public void testResolveCourse() {
+        // Check that the same course code resolves to different courses at different universities
+        assertEquals("courseId1", CatalogService.resolveCourseCodeUniversityIdToCourseId("ARCH 374", "universityId1"));
+        assertEquals("courseId2", CatalogService.resolveCourseCodeUniversityIdToCourseId("arch 374", "universityId2"));
+        assertEquals("ARCH 374", CatalogService.resolveCourseIdToCourseCode("courseId2"));
+
+        assertNull(CatalogService.resolveCourseCodeUniversityIdToCourseId("ARCH 395", "universityId1"));
+    }
+
+    @Test
+    public void testAddOnMiss() {
+        assertEquals(2, CatalogService.numberOfUniversities());
+        assertEquals(2, CatalogService.numberOfCourses());
+
+        CatalogService.addUniversity("universityId3", "University of Washington");
+        CatalogService.addCourse("courseId3", "CSE 332", "universityId3");
+
+        // Check that added records resolve in both directions
+        assertEquals("universityId3", CatalogService.resolveUniversityNameToUniversityId("University of Washington"));
+        assertEquals("University of Washington", CatalogService.resolveUniversityIdToUniversityName("universityId3"));
+        assertEquals("courseId3", CatalogService.resolveCourseCodeUniversityIdToCourseId("CSE 332", "universityId3"));
+        assertEquals("CSE 332", CatalogService.resolveCourseIdToCourseCode("courseId3"));
+
+        assertEquals(3, CatalogService.numberOfUniversities());
+        assertEquals(3, CatalogService.numberOfCourses());
+
+        // Check that reloading the catalog discards added records
+        setUpBeforeTest();
+        assertNull(CatalogService.resolveUniversityNameToUniversityId("University of Washington"));
+    }
+}
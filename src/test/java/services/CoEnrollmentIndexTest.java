@@ -0,0 +1,138 @@
+package services;
+
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import static org.junit.Assert.*;
+
+public class CoEnrollmentIndexTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(300);
+
+    @Before
+    public void setUpBeforeTest() {
+        CoEnrollmentIndex.initialize(Map.of("user1", "universityA",
+                                            "user2", "universityA",
+                                            "user3", "universityB",
+                                            "user4", "universityA",
+                                            "user5", "universityB"),
+                                     Map.of("user1", List.of("course1", "course2", "course3"),
+                                            "user2", List.of("course1"),
+                                            "user3", List.of("course1", "course2"),
+                                            "user4", List.of("course1", "course2", "course3")));
+    }
+
+    @Test
+    public void testRank() {
+        List<CoEnrollmentIndex.Candidate> candidates = CoEnrollmentIndex.rank("user1", null, 10, List.of());
+
+        // Check that candidates are ranked by shared courses, then by university
+        assertEquals(List.of(new CoEnrollmentIndex.Candidate("user4", 3, true),
+                             new CoEnrollmentIndex.Candidate("user3", 2, false),
+                             new CoEnrollmentIndex.Candidate("user2", 1, true),
+                             new CoEnrollmentIndex.Candidate("user5", 0, false)),
+                     candidates);
+
+        // Check that excluded users are not ranked
+        assertEquals(List.of("user3", "user5"), userIds(CoEnrollmentIndex.rank("user1", null, 10, List.of("user4", "user2"))));
+
+        // Check that unknown users have no candidates
+        assertTrue(CoEnrollmentIndex.rank("user6", null, 10, List.of()).isEmpty());
+    }
+
+    @Test
+    public void testRankCursor() {
+        List<CoEnrollmentIndex.Candidate> candidates = CoEnrollmentIndex.rank("user1", null, 10, List.of());
+
+        // Check that paging through the candidates yields the same order as a single batch
+        List<CoEnrollmentIndex.Candidate> pagedCandidates = new ArrayList<>();
+        CoEnrollmentIndex.Candidate cursor = null;
+        List<CoEnrollmentIndex.Candidate> batch;
+        while (!(batch = CoEnrollmentIndex.rank("user1", cursor, 1, List.of())).isEmpty()) {
+            pagedCandidates.addAll(batch);
+            cursor = batch.get(batch.size() - 1);
+        }
+        assertEquals(candidates, pagedCandidates);
+    }
+
+    @Test
+    public void testUpdateRegistration() {
+        CoEnrollmentIndex.updateRegistration("user5", "universityA", List.of("course1", "course2", "course3"));
+        CoEnrollmentIndex.updateRegistration("user4", "universityB", List.of());
+
+        // Check that updated registrations are reflected in the ranking
+        assertEquals(List.of(new CoEnrollmentIndex.Candidate("user5", 3, true),
+                             new CoEnrollmentIndex.Candidate("user3", 2, false),
+                             new CoEnrollmentIndex.Candidate("user2", 1, true),
+                             new CoEnrollmentIndex.Candidate("user4", 0, false)),
+                     CoEnrollmentIndex.rank("user1", null, 10, List.of()));
+
+        // Check that new users are added without courses
+        CoEnrollmentIndex.addUser("user6");
+        CoEnrollmentIndex.updateUniversity("user6", "universityA");
+        assertEquals(new CoEnrollmentIndex.Candidate("user6", 0, true),
+                     CoEnrollmentIndex.rank("user1", null, 10, List.of()).get(3));
+    }
+
+    @Test
+    public void testBenchmark() {
+        // One million users at 1,000 universities, each registered in 5 of the 50 courses offered at their university
+        int numberOfUsers = 1_000_000;
+        Random random = new Random(0);
+        Map<String, String> userIdToUniversityId = new HashMap<>(numberOfUsers * 2);
+        Map<String, List<String>> userIdToCourseIds = new HashMap<>(numberOfUsers * 2);
+        for (int i = 0; i < numberOfUsers; i++) {
+            String userId = UUID.nameUUIDFromBytes(String.valueOf(i).getBytes()).toString();
+            int university = random.nextInt(1000);
+            userIdToUniversityId.put(userId, "university" + university);
+
+            List<String> courseIds = new ArrayList<>();
+            while (courseIds.size() < 5) {
+                String courseId = "course" + (university * 50 + random.nextInt(50));
+                if (!courseIds.contains(courseId)) {
+                    courseIds.add(courseId);
+                }
+            }
+            userIdToCourseIds.put(userId, courseIds);
+        }
+        List<String> userIds = new ArrayList<>(userIdToUniversityId.keySet());
+
+        long startTime = System.nanoTime();
+        CoEnrollmentIndex.initialize(userIdToUniversityId, userIdToCourseIds);
+        long buildTime = System.nanoTime() - startTime;
+        userIdToUniversityId = null;
+        userIdToCourseIds = null;
+
+        // Warm up
+        for (int i = 0; i < 20000; i++) {
+            CoEnrollmentIndex.rank(userIds.get(random.nextInt(numberOfUsers)), null, 50, List.of());
+        }
+
+        int numberOfRanks = 20000;
+        startTime = System.nanoTime();
+        for (int i = 0; i < numberOfRanks; i++) {
+            List<CoEnrollmentIndex.Candidate> candidates = CoEnrollmentIndex.rank(userIds.get(random.nextInt(numberOfUsers)), null, 50, List.of());
+            assertEquals(50, candidates.size());
+        }
+        long rankTime = System.nanoTime() - startTime;
+
+        System.out.println("Index build time for " + numberOfUsers + " users: " + buildTime / 1_000_000 + "ms");
+        System.out.println("Index bitmap size: " + CoEnrollmentIndex.getBitmapSizeInBytes() / 1024 + "KB");
+        System.out.println("Rank throughput: " + (long) (numberOfRanks / (rankTime / 1e9)) + " ranks/s");
+
+        // Check that bitmaps stay compact and ranking is well under a millisecond
+        assertTrue(CoEnrollmentIndex.getBitmapSizeInBytes() < 64L * 1024 * 1024);
+        assertTrue(rankTime / numberOfRanks < 1_000_000);
+    }
+
+    private static List<String> userIds(List<CoEnrollmentIndex.Candidate> candidates) {
+        List<String> userIds = new ArrayList<>();
+        for (CoEnrollmentIndex.Candidate candidate : candidates) {
+            userIds.add(candidate.userId());
+        }
+        return userIds;
+    }
+}
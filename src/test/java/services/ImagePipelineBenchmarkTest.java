@@ -0,0 +1,110 @@
+package services;
+
+import java.awt.image.*;
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+import javax.imageio.*;
+import javax.imageio.stream.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+import static org.junit.Assert.*;
+import static services.ImagePipeline.Rendition.*;
+
+public class ImagePipelineBenchmarkTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(300);
+
+    private static final int NUMBER_OF_RENDERS = 5;
+
+    /**
+     * CPU and output of rendering one kind of original
+     *
+     * @param originalSize bytes of the original picture
+     * @param cpuTime median CPU milliseconds to render every rendition of the picture
+     * @param renditionSizes bytes of each rendition
+     */
+    private record RenderMeasurement(long originalSize, double cpuTime, Map<ImagePipeline.Rendition, Integer> renditionSizes) {}
+
+    @Test
+    public void testRenderPhotos() throws IOException {
+        // A 12 megapixel phone photo, and a 4 megapixel photo
+        RenderMeasurement largePhoto = measure(createPhoto(4032, 3024));
+        RenderMeasurement smallPhoto = measure(createPhoto(2304, 1728));
+
+        print("4032x3024 photo", largePhoto);
+        print("2304x1728 photo", smallPhoto);
+
+        // Check that a discover card and a mini profile download a small fraction of the original
+        for (RenderMeasurement measurement : List.of(largePhoto, smallPhoto)) {
+            assertTrue(measurement.renditionSizes().get(CARD) * 5 < measurement.originalSize());
+            assertTrue(measurement.renditionSizes().get(THUMBNAIL) * 50 < measurement.originalSize());
+        }
+    }
+
+    /**
+     * Renders a picture NUMBER_OF_RENDERS times after warming up, measuring the CPU time of the rendering thread
+     */
+    private static RenderMeasurement measure(byte[] original) throws IOException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Map<ImagePipeline.Rendition, byte[]> renditions = ImagePipeline.render(new ByteArrayInputStream(original));
+
+        double[] cpuTimes = new double[NUMBER_OF_RENDERS];
+        for (int i = 0; i < NUMBER_OF_RENDERS; i++) {
+            long startTime = threads.getCurrentThreadCpuTime();
+            renditions = ImagePipeline.render(new ByteArrayInputStream(original));
+            cpuTimes[i] = (threads.getCurrentThreadCpuTime() - startTime) / 1e6;
+        }
+        Arrays.sort(cpuTimes);
+
+        Map<ImagePipeline.Rendition, Integer> renditionSizes = new EnumMap<>(ImagePipeline.Rendition.class);
+        for (Map.Entry<ImagePipeline.Rendition, byte[]> rendition : renditions.entrySet()) {
+            renditionSizes.put(rendition.getKey(), rendition.getValue().length);
+        }
+        return new RenderMeasurement(original.length, cpuTimes[NUMBER_OF_RENDERS / 2], renditionSizes);
+    }
+
+    private static void print(String name, RenderMeasurement measurement) {
+        System.out.printf("%s: %,d KB original, %,.0f ms CPU per picture%n", name, measurement.originalSize() / 1024, measurement.cpuTime());
+        for (Map.Entry<ImagePipeline.Rendition, Integer> rendition : measurement.renditionSizes().entrySet()) {
+            System.out.printf("    %-9s %,6d KB, %5.1f%% of the original bytes saved%n", rendition.getKey(), rendition.getValue() / 1024,
+                              100.0 * (measurement.originalSize() - rendition.getValue()) / measurement.originalSize());
+        }
+    }
+
+    /**
+     * Creates a photo-like JPEG, with smooth shapes and sensor noise, at the quality phone cameras save at
+     */
+    private static byte[] createPhoto(int width, int height) throws IOException {
+        BufferedImage photo = ImagePipelineTest.createPicture(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(0);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            photo.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(17) - 8;
+                int r = Math.min(255, Math.max(0, ((row[x] >> 16) & 0xff) + noise));
+                int g = Math.min(255, Math.max(0, ((row[x] >> 8) & 0xff) + noise));
+                int b = Math.min(255, Math.max(0, (row[x] & 0xff) + noise));
+                row[x] = (r << 16) | (g << 8) | b;
+            }
+            photo.setRGB(0, y, width, 1, row, 0, width);
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(imageOut);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(0.92f);
+            writer.write(null, new IIOImage(photo, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
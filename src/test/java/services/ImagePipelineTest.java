@@ -0,0 +1,306 @@
+package services;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import com.azure.storage.blob.*;
+import javax.imageio.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+import model.LocalBlobServer;
+import model.storage.StorageConnection;
+
+import static org.junit.Assert.*;
+import static services.ImagePipeline.Rendition.*;
+
+public class ImagePipelineTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(60);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void tearDownAfterTest() {
+        ImagePipeline.stop();
+    }
+
+    @Test
+    public void testRenditionSizes() throws IOException {
+        Map<ImagePipeline.Rendition, byte[]> renditions = ImagePipeline.render(new ByteArrayInputStream(
+                encode(createPicture(3000, 2000, BufferedImage.TYPE_INT_ARGB), "png")));
+
+        // Check that each rendition is a JPEG scaled to fit its size, keeping the aspect ratio
+        assertEquals(Set.of(ImagePipeline.Rendition.values()), renditions.keySet());
+        assertSize(1600, 1067, renditions.get(FULL));
+        assertSize(720, 480, renditions.get(CARD));
+        assertSize(160, 107, renditions.get(THUMBNAIL));
+
+        // Check that smaller renditions are smaller files
+        assertTrue(renditions.get(THUMBNAIL).length < renditions.get(CARD).length);
+        assertTrue(renditions.get(CARD).length < renditions.get(FULL).length);
+    }
+
+    @Test
+    public void testSmallPicture() throws IOException {
+        Map<ImagePipeline.Rendition, byte[]> renditions = ImagePipeline.render(new ByteArrayInputStream(
+                encode(createPicture(100, 50, BufferedImage.TYPE_INT_RGB), "jpeg")));
+
+        // Check that pictures are never scaled up
+        for (byte[] rendition : renditions.values()) {
+            assertSize(100, 50, rendition);
+        }
+    }
+
+    @Test
+    public void testSubsampledPicture() throws IOException {
+        // Check that a picture decoded with subsampling still fills the full rendition
+        Map<ImagePipeline.Rendition, byte[]> renditions = ImagePipeline.render(new ByteArrayInputStream(
+                encode(createPicture(7000, 3500, BufferedImage.TYPE_INT_RGB), "jpeg")));
+        assertSize(1600, 800, renditions.get(FULL));
+    }
+
+    @Test
+    public void testMetadata() throws IOException {
+        // 40x20 picture with a red top left corner, which a viewer should show rotated 90 degrees clockwise
+        BufferedImage picture = createPicture(40, 20, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = picture.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 10, 10);
+        graphics.dispose();
+        byte[] jpeg = withExifOrientation(encode(picture, "jpeg"), 6);
+
+        Map<ImagePipeline.Rendition, byte[]> renditions = ImagePipeline.render(new ByteArrayInputStream(jpeg));
+
+        for (byte[] rendition : renditions.values()) {
+            // Check that the rendition is upright, with the red corner now at the top right
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(rendition));
+            assertEquals(20, image.getWidth());
+            assertEquals(40, image.getHeight());
+            Color corner = new Color(image.getRGB(16, 3));
+            assertTrue(corner.toString(), corner.getRed() > 200 && corner.getGreen() < 80 && corner.getBlue() < 80);
+
+            // Check that the EXIF segment is not carried over
+            assertFalse(containsMarker(rendition, 0xE1));
+        }
+
+        // Check that orientations are read in both byte orders, and that other segments have none
+        assertEquals(6, ImagePipeline.readOrientation(createExif(6, false)));
+        assertEquals(8, ImagePipeline.readOrientation(createExif(8, true)));
+        assertEquals(0, ImagePipeline.readOrientation("http://ns.adobe.com/xap/1.0/".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void testInvalidPictures() throws IOException {
+        // Check that data that is not a picture is rejected
+        assertRejected("not a picture".getBytes(StandardCharsets.UTF_8));
+
+        // Check that a truncated picture is rejected
+        byte[] jpeg = encode(createPicture(200, 200, BufferedImage.TYPE_INT_RGB), "jpeg");
+        assertRejected(Arrays.copyOf(jpeg, 100));
+
+        // Check that a picture with too many pixels is rejected from its header, before it is decoded
+        assertRejected(createPngHeader(10_000, 10_000));
+    }
+
+    @Test
+    public void testSubmitProfilePicture() throws Exception {
+        ImagePipeline.start(1, 1);
+        try (LocalBlobServer blobServer = new LocalBlobServer()) {
+            StorageConnection stconn = new StorageConnection(blobServer.getEndpoint(), LocalBlobServer.ACCOUNT_NAME,
+                                                             Base64.getEncoder().encodeToString("key".getBytes(StandardCharsets.UTF_8)));
+            Path picture = writeUpload(encode(createPicture(2000, 2000, BufferedImage.TYPE_INT_RGB), "jpeg"));
+
+            Map<ImagePipeline.Rendition, String> urls = ImagePipeline.submitProfilePicture(stconn, "UserId", picture).get();
+
+            // Check that every rendition is stored in the user's container, and its url returned
+            for (ImagePipeline.Rendition rendition : ImagePipeline.Rendition.values()) {
+                String url = urls.get(rendition);
+                assertTrue(url, url.matches(".*/userid/profile-picture-[0-9a-f-]{36}-" + rendition.name().toLowerCase() + "\\.jpg"));
+                assertSize(rendition.maxDimension, rendition.maxDimension, blobServer.getBlob("userid", url.substring(url.lastIndexOf('/') + 1)));
+            }
+
+            // Check that each upload is stored under its own names, so it never replaces the renditions of another
+            Map<ImagePipeline.Rendition, String> otherUrls = ImagePipeline.submitProfilePicture(stconn, "UserId", picture).get();
+            for (ImagePipeline.Rendition rendition : ImagePipeline.Rendition.values()) {
+                assertNotEquals(urls.get(rendition), otherUrls.get(rendition));
+            }
+
+            // Check that pictures that cannot be decoded fail the future
+            try {
+                ImagePipeline.submitProfilePicture(stconn, "UserId", writeUpload(new byte[100])).get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+        }
+    }
+
+    @Test
+    public void testBoundedQueue() throws Exception {
+        ImagePipeline.start(1, 1);
+        CountDownLatch uploadStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Path picture = writeUpload(encode(createPicture(100, 100, BufferedImage.TYPE_INT_RGB), "jpeg"));
+
+        try (LocalBlobServer blobServer = new LocalBlobServer()) {
+            // Storage that holds up every upload until released, then completes it even if the worker was interrupted
+            List<String> uploadedBlobNames = new CopyOnWriteArrayList<>();
+            StorageConnection blockedStorage = new StorageConnection(blobServer.getEndpoint(), LocalBlobServer.ACCOUNT_NAME,
+                                                                     Base64.getEncoder().encodeToString("key".getBytes(StandardCharsets.UTF_8))) {
+                @Override
+                public BlobClient storage_uploadBlob(String containerName, String blobName, InputStream data, long length, String contentType) {
+                    boolean interrupted = false;
+                    uploadStarted.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                    BlobClient blob = super.storage_uploadBlob(containerName, blobName, data, length, contentType);
+                    uploadedBlobNames.add(blobName);
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return blob;
+                }
+            };
+
+            // One picture is processed, one waits, and the rest are rejected
+            Future<Map<ImagePipeline.Rendition, String>> processed = ImagePipeline.submitProfilePicture(blockedStorage, "userId", picture);
+            Future<Map<ImagePipeline.Rendition, String>> waiting = ImagePipeline.submitProfilePicture(blockedStorage, "userId", picture);
+            try {
+                ImagePipeline.submitProfilePicture(blockedStorage, "userId", picture);
+                fail();
+            } catch (RejectedExecutionException e) {
+                // Check that the picture over the bound is rejected rather than queued
+            }
+
+            // Check that a picture the request gave up on stores no further renditions once its upload returns
+            assertTrue(uploadStarted.await(10, TimeUnit.SECONDS));
+            processed.cancel(true);
+            release.countDown();
+            assertEquals(3, waiting.get().size());
+            assertEquals(1 + 3, uploadedBlobNames.size());
+        }
+
+        // Check that pictures are rejected once the pipeline has stopped
+        ImagePipeline.stop();
+        try {
+            ImagePipeline.submitProfilePicture(null, "userId", picture);
+            fail();
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Writes an upload to a temporary file, the way the endpoint receives it
+     */
+    private Path writeUpload(byte[] picture) throws IOException {
+        Path upload = temporaryFolder.newFile().toPath();
+        Files.write(upload, picture);
+        return upload;
+    }
+
+    /**
+     * Creates a picture of smooth gradients
+     */
+    static BufferedImage createPicture(int width, int height, int type) {
+        BufferedImage picture = new BufferedImage(width, height, type);
+        Graphics2D graphics = picture.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, new Color(40, 120, 200), width, height, new Color(240, 200, 80)));
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(new Color(30, 30, 30));
+        graphics.fillOval(width / 4, height / 4, width / 2, height / 2);
+        graphics.dispose();
+        return picture;
+    }
+
+    static byte[] encode(BufferedImage picture, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(picture, format, out);
+        return out.toByteArray();
+    }
+
+    private static void assertSize(int width, int height, byte[] jpeg) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertNotNull(image);
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+    }
+
+    private static void assertRejected(byte[] picture) throws IOException {
+        try {
+            ImagePipeline.render(new ByteArrayInputStream(picture));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Inserts an EXIF segment with an orientation after the JFIF segment of a JPEG
+     */
+    private static byte[] withExifOrientation(byte[] jpeg, int orientation) {
+        byte[] exif = createExif(orientation, false);
+        int jfifEnd = 4 + (((jpeg[4] & 0xff) << 8) | (jpeg[5] & 0xff));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, jfifEnd);
+        out.write(0xFF);
+        out.write(0xE1);
+        out.write((exif.length + 2) >> 8);
+        out.write((exif.length + 2) & 0xff);
+        out.write(exif, 0, exif.length);
+        out.write(jpeg, jfifEnd, jpeg.length - jfifEnd);
+        return out.toByteArray();
+    }
+
+    /**
+     * Creates the contents of an EXIF segment whose only tag is the orientation
+     */
+    private static byte[] createExif(int orientation, boolean littleEndian) {
+        ByteBuffer exif = ByteBuffer.allocate(6 + 8 + 2 + 12 + 4).order(littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        exif.put("Exif\0\0".getBytes(StandardCharsets.US_ASCII));
+        exif.put((byte) (littleEndian ? 'I' : 'M')).put((byte) (littleEndian ? 'I' : 'M')).putShort((short) 42).putInt(8);
+        exif.putShort((short) 1);
+        exif.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        exif.putInt(0);
+        return exif.array();
+    }
+
+    /**
+     * Creates a PNG that declares its size but has no pixels
+     */
+    private static byte[] createPngHeader(int width, int height) {
+        ByteBuffer header = ByteBuffer.allocate(13).putInt(width).putInt(height).put(new byte[] {8, 2, 0, 0, 0});
+        CRC32 crc = new CRC32();
+        crc.update("IHDR".getBytes(StandardCharsets.US_ASCII));
+        crc.update(header.array());
+
+        ByteBuffer png = ByteBuffer.allocate(8 + 4 + 4 + 13 + 4);
+        png.put(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+        png.putInt(13).put("IHDR".getBytes(StandardCharsets.US_ASCII)).put(header.array()).putInt((int) crc.getValue());
+        return png.array();
+    }
+
+    private static boolean containsMarker(byte[] jpeg, int marker) {
+        for (int i = 0; i + 1 < jpeg.length; i++) {
+            if ((jpeg[i] & 0xff) == 0xFF && (jpeg[i + 1] & 0xff) == marker) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
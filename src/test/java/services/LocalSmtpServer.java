@@ -0,0 +1,173 @@
+package services;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Stand-in for an SMTP server that accepts every email without delivering it. Each new connection is delayed
+ * to stand in for the TCP and TLS handshake with a remote server. Accepting emails can be paused to stand in
+ * for a slow server
+ */
+public class LocalSmtpServer implements Closeable {
+
+    private final ServerSocket serverSocket;
+    private final long handshakeDelayMillis;
+    private final ExecutorService executor;
+
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final List<String> recipients = new CopyOnWriteArrayList<>();
+    private final AtomicInteger numberOfConnections = new AtomicInteger();
+    private final AtomicInteger numberOfMessages = new AtomicInteger();
+
+    // While paused, each email is held at the end of its DATA command until a permit is released
+    private volatile boolean paused;
+    private final Semaphore permits = new Semaphore(0);
+
+    /**
+     * Starts accepting connections on a free local port
+     *
+     * @param handshakeDelayMillis time each new connection waits before the server greets it
+     */
+    public LocalSmtpServer(long handshakeDelayMillis) throws IOException {
+        this.handshakeDelayMillis = handshakeDelayMillis;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "local-smtp-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::accept);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of connections opened since startup
+     */
+    public int numberOfConnections() {
+        return numberOfConnections.get();
+    }
+
+    /**
+     * Returns the number of emails accepted since startup
+     */
+    public int numberOfMessages() {
+        return numberOfMessages.get();
+    }
+
+    /**
+     * Returns the recipients of the accepted emails, in the order they were accepted
+     */
+    public List<String> getRecipients() {
+        return recipients;
+    }
+
+    /**
+     * Holds every email at the end of its DATA command until it is released or resume is called
+     */
+    public void pause() {
+        permits.drainPermits();
+        paused = true;
+    }
+
+    /**
+     * Accepts the next emails while paused
+     */
+    public void release(int numberOfEmails) {
+        permits.release(numberOfEmails);
+    }
+
+    public void resume() {
+        paused = false;
+    }
+
+    /**
+     * Closes every open connection, as a server does to connections that have been idle
+     */
+    public void dropConnections() throws IOException {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        resume();
+        serverSocket.close();
+        dropConnections();
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+                numberOfConnections.incrementAndGet();
+                executor.execute(() -> serve(socket));
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+
+            Thread.sleep(handshakeDelayMillis);
+            reply(writer, "220 localhost ESMTP");
+
+            List<String> messageRecipients = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String command = line.length() < 4 ? line.toUpperCase() : line.substring(0, 4).toUpperCase();
+                switch (command) {
+                    case "EHLO", "HELO" -> reply(writer, "250-localhost\r\n250 8BITMIME");
+                    case "MAIL", "NOOP" -> reply(writer, "250 OK");
+                    case "RSET" -> {
+                        messageRecipients.clear();
+                        reply(writer, "250 OK");
+                    }
+                    case "RCPT" -> {
+                        messageRecipients.add(line.substring(line.indexOf('<') + 1, line.indexOf('>')));
+                        reply(writer, "250 OK");
+                    }
+                    case "DATA" -> {
+                        reply(writer, "354 End data with <CR><LF>.<CR><LF>");
+                        while ((line = reader.readLine()) != null && !line.equals(".")) {}
+                        while (paused && !permits.tryAcquire(10, TimeUnit.MILLISECONDS)) {}
+
+                        // An email held while its connection was dropped was never accepted, so the client sends it again
+                        if (socket.isClosed()) {
+                            return;
+                        }
+                        recipients.addAll(messageRecipients);
+                        messageRecipients.clear();
+                        numberOfMessages.incrementAndGet();
+                        reply(writer, "250 OK");
+                    }
+                    case "QUIT" -> {
+                        reply(writer, "221 Bye");
+                        return;
+                    }
+                    default -> reply(writer, "502 Command not implemented");
+                }
+            }
+        } catch (IOException | InterruptedException ignored) {
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    private static void reply(Writer writer, String reply) throws IOException {
+        writer.write(reply + "\r\n");
+        writer.flush();
+    }
+}
@@ -0,0 +1,116 @@
+package services;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+import org.springframework.http.*;
+
+import static org.junit.Assert.*;
+import static helpers.Utilities.*;
+import static services.MailDeduplicator.EmailType.*;
+
+public class MailDeduplicatorTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(60);
+
+    private static final long WINDOW_MILLIS = 300;
+    private static final long TICK_MILLIS = 20;
+
+    private final AtomicInteger numberOfSends = new AtomicInteger();
+
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        // Loads the status JSON classes, which would otherwise take longer than the window on the first send
+        createStatusJSON("Successfully sent email", HttpStatus.OK);
+    }
+
+    @Before
+    public void setUpBeforeTest() {
+        MailDeduplicator.start(WINDOW_MILLIS, TICK_MILLIS);
+    }
+
+    @After
+    public void tearDownAfterTest() {
+        MailDeduplicator.stop();
+    }
+
+    @Test
+    public void testSuppressesDuplicates() throws InterruptedException {
+        long numberOfSuppressedEmails = MailDeduplicator.numberOfSuppressedEmails(VERIFICATION);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(HttpStatus.OK, MailDeduplicator.send("name@email.com", VERIFICATION, this::send).getStatusCode());
+        }
+
+        // Check that repeated sends collapse into one, and that they are counted as suppressed
+        assertEquals(1, numberOfSends.get());
+        assertEquals(numberOfSuppressedEmails + 9, MailDeduplicator.numberOfSuppressedEmails(VERIFICATION));
+
+        // Check that other recipients and other email types are sent
+        MailDeduplicator.send("other@email.com", VERIFICATION, this::send);
+        MailDeduplicator.send("name@email.com", PASSWORD_RESET, this::send);
+        assertEquals(3, numberOfSends.get());
+
+        // Check that the email is sent again once the window has passed
+        Thread.sleep(WINDOW_MILLIS + TICK_MILLIS);
+        MailDeduplicator.send("name@email.com", VERIFICATION, this::send);
+        assertEquals(4, numberOfSends.get());
+    }
+
+    @Test
+    public void testFailedSendDoesNotHoldWindow() {
+        // Check that a send that fails can be retried straight away
+        MailDeduplicator.send("name@email.com", PASSWORD_RESET,
+                              () -> createStatusJSON("Failed to send email", HttpStatus.SERVICE_UNAVAILABLE));
+        MailDeduplicator.send("name@email.com", PASSWORD_RESET, this::send);
+        assertEquals(1, numberOfSends.get());
+    }
+
+    @Test
+    public void testConcurrentDuplicates() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < 200; i++) {
+            String toAddress = "name" + (i % 20) + "@email.com";
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                MailDeduplicator.send(toAddress, VERIFICATION, this::send);
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        // Check that exactly one email per recipient is sent
+        assertEquals(20, numberOfSends.get());
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        for (int i = 0; i < 1000; i++) {
+            MailDeduplicator.send("name" + i + "@email.com", VERIFICATION, this::send);
+        }
+        assertEquals(1000, MailDeduplicator.numberOfTrackedEmails());
+
+        // Check that the time wheel forgets every recipient a few ticks after their window
+        Thread.sleep(WINDOW_MILLIS + 4 * TICK_MILLIS);
+        long deadline = System.currentTimeMillis() + 1000;
+        while (MailDeduplicator.numberOfTrackedEmails() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(TICK_MILLIS);
+        }
+        assertEquals(0, MailDeduplicator.numberOfTrackedEmails());
+    }
+
+    private ResponseEntity<Object> send() {
+        numberOfSends.incrementAndGet();
+        return createStatusJSON("Successfully sent email", HttpStatus.OK);
+    }
+}
@@ -0,0 +1,189 @@
+package services;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+import org.springframework.http.*;
+
+import static org.junit.Assert.*;
+
+public class MailOutboxTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(120);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final int NUMBER_OF_EMAILS = 300;
+
+    private Path outboxPath;
+
+    @Before
+    public void setUpBeforeTest() {
+        outboxPath = temporaryFolder.getRoot().toPath().resolve("journal").resolve("mail.outbox");
+    }
+
+    @Test
+    public void testRecoverPendingEmails() throws IOException {
+        long removedId;
+        long pendingId;
+        try (MailOutbox outbox = new MailOutbox(outboxPath)) {
+            outbox.append(bytes("email1"));
+            removedId = outbox.append(bytes("email2"));
+            pendingId = outbox.append(bytes("email3"));
+            outbox.remove(removedId);
+            outbox.sync();
+        }
+
+        // Check that only the emails that were not removed are recovered, in the order they were appended
+        try (MailOutbox outbox = new MailOutbox(outboxPath)) {
+            List<MailOutbox.Entry> entries = outbox.getRecoveredEntries();
+            assertEquals(2, entries.size());
+            assertArrayEquals(bytes("email1"), entries.get(0).message());
+            assertArrayEquals(bytes("email3"), entries.get(1).message());
+            assertEquals(pendingId, entries.get(1).id());
+            assertEquals(2, outbox.numberOfPendingEmails());
+
+            // Check that ids are never reused after recovery
+            assertTrue(outbox.append(bytes("email4")) > pendingId);
+        }
+    }
+
+    @Test
+    public void testTornRecord() throws IOException {
+        try (MailOutbox outbox = new MailOutbox(outboxPath)) {
+            outbox.append(bytes("email1"));
+            outbox.append(bytes("email2"));
+            outbox.sync();
+        }
+
+        // Corrupts the last byte of the second record, as if the process died while writing it
+        int secondRecordEnd = 2 * (2 * Integer.BYTES + Byte.BYTES + Long.BYTES + "email1".length());
+        try (FileChannel channel = FileChannel.open(outboxPath, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0x7F}), secondRecordEnd - 1);
+        }
+
+        // Check that the torn record is discarded, and that records appended after recovery are recovered again
+        try (MailOutbox outbox = new MailOutbox(outboxPath)) {
+            assertEquals(1, outbox.getRecoveredEntries().size());
+            outbox.append(bytes("email3"));
+            outbox.sync();
+        }
+        try (MailOutbox outbox = new MailOutbox(outboxPath)) {
+            List<MailOutbox.Entry> entries = outbox.getRecoveredEntries();
+            assertEquals(2, entries.size());
+            assertArrayEquals(bytes("email3"), entries.get(1).message());
+        }
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        byte[] message = new byte[100 * 1024];
+        List<Long> ids = new ArrayList<>();
+        try (MailOutbox outbox = new MailOutbox(outboxPath)) {
+            for (int i = 0; i < 60; i++) {
+                ids.add(outbox.append(message));
+            }
+            long size = outbox.size();
+
+            // Check that the outbox is not compacted while most of it is pending
+            assertFalse(outbox.compact());
+
+            for (long id : ids.subList(0, 55)) {
+                outbox.remove(id);
+            }
+            outbox.sync();
+
+            // Check that the outbox is compacted to its pending emails once most of it has been removed
+            assertTrue(outbox.compact());
+            assertTrue(outbox.size() < size);
+            outbox.append(bytes("email"));
+        }
+
+        try (MailOutbox outbox = new MailOutbox(outboxPath)) {
+            List<MailOutbox.Entry> entries = outbox.getRecoveredEntries();
+            assertEquals(6, entries.size());
+            assertEquals(ids.get(55).longValue(), entries.get(0).id());
+            assertArrayEquals(bytes("email"), entries.get(5).message());
+        }
+    }
+
+    @Test
+    public void testReplayAfterKill() throws IOException, InterruptedException {
+        LocalSmtpServer smtpServer = new LocalSmtpServer(0);
+        try {
+            smtpServer.pause();
+
+            // Queues every email in another process, which sends a quarter of them before it is killed
+            Process process = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                                                 "-cp", System.getProperty("java.class.path"), MailOutboxTest.class.getName(),
+                                                 String.valueOf(smtpServer.getPort()), outboxPath.toString())
+                    .redirectErrorStream(true)
+                    .start();
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null && !line.equals("queued")) {}
+                assertEquals("queued", line);
+
+                smtpServer.release(NUMBER_OF_EMAILS / 4);
+                awaitMessages(smtpServer, NUMBER_OF_EMAILS / 4);
+                Thread.sleep(500);
+            } finally {
+                process.destroyForcibly();
+                process.waitFor();
+            }
+
+            // The emails held by the server when the process was killed were never accepted
+            smtpServer.dropConnections();
+            smtpServer.resume();
+            assertEquals(NUMBER_OF_EMAILS / 4, smtpServer.numberOfMessages());
+
+            MailService.start("http://localhost", "localhost", smtpServer.getPort(), "support@thejuniperapp.com", "password", outboxPath);
+            awaitMessages(smtpServer, NUMBER_OF_EMAILS);
+            MailService.stop();
+
+            // Check that every email queued before the kill is sent exactly once
+            List<String> recipients = smtpServer.getRecipients();
+            assertEquals(NUMBER_OF_EMAILS, recipients.size());
+            assertEquals(NUMBER_OF_EMAILS, new HashSet<>(recipients).size());
+        } finally {
+            MailService.stop();
+            smtpServer.close();
+        }
+    }
+
+    /**
+     * Queues emails to the SMTP server, then waits to be killed by testReplayAfterKill
+     *
+     * @param args SMTP port and outbox path
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        MailService.start("http://localhost", "localhost", Integer.parseInt(args[0]), "support@thejuniperapp.com", "password", Paths.get(args[1]));
+        for (int i = 0; i < NUMBER_OF_EMAILS; i++) {
+            if (MailService.sendVerificationEmail("name", "name" + i + "@email.com", "code").getStatusCode() != HttpStatus.OK) {
+                System.exit(1);
+            }
+        }
+        System.out.println("queued");
+        System.out.flush();
+        Thread.sleep(Long.MAX_VALUE);
+    }
+
+    private static void awaitMessages(LocalSmtpServer smtpServer, int numberOfMessages) throws InterruptedException {
+        while (smtpServer.numberOfMessages() < numberOfMessages) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static byte[] bytes(String message) {
+        return message.getBytes(StandardCharsets.UTF_8);
+    }
+}
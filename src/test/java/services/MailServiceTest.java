@@ -0,0 +1,136 @@
+package services;
+
+import java.io.*;
+import java.util.*;
+
+import javax.mail.internet.MimeMessage;
+import org.junit.*;
+import org.junit.rules.*;
+import org.springframework.http.*;
+import org.springframework.mail.javamail.*;
+
+import static org.junit.Assert.*;
+
+public class MailServiceTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(120);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final int NUMBER_OF_EMAILS = 500;
+
+    // Stand-in for the TCP and TLS handshake with a remote SMTP server
+    private static final long HANDSHAKE_DELAY_MILLIS = 20;
+
+    private LocalSmtpServer smtpServer;
+
+    @Before
+    public void setUpBeforeTest() throws IOException {
+        smtpServer = new LocalSmtpServer(HANDSHAKE_DELAY_MILLIS);
+        MailService.start("http://localhost", "localhost", smtpServer.getPort(), "support@thejuniperapp.com", "password",
+                          temporaryFolder.getRoot().toPath().resolve("mail.outbox"));
+    }
+
+    @After
+    public void tearDownAfterTest() throws IOException {
+        smtpServer.resume();
+        MailService.stop();
+        smtpServer.close();
+    }
+
+    @Test
+    public void testPersistentConnections() throws InterruptedException {
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < NUMBER_OF_EMAILS; i++) {
+            assertEquals(HttpStatus.OK, MailService.sendVerificationEmail("name" + i, "name" + i + "@email.com", "code").getStatusCode());
+        }
+        awaitMessages(NUMBER_OF_EMAILS);
+        long pooledMillis = System.currentTimeMillis() - startTime;
+
+        // Check that every email is sent over the dispatchers' persistent connections
+        assertEquals(NUMBER_OF_EMAILS, smtpServer.numberOfMessages());
+        assertTrue(smtpServer.numberOfConnections() <= MailService.NUMBER_OF_TRANSPORTS);
+
+        // Sends the same number of emails with a connection per email, as every email was sent before
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(smtpServer.getPort());
+        startTime = System.currentTimeMillis();
+        for (int i = 0; i < NUMBER_OF_EMAILS / 10; i++) {
+            MimeMessage message = mailSender.createMimeMessage();
+            try {
+                MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+                helper.setFrom("support@thejuniperapp.com");
+                helper.setTo("name" + i + "@email.com");
+                helper.setSubject("Please verify your email");
+                helper.setText("content", true);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            mailSender.send(message);
+        }
+        long unpooledMillis = (System.currentTimeMillis() - startTime) * 10;
+
+        System.out.printf("Sent %d emails over persistent connections in %dms (%d emails/s)%n", NUMBER_OF_EMAILS, pooledMillis,
+                          NUMBER_OF_EMAILS * 1000L / Math.max(pooledMillis, 1));
+        System.out.printf("Sent %d emails with a connection per email in %dms (%d emails/s)%n", NUMBER_OF_EMAILS, unpooledMillis,
+                          NUMBER_OF_EMAILS * 1000L / Math.max(unpooledMillis, 1));
+
+        // Check that persistent connections do not pay the handshake for every email
+        assertTrue(pooledMillis < unpooledMillis);
+    }
+
+    @Test
+    public void testBackpressure() throws InterruptedException {
+        smtpServer.pause();
+
+        // Check that emails are rejected once the backlog is full, including the emails the dispatchers are sending
+        int numberOfAcceptedEmails = 0;
+        ResponseEntity<Object> status;
+        while ((status = MailService.sendVerificationEmail("name", "name" + numberOfAcceptedEmails + "@email.com", "code")).getStatusCode() == HttpStatus.OK) {
+            numberOfAcceptedEmails++;
+            assertTrue(numberOfAcceptedEmails <= MailService.MAX_QUEUED_EMAILS);
+        }
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertEquals(MailService.MAX_QUEUED_EMAILS, numberOfAcceptedEmails);
+
+        // Check that every accepted email is sent once the server catches up, and that emails are accepted again
+        smtpServer.resume();
+        awaitMessages(numberOfAcceptedEmails);
+        assertEquals(HttpStatus.OK, MailService.sendVerificationEmail("name", "name@email.com", "code").getStatusCode());
+        awaitMessages(numberOfAcceptedEmails + 1);
+    }
+
+    @Test
+    public void testReconnect() throws IOException, InterruptedException {
+        assertEquals(HttpStatus.OK, MailService.sendVerificationEmail("name", "name1@email.com", "code").getStatusCode());
+        awaitMessages(1);
+
+        smtpServer.dropConnections();
+
+        // Check that an email is sent over a new connection once the server has closed the old one
+        assertEquals(HttpStatus.OK, MailService.sendPasswordResetEmail("name", "name2@email.com", "code").getStatusCode());
+        awaitMessages(2);
+        assertEquals(List.of("name1@email.com", "name2@email.com"), smtpServer.getRecipients());
+    }
+
+    @Test
+    public void testStopSendsQueuedEmails() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            MailService.sendVerificationEmail("name", "name" + i + "@email.com", "code");
+        }
+        MailService.stop();
+
+        // Check that queued emails are sent before stopping, and that no further emails are accepted
+        assertEquals(100, smtpServer.numberOfMessages());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, MailService.sendVerificationEmail("name", "name@email.com", "code").getStatusCode());
+    }
+
+    private void awaitMessages(int numberOfMessages) throws InterruptedException {
+        while (smtpServer.numberOfMessages() < numberOfMessages) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package services;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import static org.junit.Assert.*;
+
+public class RelationshipGraphTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(60);
+
+    @Before
+    public void setUpBeforeTest() {
+        RelationshipGraph.initialize(List.of(new String[] {"user1", "user2", "liked"},
+                                             new String[] {"user3", "user4", "friends"},
+                                             new String[] {"user4", "user3", "friends"},
+                                             new String[] {"user5", "user1", "blocked"},
+                                             new String[] {"user1", "user6", "disliked"}));
+    }
+
+    @Test
+    public void testGetRelationship() {
+        assertEquals(RelationshipGraph.Status.LIKED, RelationshipGraph.getRelationship("user1", "user2"));
+        assertEquals(RelationshipGraph.Status.FRIENDS, RelationshipGraph.getRelationship("user3", "user4"));
+        assertEquals(RelationshipGraph.Status.DISLIKED, RelationshipGraph.getRelationship("user1", "user6"));
+        assertNull(RelationshipGraph.getRelationship("user2", "user1"));
+        assertNull(RelationshipGraph.getRelationship("user7", "user1"));
+
+        // Check that likes include friends, and that blocks are checked in both directions
+        assertTrue(RelationshipGraph.likes("user1", "user2"));
+        assertTrue(RelationshipGraph.likes("user4", "user3"));
+        assertFalse(RelationshipGraph.likes("user2", "user1"));
+        assertTrue(RelationshipGraph.isBlocked("user1", "user5"));
+        assertTrue(RelationshipGraph.isBlocked("user5", "user1"));
+    }
+
+    @Test
+    public void testSeenAndBlockedUserIds() {
+        // Check that seen users include swiped users and users that have blocked the user
+        assertEquals(Set.of("user2", "user5", "user6"), RelationshipGraph.getSeenUserIds("user1"));
+        assertEquals(Set.of("user5"), RelationshipGraph.getBlockedUserIds("user1"));
+        assertEquals(Set.of("user1"), RelationshipGraph.getBlockedUserIds("user5"));
+        assertTrue(RelationshipGraph.getSeenUserIds("user7").isEmpty());
+    }
+
+    @Test
+    public void testSetRelationship() {
+        RelationshipGraph.setRelationship("user2", "user1", RelationshipGraph.Status.FRIENDS);
+        RelationshipGraph.setRelationship("user1", "user2", RelationshipGraph.Status.FRIENDS);
+        assertEquals(RelationshipGraph.Status.FRIENDS, RelationshipGraph.getRelationship("user2", "user1"));
+
+        // Check that replacing a block clears it on the blocked user
+        RelationshipGraph.setRelationship("user5", "user1", RelationshipGraph.Status.DISLIKED);
+        assertFalse(RelationshipGraph.isBlocked("user1", "user5"));
+        assertEquals(Set.of("user2", "user6"), RelationshipGraph.getSeenUserIds("user1"));
+    }
+
+    @Test
+    public void testConcurrentWrites() throws InterruptedException {
+        // Every user likes every other user from a different thread. The graph must see every like
+        int numberOfUsers = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < numberOfUsers; i++) {
+            for (int j = 0; j < numberOfUsers; j++) {
+                if (i != j) {
+                    String userId = "concurrentUser" + i;
+                    String otherUserId = "concurrentUser" + j;
+                    executor.execute(() -> RelationshipGraph.setRelationship(userId, otherUserId, RelationshipGraph.Status.LIKED));
+                }
+            }
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        for (int i = 0; i < numberOfUsers; i++) {
+            assertEquals(numberOfUsers - 1, RelationshipGraph.getSeenUserIds("concurrentUser" + i).size());
+        }
+    }
+
+    @Test
+    public void testPairLock() {
+        // Check that both orders of a pair share a lock
+        assertSame(RelationshipGraph.getPairLock("user1", "user2"), RelationshipGraph.getPairLock("user2", "user1"));
+    }
+}
@@ -0,0 +1,359 @@
+package services;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+import org.springframework.http.*;
+
+import services.SwipeJournal.Swipe;
+
+import static org.junit.Assert.*;
+
+public class SwipeIngestionServiceTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(120);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // Stand-in for tbl_relationships
+    private final Map<String, RelationshipGraph.Status> relationships = new ConcurrentHashMap<>();
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean databaseAvailable = new AtomicBoolean(true);
+
+    private Path journalPath;
+
+    @Before
+    public void setUpBeforeTest() {
+        Map<String, String> userIdToUniversityId = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            userIdToUniversityId.put("user" + i, "universityA");
+        }
+        CoEnrollmentIndex.initialize(userIdToUniversityId, Map.of());
+        RelationshipGraph.initialize(List.of());
+
+        journalPath = temporaryFolder.getRoot().toPath().resolve("journal").resolve("swipes.journal");
+    }
+
+    @After
+    public void tearDownAfterTest() {
+        SwipeIngestionService.stop();
+    }
+
+    @Test
+    public void testMatch() throws IOException {
+        SwipeIngestionService.start(journalPath, this::write);
+
+        // Check that a match is reported as soon as the second user likes the first
+        assertEquals(new ResponseEntity<>(false, HttpStatus.OK), SwipeIngestionService.like("user1", "user2"));
+        assertEquals(new ResponseEntity<>(true, HttpStatus.OK), SwipeIngestionService.like("user2", "user1"));
+        assertEquals(RelationshipGraph.Status.FRIENDS, RelationshipGraph.getRelationship("user1", "user2"));
+
+        // Check that swipes on oneself, unknown users, and friends are rejected
+        assertEquals(HttpStatus.BAD_REQUEST, SwipeIngestionService.like("user1", "user1").getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, SwipeIngestionService.like("user1", "unknownUser").getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, SwipeIngestionService.dislike("user1", "user2").getStatusCode());
+
+        SwipeIngestionService.flush();
+        assertEquals(RelationshipGraph.Status.FRIENDS, relationships.get("user1 user2"));
+        assertEquals(RelationshipGraph.Status.FRIENDS, relationships.get("user2 user1"));
+        assertEquals(0, SwipeIngestionService.numberOfPendingSwipes());
+    }
+
+    @Test
+    public void testCoalescedBatches() throws IOException {
+        databaseAvailable.set(false);
+        SwipeIngestionService.start(journalPath, this::write);
+
+        // Swipes on the same user are coalesced into the latest swipe
+        for (int i = 1; i < 200; i++) {
+            SwipeIngestionService.like("user0", "user" + i);
+        }
+        for (int i = 1; i < 200; i++) {
+            SwipeIngestionService.dislike("user0", "user" + i);
+        }
+        assertEquals(199, SwipeIngestionService.numberOfPendingSwipes());
+
+        databaseAvailable.set(true);
+        SwipeIngestionService.flush();
+
+        // Check that only the latest swipes are written, and that they are written in as few statements as possible
+        assertEquals(199, relationships.size());
+        assertTrue(relationships.values().stream().allMatch(status -> status == RelationshipGraph.Status.DISLIKED));
+        assertEquals(List.of(199), batchSizes);
+    }
+
+    @Test
+    public void testBackpressure() throws IOException {
+        databaseAvailable.set(false);
+        SwipeIngestionService.start(journalPath, this::write);
+
+        // Check that swipes are rejected once the backlog is full, and accepted again once it has been flushed
+        Map<String, String> userIdToUniversityId = new HashMap<>();
+        for (int i = 0; i <= SwipeIngestionService.MAX_PENDING_SWIPES; i++) {
+            userIdToUniversityId.put("user" + i, "universityA");
+        }
+        CoEnrollmentIndex.initialize(userIdToUniversityId, Map.of());
+        for (int i = 1; i <= SwipeIngestionService.MAX_PENDING_SWIPES; i++) {
+            assertEquals(HttpStatus.OK, SwipeIngestionService.dislike("user0", "user" + i).getStatusCode());
+        }
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, SwipeIngestionService.like("user1", "user2").getStatusCode());
+        assertNull(RelationshipGraph.getRelationship("user1", "user2"));
+
+        databaseAvailable.set(true);
+        SwipeIngestionService.flush();
+        assertEquals(HttpStatus.OK, SwipeIngestionService.like("user1", "user2").getStatusCode());
+    }
+
+    @Test
+    public void testRecovery() throws IOException {
+        // The database is down, so the swipes only exist in the journal when the server stops
+        databaseAvailable.set(false);
+        SwipeIngestionService.start(journalPath, this::write);
+        SwipeIngestionService.like("user1", "user2");
+        SwipeIngestionService.like("user2", "user1");
+        SwipeIngestionService.like("user3", "user4");
+        SwipeIngestionService.dislike("user5", "user6");
+        SwipeIngestionService.stop();
+
+        // Restart from the relationships in the database
+        RelationshipGraph.initialize(List.of());
+        databaseAvailable.set(true);
+        SwipeIngestionService.start(journalPath, this::write);
+
+        // Check that recovered swipes are applied to the graph before new swipes are accepted
+        assertEquals(RelationshipGraph.Status.FRIENDS, RelationshipGraph.getRelationship("user1", "user2"));
+        assertEquals(new ResponseEntity<>(true, HttpStatus.OK), SwipeIngestionService.like("user4", "user3"));
+
+        // Check that recovered swipes are written
+        SwipeIngestionService.flush();
+        assertEquals(Map.of("user1 user2", RelationshipGraph.Status.FRIENDS,
+                            "user2 user1", RelationshipGraph.Status.FRIENDS,
+                            "user3 user4", RelationshipGraph.Status.FRIENDS,
+                            "user4 user3", RelationshipGraph.Status.FRIENDS,
+                            "user5 user6", RelationshipGraph.Status.DISLIKED),
+                     relationships);
+
+        // Check that the journal is empty once every swipe has been written
+        SwipeIngestionService.stop();
+        assertEquals(0, Files.size(journalPath));
+    }
+
+    @Test
+    public void testRecoveryAfterTornAppend() throws IOException {
+        databaseAvailable.set(false);
+        SwipeIngestionService.start(journalPath, this::write);
+        SwipeIngestionService.like("user1", "user2");
+        SwipeIngestionService.like("user2", "user1");
+        SwipeIngestionService.stop();
+
+        // Crash in the middle of appending a record
+        byte[] tornRecord = {0, 0, 0, 40, 12, 34, 56, 78, 0, 1, 0, 5};
+        Files.write(journalPath, tornRecord, StandardOpenOption.APPEND);
+
+        RelationshipGraph.initialize(List.of());
+        SwipeIngestionService.start(journalPath, this::write);
+
+        // Check that the torn record is dropped, and that swipes appended after it survive the next restart
+        assertEquals(2, SwipeIngestionService.numberOfPendingSwipes());
+        SwipeIngestionService.dislike("user3", "user4");
+        SwipeIngestionService.stop();
+
+        RelationshipGraph.initialize(List.of());
+        SwipeIngestionService.start(journalPath, this::write);
+        assertEquals(3, SwipeIngestionService.numberOfPendingSwipes());
+        assertEquals(RelationshipGraph.Status.DISLIKED, RelationshipGraph.getRelationship("user3", "user4"));
+    }
+
+    @Test
+    public void testRecoveryAfterPairFlush() throws IOException {
+        databaseAvailable.set(false);
+        SwipeIngestionService.start(journalPath, this::write);
+        for (int i = 1; i < 200; i++) {
+            SwipeIngestionService.like("user" + i, "user0");
+        }
+
+        // A block writes the pending swipes of its pair ahead of the rest
+        assertTrue(SwipeIngestionService.flushPair("user0", "user1", swipes -> {
+            databaseAvailable.set(true);
+            try {
+                return write(swipes);
+            } finally {
+                databaseAvailable.set(false);
+            }
+        }));
+        assertEquals(198, SwipeIngestionService.numberOfPendingSwipes());
+        SwipeIngestionService.stop();
+
+        // Check that only the swipes that were not written are recovered
+        RelationshipGraph.initialize(List.of());
+        SwipeIngestionService.start(journalPath, this::write);
+        assertEquals(198, SwipeIngestionService.numberOfPendingSwipes());
+        assertNull(RelationshipGraph.getRelationship("user1", "user0"));
+        assertEquals(RelationshipGraph.Status.LIKED, RelationshipGraph.getRelationship("user2", "user0"));
+        assertEquals(Map.of("user1 user0", RelationshipGraph.Status.LIKED), relationships);
+    }
+
+    @Test
+    public void testPairFlushDuringFlush() throws Exception {
+        CountDownLatch flushStarted = new CountDownLatch(1);
+        CountDownLatch releaseFlush = new CountDownLatch(1);
+        SwipeIngestionService.start(journalPath, swipes -> {
+            if (swipes.stream().anyMatch(swipe -> swipe.userId().equals("user1"))) {
+                flushStarted.countDown();
+                try {
+                    releaseFlush.await();
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            return write(swipes);
+        });
+
+        // The next flush gets stuck writing the like
+        SwipeIngestionService.like("user1", "user0");
+        assertTrue(flushStarted.await(10, TimeUnit.SECONDS));
+
+        // Check that a pair that is not being written is flushed without waiting for the flush
+        SwipeIngestionService.like("user2", "user0");
+        assertTrue(SwipeIngestionService.hasPendingSwipes("user0", "user2"));
+        assertTrue(SwipeIngestionService.flushPair("user0", "user2", this::write));
+        assertFalse(SwipeIngestionService.hasPendingSwipes("user0", "user2"));
+
+        // Check that a pair that is being written is only flushed once the flush has written it
+        assertTrue(SwipeIngestionService.hasPendingSwipes("user0", "user1"));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Boolean> pairFlush = executor.submit(() -> SwipeIngestionService.flushPair("user0", "user1", this::write));
+        Thread.sleep(100);
+        assertFalse(pairFlush.isDone());
+        releaseFlush.countDown();
+        assertTrue(pairFlush.get());
+        executor.shutdown();
+
+        assertFalse(SwipeIngestionService.hasPendingSwipes("user0", "user1"));
+        assertEquals(Map.of("user1 user0", RelationshipGraph.Status.LIKED,
+                            "user2 user0", RelationshipGraph.Status.LIKED),
+                     relationships);
+    }
+
+    @Test
+    public void testRecoveryAfterFailedFlushDuringPairFlush() throws Exception {
+        CountDownLatch flushStarted = new CountDownLatch(1);
+        CountDownLatch releaseFlush = new CountDownLatch(1);
+        SwipeIngestionService.start(journalPath, swipes -> {
+            if (swipes.stream().anyMatch(swipe -> swipe.userId().equals("user1"))) {
+                flushStarted.countDown();
+                try {
+                    releaseFlush.await();
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            return write(swipes);
+        });
+
+        // The next flush gets stuck writing the like
+        SwipeIngestionService.like("user1", "user0");
+        assertTrue(flushStarted.await(10, TimeUnit.SECONDS));
+
+        // Another pair is flushed on its own, which compacts the journal while the like is being written
+        SwipeIngestionService.like("user2", "user0");
+        assertTrue(SwipeIngestionService.flushPair("user0", "user2", this::write));
+
+        // The stuck flush fails, and the server stops without writing the like
+        databaseAvailable.set(false);
+        releaseFlush.countDown();
+        SwipeIngestionService.stop();
+
+        // Check that the like that was being written is recovered from the journal
+        RelationshipGraph.initialize(List.of());
+        SwipeIngestionService.start(journalPath, this::write);
+        assertEquals(1, SwipeIngestionService.numberOfPendingSwipes());
+        assertEquals(RelationshipGraph.Status.LIKED, RelationshipGraph.getRelationship("user1", "user0"));
+        assertNull(RelationshipGraph.getRelationship("user2", "user0"));
+        assertEquals(Map.of("user2 user0", RelationshipGraph.Status.LIKED), relationships);
+    }
+
+    @Test
+    public void testConcurrentLikes()throws IOException, InterruptedException {
+        SwipeIngestionService.start(journalPath, this::write);
+
+        // Every pair of users likes each other at the same time. Exactly one like of each pair must report the match
+        AtomicInteger numberOfMatches = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 100; j++) {
+                if (i != j) {
+                    String userId = "user" + i;
+                    String otherUserId = "user" + j;
+                    executor.execute(() -> {
+                        if (SwipeIngestionService.like(userId, otherUserId).getBody()) {
+                            numberOfMatches.incrementAndGet();
+                        }
+                    });
+                }
+            }
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        assertEquals(100 * 99 / 2, numberOfMatches.get());
+
+        SwipeIngestionService.flush();
+        assertEquals(100 * 99, relationships.size());
+        assertTrue(relationships.values().stream().allMatch(status -> status == RelationshipGraph.Status.FRIENDS));
+    }
+
+    @Test
+    public void testIngestionThroughput() throws IOException, InterruptedException {
+        SwipeIngestionService.start(journalPath, this::write);
+
+        // Warm up
+        for (int i = 1; i < 200; i++) {
+            SwipeIngestionService.dislike("user0", "user" + i);
+        }
+
+        // Swipes from many request threads share each fsync of the journal
+        AtomicInteger numberOfSwipes = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        long startTime = System.nanoTime();
+        for (int i = 1; i < 200; i++) {
+            String userId = "user" + i;
+            executor.execute(() -> {
+                for (int j = 1; j < 200; j++) {
+                    if (!userId.equals("user" + j) && SwipeIngestionService.like(userId, "user" + j).getStatusCode() == HttpStatus.OK) {
+                        numberOfSwipes.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(100, TimeUnit.SECONDS));
+        long duration = System.nanoTime() - startTime;
+        SwipeIngestionService.flush();
+
+        System.out.println("Ingested " + numberOfSwipes.get() + " swipes in " + duration / 1_000_000 + "ms (" +
+                           numberOfSwipes.get() * 1_000_000_000L / duration + " swipes/s), written in " + batchSizes.size() + " statements");
+        assertEquals(199 * 198, numberOfSwipes.get());
+        assertEquals(0, SwipeIngestionService.numberOfPendingSwipes());
+    }
+
+    /**
+     * Writes a batch of swipes to the stand-in for tbl_relationships
+     */
+    private boolean write(List<Swipe> swipes) {
+        if (!databaseAvailable.get()) {
+            return false;
+        }
+        for (Swipe swipe : swipes) {
+            relationships.put(swipe.userId() + " " + swipe.otherUserId(), swipe.status());
+        }
+        batchSizes.add(swipes.size());
+        return true;
+    }
+}
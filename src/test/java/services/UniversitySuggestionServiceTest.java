@@ -0,0 +1,126 @@
+package services;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import static org.junit.Assert.*;
+
+public class UniversitySuggestionServiceTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(60);
+
+    private static List<String> universityNames;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws IOException {
+        // Catalog the universities that are seeded into tbl_universities
+        Map<String, String> universityIdToName = new HashMap<>();
+        Matcher matcher = Pattern.compile("\\('([0-9a-f-]{36})', '((?:[^'\\\\]|\\\\.)*)'\\)")
+                                 .matcher(Files.readString(Path.of("src/test/sql/populateUniversities.sql")));
+        while (matcher.find()) {
+            universityIdToName.put(matcher.group(1), matcher.group(2).replaceAll("\\\\(.)", "$1"));
+        }
+        CatalogService.initialize(universityIdToName, Map.of(), Map.of());
+        universityNames = new ArrayList<>(universityIdToName.values());
+    }
+
+    @Test
+    public void testSuggestPrefix() {
+        List<String> suggestions = UniversitySuggestionService.suggest("Zimbabwe", 10);
+
+        // Check that names starting with the query rank before names that only contain it
+        assertEquals(List.of("Zimbabwe Open University", "Zimbabwe Ezekiel Guti University"), suggestions.subList(0, 2));
+        for (String suggestion : suggestions) {
+            assertTrue(suggestion.contains("Zimbabwe"));
+        }
+    }
+
+    @Test
+    public void testSuggestWordPrefix() {
+        // Check that names match from any word
+        assertEquals("Zimbabwe Ezekiel Guti University", UniversitySuggestionService.suggest("ezekiel", 10).get(0));
+
+        // Check that shorter names rank first
+        assertEquals("Open University", UniversitySuggestionService.suggest("open", 10).get(0));
+    }
+
+    @Test
+    public void testSuggestFolding() {
+        // Check that case and diacritics are ignored
+        assertTrue(UniversitySuggestionService.suggest("UNIVERSIDADE CATOLICA DE ANG", 10)
+                                              .contains("Universidade Católica de Angola"));
+        assertTrue(UniversitySuggestionService.suggest("instituto de ensenanza", 10)
+                                              .contains("Instituto de Enseñanza Superior del Ejército"));
+    }
+
+    @Test
+    public void testSuggestTypos() {
+        // Check that a query with typos still finds the university
+        assertTrue(UniversitySuggestionService.suggest("Zimbabew Ezekiel", 10).contains("Zimbabwe Ezekiel Guti University"));
+        assertTrue(UniversitySuggestionService.suggest("Universidade Lusiadda", 10).contains("Universidade Lusíada de Angola"));
+
+        // Check that short queries are not corrected
+        assertTrue(UniversitySuggestionService.suggest("qxz", 10).isEmpty());
+    }
+
+    @Test
+    public void testSuggestLimit() {
+        assertEquals(3, UniversitySuggestionService.suggest("university", 3).size());
+        assertEquals(UniversitySuggestionService.MAX_SUGGESTIONS, UniversitySuggestionService.suggest("university", 100).size());
+        assertTrue(UniversitySuggestionService.suggest("university", 0).isEmpty());
+    }
+
+    @Test
+    public void testSuggestNewUniversity() throws InterruptedException {
+        CatalogService.addUniversity("universityId", "Juniper Institute of Technology");
+
+        // Check that the index is rebuilt in the background to include the new university
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!UniversitySuggestionService.suggest("Juniper Inst", 10).contains("Juniper Institute of Technology")) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testSuggestLatency() {
+        // Build queries from prefixes of real names, with a typo in every fourth query
+        Random random = new Random(0);
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            String name = universityNames.get(random.nextInt(universityNames.size()));
+            String query = name.substring(0, Math.min(name.length(), 2 + random.nextInt(12)));
+            if (i % 4 == 0 && query.length() > 4) {
+                query = query.substring(0, 2) + query.charAt(3) + query.charAt(2) + query.substring(4);
+            }
+            queries.add(query);
+        }
+
+        // Warm up
+        for (String query : queries) {
+            UniversitySuggestionService.suggest(query, 10);
+        }
+
+        long[] durations = new long[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            long startTime = System.nanoTime();
+            UniversitySuggestionService.suggest(queries.get(i), 10);
+            durations[i] = System.nanoTime() - startTime;
+        }
+        Arrays.sort(durations);
+
+        long p50 = durations[durations.length / 2];
+        long p99 = durations[durations.length * 99 / 100];
+        System.out.println("Suggest p50 latency: " + p50 / 1000 + "us");
+        System.out.println("Suggest p99 latency: " + p99 / 1000 + "us");
+
+        // Check that lookups stay under a millisecond
+        assertTrue(p99 < 1_000_000);
+    }
+}
@@ -0,0 +1,152 @@
+package services;
+
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import types.*;
+
+import static org.junit.Assert.*;
+
+public class UserSearchIndexTest {
+
+    @Rule
+    public final Timeout globalTimeout = Timeout.seconds(300);
+
+    @Before
+    public void setUpBeforeTest() {
+        UserSearchIndex.initialize(List.of(new UserMini("user1", "damienezra#9574", "Damien Ezra", null),
+                                           new UserMini("user2", "ezraklein#0001", "Ezra Klein", null),
+                                           new UserMini("user3", "zoebarnes#4410", "Zoë Barnes", null),
+                                           new UserMini("user4", "ez#1234", "Ez", null),
+                                           new UserMini("user5", "ezraunverified#1111", "Ezra Unverified", null)),
+                                   Set.of("user1", "user2", "user3", "user4"));
+    }
+
+    @Test
+    public void testSearch() {
+        // Check that handle matches rank before name matches, and prefix matches rank before substring matches
+        assertEquals(List.of("user2", "user1"), userIds(UserSearchIndex.search("ezra", 0, 10, List.of())));
+        assertEquals(List.of("user1"), userIds(UserSearchIndex.search("mienez", 0, 10, List.of())));
+
+        // Check that short queries match the start of a word
+        assertEquals(List.of("user2", "user4", "user1"), userIds(UserSearchIndex.search("ez", 0, 10, List.of())));
+        assertEquals(List.of(), userIds(UserSearchIndex.search("zr", 0, 10, List.of())));
+
+        // Check that case and diacritics are ignored
+        assertEquals(List.of("user3"), userIds(UserSearchIndex.search("ZOE BAR", 0, 10, List.of())));
+
+        // Check that handles can be searched with their discriminator
+        assertEquals(List.of("user1"), userIds(UserSearchIndex.search("damienezra#9574", 0, 10, List.of())));
+    }
+
+    @Test
+    public void testSearchFilters() {
+        // Check that excluded users are not returned
+        assertEquals(List.of("user1"), userIds(UserSearchIndex.search("ezra", 0, 10, List.of("user2"))));
+
+        // Check that users are only searchable once verified
+        assertTrue(UserSearchIndex.search("unverified", 0, 10, List.of()).isEmpty());
+        UserSearchIndex.verifyUser("user5");
+        assertEquals(List.of("user5"), userIds(UserSearchIndex.search("unverified", 0, 10, List.of())));
+    }
+
+    @Test
+    public void testSearchPaging() {
+        List<String> userIds = userIds(UserSearchIndex.search("e", 0, 10, List.of()));
+
+        // Check that pages are consecutive slices of the full result
+        List<String> pagedUserIds = new ArrayList<>();
+        for (int offset = 0; offset < userIds.size(); offset += 2) {
+            pagedUserIds.addAll(userIds(UserSearchIndex.search("e", offset, 2, List.of())));
+        }
+        assertEquals(userIds, pagedUserIds);
+        assertTrue(UserSearchIndex.search("e", userIds.size(), 2, List.of()).isEmpty());
+    }
+
+    @Test
+    public void testUpdateUser() {
+        UserSearchIndex.putUser("user6", "newuser#0000", "New User", null);
+        UserSearchIndex.updateUser("user1", "damienwright#9574", "Damien Wright");
+        UserSearchIndex.updateProfilePicture("user2", "https://pictures/user2");
+        UserSearchIndex.removeUser("user4");
+
+        // Check that new users are not searchable until verified
+        assertTrue(UserSearchIndex.search("new user", 0, 10, List.of()).isEmpty());
+
+        // Check that renamed users are found by their new name only
+        assertEquals(List.of("user1"), userIds(UserSearchIndex.search("wright", 0, 10, List.of())));
+        assertEquals(List.of("user2"), userIds(UserSearchIndex.search("ezra", 0, 10, List.of())));
+        assertEquals("https://pictures/user2", UserSearchIndex.search("ezra", 0, 10, List.of()).get(0).profilePictureUrl);
+
+        // Check that removed users are not returned
+        assertEquals(List.of("user2"), userIds(UserSearchIndex.search("ez", 0, 10, List.of())));
+    }
+
+    @Test
+    public void testSearchLatency() {
+        String[] firstNames = {"James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael", "Linda", "David", "Elizabeth",
+                               "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Charles", "Karen",
+                               "Christopher", "Lisa", "Daniel", "Nancy", "Matthew", "Betty", "Anthony", "Margaret", "Mark", "Sandra",
+                               "Damien", "Zoë", "Ezra", "Amélie", "José", "Siobhán", "Björn", "Chloé", "Mateo", "Aaliyah"};
+        String[] lastNames = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+                              "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin",
+                              "Lee", "Perez", "Thompson", "White", "Harris", "Sanchez", "Clark", "Ramirez", "Lewis", "Robinson",
+                              "Walker", "Young", "Allen", "King", "Wright", "Scott", "Torres", "Nguyen", "Hill", "Flores"};
+
+        // Half a million users, with handles generated the same way as UserController
+        int numberOfUsers = 500_000;
+        Random random = new Random(0);
+        List<UserMini> users = new ArrayList<>(numberOfUsers);
+        Set<String> verifiedUsers = new HashSet<>(numberOfUsers * 2);
+        for (int i = 0; i < numberOfUsers; i++) {
+            String name = firstNames[random.nextInt(firstNames.length)] + " " + lastNames[random.nextInt(lastNames.length)];
+            String userHandle = name.replaceAll("\\s", "").toLowerCase() + "#" + String.format("%04d", random.nextInt(10000));
+            users.add(new UserMini("user" + i, userHandle, name, null));
+            verifiedUsers.add("user" + i);
+        }
+
+        long startTime = System.nanoTime();
+        UserSearchIndex.initialize(users, verifiedUsers);
+        long buildTime = System.nanoTime() - startTime;
+
+        // Queries are prefixes of real names and handles, from one character to a full handle
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            UserMini user = users.get(random.nextInt(numberOfUsers));
+            String text = (i % 2 == 0) ? user.userName : user.userHandle;
+            queries.add(text.substring(0, 1 + random.nextInt(text.length())));
+        }
+
+        // Warm up
+        for (String query : queries) {
+            UserSearchIndex.search(query, 0, 20, List.of());
+        }
+
+        long[] durations = new long[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            startTime = System.nanoTime();
+            UserSearchIndex.search(queries.get(i), 0, 20, List.of());
+            durations[i] = System.nanoTime() - startTime;
+        }
+        Arrays.sort(durations);
+
+        long p50 = durations[durations.length / 2];
+        long p99 = durations[durations.length * 99 / 100];
+        System.out.println("Index build time for " + numberOfUsers + " users: " + buildTime / 1_000_000 + "ms");
+        System.out.println("Search p50 latency: " + p50 / 1000 + "us");
+        System.out.println("Search p99 latency: " + p99 / 1000 + "us");
+
+        // Check that searches stay well under the latency of a database round trip
+        assertTrue(p99 < 5_000_000);
+    }
+
+    private static List<String> userIds(List<UserMini> users) {
+        List<String> userIds = new ArrayList<>();
+        for (UserMini user : users) {
+            userIds.add(user.userId);
+        }
+        return userIds;
+    }
+}